@@ -0,0 +1,550 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Pull parser for AppleScript values in source form, as returned by
+ * <code>osascript -s s</code>, e.g. <code>{name:"Tom", tracks:{1, 2}, kind:«class cTrk» id 5}</code>.
+ * <p>
+ * Similar to a streaming JSON parser, {@link #next()} moves a cursor to the next {@link Token}.
+ * Tokens are not copied, instead {@link #getStart()} and {@link #getEnd()} point into the
+ * original {@link CharSequence}. Every char is looked at a constant number of times,
+ * no matter how deeply lists and records are nested.
+ * <p>
+ * Scalar values are classified as {@link Token#STRING}, {@link Token#NUMBER} or
+ * {@link Token#CHEVRON}, if they consist of a single string, number or chevron.
+ * Everything else, e.g. <code>missing value</code>, <code>true</code>, <code>date "..."</code>
+ * or object specifiers, is a {@link Token#REFERENCE}.
+ * Values that are not enclosed in curly braces, but separated by commas at the top level,
+ * are treated like list elements.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public final class AppleScriptResultParser {
+
+    /**
+     * Tokens.
+     */
+    public enum Token {
+        LIST_START,
+        LIST_END,
+        RECORD_START,
+        RECORD_END,
+        /**
+         * Record key, e.g. <code>name</code>, <code>|my key|</code> or <code>«class pnam»</code>.
+         */
+        KEY,
+        /**
+         * Quoted string, including the quotes.
+         */
+        STRING,
+        NUMBER,
+        /**
+         * Single raw code, e.g. <code>«class cTrk»</code> or <code>«data utxt0041»</code>.
+         */
+        CHEVRON,
+        /**
+         * Any other value, e.g. an object specifier.
+         */
+        REFERENCE
+    }
+
+    private static final int ELEMENT = 0;
+    private static final int VALUE = 1;
+    private static final int AFTER_VALUE = 2;
+    /**
+     * Powers of ten that are exactly representable as <code>double</code>.
+     */
+    private static final double[] DOUBLE_POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    /**
+     * Powers of ten that are exactly representable as <code>float</code>.
+     */
+    private static final float[] FLOAT_POWERS_OF_TEN = {
+        1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+    };
+
+    private final CharSequence text;
+    private final int end;
+    private int position;
+    private int state = ELEMENT;
+    private Token token;
+    private int tokenStart;
+    private int tokenEnd;
+    private int depth;
+    /**
+     * Whether the container at a given depth is a record. Index 0 stands for the top level.
+     */
+    private boolean[] records = new boolean[16];
+    private boolean decimalNegative;
+    private long decimalMantissa;
+    private int decimalExponent;
+
+    /**
+     * @param text AppleScript value in source form
+     */
+    public AppleScriptResultParser(final CharSequence text) {
+        this(text, 0, text.length());
+    }
+
+    /**
+     * @param text text
+     * @param start start offset of the value in <code>text</code>
+     * @param end end offset of the value in <code>text</code>
+     */
+    public AppleScriptResultParser(final CharSequence text, final int start, final int end) {
+        if (start < 0 || end > text.length() || start > end) {
+            throw new IndexOutOfBoundsException("start=" + start + ", end=" + end + ", length=" + text.length());
+        }
+        this.text = text;
+        this.position = start;
+        this.end = end;
+        this.records[0] = isKeyAhead(start);
+    }
+
+    /**
+     * @return true, if there are more tokens
+     */
+    public boolean hasNext() {
+        skipWhitespace();
+        return position < end || depth > 0 || state == VALUE;
+    }
+
+    /**
+     * Moves to the next token.
+     *
+     * @return token
+     * @throws NoSuchElementException if there are no more tokens
+     * @throws JaplScriptException if the text is malformed
+     */
+    public Token next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        if (position >= end) throw error("Unexpected end");
+        if (state == AFTER_VALUE) {
+            final char c = charAt(position);
+            if (c == '}') return endContainer();
+            if (c != ',') throw error("Expected ',' or '}'");
+            position++;
+            state = ELEMENT;
+            skipWhitespace();
+        }
+        if (state == ELEMENT) {
+            if (position < end && charAt(position) == '}' && depth > 0) return endContainer();
+            if (records[depth]) return key();
+        }
+        return value();
+    }
+
+    private Token endContainer() {
+        if (depth == 0) throw error("Unexpected '}'");
+        final boolean record = records[depth];
+        depth--;
+        state = AFTER_VALUE;
+        final int start = position++;
+        return token(record ? Token.RECORD_END : Token.LIST_END, start, position);
+    }
+
+    private Token key() {
+        final int start = position;
+        final char c = charAt(position);
+        if (c == '|' || c == '«') {
+            position = indexOf(c == '|' ? '|' : '»', position + 1) + 1;
+        } else {
+            while (position < end && isKeyChar(charAt(position))) position++;
+        }
+        final int keyEnd = trimEnd(start, position);
+        skipWhitespace();
+        if (keyEnd == start || position >= end || charAt(position) != ':') throw error("Expected record key");
+        position++;
+        state = VALUE;
+        return token(Token.KEY, start, keyEnd);
+    }
+
+    private Token value() {
+        if (position >= end) throw error("Unexpected end");
+        final int start = position;
+        final char c = charAt(position);
+        if (c == '{') {
+            position++;
+            depth++;
+            if (depth == records.length) records = Arrays.copyOf(records, depth * 2);
+            final boolean record = isKeyAhead(position);
+            records[depth] = record;
+            state = ELEMENT;
+            return token(record ? Token.RECORD_START : Token.LIST_START, start, position);
+        }
+        if (c == '}' || c == ',') throw error("Missing value");
+        // scan to the end of the value, remembering where its first component ends
+        int firstEnd = -1;
+        int nesting = 0;
+        while (position < end) {
+            final char d = charAt(position);
+            if (nesting == 0 && (d == ',' || d == '}')) break;
+            if (d == '"') {
+                position = indexOfClosingQuote(position + 1) + 1;
+            } else if (d == '«') {
+                position = indexOf('»', position + 1) + 1;
+            } else {
+                if (d == '{') nesting++;
+                else if (d == '}') nesting--;
+                position++;
+            }
+            if (firstEnd == -1) firstEnd = position;
+        }
+        final int valueEnd = trimEnd(start, position);
+        state = AFTER_VALUE;
+        final Token type;
+        if (c == '"' && firstEnd == valueEnd) type = Token.STRING;
+        else if (c == '«' && firstEnd == valueEnd) type = Token.CHEVRON;
+        else if (isNumber(start, valueEnd)) type = Token.NUMBER;
+        else type = Token.REFERENCE;
+        return token(type, start, valueEnd);
+    }
+
+    private Token token(final Token token, final int start, final int end) {
+        this.token = token;
+        this.tokenStart = start;
+        this.tokenEnd = end;
+        return token;
+    }
+
+    /**
+     * Skips the current value. If the current token starts a list or record, the
+     * cursor is moved to its end token.
+     *
+     * @return end offset of the current value
+     */
+    public int skipValue() {
+        if (token == Token.LIST_START || token == Token.RECORD_START) {
+            final int targetDepth = depth - 1;
+            while (depth > targetDepth) next();
+        }
+        return tokenEnd;
+    }
+
+    /**
+     * @return current token or {@code null}, if {@link #next()} has not been called yet
+     */
+    public Token getToken() {
+        return token;
+    }
+
+    /**
+     * @return start offset of the current token
+     */
+    public int getStart() {
+        return tokenStart;
+    }
+
+    /**
+     * @return end offset (exclusive) of the current token
+     */
+    public int getEnd() {
+        return tokenEnd;
+    }
+
+    /**
+     * Nesting depth after the current token, i.e. 1 after the outermost {@link Token#LIST_START}.
+     *
+     * @return depth
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return true, if the innermost container is a record
+     */
+    public boolean isInRecord() {
+        return records[depth];
+    }
+
+    /**
+     * Current token's text, as a {@link CharSequence#subSequence(int, int) sub sequence} of the parsed text.
+     *
+     * @return text
+     */
+    public CharSequence getText() {
+        return text.subSequence(tokenStart, tokenEnd);
+    }
+
+    /**
+     * Copies a part of the parsed text, e.g. a whole value from its start token's
+     * {@link #getStart() start} to the offset returned by {@link #skipValue()}.
+     *
+     * @param start start offset
+     * @param end end offset
+     * @return string
+     */
+    public String substring(final int start, final int end) {
+        return text.subSequence(start, end).toString();
+    }
+
+    /**
+     * Current {@link Token#STRING} without quotes and with escape sequences resolved.
+     *
+     * @return string
+     */
+    public String getString() {
+        if (token != Token.STRING) return getText().toString();
+        final StringBuilder sb = new StringBuilder(tokenEnd - tokenStart - 2);
+        for (int i = tokenStart + 1; i < tokenEnd - 1; i++) {
+            char c = charAt(i);
+            if (c == '\\' && i < tokenEnd - 2) {
+                c = charAt(++i);
+                if (c == 'n') c = '\n';
+                else if (c == 'r') c = '\r';
+                else if (c == 't') c = '\t';
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Current {@link Token#NUMBER} as <code>int</code>, without creating a {@link String}.
+     *
+     * @return value
+     * @throws NumberFormatException if the current token is not an integer in <code>int</code> range
+     */
+    public int getInt() {
+        final long l = getLong();
+        if (l < Integer.MIN_VALUE || l > Integer.MAX_VALUE) throw new NumberFormatException("Not an int: " + getText());
+        return (int) l;
+    }
+
+    /**
+     * Current {@link Token#NUMBER} as <code>long</code>, without creating a {@link String}.
+     *
+     * @return value
+     * @throws NumberFormatException if the current token is not an integer in <code>long</code> range
+     */
+    public long getLong() {
+        int i = tokenStart;
+        final boolean negative = i < tokenEnd && charAt(i) == '-';
+        if (negative) i++;
+        if (i == tokenEnd) throw new NumberFormatException("Not an integer: " + getText());
+        long l = 0;
+        for (; i < tokenEnd; i++) {
+            final int digit = charAt(i) - '0';
+            if (digit < 0 || digit > 9) throw new NumberFormatException("Not an integer: " + getText());
+            // accumulate negatively, so that Long.MIN_VALUE fits
+            if (l < (Long.MIN_VALUE + digit) / 10) throw new NumberFormatException("Out of range: " + getText());
+            l = l * 10 - digit;
+        }
+        if (!negative && l == Long.MIN_VALUE) throw new NumberFormatException("Out of range: " + getText());
+        return negative ? l : -l;
+    }
+
+    /**
+     * Current {@link Token#NUMBER} as <code>double</code>. Numbers with at most 15 significant
+     * digits and a small decimal exponent are converted without creating a {@link String}.
+     *
+     * @return value, correctly rounded like {@link Double#parseDouble(String)}
+     * @throws NumberFormatException if the current token is not a number
+     */
+    public double getDouble() {
+        if (token == Token.NUMBER && parseDecimal(15)) {
+            // both operands are exact, so a single operation rounds correctly
+            final double mantissa = decimalMantissa;
+            if (decimalExponent == 0) return decimalNegative ? -mantissa : mantissa;
+            if (decimalExponent > 0 && decimalExponent < DOUBLE_POWERS_OF_TEN.length) {
+                final double d = mantissa * DOUBLE_POWERS_OF_TEN[decimalExponent];
+                return decimalNegative ? -d : d;
+            }
+            if (decimalExponent < 0 && -decimalExponent < DOUBLE_POWERS_OF_TEN.length) {
+                final double d = mantissa / DOUBLE_POWERS_OF_TEN[-decimalExponent];
+                return decimalNegative ? -d : d;
+            }
+        }
+        return Double.parseDouble(getText().toString());
+    }
+
+    /**
+     * Current {@link Token#NUMBER} as <code>float</code>. Numbers with at most 7 significant
+     * digits and a small decimal exponent are converted without creating a {@link String}.
+     *
+     * @return value, correctly rounded like {@link Float#parseFloat(String)}
+     * @throws NumberFormatException if the current token is not a number
+     */
+    public float getFloat() {
+        if (token == Token.NUMBER && parseDecimal(7)) {
+            final float mantissa = decimalMantissa;
+            if (decimalExponent == 0) return decimalNegative ? -mantissa : mantissa;
+            if (decimalExponent > 0 && decimalExponent < FLOAT_POWERS_OF_TEN.length) {
+                final float f = mantissa * FLOAT_POWERS_OF_TEN[decimalExponent];
+                return decimalNegative ? -f : f;
+            }
+            if (decimalExponent < 0 && -decimalExponent < FLOAT_POWERS_OF_TEN.length) {
+                final float f = mantissa / FLOAT_POWERS_OF_TEN[-decimalExponent];
+                return decimalNegative ? -f : f;
+            }
+        }
+        return Float.parseFloat(getText().toString());
+    }
+
+    /**
+     * Current token as <code>boolean</code>, without creating a {@link String}.
+     *
+     * @return true, if the token is <code>true</code> (ignoring case), false otherwise,
+     * just like {@link Boolean#parseBoolean(String)}
+     */
+    public boolean getBoolean() {
+        if (tokenEnd - tokenStart != 4) return false;
+        for (int i = 0; i < 4; i++) {
+            if (Character.toLowerCase(charAt(tokenStart + i)) != "true".charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Splits the current number into sign, mantissa and decimal exponent.
+     *
+     * @param maxDigits max significant digits
+     * @return false, if the number has more significant digits or an exponent with more than 3 digits
+     */
+    private boolean parseDecimal(final int maxDigits) {
+        int i = tokenStart;
+        decimalNegative = charAt(i) == '-';
+        if (decimalNegative) i++;
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean fraction = false;
+        for (; i < tokenEnd; i++) {
+            final char c = charAt(i);
+            if (c == '.') {
+                fraction = true;
+                continue;
+            }
+            if (!isDigit(c)) break;
+            if (mantissa != 0 || c != '0') {
+                if (++digits > maxDigits) return false;
+                mantissa = mantissa * 10 + (c - '0');
+            }
+            if (fraction) exponent--;
+        }
+        if (i < tokenEnd) {
+            // exponent, already validated by isNumber()
+            i++;
+            final boolean negativeExponent = charAt(i) == '-';
+            if (negativeExponent || charAt(i) == '+') i++;
+            if (tokenEnd - i > 3) return false;
+            int e = 0;
+            for (; i < tokenEnd; i++) e = e * 10 + (charAt(i) - '0');
+            exponent += negativeExponent ? -e : e;
+        }
+        decimalMantissa = mantissa;
+        decimalExponent = mantissa == 0 ? 0 : exponent;
+        return true;
+    }
+
+    private boolean isNumber(final int start, final int end) {
+        int i = start;
+        if (i < end && charAt(i) == '-') i++;
+        final int digitsStart = i;
+        while (i < end && isDigit(charAt(i))) i++;
+        if (i == digitsStart) return false;
+        if (i < end && charAt(i) == '.') {
+            i++;
+            final int fractionStart = i;
+            while (i < end && isDigit(charAt(i))) i++;
+            if (i == fractionStart) return false;
+        }
+        if (i < end && (charAt(i) == 'E' || charAt(i) == 'e')) {
+            i++;
+            if (i < end && (charAt(i) == '+' || charAt(i) == '-')) i++;
+            final int exponentStart = i;
+            while (i < end && isDigit(charAt(i))) i++;
+            if (i == exponentStart) return false;
+        }
+        return i == end;
+    }
+
+    /**
+     * Checks, without moving the cursor, whether a record key follows. This looks at
+     * no more than the key candidate itself, i.e. never into nested values.
+     */
+    private boolean isKeyAhead(final int from) {
+        int i = from;
+        while (i < end && Character.isWhitespace(charAt(i))) i++;
+        if (i >= end) return false;
+        final char c = charAt(i);
+        if (c == '|' || c == '«') {
+            final char closing = c == '|' ? '|' : '»';
+            i++;
+            while (i < end && charAt(i) != closing) i++;
+            i++;
+        } else {
+            final int start = i;
+            while (i < end && isKeyChar(charAt(i))) i++;
+            if (i == start) return false;
+        }
+        while (i < end && Character.isWhitespace(charAt(i))) i++;
+        return i < end && charAt(i) == ':';
+    }
+
+    private static boolean isKeyChar(final char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == ' ';
+    }
+
+    private static boolean isDigit(final char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private int indexOfClosingQuote(final int from) {
+        for (int i = from; i < end; i++) {
+            final char c = charAt(i);
+            if (c == '\\') i++;
+            else if (c == '"') return i;
+        }
+        throw error("Unterminated string");
+    }
+
+    private int indexOf(final char c, final int from) {
+        for (int i = from; i < end; i++) {
+            if (charAt(i) == c) return i;
+        }
+        throw error("Missing '" + c + "'");
+    }
+
+    private int trimEnd(final int start, final int end) {
+        int i = end;
+        while (i > start && Character.isWhitespace(charAt(i - 1))) i--;
+        return i;
+    }
+
+    private void skipWhitespace() {
+        while (position < end && Character.isWhitespace(charAt(position))) position++;
+    }
+
+    private char charAt(final int index) {
+        return text.charAt(index);
+    }
+
+    private JaplScriptException error(final String message) {
+        final int from = Math.max(0, Math.min(position, end) - 20);
+        final int to = Math.min(end, position + 20);
+        return new JaplScriptException(message + " at offset " + position + ": ..."
+            + text.subSequence(from, to) + "...");
+    }
+
+    @Override
+    public String toString() {
+        return "AppleScriptResultParser{" +
+            "token=" + token +
+            ", start=" + tokenStart +
+            ", end=" + tokenEnd +
+            ", depth=" + depth +
+            '}';
+    }
+}
@@ -0,0 +1,412 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Limits the number of concurrent script executions per application.
+ * <p>
+ * Apple events sent to one application are effectively serialized by that application.
+ * Running many scripts targeting the same application in parallel therefore only
+ * piles up blocked threads and <code>osascript</code> processes. This scheduler
+ * keeps one FIFO queue per application (identified by its application reference,
+ * e.g. <code>application "Finder"</code>), so that scripts for different applications
+ * still run in parallel, while scripts for the same application are admitted in order
+ * and only up to the application's concurrency limit.
+ * <p>
+ * Limits are opt-in: by default, executions are not limited, but only counted and timed.
+ * A default limit for all applications can be configured with the system property
+ * <code>japlscript.app.concurrency</code> or by {@link #setDefault(ApplicationScheduler) setting}
+ * a scheduler created with a limit. Limits for single applications can be set with
+ * {@link #setMaxConcurrency(String, int)}.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ * @see ScriptExecutor#setApplication(String)
+ */
+public class ApplicationScheduler {
+
+    private static final Logger LOG = Logger.getLogger(ApplicationScheduler.class.getName());
+    public static final String CONCURRENCY_PROPERTY = "japlscript.app.concurrency";
+    /**
+     * Max concurrency that means no limit.
+     */
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+    private static ApplicationScheduler defaultInstance;
+
+    private final int defaultMaxConcurrency;
+    private final ConcurrentMap<String, Lane> lanes = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a scheduler that does not limit executions, unless limits are set per application.
+     */
+    public ApplicationScheduler() {
+        this(UNLIMITED);
+    }
+
+    /**
+     * Creates a scheduler.
+     *
+     * @param defaultMaxConcurrency max number of concurrent executions per application,
+     *                              unless set otherwise via {@link #setMaxConcurrency(String, int)},
+     *                              {@link #UNLIMITED} for no limit
+     */
+    public ApplicationScheduler(final int defaultMaxConcurrency) {
+        if (defaultMaxConcurrency < 1) throw new IllegalArgumentException("Max concurrency must be greater than 0: " + defaultMaxConcurrency);
+        this.defaultMaxConcurrency = defaultMaxConcurrency;
+    }
+
+    /**
+     * Scheduler used by all {@link ScriptExecutor}s that know their application.
+     *
+     * @return default scheduler
+     */
+    public static synchronized ApplicationScheduler getDefault() {
+        if (defaultInstance == null) {
+            defaultInstance = createDefault();
+        }
+        return defaultInstance;
+    }
+
+    /**
+     * Replaces the default scheduler.
+     *
+     * @param scheduler scheduler or {@code null} to restore the default
+     */
+    public static synchronized void setDefault(final ApplicationScheduler scheduler) {
+        defaultInstance = scheduler;
+    }
+
+    private static ApplicationScheduler createDefault() {
+        int maxConcurrency = UNLIMITED;
+        final String concurrency = System.getProperty(CONCURRENCY_PROPERTY);
+        if (concurrency != null) {
+            try {
+                final int value = Integer.parseInt(concurrency.trim());
+                if (value < 1) throw new NumberFormatException("Max concurrency must be greater than 0: " + value);
+                maxConcurrency = value;
+            } catch (NumberFormatException e) {
+                LOG.warning("Ignoring invalid value for " + CONCURRENCY_PROPERTY + ": " + concurrency);
+            }
+        }
+        return new ApplicationScheduler(maxConcurrency);
+    }
+
+    public int getDefaultMaxConcurrency() {
+        return defaultMaxConcurrency;
+    }
+
+    /**
+     * Sets the max number of concurrent executions for the given application.
+     *
+     * @param application application reference, e.g. <code>application "Finder"</code>
+     * @param maxConcurrency max concurrent executions
+     */
+    public void setMaxConcurrency(final String application, final int maxConcurrency) {
+        if (maxConcurrency < 1) throw new IllegalArgumentException("Max concurrency must be greater than 0: " + maxConcurrency);
+        getLane(application).setMaxConcurrency(maxConcurrency);
+    }
+
+    /**
+     * Max number of concurrent executions for the given application.
+     *
+     * @param application application reference
+     * @return max concurrent executions, {@link #UNLIMITED} for no limit
+     */
+    public int getMaxConcurrency(final String application) {
+        final Lane lane = findLane(application);
+        return lane == null ? defaultMaxConcurrency : lane.getMaxConcurrency();
+    }
+
+    /**
+     * Runs the given task, once the application admits another execution.
+     * Blocks, until the task is done.
+     *
+     * @param application application reference
+     * @param task task
+     * @param <T> result type
+     * @return result
+     * @throws IOException if the task fails or the thread is interrupted while waiting
+     */
+    public <T> T execute(final String application, final Callable<T> task) throws IOException {
+        final Lane lane = getLane(application);
+        final CompletableFuture<Void> permit = lane.acquire();
+        try {
+            permit.get();
+        } catch (InterruptedException e) {
+            lane.cancel(permit);
+            Thread.currentThread().interrupt();
+            final InterruptedIOException interruptedIOException = new InterruptedIOException(e.toString());
+            interruptedIOException.initCause(e);
+            throw interruptedIOException;
+        } catch (ExecutionException e) {
+            // permits never complete exceptionally
+            throw new IOException(e.toString(), e.getCause());
+        }
+        try {
+            return task.call();
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e.toString(), e);
+        } finally {
+            lane.release();
+        }
+    }
+
+    /**
+     * Starts the given asynchronous task, once the application admits another execution.
+     * The permit is held until the task's future completes.
+     * <p>
+     * Note that the task is started on the caller's thread, if a permit is available
+     * immediately. Otherwise, it is started on the thread that releases a permit.
+     *
+     * Cancelling the returned future removes a waiting task from the queue or,
+     * if it has already been started, cancels the task's future.
+     *
+     * @param application application reference
+     * @param task task
+     * @param <T> result type
+     * @return future result
+     */
+    public <T> CompletableFuture<T> submit(final String application, final Supplier<CompletableFuture<T>> task) {
+        final Lane lane = getLane(application);
+        final CompletableFuture<Void> permit = lane.acquire();
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        result.whenComplete((r, throwable) -> {
+            if (result.isCancelled()) lane.dequeue(permit);
+        });
+        permit.thenRun(() -> {
+            if (result.isDone()) {
+                // cancelled while waiting
+                lane.release();
+                return;
+            }
+            final CompletableFuture<T> future;
+            try {
+                future = task.get();
+            } catch (RuntimeException e) {
+                lane.release();
+                result.completeExceptionally(e);
+                return;
+            }
+            future.whenComplete((r, throwable) -> {
+                lane.release();
+                if (throwable != null) result.completeExceptionally(throwable);
+                else result.complete(r);
+            });
+            Watchdog.propagateCancellation(result, future);
+        });
+        return result;
+    }
+
+    private Lane getLane(final String application) {
+        return lanes.computeIfAbsent(application == null ? "" : application, k -> new Lane(defaultMaxConcurrency));
+    }
+
+    /**
+     * Finds the lane for the given application without creating it.
+     *
+     * @return lane or {@code null}, if no execution for this application has been seen yet
+     */
+    private Lane findLane(final String application) {
+        return lanes.get(application == null ? "" : application);
+    }
+
+    /**
+     * Applications this scheduler has seen so far.
+     *
+     * @return application references
+     */
+    public Set<String> getApplications() {
+        return Collections.unmodifiableSet(new TreeSet<>(lanes.keySet()));
+    }
+
+    /**
+     * Number of executions waiting for the given application.
+     *
+     * @param application application reference
+     * @return queue length
+     */
+    public int getQueueLength(final String application) {
+        final Lane lane = findLane(application);
+        return lane == null ? 0 : lane.getQueueLength();
+    }
+
+    /**
+     * Highest observed queue length for the given application.
+     *
+     * @param application application reference
+     * @return max queue length
+     */
+    public int getMaxQueueLength(final String application) {
+        final Lane lane = findLane(application);
+        return lane == null ? 0 : lane.getMaxQueueLength();
+    }
+
+    /**
+     * Number of currently running executions for the given application.
+     *
+     * @param application application reference
+     * @return active executions
+     */
+    public int getActiveCount(final String application) {
+        final Lane lane = findLane(application);
+        return lane == null ? 0 : lane.getActiveCount();
+    }
+
+    /**
+     * Mean time executions for the given application had to wait, before they could start.
+     *
+     * @param application application reference
+     * @return mean queue time in ms
+     */
+    public double getQueueTimeMeanMillis(final String application) {
+        final Lane lane = findLane(application);
+        return lane == null ? 0 : lane.queueTimeNanos.getMean() / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * 99th percentile of the time executions for the given application had to wait.
+     *
+     * @param application application reference
+     * @return queue time in ms
+     */
+    public double getQueueTimeP99Millis(final String application) {
+        final Lane lane = findLane(application);
+        return lane == null ? 0 : lane.queueTimeNanos.getPercentile(99) / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public String toString() {
+        return "ApplicationScheduler{" +
+            "defaultMaxConcurrency=" + defaultMaxConcurrency +
+            ", lanes=" + lanes +
+            '}';
+    }
+
+    /**
+     * FIFO queue for a single application.
+     */
+    private static final class Lane {
+
+        private final Deque<Waiter> waiters = new ArrayDeque<>();
+        private final Histogram queueTimeNanos = new Histogram();
+        private int maxConcurrency;
+        private int active;
+        private int maxQueueLength;
+
+        Lane(final int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+        }
+
+        CompletableFuture<Void> acquire() {
+            final Waiter waiter;
+            synchronized (this) {
+                if (active < maxConcurrency) {
+                    active++;
+                    waiter = null;
+                } else {
+                    waiter = new Waiter();
+                    waiters.addLast(waiter);
+                    maxQueueLength = Math.max(maxQueueLength, waiters.size());
+                }
+            }
+            if (waiter == null) {
+                queueTimeNanos.record(0);
+                return CompletableFuture.completedFuture(null);
+            }
+            return waiter.permit;
+        }
+
+        void release() {
+            final Waiter next;
+            synchronized (this) {
+                if (active <= maxConcurrency && !waiters.isEmpty()) {
+                    // hand the permit over
+                    next = waiters.pollFirst();
+                } else {
+                    active--;
+                    next = null;
+                }
+            }
+            if (next != null) grant(next);
+        }
+
+        void cancel(final CompletableFuture<Void> permit) {
+            // already (being) granted, give it back
+            if (!dequeue(permit)) permit.thenRun(this::release);
+        }
+
+        synchronized boolean dequeue(final CompletableFuture<Void> permit) {
+            return waiters.removeIf(waiter -> waiter.permit == permit);
+        }
+
+        void setMaxConcurrency(final int maxConcurrency) {
+            final Deque<Waiter> admitted = new ArrayDeque<>();
+            synchronized (this) {
+                this.maxConcurrency = maxConcurrency;
+                while (active < maxConcurrency && !waiters.isEmpty()) {
+                    active++;
+                    admitted.addLast(waiters.pollFirst());
+                }
+            }
+            for (final Waiter waiter : admitted) {
+                grant(waiter);
+            }
+        }
+
+        private void grant(final Waiter waiter) {
+            queueTimeNanos.record(System.nanoTime() - waiter.enqueued);
+            waiter.permit.complete(null);
+        }
+
+        synchronized int getMaxConcurrency() {
+            return maxConcurrency;
+        }
+
+        synchronized int getQueueLength() {
+            return waiters.size();
+        }
+
+        synchronized int getMaxQueueLength() {
+            return maxQueueLength;
+        }
+
+        synchronized int getActiveCount() {
+            return active;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "Lane{" +
+                "maxConcurrency=" + maxConcurrency +
+                ", active=" + active +
+                ", queued=" + waiters.size() +
+                '}';
+        }
+    }
+
+    private static final class Waiter {
+        private final CompletableFuture<Void> permit = new CompletableFuture<>();
+        private final long enqueued = System.nanoTime();
+    }
+}
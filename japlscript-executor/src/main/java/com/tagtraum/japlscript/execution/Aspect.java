@@ -24,6 +24,8 @@ public interface Aspect {
 
     /**
      * AppleScript code to be executed <em>after</em> the body.
+     * Code starting with <code>on</code> is treated as handler definition
+     * and placed outside of the script's <code>run</code> handler.
      *
      * @param application application, e.g. {@code application "iTunes"}
      * @param body body
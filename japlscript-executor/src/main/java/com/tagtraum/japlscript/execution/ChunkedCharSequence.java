@@ -0,0 +1,212 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Character sequence that is stored in fixed-size chunks.
+ * <p>
+ * Unlike a {@link StringBuilder}, the sequence never has to be copied while
+ * it grows and {@link #trim() trimming} or taking a {@link #subSequence(int, int) sub sequence}
+ * creates a view rather than a copy. Large script results can therefore be
+ * decoded incrementally, e.g. via {@link #charAt(int)} or {@link #newReader()}, without
+ * ever materializing them as one big {@link String}.
+ * <p>
+ * Chunks are taken from a small shared pool. Once a sequence (and all views of it)
+ * is not needed anymore, call {@link #release()} to return its chunks. Accessing a released
+ * sequence results in an {@link IllegalStateException}.
+ * <p>
+ * Instances are not thread-safe. Appending to a sequence while views of it are
+ * in use is not supported.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ * @see ScriptExecutor#executeStreaming()
+ */
+public final class ChunkedCharSequence implements CharSequence {
+
+    public static final int CHUNK_SIZE = 16 * 1024;
+    private static final int MAX_POOLED_CHUNKS = 64;
+    private static final BlockingQueue<char[]> POOL = new ArrayBlockingQueue<>(MAX_POOLED_CHUNKS);
+
+    private final Chunks chunks;
+    private final int start;
+    private final int end;
+
+    /**
+     * Creates an empty sequence.
+     */
+    public ChunkedCharSequence() {
+        this(new Chunks(), 0, -1);
+    }
+
+    private ChunkedCharSequence(final Chunks chunks, final int start, final int end) {
+        this.chunks = chunks;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Appends the given chars. Only allowed for sequences that are not views.
+     *
+     * @param cbuf chars
+     * @param offset offset
+     * @param length number of chars
+     */
+    public void append(final char[] cbuf, final int offset, final int length) {
+        if (end != -1) throw new IllegalStateException("Cannot append to a view.");
+        chunks.append(cbuf, offset, length);
+    }
+
+    @Override
+    public int length() {
+        return getEnd() - start;
+    }
+
+    private int getEnd() {
+        return end == -1 ? chunks.length : end;
+    }
+
+    @Override
+    public char charAt(final int index) {
+        if (index < 0 || index >= length()) throw new IndexOutOfBoundsException("Index: " + index + ", length: " + length());
+        return chunks.charAt(start + index);
+    }
+
+    @Override
+    public ChunkedCharSequence subSequence(final int start, final int end) {
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException("Start: " + start + ", end: " + end + ", length: " + length());
+        }
+        return new ChunkedCharSequence(chunks, this.start + start, this.start + end);
+    }
+
+    /**
+     * View of this sequence without leading and trailing whitespace,
+     * analogous to {@link String#trim()}.
+     *
+     * @return trimmed view
+     */
+    public ChunkedCharSequence trim() {
+        int first = 0;
+        int last = length();
+        while (first < last && charAt(first) <= ' ') first++;
+        while (last > first && charAt(last - 1) <= ' ') last--;
+        return subSequence(first, last);
+    }
+
+    /**
+     * Reader over this sequence. Reading does not copy the sequence.
+     *
+     * @return reader
+     */
+    public Reader newReader() {
+        return new Reader() {
+            private int position;
+
+            @Override
+            public int read(final char[] cbuf, final int off, final int len) {
+                final int available = length() - position;
+                if (available <= 0) return -1;
+                final int count = Math.min(len, available);
+                chunks.getChars(start + position, start + position + count, cbuf, off);
+                position += count;
+                return count;
+            }
+
+            @Override
+            public int read() {
+                return position < length() ? charAt(position++) : -1;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * Returns the chunks of this sequence (and of all views sharing them) to the pool.
+     */
+    public void release() {
+        chunks.release();
+    }
+
+    /**
+     * Copies the sequence into a new {@link String}.
+     *
+     * @return string
+     */
+    @Override
+    public String toString() {
+        final char[] chars = new char[length()];
+        chunks.getChars(start, getEnd(), chars, 0);
+        return new String(chars);
+    }
+
+    private static char[] allocate() {
+        final char[] chunk = POOL.poll();
+        return chunk == null ? new char[CHUNK_SIZE] : chunk;
+    }
+
+    /**
+     * Chunks shared by a sequence and its views.
+     */
+    private static final class Chunks {
+
+        private List<char[]> list = new ArrayList<>();
+        private int length;
+
+        void append(final char[] cbuf, final int offset, final int count) {
+            checkReleased();
+            int copied = 0;
+            while (copied < count) {
+                final int position = length % CHUNK_SIZE;
+                if (position == 0 && length / CHUNK_SIZE == list.size()) list.add(allocate());
+                final char[] chunk = list.get(length / CHUNK_SIZE);
+                final int n = Math.min(count - copied, CHUNK_SIZE - position);
+                System.arraycopy(cbuf, offset + copied, chunk, position, n);
+                copied += n;
+                length += n;
+            }
+        }
+
+        char charAt(final int index) {
+            checkReleased();
+            return list.get(index / CHUNK_SIZE)[index % CHUNK_SIZE];
+        }
+
+        void getChars(final int srcBegin, final int srcEnd, final char[] dst, final int dstBegin) {
+            checkReleased();
+            int index = srcBegin;
+            int target = dstBegin;
+            while (index < srcEnd) {
+                final int position = index % CHUNK_SIZE;
+                final int n = Math.min(srcEnd - index, CHUNK_SIZE - position);
+                System.arraycopy(list.get(index / CHUNK_SIZE), position, dst, target, n);
+                index += n;
+                target += n;
+            }
+        }
+
+        void release() {
+            if (list == null) return;
+            for (final char[] chunk : list) {
+                if (!POOL.offer(chunk)) break;
+            }
+            list = null;
+        }
+
+        private void checkReleased() {
+            if (list == null) throw new IllegalStateException("Sequence has already been released.");
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+/**
+ * Provides {@link CocoaScriptExecutor}s, if the native library is available and
+ * {@link ScriptExecutor#isPreferOsascript() Osascript is not preferred}.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class CocoaScriptExecutorProvider implements ScriptExecutorProvider {
+
+    public static final String NAME = "cocoa";
+    public static final int PRIORITY = 200;
+
+    /**
+     * Public no-argument constructor, required by {@link java.util.ServiceLoader}.
+     */
+    public CocoaScriptExecutorProvider() {
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public int getPriority() {
+        return PRIORITY;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return !ScriptExecutor.isPreferOsascript() && ScriptExecutor.isCocoaScriptExecutorAvailable();
+    }
+
+    @Override
+    public ScriptExecutor newInstance() {
+        return new CocoaScriptExecutor();
+    }
+
+    @Override
+    public String toString() {
+        return "CocoaScriptExecutorProvider{priority=" + PRIORITY + '}';
+    }
+}
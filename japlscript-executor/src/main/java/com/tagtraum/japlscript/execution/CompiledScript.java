@@ -11,6 +11,14 @@ import java.util.logging.Level;
 
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
@@ -25,10 +33,22 @@ public class CompiledScript {
     private static final Logger LOG = Logger.getLogger(CompiledScript.class.getName());
     private final CharSequence script;
     private final String scriptFile;
+    private final Osacompile osacompile;
 
     public CompiledScript(final CharSequence script, final String scriptFile) {
+        this(script, scriptFile, null);
+    }
+
+    /**
+     * @param script script
+     * @param scriptFile compiled script file
+     * @param osacompile cache the script file belongs to, used to recompile the script,
+     *                   if the file is evicted before it is executed, may be null
+     */
+    CompiledScript(final CharSequence script, final String scriptFile, final Osacompile osacompile) {
         this.script = script;
         this.scriptFile = scriptFile;
+        this.osacompile = osacompile;
     }
 
     public CharSequence getScript() {
@@ -38,28 +58,113 @@ public class CompiledScript {
     /**
      * Executes the script.
      *
-     * @return compiled script
+     * @return return value
      * @throws IOException in case of IO problems
      */
     public String execute() throws IOException {
-        final Process process = Runtime.getRuntime().exec(new String[]{"osascript", scriptFile});
-        final ReaderPump stderr = new ReaderPump(new InputStreamReader(process.getErrorStream(), UTF_8));
-        final ReaderPump stdout = new ReaderPump(new InputStreamReader(process.getInputStream(), UTF_8));
-        // TODO: investigate ThreadPool use
-        final Thread errThread = new Thread(stderr);
-        final Thread outThread = new Thread(stdout);
-        errThread.start();
-        outThread.start();
+        return execute(Collections.emptyList());
+    }
+
+    /**
+     * Executes the script's <code>run</code> handler with the given arguments.
+     * This allows compiling a script once and then running it with different values:
+     * <pre>
+     * on run argv
+     *     return item 1 of argv
+     * end run
+     * </pre>
+     *
+     * @param arguments arguments, passed as text
+     * @return return value
+     * @throws IOException in case of IO problems
+     */
+    public String execute(final List<String> arguments) throws IOException {
+        final Session session = Session.get();
+        return execute(arguments, session == null ? 0 : session.getDeadlineMillis());
+    }
+
+    /**
+     * Executes the script's <code>run</code> handler with the given arguments.
+     * If the script takes longer than the given deadline, its process is terminated.
+     *
+     * @param arguments arguments, passed as text
+     * @param deadlineMillis deadline in ms, values less than 1 mean no deadline
+     * @return return value
+     * @throws DeadlineExceededException if the deadline is exceeded
+     * @throws IOException in case of IO problems
+     */
+    public String execute(final List<String> arguments, final long deadlineMillis) throws IOException {
+        return execute(arguments, deadlineMillis, false);
+    }
+
+    /**
+     * Executes the script's <code>run</code> handler with the given arguments.
+     *
+     * @param arguments arguments, passed as text
+     * @param deadlineMillis deadline in ms, values less than 1 mean no deadline
+     * @param nested true, if called as part of another execution, e.g. by {@link Osascript}
+     * @return return value
+     * @throws IOException in case of IO problems
+     * @see ExecutionMetricsEvent#isNested()
+     */
+    String execute(final List<String> arguments, final long deadlineMillis, final boolean nested) throws IOException {
+        final ExecutionEventBus bus = ExecutionEventBus.getInstance();
+        final Object flightRecorderEvent = FlightRecorderEvents.beginScriptExecuted();
+        if (!bus.isActive() && flightRecorderEvent == null) return executeImpl(arguments, deadlineMillis, null);
+        final int[] exitCode = {FlightRecorderEvents.NO_EXIT_CODE};
+        final long start = System.nanoTime();
+        String result = null;
+        Throwable failure = null;
         try {
-            process.waitFor();
-        } catch (InterruptedException e) {
-            throw new IOException(e.toString());
+            result = executeImpl(arguments, deadlineMillis, exitCode);
+            return result;
+        } catch (IOException | RuntimeException | Error e) {
+            failure = e;
+            throw e;
+        } finally {
+            bus.fireMetrics(this, script.length(), result == null ? -1 : result.length(),
+                System.nanoTime() - start, failure, nested);
+            FlightRecorderEvents.commitScriptExecuted(flightRecorderEvent, this, script, result, exitCode[0]);
+        }
+    }
+
+    private String executeImpl(final List<String> arguments, final long deadlineMillis,
+                               final int[] exitCode) throws IOException {
+        if (osacompile == null) return run(arguments, deadlineMillis, exitCode);
+        if (Files.exists(Paths.get(scriptFile))) {
+            try {
+                return run(arguments, deadlineMillis, exitCode);
+            } catch (JaplScriptException e) {
+                // osascript only fails to open the file, if it was evicted after our check
+                final String error = e.getError();
+                if (error == null || !error.contains(scriptFile) || Files.exists(Paths.get(scriptFile))) throw e;
+            }
         }
+        // evicted after compile() returned, possibly by another JVM
+        if (LOG.isLoggable(Level.FINE)) LOG.fine("Compiled script has been removed, recompiling: " + scriptFile);
+        return osacompile.compile(script).run(arguments, deadlineMillis, exitCode);
+    }
+
+    private String run(final List<String> arguments, final long deadlineMillis,
+                       final int[] exitCode) throws IOException {
+        final List<String> cmdarray = new ArrayList<>(Arrays.asList("osascript", scriptFile));
+        cmdarray.addAll(arguments);
+        final Process process = Runtime.getRuntime().exec(cmdarray.toArray(new String[0]));
+        final ReaderPump stderr = new ReaderPump(new InputStreamReader(process.getErrorStream(), UTF_8));
+        final ReaderPump stdout = new ReaderPump(new InputStreamReader(process.getInputStream(), UTF_8));
+        final PumpScheduler pumpScheduler = PumpScheduler.getDefault();
+        final Future<?> errFuture = pumpScheduler.submit(stderr);
+        final Future<?> outFuture = pumpScheduler.submit(stdout);
+        final int exit = Watchdog.waitFor(process, deadlineMillis, script);
+        if (exitCode != null) exitCode[0] = exit;
         try {
-            errThread.join();
-            outThread.join();
+            errFuture.get();
+            outFuture.get();
         } catch (InterruptedException e) {
             throw new IOException(e.toString(), e);
+        } catch (ExecutionException e) {
+            LOG.log(Level.SEVERE, e.toString(), e);
+            throw new IOException(e.toString(), e.getCause());
         }
         if (LOG.isLoggable(Level.FINE)) LOG.fine("Exit value  : " + process.exitValue());
         if (LOG.isLoggable(Level.FINE)) LOG.fine("Return value: " + stdout.getValue());
@@ -0,0 +1,61 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import java.io.IOException;
+
+/**
+ * Signals that a script did not finish within its deadline.
+ * The process executing the script (if any) has been terminated.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ * @see ScriptExecutor#setDeadline(long, java.util.concurrent.TimeUnit)
+ * @see Session#setDeadline(long, java.util.concurrent.TimeUnit)
+ */
+public class DeadlineExceededException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+    private final long deadlineMillis;
+    private final String script;
+
+    /**
+     * @param deadlineMillis deadline in ms
+     * @param script script that did not finish in time, may be {@code null}
+     */
+    public DeadlineExceededException(final long deadlineMillis, final String script) {
+        this(deadlineMillis, script, null);
+    }
+
+    /**
+     * @param deadlineMillis deadline in ms
+     * @param script script that did not finish in time, may be {@code null}
+     * @param cause cause
+     */
+    public DeadlineExceededException(final long deadlineMillis, final String script, final Throwable cause) {
+        super("Script did not finish within " + deadlineMillis + "ms."
+            + (script == null ? "" : "\nScript:\n" + script), cause);
+        this.deadlineMillis = deadlineMillis;
+        this.script = script;
+    }
+
+    /**
+     * Deadline that was exceeded.
+     *
+     * @return deadline in ms
+     */
+    public long getDeadlineMillis() {
+        return deadlineMillis;
+    }
+
+    /**
+     *
+     * @return script that did not finish in time, may be {@code null}
+     */
+    public String getScript() {
+        return script;
+    }
+}
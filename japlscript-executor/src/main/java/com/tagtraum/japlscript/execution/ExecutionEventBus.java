@@ -0,0 +1,232 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import javax.swing.*;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Delivers execution events to {@link ExecutionListener}s and
+ * {@link ExecutionMetricsListener}s.
+ * <p>
+ * Listeners are kept in copy-on-write lists, i.e. firing events never locks.
+ * When no listeners are registered, {@link ScriptExecutor}s neither create
+ * events nor dispatch them, so the bus costs next to nothing.
+ * <p>
+ * Events are handed to a dispatcher, which is one of
+ * <ul>
+ *     <li>{@link #EDT} (default), delivering events on the AWT event dispatch thread</li>
+ *     <li>{@link #CALLER_THREAD}, delivering events synchronously</li>
+ *     <li>a {@link RingBufferDispatcher}, delivering events on a dedicated thread</li>
+ * </ul>
+ * The default dispatcher can be changed with the system property
+ * <code>japlscript.events.dispatcher</code>, using the values <code>edt</code>,
+ * <code>caller</code> or <code>async</code>, or via {@link #setDispatcher(Executor)}.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public final class ExecutionEventBus {
+
+    private static final Logger LOG = Logger.getLogger(ExecutionEventBus.class.getName());
+    public static final String DISPATCHER_PROPERTY = "japlscript.events.dispatcher";
+    /**
+     * Delivers events on the AWT event dispatch thread.
+     */
+    public static final Executor EDT = event -> SwingUtilities.invokeLater(event);
+    /**
+     * Delivers events synchronously on the thread that fires them.
+     */
+    public static final Executor CALLER_THREAD = Runnable::run;
+    private static final ExecutionEventBus instance = new ExecutionEventBus();
+
+    private final List<ExecutionListener> executionListeners = new CopyOnWriteArrayList<>();
+    private final List<MetricsRegistration> metricsListeners = new CopyOnWriteArrayList<>();
+    private volatile Executor dispatcher = createDefaultDispatcher();
+
+    private ExecutionEventBus() {
+    }
+
+    /**
+     * Bus used by all {@link ScriptExecutor}s.
+     *
+     * @return bus
+     */
+    public static ExecutionEventBus getInstance() {
+        return instance;
+    }
+
+    private static Executor createDefaultDispatcher() {
+        final String dispatcher = System.getProperty(DISPATCHER_PROPERTY);
+        if (dispatcher == null || "edt".equalsIgnoreCase(dispatcher)) return EDT;
+        if ("caller".equalsIgnoreCase(dispatcher)) return CALLER_THREAD;
+        if ("async".equalsIgnoreCase(dispatcher)) return new RingBufferDispatcher();
+        LOG.warning("Ignoring invalid value for " + DISPATCHER_PROPERTY + ": " + dispatcher);
+        return EDT;
+    }
+
+    /**
+     * Sets the dispatcher used for delivering events.
+     * The previous dispatcher is <em>not</em> closed.
+     *
+     * @param dispatcher dispatcher, {@code null} restores the default
+     */
+    public void setDispatcher(final Executor dispatcher) {
+        this.dispatcher = dispatcher == null ? createDefaultDispatcher() : dispatcher;
+    }
+
+    public Executor getDispatcher() {
+        return dispatcher;
+    }
+
+    public void addExecutionListener(final ExecutionListener listener) {
+        executionListeners.add(Objects.requireNonNull(listener));
+    }
+
+    public boolean removeExecutionListener(final ExecutionListener listener) {
+        return executionListeners.remove(listener);
+    }
+
+    public void addMetricsListener(final ExecutionMetricsListener listener) {
+        addMetricsListener(listener, null);
+    }
+
+    /**
+     * Adds a metrics listener, which is notified using its own dispatcher.
+     * This is useful for listeners that are cheap and thread-safe, like statistics,
+     * which may then use {@link #CALLER_THREAD}, regardless of the bus' dispatcher.
+     *
+     * @param listener listener
+     * @param dispatcher dispatcher or {@code null} to use the {@link #getDispatcher() bus' dispatcher}
+     */
+    public void addMetricsListener(final ExecutionMetricsListener listener, final Executor dispatcher) {
+        metricsListeners.add(new MetricsRegistration(Objects.requireNonNull(listener), dispatcher));
+    }
+
+    public boolean removeMetricsListener(final ExecutionMetricsListener listener) {
+        return metricsListeners.removeIf(registration -> registration.listener.equals(listener));
+    }
+
+    /**
+     * Indicates whether any listener is registered.
+     *
+     * @return true, if events need to be fired
+     */
+    public boolean isActive() {
+        return !executionListeners.isEmpty() || !metricsListeners.isEmpty();
+    }
+
+    /**
+     * Indicates whether any {@link ExecutionListener} is registered, i.e. whether
+     * scripts and results need to be converted to strings.
+     *
+     * @return true, if execution events need to be fired
+     */
+    public boolean hasExecutionListeners() {
+        return !executionListeners.isEmpty();
+    }
+
+    /**
+     * Fires an {@link ExecutionEvent} signaling the start of an execution.
+     *
+     * @param source source
+     * @param script script, only converted to a string, if there are execution listeners
+     */
+    public void fireStarted(final Object source, final CharSequence script) {
+        if (executionListeners.isEmpty()) return;
+        fire(new ExecutionEvent(source, script.toString(), true, null));
+    }
+
+    /**
+     * Fires an {@link ExecutionEvent} and an {@link ExecutionMetricsEvent} signaling the
+     * end of an execution, if there are corresponding listeners.
+     *
+     * @param source source
+     * @param script script, only converted to a string, if there are execution listeners
+     * @param result result or {@code null}, only converted to a string, if there are execution listeners
+     * @param failure failure or {@code null}
+     * @param durationNanos duration of the execution
+     */
+    public void fireFinished(final Object source, final CharSequence script, final CharSequence result,
+                             final Throwable failure, final long durationNanos) {
+        if (!executionListeners.isEmpty()) {
+            fire(new ExecutionEvent(source, script.toString(), false, result == null ? null : result.toString()));
+        }
+        fireMetrics(source, script.length(), result == null ? -1 : result.length(), durationNanos, failure);
+    }
+
+    /**
+     * Fires only an {@link ExecutionMetricsEvent}, if there are corresponding listeners.
+     *
+     * @param source source
+     * @param scriptLength length of the script
+     * @param resultLength length of the result or <code>-1</code>
+     * @param durationNanos duration of the execution
+     * @param failure failure or {@code null}
+     */
+    public void fireMetrics(final Object source, final int scriptLength, final int resultLength,
+                            final long durationNanos, final Throwable failure) {
+        fireMetrics(source, scriptLength, resultLength, durationNanos, failure, false);
+    }
+
+    /**
+     * Fires only an {@link ExecutionMetricsEvent}, if there are corresponding listeners.
+     *
+     * @param source source
+     * @param scriptLength length of the script
+     * @param resultLength length of the result or <code>-1</code>
+     * @param durationNanos duration of the execution
+     * @param failure failure or {@code null}
+     * @param nested true, if the execution is part of another execution, that fires its own event
+     * @see ExecutionMetricsEvent#isNested()
+     */
+    public void fireMetrics(final Object source, final int scriptLength, final int resultLength,
+                            final long durationNanos, final Throwable failure, final boolean nested) {
+        if (metricsListeners.isEmpty()) return;
+        fire(new ExecutionMetricsEvent(source, scriptLength, resultLength, durationNanos, failure, nested));
+    }
+
+    private void fire(final ExecutionEvent event) {
+        dispatcher.execute(() -> {
+            for (final ExecutionListener listener : executionListeners) {
+                try {
+                    listener.executing(event);
+                } catch (RuntimeException e) {
+                    LOG.log(Level.SEVERE, "Execution listener " + listener + " failed: " + e, e);
+                }
+            }
+        });
+    }
+
+    private void fire(final ExecutionMetricsEvent event) {
+        for (final MetricsRegistration registration : metricsListeners) {
+            final Executor executor = registration.dispatcher == null ? dispatcher : registration.dispatcher;
+            executor.execute(() -> {
+                try {
+                    registration.listener.executed(event);
+                } catch (RuntimeException e) {
+                    LOG.log(Level.SEVERE, "Metrics listener " + registration.listener + " failed: " + e, e);
+                }
+            });
+        }
+    }
+
+    private static final class MetricsRegistration {
+
+        private final ExecutionMetricsListener listener;
+        private final Executor dispatcher;
+
+        MetricsRegistration(final ExecutionMetricsListener listener, final Executor dispatcher) {
+            this.listener = listener;
+            this.dispatcher = dispatcher;
+        }
+    }
+}
@@ -8,10 +8,13 @@ package com.tagtraum.japlscript.execution;
 
 /**
  * Listens to AppleScript executions.
- * Note that events are delivered asynchronously on the EDT,
+ * Note that by default events are delivered asynchronously on the EDT,
  * so that this can be used in UI elements.
+ * Use {@link ExecutionEventBus#setDispatcher(java.util.concurrent.Executor)}
+ * to deliver events on a different thread.
  *
  * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ * @see ExecutionMetricsListener
  */
 public interface ExecutionListener {
 
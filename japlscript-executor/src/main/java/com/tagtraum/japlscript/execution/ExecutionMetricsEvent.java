@@ -0,0 +1,121 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import java.util.Objects;
+
+/**
+ * Lightweight execution event, which is fired <em>after</em> a script
+ * has been executed. Unlike {@link ExecutionEvent}, it does not hold on
+ * to the script or its result, but only to their sizes, the duration and the outcome.
+ * <p>
+ * Executions that are part of another execution, which fires its own event,
+ * e.g. a {@link CompiledScript} run by {@link Osascript}, fire {@link #isNested() nested}
+ * events. Listeners that count logical executions should ignore them.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ * @see ExecutionMetricsListener
+ */
+public class ExecutionMetricsEvent {
+
+    private final Object source;
+    private final int scriptLength;
+    private final int resultLength;
+    private final long durationNanos;
+    private final Throwable failure;
+    private final boolean nested;
+
+    /**
+     * Creates an event for an execution that is not nested in another execution.
+     *
+     * @param source source, usually a {@link ScriptExecutor}
+     * @param scriptLength length of the script in chars
+     * @param resultLength length of the result in chars or <code>-1</code>, if there is no result
+     * @param durationNanos duration of the execution in ns
+     * @param failure failure or {@code null}, if the execution succeeded
+     */
+    public ExecutionMetricsEvent(final Object source, final int scriptLength, final int resultLength,
+                                 final long durationNanos, final Throwable failure) {
+        this(source, scriptLength, resultLength, durationNanos, failure, false);
+    }
+
+    /**
+     * Creates an event.
+     *
+     * @param source source, usually a {@link ScriptExecutor}
+     * @param scriptLength length of the script in chars
+     * @param resultLength length of the result in chars or <code>-1</code>, if there is no result
+     * @param durationNanos duration of the execution in ns
+     * @param failure failure or {@code null}, if the execution succeeded
+     * @param nested true, if the execution is part of another execution, that fires its own event
+     */
+    public ExecutionMetricsEvent(final Object source, final int scriptLength, final int resultLength,
+                                 final long durationNanos, final Throwable failure, final boolean nested) {
+        Objects.requireNonNull(source);
+        this.source = source;
+        this.scriptLength = scriptLength;
+        this.resultLength = resultLength;
+        this.durationNanos = durationNanos;
+        this.failure = failure;
+        this.nested = nested;
+    }
+
+    public Object getSource() {
+        return source;
+    }
+
+    public int getScriptLength() {
+        return scriptLength;
+    }
+
+    /**
+     * Length of the result.
+     *
+     * @return length in chars or <code>-1</code>, if there is no result
+     */
+    public int getResultLength() {
+        return resultLength;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * Failure that occurred during execution.
+     *
+     * @return failure or {@code null}
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    public boolean isSuccess() {
+        return failure == null;
+    }
+
+    /**
+     * Indicates whether this execution is part of another execution, which fires its own event.
+     *
+     * @return true, if nested
+     */
+    public boolean isNested() {
+        return nested;
+    }
+
+    @Override
+    public String toString() {
+        return "ExecutionMetricsEvent{" +
+            "source=" + source +
+            ", scriptLength=" + scriptLength +
+            ", resultLength=" + resultLength +
+            ", durationNanos=" + durationNanos +
+            ", failure=" + failure +
+            ", nested=" + nested +
+            '}';
+    }
+}
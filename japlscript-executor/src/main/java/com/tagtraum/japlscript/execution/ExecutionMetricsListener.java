@@ -0,0 +1,27 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+/**
+ * Listens to finished AppleScript executions, without retaining
+ * scripts or results.
+ * Events are delivered using the {@link ExecutionEventBus#getDispatcher() dispatcher}
+ * of the {@link ExecutionEventBus}.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ * @see ExecutionListener
+ */
+public interface ExecutionMetricsListener {
+
+    /**
+     * Is called after the execution of a script.
+     *
+     * @param e event
+     */
+    void executed(ExecutionMetricsEvent e);
+
+}
@@ -0,0 +1,281 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Custom Java Flight Recorder (JFR) events.
+ * <ul>
+ *     <li><code>com.tagtraum.japlscript.ScriptExecuted</code>: executor, script hash,
+ *     script length, result length and exit code of a script execution</li>
+ *     <li><code>com.tagtraum.japlscript.ScriptCompiled</code>: script hash and script length
+ *     of an <code>osacompile</code> run</li>
+ *     <li><code>com.tagtraum.japlscript.ResultDecoded</code>: target Java type and element count
+ *     of a decoded result</li>
+ * </ul>
+ * All events have a duration. The script hash is the same key that is used by
+ * {@link Osacompile}, so that executions can be correlated with compilations.
+ * <p>
+ * As JaplScript still supports Java 9, which has no <code>jdk.jfr</code> module,
+ * events are defined at runtime using <code>jdk.jfr.EventFactory</code>.
+ * If JFR is not available (e.g., Java 9/10, or <code>jdk.jfr</code> is not resolved
+ * in a modular application), no events are emitted. When recording is disabled,
+ * the overhead is a single check per event.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public final class FlightRecorderEvents {
+
+    private static final Logger LOG = Logger.getLogger(FlightRecorderEvents.class.getName());
+    public static final String SCRIPT_EXECUTED = "com.tagtraum.japlscript.ScriptExecuted";
+    public static final String SCRIPT_COMPILED = "com.tagtraum.japlscript.ScriptCompiled";
+    public static final String RESULT_DECODED = "com.tagtraum.japlscript.ResultDecoded";
+    /**
+     * Exit code used, when an execution does not involve a process.
+     */
+    public static final int NO_EXIT_CODE = Integer.MIN_VALUE;
+
+    private static final EventType SCRIPT_EXECUTED_TYPE = EventType.create(SCRIPT_EXECUTED, "Script Executed",
+        "AppleScript execution",
+        String.class, "executor", "Executor",
+        String.class, "scriptHash", "Script Hash",
+        int.class, "scriptLength", "Script Length",
+        int.class, "resultLength", "Result Length",
+        int.class, "exitCode", "Exit Code");
+    private static final EventType SCRIPT_COMPILED_TYPE = EventType.create(SCRIPT_COMPILED, "Script Compiled",
+        "AppleScript compilation with osacompile",
+        String.class, "scriptHash", "Script Hash",
+        int.class, "scriptLength", "Script Length");
+    private static final EventType RESULT_DECODED_TYPE = EventType.create(RESULT_DECODED, "Result Decoded",
+        "Conversion of an AppleScript result to a Java object",
+        String.class, "targetType", "Target Type",
+        int.class, "elementCount", "Element Count");
+
+    private FlightRecorderEvents() {
+    }
+
+    /**
+     * Indicates whether JFR events can be emitted at all.
+     *
+     * @return true, if JFR is available
+     */
+    public static boolean isAvailable() {
+        return SCRIPT_EXECUTED_TYPE != null;
+    }
+
+    /**
+     * Begins a <code>ScriptExecuted</code> event.
+     *
+     * @return event or {@code null}, if the event is not enabled
+     */
+    public static Object beginScriptExecuted() {
+        return begin(SCRIPT_EXECUTED_TYPE);
+    }
+
+    /**
+     * Commits a <code>ScriptExecuted</code> event.
+     *
+     * @param event event returned by {@link #beginScriptExecuted()}, may be {@code null}
+     * @param executor executor
+     * @param script script
+     * @param result result or {@code null}
+     * @param exitCode exit code or {@link #NO_EXIT_CODE}
+     */
+    public static void commitScriptExecuted(final Object event, final Object executor, final CharSequence script,
+                                            final CharSequence result, final int exitCode) {
+        if (event == null || !SCRIPT_EXECUTED_TYPE.end(event)) return;
+        SCRIPT_EXECUTED_TYPE.commit(event, executor.getClass().getName(), toHash(script), script.length(),
+            result == null ? -1 : result.length(), exitCode);
+    }
+
+    /**
+     * Begins a <code>ScriptCompiled</code> event.
+     *
+     * @return event or {@code null}, if the event is not enabled
+     */
+    public static Object beginScriptCompiled() {
+        return begin(SCRIPT_COMPILED_TYPE);
+    }
+
+    /**
+     * Commits a <code>ScriptCompiled</code> event.
+     *
+     * @param event event returned by {@link #beginScriptCompiled()}, may be {@code null}
+     * @param scriptHash hash, as computed by {@link Osacompile}
+     * @param script script
+     */
+    public static void commitScriptCompiled(final Object event, final String scriptHash, final CharSequence script) {
+        if (event == null || !SCRIPT_COMPILED_TYPE.end(event)) return;
+        SCRIPT_COMPILED_TYPE.commit(event, scriptHash, script.length());
+    }
+
+    /**
+     * Begins a <code>ResultDecoded</code> event.
+     *
+     * @return event or {@code null}, if the event is not enabled
+     */
+    public static Object beginResultDecoded() {
+        return begin(RESULT_DECODED_TYPE);
+    }
+
+    /**
+     * Commits a <code>ResultDecoded</code> event.
+     *
+     * @param event event returned by {@link #beginResultDecoded()}, may be {@code null}
+     * @param targetType target type
+     * @param result decoded result, used to determine the element count
+     */
+    public static void commitResultDecoded(final Object event, final Class<?> targetType, final Object result) {
+        if (event == null || !RESULT_DECODED_TYPE.end(event)) return;
+        RESULT_DECODED_TYPE.commit(event, targetType.getName(), toElementCount(result));
+    }
+
+    private static Object begin(final EventType eventType) {
+        return eventType == null ? null : eventType.begin();
+    }
+
+    private static String toHash(final CharSequence script) {
+        return Osacompile.toKey(Osacompile.normalize(script));
+    }
+
+    static int toElementCount(final Object result) {
+        if (result == null) return 0;
+        if (result.getClass().isArray()) return Array.getLength(result);
+        if (result instanceof Collection) return ((Collection<?>) result).size();
+        if (result instanceof Map) return ((Map<?, ?>) result).size();
+        return 1;
+    }
+
+    /**
+     * Event type created via <code>jdk.jfr.EventFactory</code>.
+     * All JFR classes are accessed via method handles, so that this class
+     * also loads on Java versions without JFR.
+     */
+    private static final class EventType {
+
+        private final Object eventType;
+        private final MethodHandle isEnabled;
+        private final Object eventFactory;
+        private final MethodHandle newEvent;
+        private final MethodHandle begin;
+        private final MethodHandle end;
+        private final MethodHandle shouldCommit;
+        private final MethodHandle set;
+        private final MethodHandle commit;
+
+        private EventType(final Object eventFactory) throws ReflectiveOperationException {
+            final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            final Class<?> eventFactoryClass = Class.forName("jdk.jfr.EventFactory");
+            final Class<?> eventTypeClass = Class.forName("jdk.jfr.EventType");
+            final Class<?> eventClass = Class.forName("jdk.jfr.Event");
+            this.eventFactory = eventFactory;
+            this.eventType = eventFactoryClass.getMethod("getEventType").invoke(eventFactory);
+            this.isEnabled = lookup.findVirtual(eventTypeClass, "isEnabled", MethodType.methodType(boolean.class));
+            this.newEvent = lookup.findVirtual(eventFactoryClass, "newEvent", MethodType.methodType(eventClass));
+            this.begin = lookup.findVirtual(eventClass, "begin", MethodType.methodType(void.class));
+            this.end = lookup.findVirtual(eventClass, "end", MethodType.methodType(void.class));
+            this.shouldCommit = lookup.findVirtual(eventClass, "shouldCommit", MethodType.methodType(boolean.class));
+            this.set = lookup.findVirtual(eventClass, "set", MethodType.methodType(void.class, int.class, Object.class));
+            this.commit = lookup.findVirtual(eventClass, "commit", MethodType.methodType(void.class));
+        }
+
+        /**
+         * Creates an event type.
+         *
+         * @param name event name
+         * @param label label
+         * @param description description
+         * @param fields triples of field type, name and label
+         * @return event type or {@code null}, if JFR is not available
+         */
+        static EventType create(final String name, final String label, final String description, final Object... fields) {
+            try {
+                final Class<?> annotationElementClass = Class.forName("jdk.jfr.AnnotationElement");
+                final Class<?> valueDescriptorClass = Class.forName("jdk.jfr.ValueDescriptor");
+                final Constructor<?> annotationElement = annotationElementClass.getConstructor(Class.class, Object.class);
+                final Constructor<?> valueDescriptor = valueDescriptorClass.getConstructor(Class.class, String.class, List.class);
+
+                final List<Object> annotations = new ArrayList<>();
+                annotations.add(annotationElement.newInstance(annotation("jdk.jfr.Name"), name));
+                annotations.add(annotationElement.newInstance(annotation("jdk.jfr.Label"), label));
+                annotations.add(annotationElement.newInstance(annotation("jdk.jfr.Description"), description));
+                annotations.add(annotationElement.newInstance(annotation("jdk.jfr.Category"), new String[]{"JaplScript"}));
+
+                final List<Object> values = new ArrayList<>();
+                for (int i = 0; i < fields.length; i += 3) {
+                    final List<Object> fieldAnnotations = Collections.singletonList(
+                        annotationElement.newInstance(annotation("jdk.jfr.Label"), fields[i + 2]));
+                    values.add(valueDescriptor.newInstance(fields[i], fields[i + 1], fieldAnnotations));
+                }
+                final Object eventFactory = Class.forName("jdk.jfr.EventFactory")
+                    .getMethod("create", List.class, List.class)
+                    .invoke(null, annotations, values);
+                return new EventType(eventFactory);
+            } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+                if (LOG.isLoggable(Level.FINE)) LOG.fine("JFR events are not available: " + e);
+                return null;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Class<? extends Annotation> annotation(final String name) throws ClassNotFoundException {
+            return (Class<? extends Annotation>) Class.forName(name);
+        }
+
+        Object begin() {
+            try {
+                if (!(boolean) isEnabled.invoke(eventType)) return null;
+                final Object event = newEvent.invoke(eventFactory);
+                begin.invoke(event);
+                return event;
+            } catch (Throwable t) {
+                if (LOG.isLoggable(Level.FINE)) LOG.fine("Failed to begin JFR event: " + t);
+                return null;
+            }
+        }
+
+        /**
+         * Ends the given event.
+         *
+         * @param event event
+         * @return true, if the event should be committed
+         */
+        boolean end(final Object event) {
+            try {
+                end.invoke(event);
+                return (boolean) shouldCommit.invoke(event);
+            } catch (Throwable t) {
+                if (LOG.isLoggable(Level.FINE)) LOG.fine("Failed to end JFR event: " + t);
+                return false;
+            }
+        }
+
+        void commit(final Object event, final Object... values) {
+            try {
+                for (int i = 0; i < values.length; i++) {
+                    set.invoke(event, i, values[i]);
+                }
+                commit.invoke(event);
+            } catch (Throwable t) {
+                if (LOG.isLoggable(Level.FINE)) LOG.fine("Failed to commit JFR event: " + t);
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram for non-negative values.
+ * <p>
+ * Values are counted in log-linear buckets, i.e. each power of two is divided into
+ * four sub-buckets. Percentiles are therefore accurate to about 25%, which is good enough
+ * for monitoring. Buckets are {@link LongAdder}s, so that concurrent recording
+ * does not cause contention.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+final class Histogram {
+
+    private static final int SUB_BUCKETS = 4;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    Histogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records the given value. Negative values are treated as <code>0</code>.
+     *
+     * @param value value
+     */
+    void record(final long value) {
+        final long v = Math.max(0, value);
+        buckets[toBucket(v)].increment();
+        count.increment();
+        sum.add(v);
+        max.accumulate(v);
+    }
+
+    long getCount() {
+        return count.sum();
+    }
+
+    long getMax() {
+        return max.get();
+    }
+
+    double getMean() {
+        final long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Approximate percentile.
+     *
+     * @param percentile percentile between <code>0</code> and <code>100</code>
+     * @return upper bound of the bucket containing the percentile, at most {@link #getMax()}
+     */
+    long getPercentile(final double percentile) {
+        if (percentile < 0 || percentile > 100) throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+        final long n = count.sum();
+        if (n == 0) return 0;
+        final long rank = Math.max(1, (long) Math.ceil(n * percentile / 100.0));
+        long cumulative = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            cumulative += buckets[i].sum();
+            if (cumulative >= rank) return Math.min(toUpperBound(i), getMax());
+        }
+        return getMax();
+    }
+
+    void reset() {
+        for (final LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+
+    static int toBucket(final long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+        return (exponent - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long toUpperBound(final int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        final int exponent = bucket / SUB_BUCKETS + 1;
+        final long subBucket = bucket % SUB_BUCKETS;
+        final long lowerBound = (SUB_BUCKETS + subBucket) << (exponent - 2);
+        return lowerBound + (1L << (exponent - 2)) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "Histogram{" +
+            "count=" + getCount() +
+            ", mean=" + getMean() +
+            ", max=" + getMax() +
+            '}';
+    }
+}
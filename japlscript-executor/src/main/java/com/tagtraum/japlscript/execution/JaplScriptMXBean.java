@@ -0,0 +1,120 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import java.util.Map;
+
+/**
+ * Management interface for JaplScript execution statistics.
+ * Lengths are measured in chars.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ * @see JaplScriptStatistics#register()
+ */
+public interface JaplScriptMXBean {
+
+    /**
+     * Number of executions per executor type, e.g. <code>Osascript</code>,
+     * <code>CocoaScriptExecutor</code> or <code>CompiledScript</code>.
+     *
+     * @return executions by simple class name
+     */
+    Map<String, Long> getExecutionCounts();
+
+    /**
+     * Number of failed executions per exception type, e.g.
+     * <code>com.tagtraum.japlscript.execution.JaplScriptException</code>.
+     *
+     * @return failures by class name
+     */
+    Map<String, Long> getFailureCounts();
+
+    long getExecutionCount();
+
+    double getLatencyMeanMillis();
+
+    double getLatencyP50Millis();
+
+    double getLatencyP90Millis();
+
+    double getLatencyP99Millis();
+
+    double getLatencyMaxMillis();
+
+    double getScriptLengthMean();
+
+    long getScriptLengthP99();
+
+    long getScriptLengthMax();
+
+    double getResultLengthMean();
+
+    long getResultLengthP99();
+
+    long getResultLengthMax();
+
+    long getCompileCacheHitCount();
+
+    long getCompileCacheMissCount();
+
+    long getCompileCacheNegativeHitCount();
+
+    long getCompileCacheEvictionCount();
+
+    /**
+     * Number of sessions that have been started, but not committed yet.
+     *
+     * @return active sessions
+     */
+    int getActiveSessionCount();
+
+    /**
+     * Total length of all fragments that have been added to sessions,
+     * but not committed yet.
+     *
+     * @return length
+     */
+    long getUncommittedSessionLength();
+
+    /**
+     * Number of executions waiting in the {@link ApplicationScheduler#getDefault() default}
+     * {@link ApplicationScheduler}, per application.
+     *
+     * @return queue lengths by application reference
+     */
+    Map<String, Integer> getApplicationQueueLengths();
+
+    /**
+     * 99th percentile of the time executions had to wait in the
+     * {@link ApplicationScheduler#getDefault() default} {@link ApplicationScheduler}, per application.
+     *
+     * @return queue times in ms by application reference
+     */
+    Map<String, Double> getApplicationQueueTimeP99Millis();
+
+    /**
+     * Share of executions that could use an already started process from the
+     * {@link ProcessReservoir#getDefault() default} {@link ProcessReservoir}.
+     *
+     * @return hit rate between 0 and 1 or 0, if there is no reservoir
+     */
+    double getReservoirHitRate();
+
+    /**
+     * 99th percentile of the time it took the {@link ProcessReservoir#getDefault() default}
+     * {@link ProcessReservoir} to start a process.
+     *
+     * @return spawn latency in ms or 0, if there is no reservoir
+     */
+    double getReservoirSpawnLatencyP99Millis();
+
+    /**
+     * Resets all execution counters and histograms.
+     * Cache and session values are not affected.
+     */
+    void reset();
+}
@@ -0,0 +1,270 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Collects execution statistics and exposes them via JMX.
+ * <p>
+ * Nothing is collected until {@link #register()} is called. Once registered,
+ * statistics are recorded synchronously as {@link ExecutionMetricsListener},
+ * using only striped counters and histograms, i.e. without taking locks.
+ * <p>
+ * Note that {@link ExecutionMetricsEvent#isNested() nested} executions, e.g. of
+ * {@link CompiledScript}s run by {@link Osascript}, are counted separately, but
+ * neither added to the failure counts nor to the latency and length histograms,
+ * as they are already recorded for the enclosing execution.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public final class JaplScriptStatistics implements JaplScriptMXBean, ExecutionMetricsListener {
+
+    private static final Logger LOG = Logger.getLogger(JaplScriptStatistics.class.getName());
+    public static final String OBJECT_NAME = "com.tagtraum.japlscript:type=JaplScript";
+    private static JaplScriptStatistics instance;
+
+    private final ConcurrentMap<String, LongAdder> executions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> failures = new ConcurrentHashMap<>();
+    private final Histogram latencyNanos = new Histogram();
+    private final Histogram scriptLengths = new Histogram();
+    private final Histogram resultLengths = new Histogram();
+
+    JaplScriptStatistics() {
+    }
+
+    /**
+     * Starts collecting statistics and registers the MXBean with the platform
+     * MBean server under {@link #OBJECT_NAME}. Calling this method more than once has
+     * no effect.
+     *
+     * @return statistics
+     */
+    public static synchronized JaplScriptStatistics register() {
+        if (instance == null) {
+            final JaplScriptStatistics statistics = new JaplScriptStatistics();
+            try {
+                final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                server.registerMBean(statistics, new ObjectName(OBJECT_NAME));
+            } catch (JMException e) {
+                LOG.log(Level.WARNING, "Failed to register " + OBJECT_NAME + ": " + e, e);
+            }
+            ExecutionEventBus.getInstance().addMetricsListener(statistics, ExecutionEventBus.CALLER_THREAD);
+            instance = statistics;
+        }
+        return instance;
+    }
+
+    /**
+     * Stops collecting statistics and unregisters the MXBean.
+     */
+    public static synchronized void unregister() {
+        if (instance == null) return;
+        ExecutionEventBus.getInstance().removeMetricsListener(instance);
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName objectName = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(objectName)) server.unregisterMBean(objectName);
+        } catch (JMException e) {
+            LOG.log(Level.WARNING, "Failed to unregister " + OBJECT_NAME + ": " + e, e);
+        }
+        instance = null;
+    }
+
+    /**
+     * Currently registered statistics.
+     *
+     * @return statistics or {@code null}, if not {@link #register() registered}
+     */
+    public static synchronized JaplScriptStatistics getInstance() {
+        return instance;
+    }
+
+    @Override
+    public void executed(final ExecutionMetricsEvent e) {
+        executions.computeIfAbsent(e.getSource().getClass().getSimpleName(), k -> new LongAdder()).increment();
+        if (!e.isNested()) {
+            if (!e.isSuccess()) {
+                failures.computeIfAbsent(e.getFailure().getClass().getName(), k -> new LongAdder()).increment();
+            }
+            latencyNanos.record(e.getDurationNanos());
+            scriptLengths.record(e.getScriptLength());
+            if (e.getResultLength() >= 0) resultLengths.record(e.getResultLength());
+        }
+    }
+
+    @Override
+    public Map<String, Long> getExecutionCounts() {
+        return toMap(executions);
+    }
+
+    @Override
+    public Map<String, Long> getFailureCounts() {
+        return toMap(failures);
+    }
+
+    private static Map<String, Long> toMap(final Map<String, LongAdder> counters) {
+        final Map<String, Long> map = new TreeMap<>();
+        counters.forEach((key, value) -> map.put(key, value.sum()));
+        return map;
+    }
+
+    @Override
+    public long getExecutionCount() {
+        return latencyNanos.getCount();
+    }
+
+    @Override
+    public double getLatencyMeanMillis() {
+        return latencyNanos.getMean() / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public double getLatencyP50Millis() {
+        return toMillis(latencyNanos.getPercentile(50));
+    }
+
+    @Override
+    public double getLatencyP90Millis() {
+        return toMillis(latencyNanos.getPercentile(90));
+    }
+
+    @Override
+    public double getLatencyP99Millis() {
+        return toMillis(latencyNanos.getPercentile(99));
+    }
+
+    @Override
+    public double getLatencyMaxMillis() {
+        return toMillis(latencyNanos.getMax());
+    }
+
+    private static double toMillis(final long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public double getScriptLengthMean() {
+        return scriptLengths.getMean();
+    }
+
+    @Override
+    public long getScriptLengthP99() {
+        return scriptLengths.getPercentile(99);
+    }
+
+    @Override
+    public long getScriptLengthMax() {
+        return scriptLengths.getMax();
+    }
+
+    @Override
+    public double getResultLengthMean() {
+        return resultLengths.getMean();
+    }
+
+    @Override
+    public long getResultLengthP99() {
+        return resultLengths.getPercentile(99);
+    }
+
+    @Override
+    public long getResultLengthMax() {
+        return resultLengths.getMax();
+    }
+
+    @Override
+    public long getCompileCacheHitCount() {
+        return Osascript.getOsacompile().getHitCount();
+    }
+
+    @Override
+    public long getCompileCacheMissCount() {
+        return Osascript.getOsacompile().getMissCount();
+    }
+
+    @Override
+    public long getCompileCacheNegativeHitCount() {
+        return Osascript.getOsacompile().getNegativeHitCount();
+    }
+
+    @Override
+    public long getCompileCacheEvictionCount() {
+        return Osascript.getOsacompile().getEvictionCount();
+    }
+
+    @Override
+    public int getActiveSessionCount() {
+        return Session.getActiveCount();
+    }
+
+    @Override
+    public long getUncommittedSessionLength() {
+        return Session.getUncommittedLength();
+    }
+
+    @Override
+    public Map<String, Integer> getApplicationQueueLengths() {
+        final ApplicationScheduler scheduler = ApplicationScheduler.getDefault();
+        final Map<String, Integer> map = new TreeMap<>();
+        for (final String application : scheduler.getApplications()) {
+            map.put(application, scheduler.getQueueLength(application));
+        }
+        return map;
+    }
+
+    @Override
+    public Map<String, Double> getApplicationQueueTimeP99Millis() {
+        final ApplicationScheduler scheduler = ApplicationScheduler.getDefault();
+        final Map<String, Double> map = new TreeMap<>();
+        for (final String application : scheduler.getApplications()) {
+            map.put(application, scheduler.getQueueTimeP99Millis(application));
+        }
+        return map;
+    }
+
+    @Override
+    public double getReservoirHitRate() {
+        final ProcessReservoir reservoir = ProcessReservoir.getDefault();
+        return reservoir == null ? 0 : reservoir.getHitRate();
+    }
+
+    @Override
+    public double getReservoirSpawnLatencyP99Millis() {
+        final ProcessReservoir reservoir = ProcessReservoir.getDefault();
+        return reservoir == null ? 0 : reservoir.getSpawnLatencyP99Millis();
+    }
+
+    @Override
+    public void reset() {
+        executions.clear();
+        failures.clear();
+        latencyNanos.reset();
+        scriptLengths.reset();
+        resultLengths.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "JaplScriptStatistics{" +
+            "executions=" + getExecutionCounts() +
+            ", failures=" + getFailureCounts() +
+            ", latencyNanos=" + latencyNanos +
+            '}';
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executes each script on one of the backends of a {@link LoadBalancedScriptExecutorProvider}.
+ * <p>
+ * Only this executor fires {@link ExecutionEvent}s, the backend executors are
+ * invoked directly.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ * @see LoadBalancedScriptExecutorProvider
+ */
+public class LoadBalancedScriptExecutor extends ScriptExecutor {
+
+    private final LoadBalancedScriptExecutorProvider balancer;
+    private volatile LoadBalancedScriptExecutorProvider.Backend backend;
+
+    /**
+     * @param balancer balancer that selects the backend
+     */
+    public LoadBalancedScriptExecutor(final LoadBalancedScriptExecutorProvider balancer) {
+        this.balancer = balancer;
+    }
+
+    public LoadBalancedScriptExecutorProvider getBalancer() {
+        return balancer;
+    }
+
+    /**
+     * Backend used by the most recent execution.
+     *
+     * @return backend or {@code null}, if nothing was executed yet
+     */
+    public LoadBalancedScriptExecutorProvider.Backend getBackend() {
+        return backend;
+    }
+
+    @Override
+    public boolean isArgumentsSupported() {
+        return balancer.isArgumentsSupported();
+    }
+
+    @Override
+    protected String executeImpl() throws IOException {
+        return execute(ScriptExecutor::executeImpl);
+    }
+
+    @Override
+    protected CharSequence executeStreamingImpl() throws IOException {
+        return execute(ScriptExecutor::executeStreamingImpl);
+    }
+
+    private <T> T execute(final Execution<T> execution) throws IOException {
+        final LoadBalancedScriptExecutorProvider.Backend backend = select();
+        final ScriptExecutor delegate = newDelegate(backend);
+        final long start = System.nanoTime();
+        try {
+            final T result = execution.execute(delegate);
+            balancer.finished(backend, System.nanoTime() - start, null);
+            return result;
+        } catch (IOException | RuntimeException e) {
+            balancer.finished(backend, System.nanoTime() - start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    protected CompletableFuture<String> executeAsyncImpl(final Executor executor) {
+        final LoadBalancedScriptExecutorProvider.Backend backend = select();
+        final long start = System.nanoTime();
+        final CompletableFuture<String> future;
+        try {
+            future = newDelegate(backend).executeAsyncImpl(executor);
+        } catch (RuntimeException e) {
+            balancer.finished(backend, System.nanoTime() - start, e);
+            throw e;
+        }
+        // return the delegate's future, so that cancellation reaches it
+        future.whenComplete((result, throwable) -> balancer.finished(backend, System.nanoTime() - start, throwable));
+        return future;
+    }
+
+    private LoadBalancedScriptExecutorProvider.Backend select() {
+        final LoadBalancedScriptExecutorProvider.Backend backend = balancer.select(getApplication());
+        backend.started();
+        this.backend = backend;
+        return backend;
+    }
+
+    private ScriptExecutor newDelegate(final LoadBalancedScriptExecutorProvider.Backend backend) {
+        final ScriptExecutor delegate = backend.getProvider().newInstance();
+        delegate.setScript(getScript());
+        if (!getArguments().isEmpty()) delegate.setArguments(getArguments());
+        // application is not passed on, as this executor is already scheduled for it
+        final long deadlineMillis = getEffectiveDeadlineMillis();
+        if (deadlineMillis > 0) delegate.setDeadline(deadlineMillis, TimeUnit.MILLISECONDS);
+        return delegate;
+    }
+
+    @FunctionalInterface
+    private interface Execution<T> {
+        T execute(ScriptExecutor delegate) throws IOException;
+    }
+}
@@ -0,0 +1,465 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Spreads executions across several backends, e.g. {@link RemoteScriptExecutorProvider}s
+ * for multiple Macs.
+ * <p>
+ * Each execution is routed to the backend with the fewest outstanding executions
+ * ({@link Routing#LEAST_OUTSTANDING}) or the lowest product of outstanding executions
+ * and average latency ({@link Routing#LATENCY_WEIGHTED}). Executions for the
+ * same {@link ScriptExecutor#setApplication(String) application} stick to the backend
+ * they were first routed to, so that per-application state stays on one host.
+ * <p>
+ * Backends are ejected after <code>maxConsecutiveFailures</code> failed executions or probes,
+ * or when their average latency exceeds <code>maxLatencyMillis</code>. Script errors,
+ * i.e. {@link JaplScriptException}s, don't count as failures. Ejected backends are
+ * re-admitted after <code>readmitAfterSuccesses</code> successful probes in a row.
+ * Probes execute a trivial script on every backend every <code>probeIntervalMillis</code>.
+ * If all backends are ejected, executions are routed to all of them.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ * @see LoadBalancedScriptExecutor
+ */
+public class LoadBalancedScriptExecutorProvider implements ScriptExecutorProvider, Closeable {
+
+    private static final Logger LOG = Logger.getLogger(LoadBalancedScriptExecutorProvider.class.getName());
+    public static final String NAME = "load-balanced";
+    public static final int PRIORITY = 0;
+    public static final long DEFAULT_PROBE_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    public static final long DEFAULT_PROBE_DEADLINE_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    public static final String DEFAULT_PROBE_SCRIPT = "return 1";
+    public static final int DEFAULT_MAX_CONSECUTIVE_FAILURES = 3;
+    public static final int DEFAULT_READMIT_AFTER_SUCCESSES = 2;
+    /**
+     * Weight of the most recent latency in the moving average.
+     */
+    private static final double LATENCY_SMOOTHING = 0.2;
+    private static final ScheduledExecutorService PROBER = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, "JaplScript Health Check");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Routing strategies.
+     */
+    public enum Routing {
+        /**
+         * Route to the backend with the fewest outstanding executions.
+         */
+        LEAST_OUTSTANDING,
+        /**
+         * Route to the backend with the lowest <code>(outstanding + 1) * average latency</code>.
+         */
+        LATENCY_WEIGHTED
+    }
+
+    private final List<Backend> backends;
+    private final Routing routing;
+    private final boolean argumentsSupported;
+    private final Map<String, Backend> stickyBackends = new ConcurrentHashMap<>();
+    private final AtomicInteger nextStart = new AtomicInteger();
+    private final ScheduledFuture<?> probes;
+    private volatile int maxConsecutiveFailures = DEFAULT_MAX_CONSECUTIVE_FAILURES;
+    private volatile long maxLatencyMillis;
+    private volatile int readmitAfterSuccesses = DEFAULT_READMIT_AFTER_SUCCESSES;
+    private volatile String probeScript = DEFAULT_PROBE_SCRIPT;
+    private volatile long probeDeadlineMillis = DEFAULT_PROBE_DEADLINE_MILLIS;
+
+    /**
+     * Creates a balancer with {@link Routing#LEAST_OUTSTANDING} routing and default probe interval.
+     *
+     * @param backends backend providers
+     */
+    public LoadBalancedScriptExecutorProvider(final List<? extends ScriptExecutorProvider> backends) {
+        this(backends, Routing.LEAST_OUTSTANDING, DEFAULT_PROBE_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Creates a balancer.
+     *
+     * @param backends backend providers
+     * @param routing routing strategy
+     * @param probeIntervalMillis interval between health probes, values less than 1 disable probes
+     */
+    public LoadBalancedScriptExecutorProvider(final List<? extends ScriptExecutorProvider> backends,
+                                              final Routing routing, final long probeIntervalMillis) {
+        if (backends.isEmpty()) throw new IllegalArgumentException("At least one backend is required.");
+        final List<Backend> list = new ArrayList<>();
+        boolean argumentsSupported = true;
+        for (final ScriptExecutorProvider provider : backends) {
+            list.add(new Backend(provider));
+            argumentsSupported &= provider.newInstance().isArgumentsSupported();
+        }
+        this.backends = Collections.unmodifiableList(list);
+        this.argumentsSupported = argumentsSupported;
+        this.routing = routing;
+        this.probes = probeIntervalMillis > 0
+            ? PROBER.scheduleWithFixedDelay(this::probe, probeIntervalMillis, probeIntervalMillis, TimeUnit.MILLISECONDS)
+            : null;
+    }
+
+    public List<Backend> getBackends() {
+        return backends;
+    }
+
+    public Routing getRouting() {
+        return routing;
+    }
+
+    public int getMaxConsecutiveFailures() {
+        return maxConsecutiveFailures;
+    }
+
+    /**
+     * @param maxConsecutiveFailures number of failures in a row, after which a backend is ejected
+     */
+    public void setMaxConsecutiveFailures(final int maxConsecutiveFailures) {
+        if (maxConsecutiveFailures < 1) throw new IllegalArgumentException("Max consecutive failures must be greater than 0: " + maxConsecutiveFailures);
+        this.maxConsecutiveFailures = maxConsecutiveFailures;
+    }
+
+    public long getMaxLatencyMillis() {
+        return maxLatencyMillis;
+    }
+
+    /**
+     * @param maxLatencyMillis average latency, above which a backend is ejected, values less than 1 mean no limit
+     */
+    public void setMaxLatencyMillis(final long maxLatencyMillis) {
+        this.maxLatencyMillis = maxLatencyMillis;
+    }
+
+    public int getReadmitAfterSuccesses() {
+        return readmitAfterSuccesses;
+    }
+
+    /**
+     * @param readmitAfterSuccesses number of successful probes in a row, after which an ejected backend is re-admitted
+     */
+    public void setReadmitAfterSuccesses(final int readmitAfterSuccesses) {
+        if (readmitAfterSuccesses < 1) throw new IllegalArgumentException("Readmit after successes must be greater than 0: " + readmitAfterSuccesses);
+        this.readmitAfterSuccesses = readmitAfterSuccesses;
+    }
+
+    public String getProbeScript() {
+        return probeScript;
+    }
+
+    public void setProbeScript(final String probeScript) {
+        this.probeScript = probeScript;
+    }
+
+    public long getProbeDeadlineMillis() {
+        return probeDeadlineMillis;
+    }
+
+    public void setProbeDeadlineMillis(final long probeDeadlineMillis) {
+        this.probeDeadlineMillis = probeDeadlineMillis;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public int getPriority() {
+        return PRIORITY;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        for (final Backend backend : backends) {
+            if (backend.provider.isAvailable()) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean isCompileSupported() {
+        for (final Backend backend : backends) {
+            if (!backend.provider.isCompileSupported()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return true, if the executors of all backends support arguments
+     */
+    boolean isArgumentsSupported() {
+        return argumentsSupported;
+    }
+
+    @Override
+    public ScriptExecutor newInstance() {
+        return new LoadBalancedScriptExecutor(this);
+    }
+
+    /**
+     * Selects the backend for an execution.
+     *
+     * @param application application reference or {@code null}
+     * @return backend
+     */
+    Backend select(final String application) {
+        if (application == null) return route();
+        final Backend sticky = stickyBackends.get(application);
+        if (sticky != null && !sticky.ejected) return sticky;
+        final Backend backend = route();
+        stickyBackends.put(application, backend);
+        if (LOG.isLoggable(Level.FINE)) LOG.fine("Routing " + application + " to " + backend);
+        return backend;
+    }
+
+    private Backend route() {
+        boolean panic = true;
+        for (final Backend backend : backends) {
+            if (!backend.ejected) {
+                panic = false;
+                break;
+            }
+        }
+        // rotate the start, so that ties are broken round robin
+        final int size = backends.size();
+        final int start = Math.floorMod(nextStart.getAndIncrement(), size);
+        // backends without latency samples are assumed to be as fast as the fastest one
+        double fastest = Double.MAX_VALUE;
+        if (routing == Routing.LATENCY_WEIGHTED) {
+            for (final Backend backend : backends) {
+                if (backend.latencyNanos > 0) fastest = Math.min(fastest, backend.latencyNanos);
+            }
+            if (fastest == Double.MAX_VALUE) fastest = 1;
+        }
+        Backend best = null;
+        double bestScore = Double.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            final Backend backend = backends.get((start + i) % size);
+            if (backend.ejected && !panic) continue;
+            final double score = routing == Routing.LEAST_OUTSTANDING
+                ? backend.outstanding.get()
+                : (backend.outstanding.get() + 1) * (backend.latencyNanos > 0 ? backend.latencyNanos : fastest);
+            if (score < bestScore) {
+                best = backend;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Records the outcome of an execution.
+     *
+     * @param backend backend
+     * @param nanos duration
+     * @param throwable failure or {@code null}
+     */
+    void finished(final Backend backend, final long nanos, final Throwable throwable) {
+        backend.outstanding.decrementAndGet();
+        final Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+            ? throwable.getCause()
+            : throwable;
+        if (cause == null || cause instanceof JaplScriptException) {
+            backend.consecutiveFailures.set(0);
+            backend.recordLatency(nanos);
+            final long max = maxLatencyMillis;
+            if (max > 0 && backend.latencyNanos > TimeUnit.MILLISECONDS.toNanos(max)) {
+                eject(backend, "average latency " + backend.getLatencyMillis() + "ms");
+            }
+        } else {
+            backend.failureCount.increment();
+            failed(backend, cause);
+        }
+    }
+
+    private void failed(final Backend backend, final Throwable cause) {
+        if (backend.consecutiveFailures.incrementAndGet() >= maxConsecutiveFailures) {
+            eject(backend, cause.toString());
+        }
+    }
+
+    private void eject(final Backend backend, final String reason) {
+        synchronized (backend) {
+            if (backend.ejected) return;
+            backend.ejected = true;
+            backend.probeSuccesses = 0;
+        }
+        backend.ejectionCount.increment();
+        LOG.warning("Ejecting " + backend + ": " + reason);
+    }
+
+    private void readmit(final Backend backend, final long probeNanos) {
+        synchronized (backend) {
+            if (!backend.ejected || ++backend.probeSuccesses < readmitAfterSuccesses) return;
+            backend.ejected = false;
+            backend.consecutiveFailures.set(0);
+            backend.latencyNanos = probeNanos;
+        }
+        if (LOG.isLoggable(Level.INFO)) LOG.info("Re-admitting " + backend);
+    }
+
+    /**
+     * Probes all backends. Normally called periodically.
+     *
+     * @return future that completes normally, once all probes are done
+     */
+    public CompletableFuture<Void> probe() {
+        final List<CompletableFuture<?>> futures = new ArrayList<>();
+        for (final Backend backend : backends) {
+            futures.add(probe(backend).handle((result, throwable) -> null));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+    }
+
+    private CompletableFuture<String> probe(final Backend backend) {
+        final long start = System.nanoTime();
+        CompletableFuture<String> future;
+        try {
+            final ScriptExecutor executor = backend.provider.newInstance();
+            executor.setScript(probeScript);
+            executor.setDeadline(probeDeadlineMillis, TimeUnit.MILLISECONDS);
+            // bypass events and statistics
+            future = executor.executeAsyncImpl(ScriptExecutor.getDefaultExecutor());
+        } catch (RuntimeException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        return future.whenComplete((result, throwable) -> {
+            final long nanos = System.nanoTime() - start;
+            final long max = maxLatencyMillis;
+            if (throwable != null) {
+                if (LOG.isLoggable(Level.FINE)) LOG.fine("Probe of " + backend + " failed: " + throwable);
+                synchronized (backend) {
+                    backend.probeSuccesses = 0;
+                }
+                failed(backend, throwable);
+            } else if (max > 0 && nanos > TimeUnit.MILLISECONDS.toNanos(max)) {
+                if (LOG.isLoggable(Level.FINE)) LOG.fine("Probe of " + backend + " was too slow: " + nanos / 1000000 + "ms");
+                synchronized (backend) {
+                    backend.probeSuccesses = 0;
+                }
+            } else {
+                backend.consecutiveFailures.set(0);
+                readmit(backend, nanos);
+            }
+        });
+    }
+
+    /**
+     * Stops probing.
+     */
+    @Override
+    public void close() {
+        if (probes != null) probes.cancel(false);
+    }
+
+    @Override
+    public String toString() {
+        return "LoadBalancedScriptExecutorProvider{" +
+            "routing=" + routing +
+            ", backends=" + backends +
+            '}';
+    }
+
+    /**
+     * Backend and its statistics.
+     */
+    public static final class Backend {
+
+        private final ScriptExecutorProvider provider;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private final LongAdder requestCount = new LongAdder();
+        private final LongAdder failureCount = new LongAdder();
+        private final LongAdder ejectionCount = new LongAdder();
+        private volatile double latencyNanos;
+        private volatile boolean ejected;
+        private int probeSuccesses;
+
+        private Backend(final ScriptExecutorProvider provider) {
+            this.provider = provider;
+        }
+
+        void started() {
+            requestCount.increment();
+            outstanding.incrementAndGet();
+        }
+
+        private synchronized void recordLatency(final long nanos) {
+            latencyNanos = latencyNanos == 0
+                ? nanos
+                : LATENCY_SMOOTHING * nanos + (1 - LATENCY_SMOOTHING) * latencyNanos;
+        }
+
+        public ScriptExecutorProvider getProvider() {
+            return provider;
+        }
+
+        public int getOutstandingCount() {
+            return outstanding.get();
+        }
+
+        public long getRequestCount() {
+            return requestCount.sum();
+        }
+
+        public long getFailureCount() {
+            return failureCount.sum();
+        }
+
+        /**
+         * Number of times this backend was ejected.
+         *
+         * @return ejections
+         */
+        public long getEjectionCount() {
+            return ejectionCount.sum();
+        }
+
+        /**
+         * Exponentially weighted moving average of the latency.
+         *
+         * @return latency in ms, 0 if unknown
+         */
+        public double getLatencyMillis() {
+            return latencyNanos / TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        public boolean isEjected() {
+            return ejected;
+        }
+
+        @Override
+        public String toString() {
+            return "Backend{" +
+                "provider=" + provider +
+                ", outstanding=" + outstanding.get() +
+                ", latencyMillis=" + getLatencyMillis() +
+                ", ejected=" + ejected +
+                '}';
+        }
+    }
+}
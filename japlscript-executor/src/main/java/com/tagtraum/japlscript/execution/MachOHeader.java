@@ -0,0 +1,126 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import com.tagtraum.japlscript.execution.ScriptingAddition.Architecture;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Minimal parser for Mach-O thin and fat (universal) headers, as declared
+ * in <code>mach-o/loader.h</code> and <code>mach-o/fat.h</code>.
+ * <p>
+ * Only the CPU types are read, i.e. at most the first {@link #MAX_HEADER_SIZE} bytes
+ * of a file, which makes this considerably cheaper than running <code>file</code>.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+final class MachOHeader {
+
+    static final int MAX_HEADER_SIZE = 4096;
+    private static final int MH_MAGIC = 0xfeedface;
+    private static final int MH_CIGAM = 0xcefaedfe;
+    private static final int MH_MAGIC_64 = 0xfeedfacf;
+    private static final int MH_CIGAM_64 = 0xcffaedfe;
+    private static final int FAT_MAGIC = 0xcafebabe;
+    private static final int FAT_MAGIC_64 = 0xcafebabf;
+    private static final int FAT_ARCH_SIZE = 20;
+    private static final int FAT_ARCH_64_SIZE = 32;
+    /**
+     * Java class files share {@link #FAT_MAGIC}. There, the next int is the class file version,
+     * which is always greater than this.
+     */
+    private static final int MAX_FAT_ARCHS = 20;
+    private static final int CPU_ARCH_ABI64 = 0x01000000;
+    private static final int CPU_TYPE_X86 = 7;
+    private static final int CPU_TYPE_X86_64 = CPU_TYPE_X86 | CPU_ARCH_ABI64;
+    private static final int CPU_TYPE_ARM64 = 12 | CPU_ARCH_ABI64;
+    private static final int CPU_TYPE_POWERPC = 18;
+    private static final int CPU_TYPE_POWERPC64 = CPU_TYPE_POWERPC | CPU_ARCH_ABI64;
+
+    private MachOHeader() {
+    }
+
+    /**
+     * Reads the architectures contained in the given file.
+     *
+     * @param file file
+     * @return architectures, empty if the file is not a Mach-O file
+     * @throws IOException if the file cannot be read
+     */
+    static Set<Architecture> readArchitectures(final Path file) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(MAX_HEADER_SIZE);
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                // keep reading
+            }
+        }
+        buffer.flip();
+        return readArchitectures(buffer);
+    }
+
+    /**
+     * Reads the architectures from the given header bytes.
+     *
+     * @param header beginning of a file
+     * @return architectures, empty if the bytes are not a Mach-O header
+     */
+    static Set<Architecture> readArchitectures(final ByteBuffer header) {
+        if (header.remaining() < 8) return Collections.emptySet();
+        final ByteBuffer buffer = header.slice().order(ByteOrder.BIG_ENDIAN);
+        final int magic = buffer.getInt(0);
+        switch (magic) {
+            case MH_MAGIC:
+            case MH_MAGIC_64:
+                return EnumSet.of(toArchitecture(buffer.getInt(4)));
+            case MH_CIGAM:
+            case MH_CIGAM_64:
+                return EnumSet.of(toArchitecture(Integer.reverseBytes(buffer.getInt(4))));
+            case FAT_MAGIC:
+                return readFatArchitectures(buffer, FAT_ARCH_SIZE);
+            case FAT_MAGIC_64:
+                return readFatArchitectures(buffer, FAT_ARCH_64_SIZE);
+            default:
+                return Collections.emptySet();
+        }
+    }
+
+    private static Set<Architecture> readFatArchitectures(final ByteBuffer buffer, final int archSize) {
+        final int count = buffer.getInt(4);
+        if (count <= 0 || count >= MAX_FAT_ARCHS) return Collections.emptySet();
+        final Set<Architecture> architectures = EnumSet.noneOf(Architecture.class);
+        // fat headers are always big endian, cputype is the first field of each fat_arch
+        for (int i = 0, offset = 8; i < count && offset + archSize <= buffer.limit(); i++, offset += archSize) {
+            architectures.add(toArchitecture(buffer.getInt(offset)));
+        }
+        return architectures;
+    }
+
+    static Architecture toArchitecture(final int cpuType) {
+        switch (cpuType) {
+            case CPU_TYPE_X86:
+                return Architecture.I368;
+            case CPU_TYPE_X86_64:
+                return Architecture.X86_64;
+            case CPU_TYPE_ARM64:
+                return Architecture.AARCH64;
+            case CPU_TYPE_POWERPC:
+            case CPU_TYPE_POWERPC64:
+                return Architecture.PPC;
+            default:
+                return Architecture.UNKNOWN;
+        }
+    }
+}
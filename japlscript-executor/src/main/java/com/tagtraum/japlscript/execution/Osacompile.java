@@ -10,30 +10,192 @@ import java.util.logging.Logger;
 import java.util.logging.Level;
 
 import java.io.*;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.util.HashMap;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
  * Osacompile.
+ * <p>
+ * Compiled scripts are cached in a directory (by default <code>~/Library/Caches/JaplScript/</code>)
+ * as <code>.scpt</code> files named after the SHA-256 hash of the normalized script source.
+ * They therefore survive restarts and may be shared by multiple JVMs.
+ * Normalization means that line endings are converted to <code>\n</code> and
+ * leading/trailing whitespace is removed. Note that it is the normalized script that is compiled.
+ * <p>
+ * When the cache grows beyond its max number of entries or max size in bytes,
+ * the least recently used scripts are evicted. Use times and sizes are tracked in memory,
+ * starting with the files found in the cache directory on creation. The modification time
+ * of a compiled script file is updated at most once a minute, when the script is used, so that
+ * other JVMs sharing the cache directory (and later runs) see it as recently used.
+ * <p>
+ * Concurrent requests for the same script result in just one <code>osacompile</code>
+ * run, all other callers wait for its result. Compile errors reported by <code>osacompile</code>
+ * are cached for a {@link #setNegativeCacheTtlMillis(long) configurable time}, so that a broken
+ * script does not trigger <code>osacompile</code> over and over again. Other failures,
+ * like IO problems, interruptions or exceeding the {@link #setTimeoutMillis(long) timeout},
+ * are not cached.
  *
  * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
  */
 public class Osacompile {
 
     private static final Logger LOG = Logger.getLogger(Osacompile.class.getName());
-    private static final Path JAPLSCRIPT_CACHE_DIRECTORY = new File(System.getProperty("user.home") + "/Library/Caches/JaplScript/").toPath();
-    static {
+    public static final String DEFAULT_OSACOMPILE = "osacompile";
+    public static final Path DEFAULT_CACHE_DIRECTORY = new File(System.getProperty("user.home") + "/Library/Caches/JaplScript/").toPath();
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    public static final long DEFAULT_NEGATIVE_CACHE_TTL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    public static final long DEFAULT_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final String SCPT_EXTENSION = ".scpt";
+    private static final long TOUCH_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final String osacompile;
+    private final Path cacheDirectory;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final ConcurrentMap<String, CacheEntry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong useCounter = new AtomicLong();
+    private final Object evictionLock = new Object();
+    private final ConcurrentMap<String, CompletableFuture<CompiledScript>> inFlight = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Failure> failures = new ConcurrentHashMap<>();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong negativeHitCount = new AtomicLong();
+    private volatile long negativeCacheTtlMillis = DEFAULT_NEGATIVE_CACHE_TTL_MILLIS;
+    private volatile long timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+
+    /**
+     * Creates an instance with default settings.
+     */
+    public Osacompile() {
+        this(DEFAULT_OSACOMPILE, DEFAULT_CACHE_DIRECTORY, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Creates an instance.
+     *
+     * @param osacompile <code>osacompile</code> executable
+     * @param cacheDirectory directory for compiled scripts
+     * @param maxEntries max number of cached scripts
+     * @param maxBytes max size of all cached scripts in bytes
+     */
+    public Osacompile(final String osacompile, final Path cacheDirectory, final int maxEntries, final long maxBytes) {
+        if (maxEntries < 1) throw new IllegalArgumentException("Max entries must be greater than 0: " + maxEntries);
+        if (maxBytes < 1) throw new IllegalArgumentException("Max bytes must be greater than 0: " + maxBytes);
+        this.osacompile = osacompile;
+        this.cacheDirectory = cacheDirectory;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
         try {
-            Files.createDirectories(JAPLSCRIPT_CACHE_DIRECTORY);
+            Files.createDirectories(cacheDirectory);
         } catch (IOException e) {
             LOG.log(Level.SEVERE, e.toString(), e);
         }
+        loadEntries();
+    }
+
+    public Path getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Time failed compilations are remembered.
+     *
+     * @return time to live in ms
+     */
+    public long getNegativeCacheTtlMillis() {
+        return negativeCacheTtlMillis;
+    }
+
+    /**
+     * Time compile errors are remembered. During this time, compiling the same
+     * script again immediately fails with an exception caused by the remembered one.
+     *
+     * @param negativeCacheTtlMillis time to live in ms, <code>0</code> to disable negative caching
+     */
+    public void setNegativeCacheTtlMillis(final long negativeCacheTtlMillis) {
+        if (negativeCacheTtlMillis < 0) throw new IllegalArgumentException("TTL must not be negative: " + negativeCacheTtlMillis);
+        this.negativeCacheTtlMillis = negativeCacheTtlMillis;
+        if (negativeCacheTtlMillis == 0) failures.clear();
+    }
+
+    /**
+     * Max time a single <code>osacompile</code> run may take.
+     *
+     * @return timeout in ms
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Max time a single <code>osacompile</code> run may take, before it is terminated
+     * and a {@link DeadlineExceededException} is thrown.
+     *
+     * @param timeoutMillis timeout in ms
+     */
+    public void setTimeoutMillis(final long timeoutMillis) {
+        if (timeoutMillis < 1) throw new IllegalArgumentException("Timeout must be greater than 0: " + timeoutMillis);
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Number of compile requests that were served from the cache, including
+     * requests that waited for a concurrent compilation of the same script.
+     *
+     * @return hits
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Number of compile requests that required running <code>osacompile</code>.
+     *
+     * @return misses
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Number of compile requests that failed, because the same script failed to compile recently.
+     *
+     * @return negative cache hits
+     */
+    public long getNegativeHitCount() {
+        return negativeHitCount.get();
+    }
+
+    /**
+     * Number of compiled scripts evicted from the cache.
+     *
+     * @return evictions
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
     }
-    private final Map<CharSequence, CompiledScript> COMPILED_SCRIPTS = new HashMap<>();
 
     /**
      * Compiles the script.
@@ -43,53 +205,350 @@ public class Osacompile {
      * @throws IOException in case of IO issues
      */
     public CompiledScript compile(final CharSequence script) throws IOException {
-        CompiledScript compiledScript = getCachedCompiledScript(script);
+        final String normalizedScript = normalize(script);
+        final String key = toKey(normalizedScript);
+        final Path scriptFile = cacheDirectory.resolve(key + SCPT_EXTENSION);
+        CompiledScript compiledScript = getCachedCompiledScript(key, normalizedScript, scriptFile);
         if (compiledScript != null) {
             if (LOG.isLoggable(Level.FINE)) LOG.fine("Script is already compiled.");
+            hitCount.incrementAndGet();
+            return compiledScript;
+        }
+        throwCachedFailure(key);
+        final CompletableFuture<CompiledScript> future = new CompletableFuture<>();
+        final CompletableFuture<CompiledScript> existingFuture = inFlight.putIfAbsent(key, future);
+        if (existingFuture != null) {
+            if (LOG.isLoggable(Level.FINE)) LOG.fine("Script is being compiled by another thread.");
+            hitCount.incrementAndGet();
+            return await(existingFuture);
+        }
+        try {
+            // another thread may have finished compiling between our cache lookup and putIfAbsent()
+            compiledScript = getCachedCompiledScript(key, normalizedScript, scriptFile);
+            if (compiledScript != null) {
+                hitCount.incrementAndGet();
+            } else {
+                compiledScript = runOsacompile(script, normalizedScript, key, scriptFile);
+            }
+            future.complete(compiledScript);
             return compiledScript;
-        } else {
-            if (LOG.isLoggable(Level.FINE)) LOG.fine("Script needs to be compiled.");
-            final Path scriptFile = Files.createTempFile(JAPLSCRIPT_CACHE_DIRECTORY, "japlscript", ".scpt");
-            // TODO: deleteOnExit() is evil! remove this somehow
-            scriptFile.toFile().deleteOnExit();
-            final Process process = Runtime.getRuntime().exec(new String[]{"osacompile", "-o", scriptFile.toString()});
-            final Writer stdin = new OutputStreamWriter(process.getOutputStream(), "MacRoman");
-            stdin.write(script.toString());
-            stdin.close();
+        } catch (JaplScriptException e) {
+            // only actual compile errors are worth remembering
+            cacheFailure(key, e);
+            future.completeExceptionally(e);
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    private CompiledScript runOsacompile(final CharSequence script, final String normalizedScript, final String key,
+                                         final Path scriptFile) throws IOException {
+        if (LOG.isLoggable(Level.FINE)) LOG.fine("Script needs to be compiled.");
+        missCount.incrementAndGet();
+        // compile into a temp file and atomically move it into place afterwards,
+        // so that other JVMs sharing the cache directory never see partial files
+        final Path tempFile = Files.createTempFile(cacheDirectory, key, ".tmp");
+        final Object flightRecorderEvent = FlightRecorderEvents.beginScriptCompiled();
+        try {
+            final Process process = Runtime.getRuntime().exec(new String[]{osacompile, "-o", tempFile.toString()});
+            ScriptWriter.write(normalizedScript, process.getOutputStream());
             final ReaderPump stderr = new ReaderPump(new InputStreamReader(process.getErrorStream(), UTF_8));
             final ReaderPump stdout = new ReaderPump(new InputStreamReader(process.getInputStream(), UTF_8));
-            // TODO: investigate ThreadPool use
-            final Thread errThread = new Thread(stderr);
-            final Thread outThread = new Thread(stdout);
-            errThread.start();
-            outThread.start();
-            try {
-                process.waitFor();
-            } catch (InterruptedException e) {
-                throw new IOException(e.toString());
-            }
+            final PumpScheduler pumpScheduler = PumpScheduler.getDefault();
+            final Future<?> errFuture = pumpScheduler.submit(stderr);
+            final Future<?> outFuture = pumpScheduler.submit(stdout);
+            Watchdog.waitFor(process, timeoutMillis, normalizedScript);
             try {
-                errThread.join();
-                outThread.join();
+                errFuture.get();
+                outFuture.get();
             } catch (InterruptedException e) {
                 throw new IOException(e.toString(), e);
+            } catch (ExecutionException e) {
+                LOG.log(Level.SEVERE, e.toString(), e);
+                throw new IOException(e.toString(), e.getCause());
             }
-            if (LOG.isLoggable(Level.FINE)) LOG.fine("Exit value  : " + process.exitValue());
+            final int exitValue = process.exitValue();
+            if (LOG.isLoggable(Level.FINE)) LOG.fine("Exit value  : " + exitValue);
             if (stderr.getIOException() != null) throw stderr.getIOException();
             if (stdout.getIOException() != null) throw stdout.getIOException();
             if (stderr.getValue().length() > 0) throw new JaplScriptException(stderr.getValue(), script.toString());
-            compiledScript = new CompiledScript(script, scriptFile.toString());
-            cacheCompiledScript(compiledScript);
-            return compiledScript;
+            // not a compile error, e.g. osacompile crashed, so don't cache it as one
+            if (exitValue != 0) throw new IOException(osacompile + " failed with exit value " + exitValue);
+            if (Files.size(tempFile) == 0) throw new IOException(osacompile + " did not write any output");
+            moveAtomically(tempFile, scriptFile);
+        } finally {
+            FlightRecorderEvents.commitScriptCompiled(flightRecorderEvent, key, normalizedScript);
+            Files.deleteIfExists(tempFile);
+        }
+        final CompiledScript compiledScript = new CompiledScript(normalizedScript, scriptFile.toString(), this);
+        cacheCompiledScript(key, compiledScript, scriptFile);
+        evict();
+        return compiledScript;
+    }
+
+    private static CompiledScript await(final CompletableFuture<CompiledScript> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new IOException(e.toString(), e);
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        }
+    }
+
+    /**
+     * Creates a new exception for the current thread, caused by an exception that is
+     * shared with other threads, so that they don't modify each other's stack traces.
+     *
+     * @param shared exception shared by multiple threads
+     * @return new exception of a similar type
+     * @throws JaplScriptException if the shared exception is a runtime exception
+     */
+    private static IOException rethrow(final Throwable shared) {
+        if (shared instanceof JaplScriptException) throw copyOf((JaplScriptException) shared);
+        if (shared instanceof RuntimeException) throw new JaplScriptException(shared.toString(), shared);
+        if (shared instanceof DeadlineExceededException) {
+            final DeadlineExceededException e = (DeadlineExceededException) shared;
+            return new DeadlineExceededException(e.getDeadlineMillis(), e.getScript(), e);
+        }
+        return new IOException(shared.toString(), shared);
+    }
+
+    private static JaplScriptException copyOf(final JaplScriptException shared) {
+        final JaplScriptException copy = new JaplScriptException(shared.getError(), shared.getScript());
+        copy.initCause(shared);
+        return copy;
+    }
+
+    private void throwCachedFailure(final String key) {
+        final Failure failure = failures.get(key);
+        if (failure == null) return;
+        if (failure.isExpired()) {
+            failures.remove(key, failure);
+            return;
+        }
+        if (LOG.isLoggable(Level.FINE)) LOG.fine("Script failed to compile recently.");
+        negativeHitCount.incrementAndGet();
+        throw copyOf(failure.exception);
+    }
+
+    private void cacheFailure(final String key, final JaplScriptException exception) {
+        final long ttl = negativeCacheTtlMillis;
+        if (ttl <= 0) return;
+        failures.values().removeIf(Failure::isExpired);
+        failures.put(key, new Failure(exception, System.currentTimeMillis() + ttl));
+    }
+
+    private CompiledScript getCachedCompiledScript(final String key, final String normalizedScript,
+                                                   final Path scriptFile) {
+        CacheEntry entry = entries.get(key);
+        if (entry == null) {
+            // compiled earlier, possibly by another JVM
+            try {
+                entry = addEntry(key, new CacheEntry(Files.size(scriptFile), 0));
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        if (!touch(entry, scriptFile)) {
+            if (entry.compiledScript != null && LOG.isLoggable(Level.FINE)) LOG.fine("Compiled script has been removed: " + scriptFile);
+            removeEntry(key, entry);
+            return null;
+        }
+        entry.lastUsed = useCounter.incrementAndGet();
+        synchronized (entry) {
+            if (entry.compiledScript == null) {
+                entry.compiledScript = new CompiledScript(normalizedScript, scriptFile.toString(), this);
+            }
+            return entry.compiledScript;
+        }
+    }
+
+    /**
+     * Updates the file's modification time, if it was not updated within the last minute,
+     * to mark it as recently used for other JVMs and later runs.
+     *
+     * @return false, if the file does not exist anymore, e.g. because it was evicted by another JVM
+     */
+    private static boolean touch(final CacheEntry entry, final Path scriptFile) {
+        final long now = System.currentTimeMillis();
+        if (now - entry.lastTouched < TOUCH_INTERVAL_MILLIS) return Files.exists(scriptFile);
+        try {
+            Files.setLastModifiedTime(scriptFile, FileTime.fromMillis(now));
+            entry.lastTouched = now;
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void cacheCompiledScript(final String key, final CompiledScript compiledScript, final Path scriptFile) throws IOException {
+        final CacheEntry entry = new CacheEntry(Files.size(scriptFile), System.currentTimeMillis());
+        entry.compiledScript = compiledScript;
+        addEntry(key, entry);
+    }
+
+    private CacheEntry addEntry(final String key, final CacheEntry entry) {
+        entry.lastUsed = useCounter.incrementAndGet();
+        final CacheEntry previous = entries.put(key, entry);
+        totalBytes.addAndGet(entry.size - (previous == null ? 0 : previous.size));
+        return entry;
+    }
+
+    private boolean removeEntry(final String key, final CacheEntry entry) {
+        if (!entries.remove(key, entry)) return false;
+        totalBytes.addAndGet(-entry.size);
+        return true;
+    }
+
+    /**
+     * Adds all compiled scripts found in the cache directory, ordered by their modification time.
+     */
+    private void loadEntries() {
+        final List<Path> scriptFiles = new ArrayList<>();
+        final List<Long> lastModified = new ArrayList<>();
+        final List<Long> sizes = new ArrayList<>();
+        try (final DirectoryStream<Path> stream = Files.newDirectoryStream(cacheDirectory, "*" + SCPT_EXTENSION)) {
+            for (final Path scriptFile : stream) {
+                try {
+                    lastModified.add(Files.getLastModifiedTime(scriptFile).toMillis());
+                    sizes.add(Files.size(scriptFile));
+                    scriptFiles.add(scriptFile);
+                } catch (IOException e) {
+                    // probably removed by someone else
+                    if (LOG.isLoggable(Level.FINE)) LOG.log(Level.FINE, e.toString(), e);
+                }
+            }
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Failed to list compiled scripts: " + e, e);
+            return;
+        }
+        final List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < scriptFiles.size(); i++) order.add(i);
+        order.sort(Comparator.comparing(lastModified::get));
+        for (final int i : order) {
+            final String fileName = scriptFiles.get(i).getFileName().toString();
+            addEntry(fileName.substring(0, fileName.length() - SCPT_EXTENSION.length()),
+                new CacheEntry(sizes.get(i), lastModified.get(i)));
+        }
+        evict();
+    }
+
+    /**
+     * Removes the least recently used compiled scripts, until the cache
+     * is within its limits again.
+     */
+    void evict() {
+        if (entries.size() <= maxEntries && totalBytes.get() <= maxBytes) return;
+        synchronized (evictionLock) {
+            if (entries.size() <= maxEntries && totalBytes.get() <= maxBytes) return;
+            final List<Map.Entry<String, CacheEntry>> leastRecentlyUsed = new ArrayList<>(entries.entrySet());
+            leastRecentlyUsed.sort(Comparator.comparingLong(e -> e.getValue().lastUsed));
+            for (final Map.Entry<String, CacheEntry> e : leastRecentlyUsed) {
+                if (entries.size() <= maxEntries && totalBytes.get() <= maxBytes) break;
+                if (!removeEntry(e.getKey(), e.getValue())) continue;
+                final Path scriptFile = cacheDirectory.resolve(e.getKey() + SCPT_EXTENSION);
+                try {
+                    if (Files.deleteIfExists(scriptFile)) {
+                        if (LOG.isLoggable(Level.FINE)) LOG.fine("Evicted compiled script " + scriptFile);
+                        evictionCount.incrementAndGet();
+                    }
+                } catch (IOException ex) {
+                    if (LOG.isLoggable(Level.FINE)) LOG.log(Level.FINE, ex.toString(), ex);
+                }
+            }
+        }
+    }
+
+    private static void moveAtomically(final Path source, final Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Normalizes line endings to <code>\n</code> and removes leading and trailing whitespace.
+     *
+     * @param script script
+     * @return normalized script
+     */
+    static String normalize(final CharSequence script) {
+        return script.toString()
+            .replace("\r\n", "\n")
+            .replace('\r', '\n')
+            .trim();
+    }
+
+    /**
+     * Hex encoded SHA-256 of the given (normalized) script.
+     *
+     * @param normalizedScript normalized script
+     * @return cache key
+     */
+    static String toKey(final String normalizedScript) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(normalizedScript.getBytes(UTF_8));
+            final char[] chars = new char[digest.length * 2];
+            for (int i = 0; i < digest.length; i++) {
+                chars[i * 2] = HEX[(digest[i] >> 4) & 0xF];
+                chars[i * 2 + 1] = HEX[digest[i] & 0xF];
+            }
+            return new String(chars);
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform must support SHA-256
+            throw new IllegalStateException(e);
         }
     }
 
-    private synchronized CompiledScript getCachedCompiledScript(final CharSequence script) {
-        return COMPILED_SCRIPTS.get(script);
+    /**
+     * Compiled script known to be in the cache directory.
+     */
+    private static final class CacheEntry {
+
+        private final long size;
+        private volatile long lastTouched;
+        private volatile long lastUsed;
+        private volatile CompiledScript compiledScript;
+
+        CacheEntry(final long size, final long lastTouched) {
+            this.size = size;
+            this.lastTouched = lastTouched;
+        }
     }
 
-    private synchronized CompiledScript cacheCompiledScript(final CompiledScript compiledScript) {
-        return COMPILED_SCRIPTS.put(compiledScript.getScript(), compiledScript);
+    /**
+     * Recently failed compilation.
+     */
+    private static final class Failure {
+
+        private final JaplScriptException exception;
+        private final long expirationTime;
+
+        Failure(final JaplScriptException exception, final long expirationTime) {
+            this.exception = exception;
+            this.expirationTime = expirationTime;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() >= expirationTime;
+        }
     }
 
+    @Override
+    public String toString() {
+        return "Osacompile{" +
+            "cacheDirectory=" + cacheDirectory +
+            ", maxEntries=" + maxEntries +
+            ", maxBytes=" + maxBytes +
+            ", hits=" + hitCount +
+            ", misses=" + missCount +
+            ", evictions=" + evictionCount +
+            '}';
+    }
 }
@@ -10,15 +10,24 @@ import java.util.logging.Logger;
 import java.util.logging.Level;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
  * Osascript.
+ * <p>
+ * Executes each script with a new <code>osascript</code> process. Scripts
+ * are passed via stdin, encoded as UTF-8. If a
+ * {@link ProcessReservoir#getDefault() default reservoir} is configured, an already
+ * started process is used instead, if available.
  *
  * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
  */
@@ -27,39 +36,67 @@ public class Osascript extends ScriptExecutor {
     private static final Logger LOG = Logger.getLogger(Osascript.class.getName());
     private static final Osacompile osacompile = new Osacompile();
     private static final int NO_ERRORS = 0;
-    private static final ExecutorService THREAD_POOL = Executors.newCachedThreadPool();
 
     public Osascript() {
     }
 
+    /**
+     * {@link Osacompile} instance used, when the current {@link Session} is set to compile.
+     *
+     * @return osacompile instance, e.g. for querying cache statistics
+     */
+    public static Osacompile getOsacompile() {
+        return osacompile;
+    }
+
+    /**
+     * Arguments are passed to <code>osascript</code> and can be accessed
+     * via <code>on run argv</code>.
+     *
+     * @return true
+     */
+    @Override
+    public boolean isArgumentsSupported() {
+        return true;
+    }
+
     /**
      * Execute script.
      *
      * @return return value
      */
     public String executeImpl() throws IOException {
+        return executeImpl(false).toString();
+    }
+
+    /**
+     * Execute script and return its output as {@link ChunkedCharSequence}, i.e. without
+     * copying it into a {@link String}.
+     *
+     * @return return value
+     */
+    @Override
+    protected CharSequence executeStreamingImpl() throws IOException {
+        return executeImpl(true);
+    }
+
+    private CharSequence executeImpl(final boolean streaming) throws IOException {
         final Session session = Session.get();
         if (session != null && session.isCompile()) {
             if (LOG.isLoggable(Level.FINE)) LOG.fine("Using compiled script.");
             final CompiledScript compiledScript = osacompile.compile(getScript());
-            if (compiledScript != null) return compiledScript.execute();
+            if (compiledScript != null) return compiledScript.execute(getArguments(), getEffectiveDeadlineMillis(), true);
         }
-        final String[] cmdarray = new String[]{"osascript", "-s", "s", "-"};
-        final Process process = Runtime.getRuntime().exec(cmdarray);
-        final Writer stdin = new OutputStreamWriter(process.getOutputStream(), "MacRoman");
-        stdin.write(getScript().toString());
-        stdin.close();
+        final CharSequence script = getScript();
+        final Process process = start(script, getArguments());
         final ReaderPump stderr = new ReaderPump(new InputStreamReader(process.getErrorStream(), UTF_8));
         final ReaderPump stdout = new ReaderPump(new InputStreamReader(process.getInputStream(), UTF_8));
-        final Future<?> outFuture = THREAD_POOL.submit(stdout);
-        final Future<?> errFuture = THREAD_POOL.submit(stderr);
-        final int exit;
-        try {
-            exit = process.waitFor();
-            if (LOG.isLoggable(Level.FINE)) LOG.fine("Exit value: " + exit);
-        } catch (InterruptedException e) {
-            throw new IOException(e.toString());
-        }
+        final PumpScheduler pumpScheduler = PumpScheduler.getDefault();
+        final Future<?> outFuture = pumpScheduler.submit(stdout);
+        final Future<?> errFuture = pumpScheduler.submit(stderr);
+        final int exit = Watchdog.waitFor(process, getEffectiveDeadlineMillis(), script);
+        setExitCode(exit);
+        if (LOG.isLoggable(Level.FINE)) LOG.fine("Exit value: " + exit);
         try {
             errFuture.get();
             outFuture.get();
@@ -69,9 +106,127 @@ public class Osascript extends ScriptExecutor {
             LOG.log(Level.SEVERE, e.toString(), e);
             throw new IOException(e.toString(), e.getCause());
         }
-        if (LOG.isLoggable(Level.FINE) && stdout.getValue() != null && stdout.getValue().length() > 0) {
-            final String returnValue = stdout.getValue();
-            LOG.fine("Return value: " + returnValue.substring(0, Math.min(MAX_RETURNVALUE_LOG_LENGTH,
+        boolean streamed = false;
+        try {
+            evaluate(script, exit, stdout, stderr);
+            if (!streaming) return stdout.getValue();
+            streamed = true;
+            return stdout.getCharSequence();
+        } finally {
+            stderr.release();
+            if (!streamed) stdout.release();
+        }
+    }
+
+    /**
+     * Execute script asynchronously. Waiting for the <code>osascript</code> process
+     * does not block a thread, as completion is signalled by {@link Process#onExit()}.
+     * Cancelling the returned future or exceeding the deadline terminates the process.
+     *
+     * @param executor executor used for starting the process and writing the script
+     * @return future return value
+     */
+    @Override
+    protected CompletableFuture<String> executeAsyncImpl(final Executor executor) {
+        final String script = getScript().toString();
+        final List<String> arguments = getArguments();
+        final long deadlineMillis = getEffectiveDeadlineMillis();
+        final Session session = Session.get();
+        if (session != null && session.isCompile()) {
+            final CompletableFuture<String> result = new CompletableFuture<>();
+            CompletableFuture.runAsync(() -> {
+                try {
+                    if (LOG.isLoggable(Level.FINE)) LOG.fine("Using compiled script.");
+                    final CompiledScript compiledScript = osacompile.compile(script);
+                    if (compiledScript != null) result.complete(compiledScript.execute(arguments, deadlineMillis, true));
+                    else complete(result, executeAsyncImpl(script, arguments, deadlineMillis, executor));
+                } catch (IOException | RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            }, executor);
+            return result;
+        }
+        return executeAsyncImpl(script, arguments, deadlineMillis, executor);
+    }
+
+    private static <T> void complete(final CompletableFuture<T> target, final CompletableFuture<T> source) {
+        Watchdog.propagateCancellation(target, source);
+        source.whenComplete((value, throwable) -> {
+            if (throwable != null) target.completeExceptionally(throwable);
+            else target.complete(value);
+        });
+    }
+
+    private CompletableFuture<String> executeAsyncImpl(final String script, final List<String> arguments,
+                                                       final long deadlineMillis, final Executor executor) {
+        final CompletableFuture<String> result = new CompletableFuture<>();
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                return start(script, arguments);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor).whenComplete((process, throwable) -> {
+            if (throwable != null) {
+                result.completeExceptionally(throwable);
+                return;
+            }
+            // cancelled or deadline exceeded
+            result.whenComplete((value, t) -> {
+                if (process.isAlive()) Watchdog.destroy(process);
+            });
+            final ReaderPump stderr = new ReaderPump(new InputStreamReader(process.getErrorStream(), UTF_8));
+            final ReaderPump stdout = new ReaderPump(new InputStreamReader(process.getInputStream(), UTF_8));
+            final PumpScheduler pumpScheduler = PumpScheduler.getDefault();
+            final CompletableFuture<Void> pumps = CompletableFuture.allOf(
+                pumpScheduler.submit(stdout),
+                pumpScheduler.submit(stderr));
+            complete(result, process.onExit().thenCombine(pumps, (p, v) -> {
+                final int exit = p.exitValue();
+                if (LOG.isLoggable(Level.FINE)) LOG.fine("Exit value: " + exit);
+                try {
+                    if (result.isDone()) return null;
+                    evaluate(script, exit, stdout, stderr);
+                    return stdout.getValue();
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                } finally {
+                    stdout.release();
+                    stderr.release();
+                }
+            }));
+        });
+        return Watchdog.withDeadline(result, deadlineMillis, script);
+    }
+
+    private static Process start(final CharSequence script, final List<String> arguments) throws IOException {
+        final Process reserved = arguments.isEmpty() ? takeReserved() : null;
+        final Process process = reserved == null ? exec(arguments) : reserved;
+        ScriptWriter.write(script, process.getOutputStream());
+        return process;
+    }
+
+    /**
+     * Takes an already started process from the {@link ProcessReservoir#getDefault() default reservoir}.
+     *
+     * @return process or {@code null}
+     */
+    private static Process takeReserved() {
+        final ProcessReservoir reservoir = ProcessReservoir.getDefault();
+        return reservoir == null ? null : reservoir.take();
+    }
+
+    private static Process exec(final List<String> arguments) throws IOException {
+        final List<String> cmdarray = new ArrayList<>(Arrays.asList("osascript", "-s", "s", "-"));
+        cmdarray.addAll(arguments);
+        return Runtime.getRuntime().exec(cmdarray.toArray(new String[0]));
+    }
+
+    private static void evaluate(final CharSequence script, final int exit,
+                                 final ReaderPump stdout, final ReaderPump stderr) throws IOException {
+        final CharSequence returnValue = stdout.getCharSequence();
+        if (LOG.isLoggable(Level.FINE) && returnValue != null && returnValue.length() > 0) {
+            LOG.fine("Return value: " + returnValue.subSequence(0, Math.min(MAX_RETURNVALUE_LOG_LENGTH,
                     returnValue.length())));
         }
         if (stderr.getIOException() != null) throw stderr.getIOException();
@@ -82,11 +237,10 @@ public class Osascript extends ScriptExecutor {
                 if (BadScriptingAdditionException.isBadScriptingAdditionMessage(stderrValue)) {
                     throw new BadScriptingAdditionException(stderrValue);
                 } else {
-                    throw new JaplScriptException(stderrValue, getScript().toString());
+                    throw new JaplScriptException(stderrValue, script.toString());
                 }
             }
-            else throw new JaplScriptException("Unknown Error", getScript().toString());
+            else throw new JaplScriptException("Unknown Error", script.toString());
         }
-        return stdout.getValue();
     }
 }
@@ -0,0 +1,50 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+/**
+ * Provides {@link Osascript} executors. This is the fallback provider
+ * and the only built-in provider that supports compiled scripts.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class OsascriptProvider implements ScriptExecutorProvider {
+
+    public static final String NAME = "osascript";
+    public static final int PRIORITY = 100;
+
+    /**
+     * Public no-argument constructor, required by {@link java.util.ServiceLoader}.
+     */
+    public OsascriptProvider() {
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public int getPriority() {
+        return PRIORITY;
+    }
+
+    @Override
+    public boolean isCompileSupported() {
+        return true;
+    }
+
+    @Override
+    public ScriptExecutor newInstance() {
+        return new Osascript();
+    }
+
+    @Override
+    public String toString() {
+        return "OsascriptProvider{priority=" + PRIORITY + '}';
+    }
+}
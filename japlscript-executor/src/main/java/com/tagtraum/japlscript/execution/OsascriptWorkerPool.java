@@ -0,0 +1,399 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Pool of long-lived <code>osascript</code> processes.
+ * <p>
+ * Each worker process runs a small read-eval loop (see <code>osascript-worker.js</code>),
+ * which reads length-prefixed scripts from its stdin and writes length-prefixed
+ * results to its stdout:
+ * <pre>
+ * request:  &lt;number of UTF-8 bytes&gt;\n&lt;script&gt;
+ * response: OK|ERR &lt;number of UTF-8 bytes&gt;\n&lt;result or error message&gt;
+ * </pre>
+ * This way, process spawning, loading of the AppleScript component etc. is
+ * only paid once per worker and not once per script.
+ * <p>
+ * Workers are health-checked before use, recycled after a configurable number of
+ * scripts and replaced, when they crash or exceed the per-script timeout.
+ * Idle workers are periodically probed with a no-op script and a short deadline,
+ * so that workers, whose read-eval loop hangs or is out of sync, are recycled before
+ * they are used again.
+ * Exceeding the timeout results in a {@link DeadlineExceededException}.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ * @see PooledOsascript
+ */
+public class OsascriptWorkerPool implements Closeable {
+
+    private static final Logger LOG = Logger.getLogger(OsascriptWorkerPool.class.getName());
+    public static final String DEFAULT_OSASCRIPT = "osascript";
+    public static final int DEFAULT_SIZE = 2;
+    public static final int DEFAULT_MAX_SCRIPTS_PER_WORKER = 1000;
+    public static final long DEFAULT_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(2);
+    private static final long HEALTH_CHECK_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final long MAX_PROBE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    private static final String PROBE_SCRIPT = "return 0";
+    private static final String PROBE_RESULT = "0";
+    private static final String OK = "OK";
+    private static final String ERR = "ERR";
+    private static final String WORKER_SOURCE = readWorkerSource();
+    /**
+     * Runs the health checks of all pools. Probes block, so timeouts are enforced by {@link Watchdog}.
+     */
+    private static final ScheduledExecutorService HEALTH_CHECKER = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, "JaplScript Osascript Health Check");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static OsascriptWorkerPool defaultInstance;
+
+    private final String osascript;
+    private final int size;
+    private final int maxScriptsPerWorker;
+    private final long timeoutMillis;
+    private final long probeTimeoutMillis;
+    private final Semaphore permits;
+    private final BlockingQueue<Worker> idleWorkers = new LinkedBlockingQueue<>();
+    private final ScheduledFuture<?> healthCheck;
+    private volatile boolean closed;
+
+    /**
+     * Creates a pool with default settings.
+     */
+    public OsascriptWorkerPool() {
+        this(DEFAULT_SIZE, DEFAULT_MAX_SCRIPTS_PER_WORKER, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Creates a pool using the <code>osascript</code> found on the <code>PATH</code>.
+     *
+     * @param size max number of worker processes
+     * @param maxScriptsPerWorker number of scripts after which a worker is recycled
+     * @param timeoutMillis max time a single script may take, before its worker is killed
+     */
+    public OsascriptWorkerPool(final int size, final int maxScriptsPerWorker, final long timeoutMillis) {
+        this(DEFAULT_OSASCRIPT, size, maxScriptsPerWorker, timeoutMillis);
+    }
+
+    /**
+     * Creates a pool.
+     *
+     * @param osascript <code>osascript</code> executable
+     * @param size max number of worker processes
+     * @param maxScriptsPerWorker number of scripts after which a worker is recycled
+     * @param timeoutMillis max time a single script may take, before its worker is killed
+     */
+    public OsascriptWorkerPool(final String osascript, final int size, final int maxScriptsPerWorker, final long timeoutMillis) {
+        if (size < 1) throw new IllegalArgumentException("Size must be greater than 0: " + size);
+        if (maxScriptsPerWorker < 1) throw new IllegalArgumentException("Max scripts per worker must be greater than 0: " + maxScriptsPerWorker);
+        if (timeoutMillis < 1) throw new IllegalArgumentException("Timeout must be greater than 0: " + timeoutMillis);
+        this.osascript = osascript;
+        this.size = size;
+        this.maxScriptsPerWorker = maxScriptsPerWorker;
+        this.timeoutMillis = timeoutMillis;
+        this.probeTimeoutMillis = Math.min(timeoutMillis, MAX_PROBE_TIMEOUT_MILLIS);
+        this.permits = new Semaphore(size, true);
+        this.healthCheck = HEALTH_CHECKER.scheduleWithFixedDelay(this::checkHealth,
+            HEALTH_CHECK_INTERVAL_MILLIS, HEALTH_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Shared pool with default settings, used by {@link PooledOsascript#PooledOsascript()}.
+     *
+     * @return shared pool
+     */
+    public static synchronized OsascriptWorkerPool getDefaultInstance() {
+        if (defaultInstance == null || defaultInstance.isClosed()) {
+            defaultInstance = new OsascriptWorkerPool();
+        }
+        return defaultInstance;
+    }
+
+    public String getOsascript() {
+        return osascript;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getMaxScriptsPerWorker() {
+        return maxScriptsPerWorker;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Number of currently idle worker processes.
+     *
+     * @return idle workers
+     */
+    public int getIdleWorkerCount() {
+        return idleWorkers.size();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Executes the given script with one of the pooled workers.
+     *
+     * @param script script
+     * @return return value
+     * @throws DeadlineExceededException if the script exceeds the timeout
+     * @throws IOException in case of IO problems or a crashed worker
+     */
+    public String execute(final CharSequence script) throws IOException {
+        if (closed) throw new IOException("Pool is closed.");
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            throw new IOException(e.toString(), e);
+        }
+        Worker worker = null;
+        try {
+            worker = borrowWorker();
+            return worker.execute(script);
+        } catch (IOException e) {
+            if (worker != null) {
+                worker.destroy();
+                worker = null;
+            }
+            throw e;
+        } finally {
+            if (worker != null) returnWorker(worker);
+            permits.release();
+        }
+    }
+
+    private Worker borrowWorker() throws IOException {
+        for (Worker worker = idleWorkers.poll(); worker != null; worker = idleWorkers.poll()) {
+            if (worker.isAlive()) return worker;
+            if (LOG.isLoggable(Level.FINE)) LOG.fine("Discarding dead worker " + worker);
+            worker.destroy();
+        }
+        return new Worker();
+    }
+
+    private void returnWorker(final Worker worker) {
+        if (closed || !worker.isAlive() || worker.getExecutions() >= maxScriptsPerWorker) {
+            if (LOG.isLoggable(Level.FINE)) LOG.fine("Recycling worker " + worker);
+            worker.destroy();
+        } else {
+            idleWorkers.offer(worker);
+        }
+    }
+
+    /**
+     * Probes all currently idle workers and removes the ones that are dead,
+     * don't answer the probe in time or answer it incorrectly.
+     * While a worker is probed, it is not available for borrowing.
+     */
+    void checkHealth() {
+        for (int i = idleWorkers.size(); i > 0 && !closed; i--) {
+            final Worker worker = idleWorkers.poll();
+            if (worker == null) break;
+            if (worker.probe()) {
+                returnWorker(worker);
+            } else {
+                if (LOG.isLoggable(Level.FINE)) LOG.fine("Removing unhealthy worker " + worker);
+                worker.destroy();
+            }
+        }
+    }
+
+    /**
+     * Runs {@link #checkHealth()} on the thread that runs the periodic health checks.
+     *
+     * @return future that completes, once the check is done
+     */
+    Future<?> checkHealthAsync() {
+        return HEALTH_CHECKER.submit(this::checkHealth);
+    }
+
+    /**
+     * Destroys all idle workers. Busy workers are destroyed, once they are done.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        healthCheck.cancel(false);
+        for (Worker worker = idleWorkers.poll(); worker != null; worker = idleWorkers.poll()) {
+            worker.destroy();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "OsascriptWorkerPool{" +
+            "osascript='" + osascript + '\'' +
+            ", size=" + size +
+            ", maxScriptsPerWorker=" + maxScriptsPerWorker +
+            ", timeoutMillis=" + timeoutMillis +
+            ", idle=" + idleWorkers.size() +
+            '}';
+    }
+
+    private static String readWorkerSource() {
+        try (final Reader in = new InputStreamReader(OsascriptWorkerPool.class.getResourceAsStream("osascript-worker.js"), UTF_8)) {
+            final StringBuilder sb = new StringBuilder();
+            final char[] cbuf = new char[1024];
+            int count;
+            while ((count = in.read(cbuf)) != -1) {
+                sb.append(cbuf, 0, count);
+            }
+            return sb.toString();
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to read osascript worker source.", e);
+        }
+    }
+
+    /**
+     * Single long-lived <code>osascript</code> process.
+     */
+    private final class Worker {
+
+        private final Process process;
+        private final OutputStream stdin;
+        private final InputStream stdout;
+        private final AtomicBoolean timedOut = new AtomicBoolean();
+        private int executions;
+
+        Worker() throws IOException {
+            this.process = new ProcessBuilder(osascript, "-l", "JavaScript", "-e", WORKER_SOURCE)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+            this.stdin = new BufferedOutputStream(process.getOutputStream());
+            this.stdout = new BufferedInputStream(process.getInputStream());
+            if (LOG.isLoggable(Level.FINE)) LOG.fine("Started worker " + this);
+        }
+
+        String execute(final CharSequence script) throws IOException {
+            executions++;
+            return execute(script, timeoutMillis);
+        }
+
+        /**
+         * Executes a no-op script with a short deadline.
+         * Probes don't count as executions.
+         *
+         * @return true, if the worker answered the probe correctly and in time
+         */
+        boolean probe() {
+            if (!isAlive()) return false;
+            try {
+                // unsolicited output means we lost sync with the worker's framing
+                if (stdout.available() > 0) return false;
+                return PROBE_RESULT.equals(execute(PROBE_SCRIPT, probeTimeoutMillis));
+            } catch (IOException | RuntimeException e) {
+                if (LOG.isLoggable(Level.FINE)) LOG.log(Level.FINE, "Probe failed for worker " + this + ": " + e, e);
+                return false;
+            }
+        }
+
+        private String execute(final CharSequence script, final long timeoutMillis) throws IOException {
+            // not scheduled on HEALTH_CHECKER, as probes block it, while they wait for their result
+            final ScheduledFuture<?> watchdog = Watchdog.schedule(() -> {
+                timedOut.set(true);
+                destroy();
+            }, timeoutMillis);
+            try {
+                final byte[] request = script.toString().getBytes(UTF_8);
+                stdin.write(Integer.toString(request.length).getBytes(UTF_8));
+                stdin.write('\n');
+                stdin.write(request);
+                stdin.flush();
+
+                final String header = readLine();
+                final int space = header.indexOf(' ');
+                if (space < 0) throw new IOException("Malformed worker response header: " + header);
+                final String status = header.substring(0, space);
+                final byte[] response = readFully(Integer.parseInt(header.substring(space + 1).trim()));
+                final String value = new String(response, UTF_8).trim();
+                if (LOG.isLoggable(Level.FINE) && !value.isEmpty()) {
+                    LOG.fine("Return value: " + value.substring(0, Math.min(ScriptExecutor.MAX_RETURNVALUE_LOG_LENGTH,
+                        value.length())));
+                }
+                if (OK.equals(status)) return value;
+                if (ERR.equals(status)) {
+                    if (BadScriptingAdditionException.isBadScriptingAdditionMessage(value)) {
+                        throw new BadScriptingAdditionException(value);
+                    }
+                    throw new JaplScriptException(value.isEmpty() ? "Unknown Error" : value, script.toString());
+                }
+                throw new IOException("Malformed worker response status: " + status);
+            } catch (IOException | NumberFormatException e) {
+                if (timedOut.get()) {
+                    throw new DeadlineExceededException(timeoutMillis, script.toString(), e);
+                }
+                throw e instanceof IOException
+                    ? (IOException) e
+                    : new IOException("Malformed worker response: " + e, e);
+            } finally {
+                watchdog.cancel(false);
+            }
+        }
+
+        private String readLine() throws IOException {
+            final ByteArrayOutputStream line = new ByteArrayOutputStream();
+            for (int b = stdout.read(); b != '\n'; b = stdout.read()) {
+                if (b == -1) throw new EOFException("Worker terminated unexpectedly: " + this);
+                line.write(b);
+            }
+            return new String(line.toByteArray(), UTF_8);
+        }
+
+        private byte[] readFully(final int length) throws IOException {
+            final byte[] buf = new byte[length];
+            int offset = 0;
+            while (offset < length) {
+                final int count = stdout.read(buf, offset, length - offset);
+                if (count == -1) throw new EOFException("Worker terminated unexpectedly: " + this);
+                offset += count;
+            }
+            return buf;
+        }
+
+        int getExecutions() {
+            return executions;
+        }
+
+        boolean isAlive() {
+            return process.isAlive();
+        }
+
+        void destroy() {
+            try {
+                stdin.close();
+            } catch (IOException e) {
+                if (LOG.isLoggable(Level.FINE)) LOG.log(Level.FINE, e.toString(), e);
+            }
+            Watchdog.destroy(process);
+        }
+
+        @Override
+        public String toString() {
+            return "Worker{" +
+                "pid=" + process.pid() +
+                ", executions=" + executions +
+                '}';
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Executor that runs scripts with long-lived <code>osascript</code> processes
+ * managed by an {@link OsascriptWorkerPool}, instead of starting a new process
+ * for every single script like {@link Osascript} does.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class PooledOsascript extends ScriptExecutor {
+
+    private final OsascriptWorkerPool pool;
+
+    /**
+     * Executor backed by the {@link OsascriptWorkerPool#getDefaultInstance() default pool}.
+     */
+    public PooledOsascript() {
+        this(OsascriptWorkerPool.getDefaultInstance());
+    }
+
+    /**
+     * Executor backed by the given pool.
+     *
+     * @param pool worker pool
+     */
+    public PooledOsascript(final OsascriptWorkerPool pool) {
+        Objects.requireNonNull(pool);
+        this.pool = pool;
+    }
+
+    public OsascriptWorkerPool getPool() {
+        return pool;
+    }
+
+    @Override
+    protected String executeImpl() throws IOException {
+        return pool.execute(getScript());
+    }
+}
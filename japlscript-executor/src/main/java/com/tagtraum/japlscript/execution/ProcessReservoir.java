@@ -0,0 +1,358 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reservoir of already started <code>osascript -s s -</code> processes.
+ * <p>
+ * Each reserved process is blocked reading its script from stdin. {@link Osascript}
+ * {@link #take() takes} one, writes the script and closes stdin, so that the
+ * latency of starting a new process is hidden. The reservoir then starts a replacement
+ * asynchronously.
+ * <p>
+ * Reserved processes that have been idle for longer than the max idle age are
+ * discarded and replaced, and new processes are started no faster than the configured
+ * spawn rate, so that a burst of executions does not result in a burst of process starts.
+ * <p>
+ * Only scripts without {@link ScriptExecutor#setArguments(List) arguments} can use
+ * reserved processes, as arguments are passed on the command line.
+ * The default reservoir is disabled, unless the system property <code>japlscript.reservoir.size</code>
+ * is greater than 0 or a reservoir is {@link #setDefault(ProcessReservoir) set} explicitly.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ * @see Osascript
+ */
+public class ProcessReservoir implements Closeable {
+
+    private static final Logger LOG = Logger.getLogger(ProcessReservoir.class.getName());
+    public static final String SIZE_PROPERTY = "japlscript.reservoir.size";
+    public static final int DEFAULT_SIZE = 2;
+    public static final long DEFAULT_MAX_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    public static final int DEFAULT_MAX_SPAWNS_PER_SECOND = 10;
+    private static final long MIN_SWEEP_INTERVAL_MILLIS = 100;
+    private static final ScheduledExecutorService SPAWNER = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, "JaplScript Process Reservoir");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static ProcessReservoir defaultInstance = createDefault();
+
+    private final List<String> command;
+    private final int size;
+    private final long maxIdleMillis;
+    private final int maxSpawnsPerSecond;
+    private final long spawnIntervalNanos;
+    private final Deque<Reserved> idle = new LinkedBlockingDeque<>();
+    private final ScheduledFuture<?> sweep;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder spawnCount = new LongAdder();
+    private final LongAdder spawnFailureCount = new LongAdder();
+    private final LongAdder expiredCount = new LongAdder();
+    private final Histogram spawnLatencyNanos = new Histogram();
+    private int pending;
+    private long nextSpawnNanos = System.nanoTime();
+    private volatile boolean closed;
+
+    /**
+     * Creates a reservoir with default settings.
+     */
+    public ProcessReservoir() {
+        this(DEFAULT_SIZE, DEFAULT_MAX_IDLE_MILLIS, DEFAULT_MAX_SPAWNS_PER_SECOND);
+    }
+
+    /**
+     * Creates a reservoir of <code>osascript -s s -</code> processes.
+     *
+     * @param size number of processes to keep in reserve
+     * @param maxIdleMillis max time a process may be kept in reserve
+     * @param maxSpawnsPerSecond max number of processes started per second
+     */
+    public ProcessReservoir(final int size, final long maxIdleMillis, final int maxSpawnsPerSecond) {
+        this(Arrays.asList("osascript", "-s", "s", "-"), size, maxIdleMillis, maxSpawnsPerSecond);
+    }
+
+    /**
+     * Creates a reservoir.
+     *
+     * @param command command used to start processes
+     * @param size number of processes to keep in reserve
+     * @param maxIdleMillis max time a process may be kept in reserve
+     * @param maxSpawnsPerSecond max number of processes started per second
+     */
+    public ProcessReservoir(final List<String> command, final int size, final long maxIdleMillis,
+                            final int maxSpawnsPerSecond) {
+        if (command.isEmpty()) throw new IllegalArgumentException("Command must not be empty.");
+        if (size < 1) throw new IllegalArgumentException("Size must be greater than 0: " + size);
+        if (maxIdleMillis < 1) throw new IllegalArgumentException("Max idle time must be greater than 0: " + maxIdleMillis);
+        if (maxSpawnsPerSecond < 1) throw new IllegalArgumentException("Max spawns per second must be greater than 0: " + maxSpawnsPerSecond);
+        this.command = new ArrayList<>(command);
+        this.size = size;
+        this.maxIdleMillis = maxIdleMillis;
+        this.maxSpawnsPerSecond = maxSpawnsPerSecond;
+        this.spawnIntervalNanos = TimeUnit.SECONDS.toNanos(1) / maxSpawnsPerSecond;
+        final long sweepInterval = Math.max(MIN_SWEEP_INTERVAL_MILLIS, maxIdleMillis / 2);
+        this.sweep = SPAWNER.scheduleWithFixedDelay(this::sweep, sweepInterval, sweepInterval, TimeUnit.MILLISECONDS);
+        replenish();
+    }
+
+    /**
+     * Reservoir used by {@link Osascript}.
+     *
+     * @return default reservoir or {@code null}, if disabled
+     */
+    public static synchronized ProcessReservoir getDefault() {
+        return defaultInstance;
+    }
+
+    /**
+     * Replaces the default reservoir. A previously set reservoir is not closed.
+     *
+     * @param reservoir reservoir or {@code null} to disable
+     */
+    public static synchronized void setDefault(final ProcessReservoir reservoir) {
+        defaultInstance = reservoir;
+    }
+
+    private static ProcessReservoir createDefault() {
+        final String size = System.getProperty(SIZE_PROPERTY);
+        if (size == null) return null;
+        try {
+            final int s = Integer.parseInt(size.trim());
+            return s > 0 ? new ProcessReservoir(s, DEFAULT_MAX_IDLE_MILLIS, DEFAULT_MAX_SPAWNS_PER_SECOND) : null;
+        } catch (NumberFormatException e) {
+            LOG.warning("Ignoring invalid value for " + SIZE_PROPERTY + ": " + size);
+            return null;
+        }
+    }
+
+    public List<String> getCommand() {
+        return Collections.unmodifiableList(command);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public long getMaxIdleMillis() {
+        return maxIdleMillis;
+    }
+
+    public int getMaxSpawnsPerSecond() {
+        return maxSpawnsPerSecond;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Takes a reserved process and asynchronously starts a replacement.
+     * The caller is responsible for the returned process.
+     *
+     * @return running process or {@code null}, if none is available
+     */
+    public Process take() {
+        if (closed) return null;
+        try {
+            for (Reserved reserved = idle.pollFirst(); reserved != null; reserved = idle.pollFirst()) {
+                if (reserved.isUsable(System.nanoTime())) {
+                    hitCount.increment();
+                    return reserved.process;
+                }
+                discard(reserved);
+            }
+            missCount.increment();
+            return null;
+        } finally {
+            replenish();
+        }
+    }
+
+    /**
+     * Removes expired or dead processes.
+     */
+    void sweep() {
+        final long now = System.nanoTime();
+        if (idle.removeIf(reserved -> {
+            if (reserved.isUsable(now)) return false;
+            discard(reserved);
+            return true;
+        })) {
+            replenish();
+        }
+    }
+
+    private void discard(final Reserved reserved) {
+        if (LOG.isLoggable(Level.FINE)) LOG.fine("Discarding reserved process " + reserved.process);
+        expiredCount.increment();
+        Watchdog.destroy(reserved.process);
+    }
+
+    /**
+     * Schedules as many process starts as are needed to fill the reservoir,
+     * no faster than the max spawn rate.
+     */
+    private synchronized void replenish() {
+        while (!closed && idle.size() + pending < size) {
+            final long now = System.nanoTime();
+            final long next = Math.max(now, nextSpawnNanos);
+            nextSpawnNanos = next + spawnIntervalNanos;
+            pending++;
+            SPAWNER.schedule(this::spawn, next - now, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void spawn() {
+        try {
+            if (closed) return;
+            final long start = System.nanoTime();
+            final Process process = new ProcessBuilder(command).start();
+            final long now = System.nanoTime();
+            spawnLatencyNanos.record(now - start);
+            spawnCount.increment();
+            final Reserved reserved = new Reserved(process, now + TimeUnit.MILLISECONDS.toNanos(maxIdleMillis));
+            idle.addLast(reserved);
+            // closed in the meantime
+            if (closed && idle.remove(reserved)) Watchdog.destroy(process);
+        } catch (IOException | RuntimeException e) {
+            spawnFailureCount.increment();
+            LOG.log(Level.WARNING, "Failed to start reserved process: " + e, e);
+        } finally {
+            synchronized (this) {
+                pending--;
+            }
+        }
+    }
+
+    /**
+     * Number of processes currently in reserve.
+     *
+     * @return idle processes
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * Number of times {@link #take()} returned a reserved process.
+     *
+     * @return hits
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Number of times {@link #take()} returned {@code null}.
+     *
+     * @return misses
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Share of {@link #take()} calls that returned a reserved process.
+     *
+     * @return hit rate between 0 and 1
+     */
+    public double getHitRate() {
+        final long hits = getHitCount();
+        final long total = hits + getMissCount();
+        return total == 0 ? 0 : hits / (double) total;
+    }
+
+    public long getSpawnCount() {
+        return spawnCount.sum();
+    }
+
+    public long getSpawnFailureCount() {
+        return spawnFailureCount.sum();
+    }
+
+    /**
+     * Number of reserved processes discarded, because they exceeded the max idle age or died.
+     *
+     * @return expired processes
+     */
+    public long getExpiredCount() {
+        return expiredCount.sum();
+    }
+
+    /**
+     * Mean time it took to start a process.
+     *
+     * @return mean spawn latency in ms
+     */
+    public double getSpawnLatencyMeanMillis() {
+        return spawnLatencyNanos.getMean() / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * 99th percentile of the time it took to start a process.
+     *
+     * @return spawn latency in ms
+     */
+    public double getSpawnLatencyP99Millis() {
+        return spawnLatencyNanos.getPercentile(99) / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Destroys all reserved processes and stops starting new ones.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        sweep.cancel(false);
+        for (Reserved reserved = idle.pollFirst(); reserved != null; reserved = idle.pollFirst()) {
+            Watchdog.destroy(reserved.process);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ProcessReservoir{" +
+            "command=" + command +
+            ", size=" + size +
+            ", maxIdleMillis=" + maxIdleMillis +
+            ", maxSpawnsPerSecond=" + maxSpawnsPerSecond +
+            ", idle=" + idle.size() +
+            ", hitRate=" + getHitRate() +
+            '}';
+    }
+
+    private static final class Reserved {
+        private final Process process;
+        private final long expires;
+
+        Reserved(final Process process, final long expires) {
+            this.process = process;
+            this.expires = expires;
+        }
+
+        boolean isUsable(final long now) {
+            return expires - now > 0 && process.isAlive();
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import java.io.Closeable;
+import java.lang.reflect.Method;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Shared scheduler for {@link ReaderPump}s, i.e. the tasks that drain
+ * stdout and stderr of <code>osascript</code> and <code>osacompile</code> processes.
+ * <p>
+ * On Java 21 and later, pumps run on virtual threads by default. Otherwise, they run in
+ * a pool of daemon threads, that are reused for later pumps. Pumps never wait for a thread:
+ * If no pooled thread is idle and the pool has reached its max size, the pump runs in a
+ * new, unpooled daemon thread. Queueing pumps could otherwise deadlock, e.g. when all
+ * pooled threads drain stdout of processes, that are blocked writing to a full stderr pipe,
+ * whose pump is still waiting in the queue.
+ * <p>
+ * The default scheduler can be configured with the system properties
+ * <code>japlscript.pump.threads</code> (max number of pooled platform threads) and
+ * <code>japlscript.pump.virtual</code> (<code>false</code> to disable virtual threads),
+ * or replaced altogether using {@link #setDefault(PumpScheduler)}.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ * @see Osascript
+ * @see Osacompile
+ * @see CompiledScript
+ */
+public class PumpScheduler implements Executor, Closeable {
+
+    private static final Logger LOG = Logger.getLogger(PumpScheduler.class.getName());
+    public static final String THREADS_PROPERTY = "japlscript.pump.threads";
+    public static final String VIRTUAL_PROPERTY = "japlscript.pump.virtual";
+    public static final int DEFAULT_MAX_THREADS = Math.max(32, Runtime.getRuntime().availableProcessors() * 8);
+    private static final long KEEP_ALIVE_SECONDS = 60;
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findNewVirtualThreadPerTaskExecutor();
+    private static PumpScheduler defaultInstance;
+
+    private final ExecutorService executorService;
+    private final int maxThreads;
+    private final boolean virtual;
+    private final AtomicInteger threadNumber = new AtomicInteger();
+    private final AtomicLong overflowCount = new AtomicLong();
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicLong completedCount = new AtomicLong();
+
+    /**
+     * Creates a scheduler backed by a pool of daemon threads.
+     * Pumps that find no idle pooled thread, when the pool is full, run in a new unpooled thread.
+     *
+     * @param maxThreads max number of pooled threads
+     */
+    public PumpScheduler(final int maxThreads) {
+        if (maxThreads < 1) throw new IllegalArgumentException("Max threads must be greater than 0: " + maxThreads);
+        this.executorService = new ThreadPoolExecutor(0, maxThreads,
+            KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new SynchronousQueue<>(), this::newThread, this::overflow);
+        this.maxThreads = maxThreads;
+        this.virtual = false;
+    }
+
+    private Thread newThread(final Runnable r) {
+        final Thread thread = new Thread(r, "JaplScript Pump " + threadNumber.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Runs a pump that could not be handed to a pooled thread in a new thread.
+     */
+    private void overflow(final Runnable r, final ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) throw new RejectedExecutionException("Scheduler is closed.");
+        overflowCount.incrementAndGet();
+        if (LOG.isLoggable(Level.FINE)) LOG.fine("All " + maxThreads + " pooled pump threads are busy, starting an unpooled thread.");
+        newThread(r).start();
+    }
+
+    private PumpScheduler(final ExecutorService virtualThreadExecutorService) {
+        this.executorService = virtualThreadExecutorService;
+        this.maxThreads = Integer.MAX_VALUE;
+        this.virtual = true;
+    }
+
+    /**
+     * Creates a scheduler that runs each pump in its own virtual thread.
+     *
+     * @return virtual thread scheduler
+     * @throws UnsupportedOperationException if virtual threads are not available
+     * @see #isVirtualThreadsAvailable()
+     */
+    public static PumpScheduler newVirtualThreadScheduler() {
+        if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR == null) {
+            throw new UnsupportedOperationException("Virtual threads are not available in Java " + Runtime.version());
+        }
+        try {
+            return new PumpScheduler((ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null));
+        } catch (Exception e) {
+            throw new UnsupportedOperationException("Failed to create virtual thread executor: " + e, e);
+        }
+    }
+
+    /**
+     * Indicates whether virtual threads are available, i.e., whether this runs on Java 21 or later.
+     *
+     * @return true, if virtual threads are available
+     */
+    public static boolean isVirtualThreadsAvailable() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * Scheduler shared by all executors.
+     *
+     * @return default scheduler
+     */
+    public static synchronized PumpScheduler getDefault() {
+        if (defaultInstance == null || defaultInstance.isClosed()) {
+            defaultInstance = createDefault();
+        }
+        return defaultInstance;
+    }
+
+    /**
+     * Replaces the shared scheduler. The previous scheduler is <em>not</em> closed,
+     * as it may still be in use.
+     *
+     * @param scheduler scheduler or {@code null} to restore the default
+     */
+    public static synchronized void setDefault(final PumpScheduler scheduler) {
+        defaultInstance = scheduler;
+    }
+
+    private static PumpScheduler createDefault() {
+        if (isVirtualThreadsAvailable() && !"false".equalsIgnoreCase(System.getProperty(VIRTUAL_PROPERTY))) {
+            try {
+                return newVirtualThreadScheduler();
+            } catch (UnsupportedOperationException e) {
+                LOG.log(Level.WARNING, e.toString(), e);
+            }
+        }
+        int maxThreads = DEFAULT_MAX_THREADS;
+        final String threads = System.getProperty(THREADS_PROPERTY);
+        if (threads != null) {
+            try {
+                maxThreads = Integer.parseInt(threads.trim());
+            } catch (NumberFormatException e) {
+                LOG.warning("Ignoring invalid value for " + THREADS_PROPERTY + ": " + threads);
+            }
+        }
+        return new PumpScheduler(maxThreads);
+    }
+
+    private static Method findNewVirtualThreadPerTaskExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Schedules the given pump.
+     *
+     * @param pump pump
+     * @return future that completes, once the pump is done
+     */
+    public CompletableFuture<Void> submit(final Runnable pump) {
+        return CompletableFuture.runAsync(pump, this);
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+        executorService.execute(() -> {
+            activeCount.incrementAndGet();
+            try {
+                command.run();
+            } finally {
+                activeCount.decrementAndGet();
+                completedCount.incrementAndGet();
+            }
+        });
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * Max number of pooled threads used for pumps, {@link Integer#MAX_VALUE} for virtual threads.
+     *
+     * @return max threads
+     */
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    /**
+     * Number of pumps that ran in an unpooled thread, because all pooled threads were busy.
+     *
+     * @return overflow count
+     */
+    public long getOverflowCount() {
+        return overflowCount.get();
+    }
+
+    /**
+     * Number of currently running pumps.
+     *
+     * @return active pumps
+     */
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+    /**
+     * Number of pumps that have finished.
+     *
+     * @return completed pumps
+     */
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    public boolean isClosed() {
+        return executorService.isShutdown();
+    }
+
+    /**
+     * Shuts down this scheduler. Already scheduled pumps still run.
+     */
+    @Override
+    public void close() {
+        executorService.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return "PumpScheduler{" +
+            "virtual=" + virtual +
+            ", maxThreads=" + maxThreads +
+            ", overflowCount=" + overflowCount +
+            ", activeCount=" + activeCount +
+            ", completedCount=" + completedCount +
+            '}';
+    }
+}
@@ -13,6 +13,10 @@ import java.util.logging.Logger;
 
 /**
  * Pump that continuously reads from a {@link Reader}.
+ * <p>
+ * Read chars are collected in a {@link ChunkedCharSequence}, so that large
+ * values are not copied over and over while they grow. The trimmed value
+ * is available either as {@link #getCharSequence() view} or as {@link #getValue() String}.
  *
  * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
  */
@@ -21,6 +25,7 @@ public class ReaderPump implements Runnable {
     private static final Logger LOG = Logger.getLogger(ReaderPump.class.getName());
     private static final int ONE_KB = 1024;
     private final Reader in;
+    private ChunkedCharSequence chars;
     private String value;
     private IOException ioException;
 
@@ -28,10 +33,39 @@ public class ReaderPump implements Runnable {
         this.in = in;
     }
 
+    /**
+     * Trimmed value as string. The string is created on first access.
+     *
+     * @return value
+     */
     public String getValue() {
+        if (this.value == null && this.chars != null) {
+            this.value = this.chars.toString();
+        }
         return this.value;
     }
 
+    /**
+     * Trimmed value as view of the read chunks, i.e. without copying.
+     *
+     * @return value
+     */
+    public CharSequence getCharSequence() {
+        if (this.value != null || this.chars == null) return this.value;
+        return this.chars;
+    }
+
+    /**
+     * Releases the chunks holding the read chars. Only the value's string
+     * representation remains available, if it has been created before.
+     */
+    public void release() {
+        if (this.chars != null) {
+            this.chars.release();
+            this.chars = null;
+        }
+    }
+
     public IOException getIOException() {
         return ioException;
     }
@@ -39,15 +73,16 @@ public class ReaderPump implements Runnable {
     @Override
     public void run() {
         final char[] cbuf = new char[ONE_KB];
-        final StringBuilder sb = new StringBuilder();
+        final ChunkedCharSequence sequence = new ChunkedCharSequence();
         int count;
         try {
             while ((count = in.read(cbuf)) != -1) {
-                sb.append(cbuf, 0, count);
+                sequence.append(cbuf, 0, count);
             }
-            this.value = sb.toString().trim();
+            this.chars = sequence.trim();
         } catch (IOException ioe) {
             if (LOG.isLoggable(Level.FINE)) LOG.log(Level.FINE, ioe.toString(), ioe);
+            sequence.release();
             this.value = ioe.toString();
             this.ioException = ioe;
         } finally {
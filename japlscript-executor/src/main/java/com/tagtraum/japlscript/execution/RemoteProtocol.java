@@ -0,0 +1,303 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Framed binary protocol spoken between {@link RemoteScriptClient} and {@link RemoteScriptServer}.
+ * <p>
+ * Each frame consists of
+ * <ul>
+ *     <li><code>int</code> length of the rest of the frame</li>
+ *     <li><code>byte</code> frame type</li>
+ *     <li><code>int</code> request id, chosen by the client and unique per connection</li>
+ *     <li>type specific payload</li>
+ * </ul>
+ * All numbers are big endian, strings are encoded as <code>int</code> byte length
+ * followed by UTF-8 bytes, a length of <code>-1</code> stands for {@code null}.
+ * <p>
+ * Responses refer to their request's id, so that many requests may be in flight
+ * on a single connection and responses may arrive in any order.
+ * A connection starts with the client sending {@link #MAGIC}, {@link #VERSION} and
+ * a shared secret token as string, which the server checks before it reads any frame.
+ * <p>
+ * Frames are read incrementally, i.e. buffers only grow with the bytes actually received,
+ * not with the length announced by the peer.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+final class RemoteProtocol {
+
+    static final int MAGIC = 0x4a41504c; // JAPL
+    static final int VERSION = 2;
+    /**
+     * Max length of frames sent by the server, i.e. results.
+     */
+    static final int MAX_FRAME_LENGTH = 64 * 1024 * 1024;
+    /**
+     * Max length of frames sent by clients, i.e. scripts and their arguments.
+     */
+    static final int MAX_REQUEST_FRAME_LENGTH = 4 * 1024 * 1024;
+    static final int MAX_TOKEN_LENGTH = 1024;
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Client to server: <code>long</code> deadline in ms (0 for none), script,
+     * <code>int</code> argument count, arguments.
+     */
+    static final byte EXECUTE = 1;
+    /**
+     * Server to client: return value.
+     */
+    static final byte RESULT = 2;
+    /**
+     * Server to client: <code>byte</code> error kind, error message.
+     */
+    static final byte ERROR = 3;
+    /**
+     * Client to server: cancels the request with the frame's request id. No response.
+     */
+    static final byte CANCEL = 4;
+    /**
+     * Client to server: no payload. Answered with {@link #PONG}.
+     */
+    static final byte PING = 5;
+    /**
+     * Server to client: no payload.
+     */
+    static final byte PONG = 6;
+
+    static final byte ERROR_SCRIPT = 1;
+    static final byte ERROR_DEADLINE = 2;
+    static final byte ERROR_IO = 3;
+    static final byte ERROR_REJECTED = 4;
+
+    private RemoteProtocol() {
+    }
+
+    /**
+     * Writes the connection preamble.
+     *
+     * @param out out
+     * @param token shared secret or {@code null}
+     * @throws IOException if writing fails
+     */
+    static void writePreamble(final DataOutputStream out, final String token) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        if (token == null) {
+            out.writeInt(-1);
+        } else {
+            final byte[] b = token.getBytes(StandardCharsets.UTF_8);
+            if (b.length > MAX_TOKEN_LENGTH) throw new IOException("Token is too long: " + b.length);
+            out.writeInt(b.length);
+            out.write(b);
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads and checks the connection preamble.
+     *
+     * @param in in
+     * @param token expected shared secret or {@code null}, if any token is accepted
+     * @throws IOException if the peer does not speak this protocol or sent the wrong token
+     */
+    static void readPreamble(final DataInputStream in, final String token) throws IOException {
+        final int magic = in.readInt();
+        if (magic != MAGIC) throw new IOException("Not a JaplScript remote connection: " + Integer.toHexString(magic));
+        final int version = in.readInt();
+        if (version != VERSION) throw new IOException("Unsupported protocol version: " + version);
+        final int length = in.readInt();
+        if (length < -1 || length > MAX_TOKEN_LENGTH) throw new IOException("Illegal token length: " + length);
+        final byte[] received = length == -1 ? null : new byte[length];
+        if (received != null) in.readFully(received);
+        if (token != null && (received == null
+            || !MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), received))) {
+            throw new IOException("Wrong token.");
+        }
+    }
+
+    /**
+     * Frame, as read from a stream.
+     */
+    static final class Frame {
+        final byte type;
+        final int requestId;
+        final DataInputStream payload;
+
+        private Frame(final byte type, final int requestId, final DataInputStream payload) {
+            this.type = type;
+            this.requestId = requestId;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * Reads the next frame of at most {@link #MAX_FRAME_LENGTH} bytes.
+     *
+     * @param in in
+     * @return frame or {@code null}, if the stream ended before a new frame
+     * @throws IOException if reading fails or the frame is malformed
+     */
+    static Frame readFrame(final DataInputStream in) throws IOException {
+        return readFrame(in, MAX_FRAME_LENGTH);
+    }
+
+    /**
+     * Reads the next frame.
+     *
+     * @param in in
+     * @param maxLength max frame length
+     * @return frame or {@code null}, if the stream ended before a new frame
+     * @throws IOException if reading fails or the frame is malformed
+     */
+    static Frame readFrame(final DataInputStream in, final int maxLength) throws IOException {
+        final int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (length < 5 || length > maxLength) throw new IOException("Illegal frame length: " + length);
+        final byte[] frame = readFully(in, length);
+        final DataInputStream payload = new DataInputStream(new ByteArrayInputStream(frame, 5, length - 5));
+        final int requestId = (frame[1] & 0xff) << 24 | (frame[2] & 0xff) << 16 | (frame[3] & 0xff) << 8 | frame[4] & 0xff;
+        return new Frame(frame[0], requestId, payload);
+    }
+
+    /**
+     * Reads the given number of bytes into a buffer that grows as they arrive.
+     */
+    private static byte[] readFully(final DataInputStream in, final int length) throws IOException {
+        byte[] bytes = new byte[Math.min(length, CHUNK_SIZE)];
+        int count = 0;
+        while (count < length) {
+            if (count == bytes.length) bytes = Arrays.copyOf(bytes, (int) Math.min(length, 2L * bytes.length));
+            final int read = in.read(bytes, count, bytes.length - count);
+            if (read < 0) throw new EOFException("Frame ended after " + count + " of " + length + " bytes.");
+            count += read;
+        }
+        return bytes;
+    }
+
+    /**
+     * Builder for a single frame. The frame is only written by {@link #writeTo(OutputStream)},
+     * so that frames of concurrent requests don't interleave.
+     */
+    static final class FrameBuilder {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        FrameBuilder(final byte type, final int requestId) throws IOException {
+            out.writeInt(0); // length placeholder
+            out.writeByte(type);
+            out.writeInt(requestId);
+        }
+
+        FrameBuilder writeLong(final long l) throws IOException {
+            out.writeLong(l);
+            return this;
+        }
+
+        FrameBuilder writeInt(final int i) throws IOException {
+            out.writeInt(i);
+            return this;
+        }
+
+        FrameBuilder writeByte(final int b) throws IOException {
+            out.writeByte(b);
+            return this;
+        }
+
+        FrameBuilder writeString(final CharSequence s) throws IOException {
+            if (s == null) {
+                out.writeInt(-1);
+            } else {
+                final byte[] b = s.toString().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(b.length);
+                out.write(b);
+            }
+            return this;
+        }
+
+        FrameBuilder writeStrings(final List<String> strings) throws IOException {
+            out.writeInt(strings.size());
+            for (final String s : strings) {
+                writeString(s);
+            }
+            return this;
+        }
+
+        byte[] toByteArray() throws IOException {
+            final byte[] frame = bytes.toByteArray();
+            final int length = frame.length - 4;
+            if (length > MAX_FRAME_LENGTH) throw new IOException("Frame too large: " + length);
+            frame[0] = (byte) (length >>> 24);
+            frame[1] = (byte) (length >>> 16);
+            frame[2] = (byte) (length >>> 8);
+            frame[3] = (byte) length;
+            return frame;
+        }
+
+        void writeTo(final OutputStream out) throws IOException {
+            final byte[] frame = toByteArray();
+            synchronized (out) {
+                out.write(frame);
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * Reads a string as written by {@link FrameBuilder#writeString(CharSequence)}.
+     *
+     * @param in in
+     * @return string, may be {@code null}
+     * @throws IOException if reading fails
+     */
+    static String readString(final DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length == -1) return null;
+        // payloads are fully buffered, so more bytes than available can only mean a malformed frame
+        if (length < 0 || length > in.available()) throw new IOException("Illegal string length: " + length);
+        final byte[] b = new byte[length];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads strings as written by {@link FrameBuilder#writeStrings(List)}.
+     *
+     * @param in in
+     * @return strings
+     * @throws IOException if reading fails
+     */
+    static List<String> readStrings(final DataInputStream in) throws IOException {
+        final int count = in.readInt();
+        if (count < 0 || count > in.available() / 4) throw new IOException("Illegal string count: " + count);
+        if (count == 0) return Collections.emptyList();
+        final List<String> strings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            strings.add(readString(in));
+        }
+        return strings;
+    }
+}
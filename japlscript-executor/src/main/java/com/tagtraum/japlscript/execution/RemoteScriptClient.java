@@ -0,0 +1,423 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Client for a {@link RemoteScriptServer}, typically running on a Mac, while
+ * the client runs on any platform.
+ * <p>
+ * The client keeps a small pool of connections. Requests are pipelined, i.e. many
+ * scripts may be in flight on one connection at the same time. A new connection is only
+ * opened, if all existing connections have at least <code>maxInFlightPerConnection</code>
+ * outstanding requests and the pool is not full yet. Broken connections are discarded
+ * and their outstanding requests fail with an {@link IOException}.
+ * <p>
+ * Connections are opened on their own reader thread, i.e. callers never block on connecting.
+ * Requests for a connection that is not established yet are sent, once it is.
+ * <p>
+ * Deadlines are sent to the server, which enforces them as well. Requests that exceed
+ * their deadline or are cancelled locally are cancelled on the server.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ * @see RemoteScriptExecutor
+ * @see RemoteProtocol
+ */
+public class RemoteScriptClient implements Closeable {
+
+    private static final Logger LOG = Logger.getLogger(RemoteScriptClient.class.getName());
+    public static final int DEFAULT_MAX_CONNECTIONS = 4;
+    public static final int DEFAULT_MAX_IN_FLIGHT_PER_CONNECTION = 32;
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 5000;
+
+    private final InetSocketAddress address;
+    private final int maxConnections;
+    private final int maxInFlightPerConnection;
+    private final int connectTimeoutMillis;
+    private final String token;
+    private final List<Connection> connections = new CopyOnWriteArrayList<>();
+    private final LongAdder requestCount = new LongAdder();
+    private final LongAdder failureCount = new LongAdder();
+    private volatile boolean closed;
+
+    /**
+     * Creates a client with default settings.
+     *
+     * @param host server host
+     * @param port server port
+     */
+    public RemoteScriptClient(final String host, final int port) {
+        this(new InetSocketAddress(host, port), DEFAULT_MAX_CONNECTIONS, DEFAULT_MAX_IN_FLIGHT_PER_CONNECTION,
+            DEFAULT_CONNECT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Creates a client.
+     *
+     * @param address server address
+     * @param maxConnections max number of pooled connections
+     * @param maxInFlightPerConnection number of outstanding requests per connection, before
+     *                                 another connection is opened
+     * @param connectTimeoutMillis connect timeout in ms
+     */
+    public RemoteScriptClient(final InetSocketAddress address, final int maxConnections,
+                              final int maxInFlightPerConnection, final int connectTimeoutMillis) {
+        this(address, maxConnections, maxInFlightPerConnection, connectTimeoutMillis, null);
+    }
+
+    /**
+     * Creates a client.
+     *
+     * @param address server address
+     * @param maxConnections max number of pooled connections
+     * @param maxInFlightPerConnection number of outstanding requests per connection, before
+     *                                 another connection is opened
+     * @param connectTimeoutMillis connect timeout in ms
+     * @param token shared secret expected by the server or {@code null}
+     */
+    public RemoteScriptClient(final InetSocketAddress address, final int maxConnections,
+                              final int maxInFlightPerConnection, final int connectTimeoutMillis,
+                              final String token) {
+        if (maxConnections < 1) throw new IllegalArgumentException("Max connections must be greater than 0: " + maxConnections);
+        if (maxInFlightPerConnection < 1) throw new IllegalArgumentException("Max in flight requests must be greater than 0: " + maxInFlightPerConnection);
+        this.address = address;
+        this.maxConnections = maxConnections;
+        this.maxInFlightPerConnection = maxInFlightPerConnection;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.token = token;
+    }
+
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public int getMaxInFlightPerConnection() {
+        return maxInFlightPerConnection;
+    }
+
+    /**
+     * Executes the given script on the server.
+     * <p>
+     * The returned future fails with a {@link JaplScriptException}, if the script failed,
+     * with a {@link DeadlineExceededException}, if it did not finish in time, or with an
+     * {@link IOException}, if the server could not be reached or rejected the request.
+     * Cancelling the future cancels the execution on the server.
+     *
+     * @param script script
+     * @param arguments arguments passed to the script's <code>run</code> handler
+     * @param deadlineMillis deadline in ms, values less than 1 mean no deadline
+     * @return future return value
+     */
+    public CompletableFuture<String> execute(final CharSequence script, final List<String> arguments,
+                                             final long deadlineMillis) {
+        requestCount.increment();
+        final CompletableFuture<String> future = new CompletableFuture<>();
+        try {
+            final Connection connection = acquire();
+            final int requestId = connection.register(future, script, deadlineMillis);
+            future.whenComplete((result, throwable) -> {
+                // cancelled or deadline exceeded locally
+                if (connection.pending.remove(requestId) != null) connection.cancel(requestId);
+            });
+            connection.sendWhenConnected(requestId, new RemoteProtocol.FrameBuilder(RemoteProtocol.EXECUTE, requestId)
+                .writeLong(Math.max(0, deadlineMillis))
+                .writeString(script)
+                .writeStrings(arguments == null ? Collections.emptyList() : arguments));
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+        }
+        future.whenComplete((result, throwable) -> {
+            if (throwable != null) failureCount.increment();
+        });
+        return Watchdog.withDeadline(future, deadlineMillis, script);
+    }
+
+    /**
+     * Checks whether the server responds.
+     *
+     * @return future that completes, once the server answered
+     */
+    public CompletableFuture<Void> ping() {
+        final CompletableFuture<String> future = new CompletableFuture<>();
+        try {
+            final Connection connection = acquire();
+            final int requestId = connection.register(future, null, 0);
+            connection.sendWhenConnected(requestId, new RemoteProtocol.FrameBuilder(RemoteProtocol.PING, requestId));
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+        }
+        return future.thenApply(result -> null);
+    }
+
+    /**
+     * Picks the connection with the fewest outstanding requests or starts opening a new one.
+     * Connections that are still being opened count as well, so that concurrent callers
+     * don't all open connections of their own.
+     */
+    private synchronized Connection acquire() throws IOException {
+        if (closed) throw new IOException("Client is closed.");
+        connections.removeIf(connection -> connection.closed);
+        Connection leastBusy = null;
+        for (final Connection connection : connections) {
+            if (leastBusy == null || connection.pending.size() < leastBusy.pending.size()) {
+                leastBusy = connection;
+            }
+        }
+        if (leastBusy == null
+            || leastBusy.pending.size() >= maxInFlightPerConnection && connections.size() < maxConnections) {
+            final Connection connection = new Connection();
+            connections.add(connection);
+            return connection;
+        }
+        return leastBusy;
+    }
+
+    /**
+     * Number of requests not answered yet, including requests waiting for their connection.
+     *
+     * @return outstanding requests
+     */
+    public int getOutstandingCount() {
+        int count = 0;
+        for (final Connection connection : connections) {
+            count += connection.pending.size();
+        }
+        return count;
+    }
+
+    /**
+     * Number of currently open connections.
+     *
+     * @return connections
+     */
+    public int getConnectionCount() {
+        int count = 0;
+        for (final Connection connection : connections) {
+            if (!connection.closed) count++;
+        }
+        return count;
+    }
+
+    public long getRequestCount() {
+        return requestCount.sum();
+    }
+
+    public long getFailureCount() {
+        return failureCount.sum();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Closes all connections. Outstanding requests fail.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        for (final Connection connection : connections) {
+            connection.close(new IOException("Client closed."));
+        }
+        connections.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "RemoteScriptClient{" +
+            "address=" + address +
+            ", connections=" + getConnectionCount() +
+            ", outstanding=" + getOutstandingCount() +
+            '}';
+    }
+
+    private static Throwable toException(final byte kind, final String message, final Pending pending) {
+        switch (kind) {
+            case RemoteProtocol.ERROR_SCRIPT:
+                return new JaplScriptException(message, pending.script);
+            case RemoteProtocol.ERROR_DEADLINE:
+                return new DeadlineExceededException(pending.deadlineMillis, pending.script);
+            case RemoteProtocol.ERROR_REJECTED:
+                return new IOException("Rejected by server: " + message);
+            default:
+                return new IOException(message);
+        }
+    }
+
+    private static final class Pending {
+        private final CompletableFuture<String> future;
+        private final String script;
+        private final long deadlineMillis;
+
+        Pending(final CompletableFuture<String> future, final String script, final long deadlineMillis) {
+            this.future = future;
+            this.script = script;
+            this.deadlineMillis = deadlineMillis;
+        }
+    }
+
+    /**
+     * Single connection with its reader thread, which also opens the connection.
+     */
+    private final class Connection implements Runnable {
+
+        private final Socket socket = new Socket();
+        private final CompletableFuture<Void> connected = new CompletableFuture<>();
+        private final AtomicInteger nextRequestId = new AtomicInteger();
+        private final Map<Integer, Pending> pending = new ConcurrentHashMap<>();
+        // written by the reader thread before connected completes
+        private DataOutputStream out;
+        private DataInputStream in;
+        private volatile boolean closed;
+
+        Connection() {
+            final Thread reader = new Thread(this, "JaplScript Remote Client " + address);
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        private void connect() throws IOException {
+            try {
+                socket.setTcpNoDelay(true);
+                socket.setKeepAlive(true);
+                socket.connect(address, connectTimeoutMillis);
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                RemoteProtocol.writePreamble(out, token);
+            } catch (IOException e) {
+                throw new IOException("Failed to connect to " + address + ": " + e, e);
+            }
+        }
+
+        int register(final CompletableFuture<String> future, final CharSequence script, final long deadlineMillis) {
+            final int requestId = nextRequestId.incrementAndGet();
+            pending.put(requestId, new Pending(future, script == null ? null : script.toString(), deadlineMillis));
+            return requestId;
+        }
+
+        /**
+         * Sends the frame of a registered request, once the connection is established.
+         * If the connection cannot be established or sending fails, the request fails.
+         */
+        void sendWhenConnected(final int requestId, final RemoteProtocol.FrameBuilder frame) {
+            connected.whenComplete((v, throwable) -> {
+                Throwable failure = throwable;
+                // skip requests that completed locally in the meantime
+                if (failure == null && pending.containsKey(requestId)) {
+                    try {
+                        send(frame);
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                }
+                if (failure != null) {
+                    // the request may have been registered after the connection was closed
+                    final Pending p = pending.remove(requestId);
+                    if (p != null) p.future.completeExceptionally(failure);
+                }
+            });
+        }
+
+        void send(final RemoteProtocol.FrameBuilder frame) throws IOException {
+            try {
+                frame.writeTo(out);
+            } catch (IOException e) {
+                close(e);
+                throw e;
+            }
+        }
+
+        void cancel(final int requestId) {
+            // requests are only sent once connected
+            if (closed || !connected.isDone() || connected.isCompletedExceptionally()) return;
+            try {
+                send(new RemoteProtocol.FrameBuilder(RemoteProtocol.CANCEL, requestId));
+            } catch (IOException e) {
+                if (LOG.isLoggable(Level.FINE)) LOG.fine("Failed to cancel request " + requestId + ": " + e);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                connect();
+            } catch (IOException e) {
+                close(e);
+                return;
+            }
+            connected.complete(null);
+            IOException failure = null;
+            try {
+                for (RemoteProtocol.Frame frame = RemoteProtocol.readFrame(in); frame != null;
+                     frame = RemoteProtocol.readFrame(in)) {
+                    final Pending p = pending.remove(frame.requestId);
+                    if (p == null) continue; // cancelled or deadline exceeded
+                    switch (frame.type) {
+                        case RemoteProtocol.RESULT:
+                        case RemoteProtocol.PONG:
+                            p.future.complete(frame.type == RemoteProtocol.RESULT
+                                ? RemoteProtocol.readString(frame.payload)
+                                : null);
+                            break;
+                        case RemoteProtocol.ERROR:
+                            final byte kind = frame.payload.readByte();
+                            p.future.completeExceptionally(toException(kind, RemoteProtocol.readString(frame.payload), p));
+                            break;
+                        default:
+                            p.future.completeExceptionally(new IOException("Unexpected frame type: " + frame.type));
+                    }
+                }
+            } catch (IOException e) {
+                failure = e;
+            }
+            close(failure == null
+                ? new IOException("Connection closed by " + address)
+                : new IOException("Connection to " + address + " failed: " + failure, failure));
+        }
+
+        void close(final IOException cause) {
+            if (closed) return;
+            closed = true;
+            if (LOG.isLoggable(Level.FINE)) LOG.fine("Closing connection to " + address + ": " + cause);
+            connected.completeExceptionally(cause);
+            try {
+                // also aborts connecting
+                socket.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            for (final Integer requestId : pending.keySet()) {
+                final Pending p = pending.remove(requestId);
+                if (p != null) p.future.completeExceptionally(cause);
+            }
+        }
+    }
+}
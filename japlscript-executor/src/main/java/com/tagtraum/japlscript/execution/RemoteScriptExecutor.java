@@ -0,0 +1,66 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Executes scripts on a {@link RemoteScriptServer}, using a shared {@link RemoteScriptClient}.
+ * <p>
+ * Asynchronous executions don't block any thread while the script is running.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ * @see RemoteScriptExecutorProvider
+ */
+public class RemoteScriptExecutor extends ScriptExecutor {
+
+    private final RemoteScriptClient client;
+
+    /**
+     * @param client client, typically shared by many executors
+     */
+    public RemoteScriptExecutor(final RemoteScriptClient client) {
+        this.client = client;
+    }
+
+    public RemoteScriptClient getClient() {
+        return client;
+    }
+
+    @Override
+    public boolean isArgumentsSupported() {
+        return true;
+    }
+
+    @Override
+    protected String executeImpl() throws IOException {
+        final CompletableFuture<String> future = client.execute(getScript(), getArguments(), getEffectiveDeadlineMillis());
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            final InterruptedIOException interruptedIOException = new InterruptedIOException(e.toString());
+            interruptedIOException.initCause(e);
+            throw interruptedIOException;
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(cause.toString(), cause);
+        }
+    }
+
+    @Override
+    protected CompletableFuture<String> executeAsyncImpl(final Executor executor) {
+        return client.execute(getScript(), getArguments(), getEffectiveDeadlineMillis());
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+/**
+ * Provides {@link RemoteScriptExecutor}s sharing one {@link RemoteScriptClient}.
+ * <p>
+ * As it needs to be configured with a client, this provider is not discovered via
+ * {@link java.util.ServiceLoader}, but selected explicitly, e.g. via
+ * {@link Session#setScriptExecutorProvider(ScriptExecutorProvider)}.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class RemoteScriptExecutorProvider implements ScriptExecutorProvider {
+
+    public static final String NAME = "remote";
+    public static final int PRIORITY = 0;
+
+    private final RemoteScriptClient client;
+
+    /**
+     * @param client client
+     */
+    public RemoteScriptExecutorProvider(final RemoteScriptClient client) {
+        this.client = client;
+    }
+
+    public RemoteScriptClient getClient() {
+        return client;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public int getPriority() {
+        return PRIORITY;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return !client.isClosed();
+    }
+
+    @Override
+    public ScriptExecutor newInstance() {
+        return new RemoteScriptExecutor(client);
+    }
+
+    @Override
+    public String toString() {
+        return "RemoteScriptExecutorProvider{client=" + client + '}';
+    }
+}
@@ -0,0 +1,410 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Executes scripts on behalf of {@link RemoteScriptClient}s, using local {@link ScriptExecutor}s.
+ * <p>
+ * At most <code>maxConcurrency</code> scripts are executed at the same time. Up to
+ * <code>maxQueued</code> further requests wait for execution, additional requests are
+ * rejected. Requests are cancelled, when the client cancels them or disconnects.
+ * <p>
+ * Clients can execute arbitrary scripts, including <code>do shell script</code>.
+ * Therefore, the server only listens on the loopback interface, unless it is
+ * given both an explicit bind address and a shared secret token, which clients must send
+ * before any request is read. At most <code>maxConnections</code> clients may be connected
+ * at the same time and clients must send the token within {@link #HANDSHAKE_TIMEOUT_MILLIS}.
+ * Note that the token is sent in clear text, so use a secure tunnel on untrusted networks.
+ * <p>
+ * To start a server from the command line, run
+ * <pre>java [-Djaplscript.remote.token=secret] com.tagtraum.japlscript.execution.RemoteScriptServer [port [maxConcurrency [bindAddress]]]</pre>
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ * @see RemoteProtocol
+ */
+public class RemoteScriptServer implements Closeable {
+
+    private static final Logger LOG = Logger.getLogger(RemoteScriptServer.class.getName());
+    public static final int DEFAULT_PORT = 7394;
+    public static final int DEFAULT_MAX_CONCURRENCY = Runtime.getRuntime().availableProcessors();
+    public static final int DEFAULT_MAX_QUEUED = 256;
+    public static final int DEFAULT_MAX_CONNECTIONS = 64;
+    public static final int HANDSHAKE_TIMEOUT_MILLIS = 10000;
+    /**
+     * System property for the shared secret token used by {@link #main(String[])}.
+     */
+    public static final String TOKEN_PROPERTY = "japlscript.remote.token";
+
+    private final InetSocketAddress address;
+    private final ScriptExecutorProvider provider;
+    private final int maxConcurrency;
+    private final String token;
+    private volatile int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    private final ThreadPoolExecutor workers;
+    private final Set<ClientConnection> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final LongAdder requestCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+    private final LongAdder cancelledCount = new LongAdder();
+    private ServerSocket serverSocket;
+    private volatile boolean closed;
+
+    /**
+     * Creates a server on the given port of the loopback interface, using {@link ScriptExecutor#newInstance()}
+     * and default concurrency limits.
+     *
+     * @param port port, 0 for any free port
+     */
+    public RemoteScriptServer(final int port) {
+        this(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), null, DEFAULT_MAX_CONCURRENCY, DEFAULT_MAX_QUEUED);
+    }
+
+    /**
+     * Creates a server without token, which may only listen on the loopback interface.
+     *
+     * @param address loopback address to bind to, port 0 for any free port
+     * @param provider provider of local executors or {@code null} to use {@link ScriptExecutor#newInstance()}
+     * @param maxConcurrency max number of concurrently executed scripts
+     * @param maxQueued max number of requests waiting for execution
+     * @throws IllegalArgumentException if the address is not a loopback address
+     */
+    public RemoteScriptServer(final InetSocketAddress address, final ScriptExecutorProvider provider,
+                              final int maxConcurrency, final int maxQueued) {
+        this(address, provider, maxConcurrency, maxQueued, null);
+    }
+
+    /**
+     * Creates a server.
+     *
+     * @param address address to bind to, port 0 for any free port
+     * @param provider provider of local executors or {@code null} to use {@link ScriptExecutor#newInstance()}
+     * @param maxConcurrency max number of concurrently executed scripts
+     * @param maxQueued max number of requests waiting for execution
+     * @param token shared secret clients must send, may only be {@code null} for loopback addresses
+     * @throws IllegalArgumentException if the token is missing for a non-loopback address
+     */
+    public RemoteScriptServer(final InetSocketAddress address, final ScriptExecutorProvider provider,
+                              final int maxConcurrency, final int maxQueued, final String token) {
+        if (maxConcurrency < 1) throw new IllegalArgumentException("Max concurrency must be greater than 0: " + maxConcurrency);
+        if (maxQueued < 1) throw new IllegalArgumentException("Max queued must be greater than 0: " + maxQueued);
+        if (token == null && (address.getAddress() == null || !address.getAddress().isLoopbackAddress())) {
+            throw new IllegalArgumentException("A token is required to listen on non-loopback address " + address);
+        }
+        if (token != null && (token.isEmpty() || token.length() > RemoteProtocol.MAX_TOKEN_LENGTH)) {
+            throw new IllegalArgumentException("Token must not be empty or longer than " + RemoteProtocol.MAX_TOKEN_LENGTH + " chars.");
+        }
+        this.address = address;
+        this.provider = provider;
+        this.maxConcurrency = maxConcurrency;
+        this.token = token;
+        final AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(maxQueued), r -> {
+                final Thread thread = new Thread(r, "JaplScript Remote Server Worker " + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        this.workers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Binds the server socket and starts accepting connections.
+     *
+     * @return this server
+     * @throws IOException if the socket cannot be bound
+     */
+    public synchronized RemoteScriptServer start() throws IOException {
+        if (serverSocket != null) throw new IllegalStateException("Server already started.");
+        if (closed) throw new IllegalStateException("Server is closed.");
+        serverSocket = new ServerSocket();
+        serverSocket.bind(address);
+        final Thread acceptor = new Thread(this::accept, "JaplScript Remote Server " + serverSocket.getLocalSocketAddress());
+        acceptor.setDaemon(true);
+        acceptor.start();
+        if (LOG.isLoggable(Level.INFO)) LOG.info("Listening on " + serverSocket.getLocalSocketAddress());
+        return this;
+    }
+
+    /**
+     * Address the server listens on, once started.
+     *
+     * @return configured address
+     */
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * Port the server is listening on.
+     *
+     * @return port or -1, if not started
+     */
+    public synchronized int getPort() {
+        return serverSocket == null ? -1 : serverSocket.getLocalPort();
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * @param maxConnections max number of connected clients, further connections are closed right away
+     */
+    public void setMaxConnections(final int maxConnections) {
+        if (maxConnections < 1) throw new IllegalArgumentException("Max connections must be greater than 0: " + maxConnections);
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * Number of scripts currently executing.
+     *
+     * @return active executions
+     */
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+    public long getRequestCount() {
+        return requestCount.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    public long getCancelledCount() {
+        return cancelledCount.sum();
+    }
+
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                final Socket socket = serverSocket.accept();
+                if (connections.size() >= maxConnections) {
+                    if (LOG.isLoggable(Level.WARNING)) LOG.warning("Too many connections, closing " + socket.getRemoteSocketAddress());
+                    socket.close();
+                    continue;
+                }
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+                final ClientConnection connection = new ClientConnection(socket);
+                connections.add(connection);
+                final Thread reader = new Thread(connection, "JaplScript Remote Server " + socket.getRemoteSocketAddress());
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (!closed) LOG.log(Level.SEVERE, "Failed to accept connection: " + e, e);
+            }
+        }
+    }
+
+    private ScriptExecutor newScriptExecutor() {
+        return provider == null ? ScriptExecutor.newInstance() : provider.newInstance();
+    }
+
+    /**
+     * Stops accepting connections, closes all connections and cancels all executions.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (this) {
+            if (serverSocket != null) {
+                try {
+                    serverSocket.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+        for (final ClientConnection connection : connections) {
+            connection.close();
+        }
+        workers.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+        return "RemoteScriptServer{" +
+            "port=" + getPort() +
+            ", maxConcurrency=" + maxConcurrency +
+            ", connections=" + connections.size() +
+            ", active=" + activeCount.get() +
+            '}';
+    }
+
+    /**
+     * A client's connection.
+     */
+    private final class ClientConnection implements Runnable {
+
+        private final Socket socket;
+        private final Map<Integer, Future<?>> running = new ConcurrentHashMap<>();
+        private volatile DataOutputStream out;
+
+        ClientConnection(final Socket socket) {
+            this.socket = socket;
+        }
+
+        @Override
+        public void run() {
+            try {
+                final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                RemoteProtocol.readPreamble(in, token);
+                socket.setSoTimeout(0);
+                for (RemoteProtocol.Frame frame = RemoteProtocol.readFrame(in, RemoteProtocol.MAX_REQUEST_FRAME_LENGTH);
+                     frame != null; frame = RemoteProtocol.readFrame(in, RemoteProtocol.MAX_REQUEST_FRAME_LENGTH)) {
+                    switch (frame.type) {
+                        case RemoteProtocol.EXECUTE:
+                            submit(frame);
+                            break;
+                        case RemoteProtocol.CANCEL:
+                            final Future<?> future = running.remove(frame.requestId);
+                            if (future != null && future.cancel(true)) cancelledCount.increment();
+                            break;
+                        case RemoteProtocol.PING:
+                            send(new RemoteProtocol.FrameBuilder(RemoteProtocol.PONG, frame.requestId));
+                            break;
+                        default:
+                            throw new IOException("Unexpected frame type: " + frame.type);
+                    }
+                }
+            } catch (IOException e) {
+                if (!closed && LOG.isLoggable(Level.FINE)) LOG.fine("Connection " + socket.getRemoteSocketAddress() + " failed: " + e);
+            } finally {
+                close();
+            }
+        }
+
+        private void submit(final RemoteProtocol.Frame frame) throws IOException {
+            requestCount.increment();
+            final int requestId = frame.requestId;
+            final long deadlineMillis = frame.payload.readLong();
+            final String script = RemoteProtocol.readString(frame.payload);
+            final List<String> arguments = RemoteProtocol.readStrings(frame.payload);
+            final FutureTask<Void> task = new FutureTask<>(() -> {
+                activeCount.incrementAndGet();
+                try {
+                    execute(requestId, script, arguments, deadlineMillis);
+                } finally {
+                    activeCount.decrementAndGet();
+                    running.remove(requestId);
+                }
+            }, null);
+            running.put(requestId, task);
+            try {
+                workers.execute(task);
+            } catch (RejectedExecutionException e) {
+                running.remove(requestId);
+                rejectedCount.increment();
+                sendError(requestId, RemoteProtocol.ERROR_REJECTED, "Too many requests.");
+            }
+        }
+
+        private void execute(final int requestId, final String script, final List<String> arguments,
+                             final long deadlineMillis) {
+            try {
+                final ScriptExecutor scriptExecutor = newScriptExecutor();
+                scriptExecutor.setScript(script);
+                if (!arguments.isEmpty()) scriptExecutor.setArguments(arguments);
+                if (deadlineMillis > 0) scriptExecutor.setDeadline(deadlineMillis, TimeUnit.MILLISECONDS);
+                final String result = scriptExecutor.execute();
+                send(new RemoteProtocol.FrameBuilder(RemoteProtocol.RESULT, requestId).writeString(result));
+            } catch (DeadlineExceededException e) {
+                sendError(requestId, RemoteProtocol.ERROR_DEADLINE, e.getMessage());
+            } catch (JaplScriptException e) {
+                sendError(requestId, RemoteProtocol.ERROR_SCRIPT, e.getError());
+            } catch (IOException | RuntimeException e) {
+                sendError(requestId, RemoteProtocol.ERROR_IO, e.toString());
+            }
+        }
+
+        private void sendError(final int requestId, final byte kind, final String message) {
+            try {
+                send(new RemoteProtocol.FrameBuilder(RemoteProtocol.ERROR, requestId).writeByte(kind).writeString(message));
+            } catch (IOException e) {
+                if (LOG.isLoggable(Level.FINE)) LOG.fine("Failed to send error for request " + requestId + ": " + e);
+            }
+        }
+
+        private void send(final RemoteProtocol.FrameBuilder frame) throws IOException {
+            frame.writeTo(out);
+        }
+
+        void close() {
+            if (!connections.remove(this)) return;
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            for (final Future<?> future : running.values()) {
+                if (future.cancel(true)) cancelledCount.increment();
+            }
+            running.clear();
+        }
+    }
+
+    /**
+     * Runs a server until the process is terminated.
+     *
+     * Without bind address, the server listens on the loopback interface. Other bind addresses
+     * require a token set via the system property {@link #TOKEN_PROPERTY}.
+     *
+     * @param args optional port, max concurrency and bind address
+     * @throws IOException if the server cannot be started
+     * @throws InterruptedException if interrupted while running
+     */
+    public static void main(final String[] args) throws IOException, InterruptedException {
+        final int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        final int maxConcurrency = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_MAX_CONCURRENCY;
+        final InetAddress bindAddress = args.length > 2 ? InetAddress.getByName(args[2]) : InetAddress.getLoopbackAddress();
+        final RemoteScriptServer server = new RemoteScriptServer(new InetSocketAddress(bindAddress, port), null,
+            maxConcurrency, DEFAULT_MAX_QUEUED, System.getProperty(TOKEN_PROPERTY)).start();
+        final CountDownLatch terminated = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            terminated.countDown();
+        }));
+        terminated.await();
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import java.io.Closeable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Asynchronous dispatcher that delivers events in order on a single dedicated
+ * daemon thread.
+ * <p>
+ * Events are handed over via a bounded, lock-free ring buffer, i.e. publishing an
+ * event never blocks the publishing thread. When the buffer is full, events
+ * are dropped and counted (see {@link #getDroppedCount()}).
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ * @see ExecutionEventBus#setDispatcher(Executor)
+ */
+public class RingBufferDispatcher implements Executor, Closeable {
+
+    private static final Logger LOG = Logger.getLogger(RingBufferDispatcher.class.getName());
+    public static final int DEFAULT_CAPACITY = 1024;
+    private static final long MAX_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicReferenceArray<Runnable> slots;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread consumer;
+    private volatile boolean waiting;
+    private volatile boolean closed;
+
+    /**
+     * Creates a dispatcher with {@link #DEFAULT_CAPACITY}.
+     */
+    public RingBufferDispatcher() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a dispatcher.
+     *
+     * @param capacity max number of pending events, rounded up to the next power of two
+     */
+    public RingBufferDispatcher(final int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) throw new IllegalArgumentException("Capacity must be between 1 and 2^30: " + capacity);
+        final int size = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.consumer = new Thread(this::consume, "JaplScript Event Dispatcher");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    /**
+     * Publishes the given event. Never blocks.
+     *
+     * @param event event delivery
+     */
+    @Override
+    public void execute(final Runnable event) {
+        if (closed) {
+            dropped.incrementAndGet();
+            return;
+        }
+        long t;
+        do {
+            t = tail.get();
+            if (t - head.get() >= slots.length()) {
+                dropped.incrementAndGet();
+                if (LOG.isLoggable(Level.FINE)) LOG.fine("Dropped event, because ring buffer is full: " + this);
+                return;
+            }
+        } while (!tail.compareAndSet(t, t + 1));
+        slots.set((int) (t & mask), event);
+        if (waiting) LockSupport.unpark(consumer);
+    }
+
+    private void consume() {
+        long h = head.get();
+        while (!closed || h != tail.get()) {
+            final int index = (int) (h & mask);
+            final Runnable event = slots.get(index);
+            if (event == null) {
+                if (h != tail.get()) {
+                    // slot claimed, but not yet published
+                    Thread.onSpinWait();
+                } else {
+                    waiting = true;
+                    if (slots.get(index) == null && !closed) LockSupport.parkNanos(this, MAX_PARK_NANOS);
+                    waiting = false;
+                }
+                continue;
+            }
+            slots.set(index, null);
+            head.set(++h);
+            try {
+                event.run();
+            } catch (RuntimeException e) {
+                LOG.log(Level.SEVERE, "Failed to dispatch event: " + e, e);
+            }
+        }
+    }
+
+    /**
+     * Max number of pending events.
+     *
+     * @return capacity
+     */
+    public int getCapacity() {
+        return slots.length();
+    }
+
+    /**
+     * Number of events waiting to be delivered.
+     *
+     * @return pending events
+     */
+    public int getPendingCount() {
+        return (int) (tail.get() - head.get());
+    }
+
+    /**
+     * Number of events that were dropped, because the buffer was full
+     * or the dispatcher was closed.
+     *
+     * @return dropped events
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Stops accepting new events. Already published events are still delivered.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(consumer);
+    }
+
+    @Override
+    public String toString() {
+        return "RingBufferDispatcher{" +
+            "capacity=" + slots.length() +
+            ", pending=" + getPendingCount() +
+            ", dropped=" + dropped +
+            ", closed=" + closed +
+            '}';
+    }
+}
@@ -6,10 +6,22 @@
  */
 package com.tagtraum.japlscript.execution;
 
-import javax.swing.*;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -24,41 +36,41 @@ import java.util.logging.Logger;
 public abstract class ScriptExecutor {
 
     private static final Logger LOG = Logger.getLogger(ScriptExecutor.class.getName());
-    private final static List<ExecutionListener> listeners = new ArrayList<>();
     private static boolean preferOsascript;
-    private static boolean cocoaScriptExecutorAvailable;
+    private static final ExecutorService DEFAULT_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        final Thread thread = new Thread(r, "JaplScript Async Executor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static volatile Executor defaultExecutor = DEFAULT_EXECUTOR;
     public static final int MAX_RETURNVALUE_LOG_LENGTH = 1024;
-    static {
-        try {
-            new CocoaScriptExecutor();
-            cocoaScriptExecutorAvailable = true;
-            if (LOG.isLoggable(Level.INFO)) LOG.info("Cocoa AppleScript support active.");
-        } catch(Throwable t) {
-            cocoaScriptExecutorAvailable = false;
-            if (LOG.isLoggable(Level.INFO)) LOG.info("Cocoa AppleScript support not available. Will use Osascript.");
-        }
-    }
+    public static final String PROVIDER_PROPERTY = "japlscript.executor";
 
     private CharSequence script;
+    private List<String> arguments = Collections.emptyList();
+    private int exitCode = FlightRecorderEvents.NO_EXIT_CODE;
+    private String application;
+    private long deadlineMillis;
 
     /**
-     * Adds an {@link ExecutionListener} to this executor.
-     * Notifications happen on the EDT.
+     * Adds an {@link ExecutionListener} to the {@link ExecutionEventBus}.
+     * Notifications happen on the EDT, unless a different
+     * {@link ExecutionEventBus#setDispatcher(Executor) dispatcher} is set.
      *
      * @param listener listener to add
      */
     public static void addExecutionListener(final ExecutionListener listener) {
-        listeners.add(listener);
+        ExecutionEventBus.getInstance().addExecutionListener(listener);
     }
 
     /**
-     * Removes an {@link ExecutionListener} from this executor.
+     * Removes an {@link ExecutionListener} from the {@link ExecutionEventBus}.
      *
      * @param listener listener to remove
      * @return true, if successfully removed
      */
     public static boolean removeExecutionListener(final ExecutionListener listener) {
-        return listeners.remove(listener);
+        return ExecutionEventBus.getInstance().removeExecutionListener(listener);
     }
 
     /**
@@ -80,6 +92,104 @@ public abstract class ScriptExecutor {
         return script;
     }
 
+    /**
+     * Sets the arguments passed to the script's <code>run</code> handler, i.e.
+     * the script should look like this:
+     * <pre>
+     * on run argv
+     *     return item 1 of argv
+     * end run
+     * </pre>
+     * Arguments are always passed as text.
+     *
+     * @param arguments arguments
+     * @throws UnsupportedOperationException if arguments are not empty, but this executor
+     * does not {@link #isArgumentsSupported() support} arguments
+     */
+    public void setArguments(final List<String> arguments) {
+        if (!arguments.isEmpty() && !isArgumentsSupported()) {
+            throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support script arguments.");
+        }
+        this.arguments = new ArrayList<>(arguments);
+    }
+
+    /**
+     * Arguments passed to the script's <code>run</code> handler.
+     *
+     * @return arguments, never {@code null}
+     */
+    public List<String> getArguments() {
+        return Collections.unmodifiableList(arguments);
+    }
+
+    /**
+     * Sets the application the script is targeting, e.g. <code>application "Finder"</code>.
+     * If set, the execution is scheduled by the {@link ApplicationScheduler#getDefault() default}
+     * {@link ApplicationScheduler}, which can limit concurrent executions per application.
+     *
+     * @param application application reference or {@code null}, if unknown
+     */
+    public void setApplication(final String application) {
+        this.application = application;
+    }
+
+    /**
+     * Application the script is targeting.
+     *
+     * @return application reference or {@code null}, if unknown
+     */
+    public String getApplication() {
+        return application;
+    }
+
+    /**
+     * Sets the max time the script may take, once its execution has started.
+     * If it takes longer, the execution is aborted with a {@link DeadlineExceededException}
+     * and the executing process (if any) is terminated.
+     * <p>
+     * Unlike {@link Session#setTimeout(int)}, which relies on AppleScript's <code>with timeout</code>
+     * and only covers Apple events, the deadline is enforced on the Java side.
+     * If not set, the current {@link Session}'s {@link Session#setDeadline(long, TimeUnit) deadline} is used.
+     *
+     * @param deadline deadline, values less than 1 mean no deadline
+     * @param unit unit
+     */
+    public void setDeadline(final long deadline, final TimeUnit unit) {
+        this.deadlineMillis = Math.max(0, unit.toMillis(deadline));
+    }
+
+    /**
+     * Deadline set for this executor.
+     *
+     * @return deadline in ms or 0, if not set
+     * @see #setDeadline(long, TimeUnit)
+     */
+    public long getDeadlineMillis() {
+        return deadlineMillis;
+    }
+
+    /**
+     * Deadline that applies to an execution started by the current thread, i.e.
+     * the deadline set for this executor or, if not set, the current {@link Session}'s deadline.
+     *
+     * @return deadline in ms or 0, if there is none
+     */
+    protected long getEffectiveDeadlineMillis() {
+        if (deadlineMillis > 0) return deadlineMillis;
+        final Session session = Session.get();
+        return session == null ? 0 : session.getDeadlineMillis();
+    }
+
+    /**
+     * Indicates whether this executor supports passing {@link #setArguments(List) arguments}
+     * to the script's <code>run</code> handler.
+     *
+     * @return false, unless overridden
+     */
+    public boolean isArgumentsSupported() {
+        return false;
+    }
+
     /**
      * Execute the current script.
      *
@@ -88,29 +198,132 @@ public abstract class ScriptExecutor {
      * @see #getScript()
      */
     public String execute() throws IOException {
-        final String script = getScript().toString();
-        final ExecutionEvent startEvent = new ExecutionEvent(this, script, true, null);
-        SwingUtilities.invokeLater(
-            () -> {
-                for (final ExecutionListener l: listeners) {
-                    l.executing(startEvent);
-                }
-            }
-        );
-        String result = null;
+        return execute(this::executeImpl);
+    }
+
+    /**
+     * Execute the current script, but return the result as a sequence that
+     * may be backed by the buffers it was read into, e.g. a {@link ChunkedCharSequence}.
+     * This avoids creating a copy of very large results. Callers should decode
+     * the result incrementally and then {@link ChunkedCharSequence#release() release} it.
+     * <p>
+     * {@link ExecutionListener}s still receive the result as string, i.e. registering
+     * one forces a copy.
+     *
+     * @return return value
+     * @throws IOException in case of IO problems
+     * @see #executeStreamingImpl()
+     */
+    public CharSequence executeStreaming() throws IOException {
+        return execute(this::executeStreamingImpl);
+    }
+
+    private <T extends CharSequence> T execute(final Callable<T> implementation) throws IOException {
+        final ExecutionEventBus bus = ExecutionEventBus.getInstance();
+        final Object flightRecorderEvent = FlightRecorderEvents.beginScriptExecuted();
+        exitCode = FlightRecorderEvents.NO_EXIT_CODE;
+        if (!bus.isActive() && flightRecorderEvent == null) return executeScheduled(implementation);
+
+        // copy the script only once and only if execution listeners need it as string
+        final CharSequence script = bus.hasExecutionListeners() ? getScript().toString() : getScript();
+        bus.fireStarted(this, script);
+        final long start = System.nanoTime();
+        T result = null;
+        Throwable failure = null;
         try {
-            result = executeImpl();
+            result = executeScheduled(implementation);
             return result;
+        } catch (IOException | RuntimeException | Error e) {
+            failure = e;
+            throw e;
         } finally {
-            final ExecutionEvent stopEvent = new ExecutionEvent(this, script, false, result);
-            SwingUtilities.invokeLater(
-                () -> {
-                    for (final ExecutionListener l: listeners) {
-                        l.executing(stopEvent);
-                    }
-                }
-            );
+            bus.fireFinished(this, script, result, failure, System.nanoTime() - start);
+            FlightRecorderEvents.commitScriptExecuted(flightRecorderEvent, this, script, result, exitCode);
+        }
+    }
+
+    private <T> T executeScheduled(final Callable<T> implementation) throws IOException {
+        if (application == null) {
+            try {
+                return implementation.call();
+            } catch (IOException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e.toString(), e);
+            }
+        }
+        return ApplicationScheduler.getDefault().execute(application, implementation);
+    }
+
+    /**
+     * Lets process-based implementations report the exit code of their process,
+     * which is then recorded in {@link FlightRecorderEvents JFR events}.
+     *
+     * @param exitCode exit code
+     */
+    void setExitCode(final int exitCode) {
+        this.exitCode = exitCode;
+    }
+
+    /**
+     * Execute the current script asynchronously using the
+     * {@link #getDefaultExecutor() default executor}.
+     *
+     * @return future return value
+     * @see #executeAsync(Executor)
+     */
+    public CompletableFuture<String> executeAsync() {
+        return executeAsync(getDefaultExecutor());
+    }
+
+    /**
+     * Execute the current script asynchronously.
+     * IO problems are reported as {@link CompletionException} wrapping
+     * an {@link IOException}.
+     * <p>
+     * Note that the current thread's {@link Session} settings are evaluated
+     * <em>before</em> this method returns, not when the script is actually executed.
+     * <p>
+     * Cancelling the returned future cancels the execution. Depending on the implementation,
+     * this terminates the executing process.
+     *
+     * @param executor executor used for any blocking work, allows bounding concurrency
+     * @return future return value
+     * @see #getScript()
+     */
+    public CompletableFuture<String> executeAsync(final Executor executor) {
+        Objects.requireNonNull(executor);
+        final ExecutionEventBus bus = ExecutionEventBus.getInstance();
+        final boolean active = bus.isActive();
+        final CharSequence script = !active ? null : bus.hasExecutionListeners() ? getScript().toString() : getScript();
+        if (active) bus.fireStarted(this, script);
+        final long start = System.nanoTime();
+        CompletableFuture<String> future;
+        try {
+            future = executeAsyncScheduled(executor);
+        } catch (RuntimeException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
         }
+        if (!active) return future;
+        final CompletableFuture<String> notifying = future.whenComplete((result, throwable) ->
+            bus.fireFinished(this, script, result, unwrap(throwable), System.nanoTime() - start));
+        Watchdog.propagateCancellation(notifying, future);
+        return notifying;
+    }
+
+    private CompletableFuture<String> executeAsyncScheduled(final Executor executor) {
+        if (application == null) return executeAsyncImpl(executor);
+        // the execution may be started by another thread, so we have to pass on the session
+        final Session session = Session.get();
+        return ApplicationScheduler.getDefault().submit(application,
+            () -> Session.callWith(session, () -> executeAsyncImpl(executor)));
+    }
+
+    private static Throwable unwrap(final Throwable throwable) {
+        return throwable instanceof CompletionException && throwable.getCause() != null
+            ? throwable.getCause()
+            : throwable;
     }
 
     /**
@@ -121,14 +334,123 @@ public abstract class ScriptExecutor {
      */
     protected abstract String executeImpl() throws IOException;
 
+    /**
+     * Actual implementation for the streaming execution.
+     * By default, this simply calls {@link #executeImpl()}.
+     *
+     * @return return value
+     * @throws IOException in case of IO problems
+     * @see #executeStreaming()
+     */
+    protected CharSequence executeStreamingImpl() throws IOException {
+        return executeImpl();
+    }
+
+    /**
+     * Actual implementation for the asynchronous execution.
+     * By default, {@link #executeImpl()} is simply called using the given executor.
+     * If the {@link #getEffectiveDeadlineMillis() deadline} is exceeded, the returned
+     * future completes exceptionally, but the running {@link #executeImpl()} is not interrupted.
+     * Implementations that do not need to block a thread while waiting for the
+     * result or that can actually abort executions should override this method.
+     *
+     * @param executor executor used for any blocking work
+     * @return future return value
+     */
+    protected CompletableFuture<String> executeAsyncImpl(final Executor executor) {
+        return Watchdog.withDeadline(CompletableFuture.supplyAsync(() -> {
+            try {
+                return executeImpl();
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor), getEffectiveDeadlineMillis(), getScript());
+    }
+
+    /**
+     * Executor used by {@link #executeAsync()}.
+     * Unless set otherwise, this is an unbounded pool of daemon threads.
+     *
+     * @return executor
+     */
+    public static Executor getDefaultExecutor() {
+        return defaultExecutor;
+    }
+
+    /**
+     * Sets the executor used by {@link #executeAsync()}, e.g., to bound the number
+     * of concurrent executions.
+     *
+     * @param executor executor or {@code null} to restore the default
+     */
+    public static void setDefaultExecutor(final Executor executor) {
+        ScriptExecutor.defaultExecutor = executor == null ? DEFAULT_EXECUTOR : executor;
+    }
+
     /**
      * Create a new ScriptExecutor.
+     * <p>
+     * If the current {@link Session} has a {@link Session#setScriptExecutorProvider(ScriptExecutorProvider) provider},
+     * it is used. Otherwise, the provider named by the system property <code>japlscript.executor</code>
+     * is used, if available. Otherwise, the available provider with the highest priority is used.
+     * When the current session is set to {@link Session#isCompile() compile}, only providers that
+     * {@link ScriptExecutorProvider#isCompileSupported() support compiled scripts} are considered.
      *
      * @return script executor
+     * @see #getProviders()
      */
     public static ScriptExecutor newInstance() {
-        if (cocoaScriptExecutorAvailable && !preferOsascript) return new CocoaScriptExecutor();
-        else return new Osascript();
+        final Session session = Session.get();
+        if (session != null && session.getScriptExecutorProvider() != null) {
+            return session.getScriptExecutorProvider().newInstance();
+        }
+        return selectProvider(session != null && session.isCompile()).newInstance();
+    }
+
+    /**
+     * Create a new ScriptExecutor using the given provider.
+     *
+     * @param provider provider
+     * @return script executor
+     */
+    public static ScriptExecutor newInstance(final ScriptExecutorProvider provider) {
+        return provider.newInstance();
+    }
+
+    private static ScriptExecutorProvider selectProvider(final boolean compile) {
+        final String name = System.getProperty(PROVIDER_PROPERTY);
+        if (name != null) {
+            final ScriptExecutorProvider provider = getProvider(name.trim());
+            if (provider != null && provider.isAvailable()) return provider;
+            if (LOG.isLoggable(Level.FINE)) LOG.fine("ScriptExecutorProvider " + name + " is not available.");
+        }
+        for (final ScriptExecutorProvider provider : Providers.PROVIDERS) {
+            if (provider.isAvailable() && (!compile || provider.isCompileSupported())) return provider;
+        }
+        return Providers.FALLBACK;
+    }
+
+    /**
+     * All {@link ScriptExecutorProvider}s found via {@link ServiceLoader},
+     * ordered by descending priority.
+     *
+     * @return providers
+     */
+    public static List<ScriptExecutorProvider> getProviders() {
+        return Providers.PROVIDERS;
+    }
+
+    /**
+     * Looks up a provider by name.
+     *
+     * @param name name, e.g. {@link OsascriptProvider#NAME}
+     * @return provider or {@code null}, if not found
+     */
+    public static ScriptExecutorProvider getProvider(final String name) {
+        for (final ScriptExecutorProvider provider : Providers.PROVIDERS) {
+            if (provider.getName().equals(name)) return provider;
+        }
+        return null;
     }
 
     /**
@@ -157,12 +479,64 @@ public abstract class ScriptExecutor {
 
     /**
      * Signals the availability of the native AppleScript executor.
+     * The first call probes for it, i.e. extracts and loads the native library.
+     * To keep this off the critical path, call <code>JaplScript.warmUp(..)</code> early.
      *
      * @return true or false
      * @see CocoaScriptExecutor
      * @see #isPreferOsascript()
      */
     public static boolean isCocoaScriptExecutorAvailable() {
-        return cocoaScriptExecutorAvailable;
+        return NativeSupport.AVAILABLE;
+    }
+
+    /**
+     * Lazily loads the available providers.
+     */
+    private static final class Providers {
+
+        private static final ScriptExecutorProvider FALLBACK = new OsascriptProvider();
+        private static final List<ScriptExecutorProvider> PROVIDERS = load();
+
+        private static List<ScriptExecutorProvider> load() {
+            final List<ScriptExecutorProvider> providers = new ArrayList<>();
+            final Iterator<ScriptExecutorProvider> iterator = ServiceLoader.load(ScriptExecutorProvider.class).iterator();
+            while (true) {
+                try {
+                    if (!iterator.hasNext()) break;
+                    providers.add(iterator.next());
+                } catch (ServiceConfigurationError e) {
+                    LOG.log(Level.WARNING, "Failed to load ScriptExecutorProvider: " + e, e);
+                }
+            }
+            if (providers.isEmpty()) {
+                // e.g. service declarations got lost while repackaging
+                providers.add(new CocoaScriptExecutorProvider());
+                providers.add(FALLBACK);
+            }
+            providers.sort(Comparator.comparingInt(ScriptExecutorProvider::getPriority).reversed());
+            if (LOG.isLoggable(Level.INFO)) LOG.info("ScriptExecutorProviders: " + providers);
+            return Collections.unmodifiableList(providers);
+        }
+    }
+
+    /**
+     * Lazily probes for native support, so that loading {@link ScriptExecutor}
+     * does not load the native library.
+     */
+    private static final class NativeSupport {
+
+        private static final boolean AVAILABLE = probe();
+
+        private static boolean probe() {
+            try {
+                new CocoaScriptExecutor();
+                if (LOG.isLoggable(Level.INFO)) LOG.info("Cocoa AppleScript support active.");
+                return true;
+            } catch(Throwable t) {
+                if (LOG.isLoggable(Level.INFO)) LOG.info("Cocoa AppleScript support not available. Will use Osascript.");
+                return false;
+            }
+        }
     }
 }
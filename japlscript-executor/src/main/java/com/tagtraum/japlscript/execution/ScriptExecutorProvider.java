@@ -0,0 +1,64 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+/**
+ * Service provider interface for {@link ScriptExecutor}s.
+ * <p>
+ * Providers are discovered via {@link java.util.ServiceLoader}, i.e. they are declared
+ * with <code>provides com.tagtraum.japlscript.execution.ScriptExecutorProvider with ...</code>
+ * in a module descriptor or in <code>META-INF/services/com.tagtraum.japlscript.execution.ScriptExecutorProvider</code>.
+ * Unless a provider is selected explicitly, {@link ScriptExecutor#newInstance()} uses the
+ * {@link #isAvailable() available} provider with the highest {@link #getPriority() priority}.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ * @see ScriptExecutor#getProviders()
+ * @see Session#setScriptExecutorProvider(ScriptExecutorProvider)
+ */
+public interface ScriptExecutorProvider {
+
+    /**
+     * Unique name, used to select this provider, e.g. via the system property
+     * {@link ScriptExecutor#PROVIDER_PROPERTY}.
+     *
+     * @return name
+     */
+    String getName();
+
+    /**
+     * Providers with higher priority are preferred.
+     *
+     * @return priority
+     */
+    int getPriority();
+
+    /**
+     * Indicates, whether this provider can currently create executors.
+     *
+     * @return true or false
+     */
+    default boolean isAvailable() {
+        return true;
+    }
+
+    /**
+     * Indicates, whether the created executors support
+     * {@link Session#setCompile(boolean) compiled} scripts.
+     *
+     * @return true or false
+     */
+    default boolean isCompileSupported() {
+        return false;
+    }
+
+    /**
+     * Creates a new executor.
+     *
+     * @return script executor
+     */
+    ScriptExecutor newInstance();
+}
@@ -0,0 +1,131 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Writes script source to <code>osascript</code>/<code>osacompile</code> as UTF-8.
+ * <p>
+ * Without a byte order mark, AppleScript reads plain text source in the primary
+ * encoding (typically MacRoman), so that characters outside of it would be lost.
+ * The source is therefore preceded by a UTF-8 BOM.
+ * <p>
+ * The script is encoded piecewise with a pooled {@link CharsetEncoder} and pooled
+ * buffers, i.e. it is never copied into a {@link String} or a byte array of its full size.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+final class ScriptWriter {
+
+    static final byte[] BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+    private static final int CHAR_BUFFER_SIZE = 8 * 1024;
+    private static final int BYTE_BUFFER_SIZE = 3 * CHAR_BUFFER_SIZE;
+    private static final int MAX_POOLED_ENCODERS = 8;
+    private static final BlockingQueue<Encoder> POOL = new ArrayBlockingQueue<>(MAX_POOLED_ENCODERS);
+
+    private ScriptWriter() {
+    }
+
+    /**
+     * Writes the given script as UTF-8 with BOM to the given stream and closes it.
+     *
+     * @param script script
+     * @param out stream, typically a process' stdin
+     * @throws IOException if writing fails
+     */
+    static void write(final CharSequence script, final OutputStream out) throws IOException {
+        try (final OutputStream o = out) {
+            final Encoder encoder = acquire();
+            try {
+                encoder.write(script, o);
+            } finally {
+                POOL.offer(encoder);
+            }
+        }
+    }
+
+    private static Encoder acquire() {
+        final Encoder encoder = POOL.poll();
+        return encoder == null ? new Encoder() : encoder;
+    }
+
+    /**
+     * Copies chars in bulk, if the sequence type allows it.
+     */
+    private static void getChars(final CharSequence s, final int begin, final int end, final CharBuffer dst) {
+        final char[] array = dst.array();
+        final int offset = dst.arrayOffset() + dst.position();
+        if (s instanceof String) {
+            ((String) s).getChars(begin, end, array, offset);
+        } else if (s instanceof StringBuilder) {
+            ((StringBuilder) s).getChars(begin, end, array, offset);
+        } else if (s instanceof StringBuffer) {
+            ((StringBuffer) s).getChars(begin, end, array, offset);
+        } else {
+            for (int i = begin; i < end; i++) {
+                array[offset + i - begin] = s.charAt(i);
+            }
+        }
+        dst.position(dst.position() + end - begin);
+    }
+
+    /**
+     * Encoder with its buffers.
+     */
+    private static final class Encoder {
+
+        private final CharsetEncoder encoder = UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final CharBuffer chars = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+        private final ByteBuffer bytes = ByteBuffer.allocate(BYTE_BUFFER_SIZE);
+
+        void write(final CharSequence script, final OutputStream out) throws IOException {
+            encoder.reset();
+            chars.clear();
+            bytes.clear();
+            bytes.put(BOM);
+            final int length = script.length();
+            int position = 0;
+            boolean endOfInput = false;
+            while (!endOfInput) {
+                final int count = Math.min(chars.remaining(), length - position);
+                getChars(script, position, position + count, chars);
+                position += count;
+                endOfInput = position == length;
+                chars.flip();
+                for (CoderResult result = encoder.encode(chars, bytes, endOfInput); !result.isUnderflow();
+                     result = encoder.encode(chars, bytes, endOfInput)) {
+                    if (result.isOverflow()) drain(out);
+                    else result.throwException();
+                }
+                // keeps a high surrogate, whose low surrogate has not been read yet
+                chars.compact();
+            }
+            while (encoder.flush(bytes).isOverflow()) {
+                drain(out);
+            }
+            drain(out);
+        }
+
+        private void drain(final OutputStream out) throws IOException {
+            out.write(bytes.array(), bytes.arrayOffset(), bytes.position());
+            bytes.clear();
+        }
+    }
+}
@@ -6,10 +6,11 @@
  */
 package com.tagtraum.japlscript.execution;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -25,11 +26,13 @@ public class ScriptingAddition {
 
     private final java.io.File executable;
     private final java.io.File folder;
+    private final Set<Architecture> architectures;
     private final Architecture architecture;
 
     public ScriptingAddition(final java.io.File file) {
         if (isScriptingAdditionFolder(file)) {
             this.folder = file;
+            this.architectures = Collections.emptySet();
             this.architecture = Architecture.UNKNOWN;
             this.executable = null;
         } else {
@@ -39,7 +42,8 @@ public class ScriptingAddition {
                 f = f.getParentFile();
             }
             this.folder = f;
-            this.architecture = determineArchitecture();
+            this.architectures = Collections.unmodifiableSet(readArchitectures(file));
+            this.architecture = toArchitecture(architectures);
         }
     }
 
@@ -51,43 +55,63 @@ public class ScriptingAddition {
         return folder;
     }
 
+    /**
+     * Summary of {@link #getArchitectures()}. {@link Architecture#UNIVERSAL} stands for
+     * binaries that contain both {@link Architecture#I368} and {@link Architecture#PPC}.
+     * For other binaries with multiple architectures, the local architecture is preferred.
+     *
+     * @return architecture
+     */
     public Architecture getArchitecture() {
         return architecture;
     }
 
+    /**
+     * All architectures contained in the executable.
+     *
+     * @return architectures, empty, if unknown
+     */
+    public Set<Architecture> getArchitectures() {
+        return architectures;
+    }
+
     /**
      *
      * @return true if this Scripting Addition is suitable for the local architecture
      */
     public boolean isLocalArchitecture() {
-        return architecture == Architecture.UNIVERSAL
-                || System.getProperty("os.arch").equalsIgnoreCase(architecture.toString());
+        if (architecture == Architecture.UNIVERSAL) return true;
+        final String localArchitecture = System.getProperty("os.arch");
+        for (final Architecture a : architectures) {
+            if (localArchitecture.equalsIgnoreCase(a.toString())) return true;
+        }
+        return false;
     }
 
-    private Architecture determineArchitecture() {
-        if (executable != null) {
-            final ProcessBuilder processBuilder = new ProcessBuilder("file", "-b", executable.toString());
-            final StringBuilder sb = new StringBuilder();
-            processBuilder.redirectErrorStream(true);
-            try {
-                final Process process = processBuilder.start();
-                final BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()));
-                for (String line=in.readLine(); line != null; line=in.readLine()) {
-                    sb.append(line);
-                }
-            } catch (IOException e) {
-                LOG.log(Level.SEVERE, e.toString(), e);
-            }
-            final String s = sb.toString();
-            if (s.contains("i386") && s.contains("ppc")) return Architecture.UNIVERSAL;
-            else if (s.contains("i386")) return Architecture.I368;
-            else if (s.contains("ppc")) return Architecture.PPC;
-            else if (s.contains("x86_64")) return Architecture.X86_64;
-            else if (s.contains("arm64") || s.contains("aarch64")) return Architecture.AARCH64;
+    private static Set<Architecture> readArchitectures(final java.io.File executable) {
+        if (!executable.isFile()) return Collections.emptySet();
+        try {
+            return MachOHeader.readArchitectures(executable.toPath());
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, e.toString(), e);
+            return Collections.emptySet();
         }
-        return Architecture.UNKNOWN;
     }
 
+    static Architecture toArchitecture(final Set<Architecture> architectures) {
+        final Set<Architecture> known = EnumSet.noneOf(Architecture.class);
+        known.addAll(architectures);
+        known.remove(Architecture.UNKNOWN);
+        if (known.contains(Architecture.I368) && known.contains(Architecture.PPC)) return Architecture.UNIVERSAL;
+        if (known.size() > 1) {
+            final String localArchitecture = System.getProperty("os.arch");
+            for (final Architecture a : known) {
+                if (localArchitecture.equalsIgnoreCase(a.toString())) return a;
+            }
+        }
+        // enum order: I368, PPC, X86_64, AARCH64
+        return known.isEmpty() ? Architecture.UNKNOWN : known.iterator().next();
+    }
 
     private static boolean isScriptingAdditionFolder(final java.io.File file) {
         return file.isDirectory() && file.getName().endsWith(".osax");
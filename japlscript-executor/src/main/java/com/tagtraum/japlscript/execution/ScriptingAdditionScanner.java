@@ -0,0 +1,182 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Finds the {@link ScriptingAddition}s installed in the <code>ScriptingAdditions</code> folders.
+ * <p>
+ * Architectures are determined by reading the executables' Mach-O headers. The results
+ * are cached per executable and only determined again, once an executable's
+ * modification time or size changes. Scanning again is therefore cheap.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class ScriptingAdditionScanner {
+
+    private static final Logger LOG = Logger.getLogger(ScriptingAdditionScanner.class.getName());
+    public static final List<Path> DEFAULT_DIRECTORIES = Collections.unmodifiableList(Arrays.asList(
+        Paths.get("/System/Library/ScriptingAdditions"),
+        Paths.get("/Library/ScriptingAdditions"),
+        Paths.get(System.getProperty("user.home"), "Library", "ScriptingAdditions")
+    ));
+    private static final String OSAX_EXTENSION = ".osax";
+    private static final ScriptingAdditionScanner DEFAULT = new ScriptingAdditionScanner(DEFAULT_DIRECTORIES);
+
+    private final List<Path> directories;
+    private final Map<Path, Entry> cache = new ConcurrentHashMap<>();
+
+    /**
+     * @param directories directories containing <code>.osax</code> bundles
+     */
+    public ScriptingAdditionScanner(final List<Path> directories) {
+        this.directories = new ArrayList<>(directories);
+    }
+
+    /**
+     * Scanner for the {@link #DEFAULT_DIRECTORIES}.
+     *
+     * @return default scanner
+     */
+    public static ScriptingAdditionScanner getDefault() {
+        return DEFAULT;
+    }
+
+    public List<Path> getDirectories() {
+        return Collections.unmodifiableList(directories);
+    }
+
+    /**
+     * Scans all directories. Directories that don't exist are skipped.
+     *
+     * @return scripting additions
+     */
+    public List<ScriptingAddition> scan() {
+        final List<ScriptingAddition> scriptingAdditions = new ArrayList<>();
+        for (final Path directory : directories) {
+            if (!Files.isDirectory(directory)) continue;
+            try {
+                scriptingAdditions.addAll(scan(directory));
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Failed to scan " + directory + ": " + e, e);
+            }
+        }
+        return scriptingAdditions;
+    }
+
+    /**
+     * Scans the given directory for <code>.osax</code> bundles.
+     *
+     * @param directory directory
+     * @return scripting additions
+     * @throws IOException if the directory cannot be read
+     */
+    public List<ScriptingAddition> scan(final Path directory) throws IOException {
+        final List<ScriptingAddition> scriptingAdditions = new ArrayList<>();
+        try (final DirectoryStream<Path> bundles = Files.newDirectoryStream(directory,
+            path -> path.getFileName().toString().endsWith(OSAX_EXTENSION) && Files.isDirectory(path))) {
+            for (final Path bundle : bundles) {
+                scriptingAdditions.add(get(bundle));
+            }
+        }
+        return scriptingAdditions;
+    }
+
+    /**
+     * Scripting addition for the given bundle.
+     *
+     * @param bundle <code>.osax</code> bundle
+     * @return scripting addition, its architecture is unknown, if the bundle has no executable
+     * @throws IOException if the bundle cannot be read
+     */
+    public ScriptingAddition get(final Path bundle) throws IOException {
+        final Path executable = findExecutable(bundle);
+        if (executable == null) return new ScriptingAddition(bundle.toFile());
+        final BasicFileAttributes attributes = Files.readAttributes(executable, BasicFileAttributes.class);
+        final Entry entry = cache.get(executable);
+        if (entry != null && entry.isValid(attributes)) return entry.scriptingAddition;
+        if (LOG.isLoggable(Level.FINE)) LOG.fine("Reading architectures of " + executable);
+        final Entry newEntry = new Entry(attributes, new ScriptingAddition(executable.toFile()));
+        cache.put(executable, newEntry);
+        return newEntry.scriptingAddition;
+    }
+
+    /**
+     * Finds the bundle executable, i.e. <code>Contents/MacOS/&lt;bundle name&gt;</code> or,
+     * if it doesn't exist, the only file in <code>Contents/MacOS</code>.
+     */
+    private static Path findExecutable(final Path bundle) throws IOException {
+        final Path macOS = bundle.resolve("Contents").resolve("MacOS");
+        if (!Files.isDirectory(macOS)) return null;
+        final String bundleName = bundle.getFileName().toString();
+        final Path executable = macOS.resolve(bundleName.substring(0, bundleName.length() - OSAX_EXTENSION.length()));
+        if (Files.isRegularFile(executable)) return executable;
+        Path candidate = null;
+        try (final DirectoryStream<Path> files = Files.newDirectoryStream(macOS, Files::isRegularFile)) {
+            for (final Path file : files) {
+                if (candidate != null) return null;
+                candidate = file;
+            }
+        }
+        return candidate;
+    }
+
+    /**
+     * Number of cached executables.
+     *
+     * @return cache size
+     */
+    public int getCacheSize() {
+        return cache.size();
+    }
+
+    /**
+     * Clears the cache.
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "ScriptingAdditionScanner{" +
+            "directories=" + directories +
+            ", cacheSize=" + cache.size() +
+            '}';
+    }
+
+    private static final class Entry {
+        private final FileTime lastModifiedTime;
+        private final long size;
+        private final ScriptingAddition scriptingAddition;
+
+        Entry(final BasicFileAttributes attributes, final ScriptingAddition scriptingAddition) {
+            this.lastModifiedTime = attributes.lastModifiedTime();
+            this.size = attributes.size();
+            this.scriptingAddition = scriptingAddition;
+        }
+
+        boolean isValid(final BasicFileAttributes attributes) {
+            return size == attributes.size() && lastModifiedTime.equals(attributes.lastModifiedTime());
+        }
+    }
+}
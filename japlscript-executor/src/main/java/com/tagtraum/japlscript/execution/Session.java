@@ -8,7 +8,16 @@ package com.tagtraum.japlscript.execution;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
 /**
@@ -24,6 +33,13 @@ import java.util.logging.Logger;
  * </ul>
  * <p>
  * In order to "rollback" any uncommitted AppleScript fragments, call {@link #reset()}.
+ * <p>
+ * In {@link #setBatch(boolean) batch mode}, calls with return values are collected as well.
+ * Each such call is {@link #addWithResult(CharSequence, List, Collection) added} as
+ * a handler that is called in its own <code>try</code> block, and the script returns a list
+ * with one result per call. Upon {@link #commit()}, the list is split and each result
+ * is passed to its call's future. This way, many value-returning calls only need one roundtrip
+ * and one failing call does not affect the others.
  *
  * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
  */
@@ -31,18 +47,29 @@ public class Session {
 
     private static final Logger LOG = Logger.getLogger(Session.class.getName());
     private static final ThreadLocal<Session> SESSIONS = new ThreadLocal<>();
+    private static final AtomicInteger ACTIVE_SESSIONS = new AtomicInteger();
+    private static final LongAdder UNCOMMITTED_LENGTH = new LongAdder();
+    private static final String RESULTS_VARIABLE = "japlscript_results";
+    private static final String RESULT_HANDLER = "japlscript_result_";
     public static final int DEFAULT_TIMEOUT = -1;
     private StringBuilder script;
+    private List<String> arguments;
+    private Set<String> handlers;
+    private List<CompletableFuture<String>> results;
     private boolean ignoreReturnValues;
+    private boolean batch;
     private boolean compile;
     private int timeout = DEFAULT_TIMEOUT;
+    private long deadlineMillis;
+    private ScriptExecutorProvider scriptExecutorProvider;
     private final List<Aspect> aspects = new ArrayList<>();
+    private List<Runnable> executionCallbacks = new ArrayList<>();
 
     /**
      * Session.
      */
     public Session() {
-        SESSIONS.set(this);
+        bind(this);
         reset();
     }
 
@@ -77,6 +104,28 @@ public class Session {
         return new ArrayList<>(aspects);
     }
 
+    /**
+     * Registers a callback that is run, once the fragments added so far have been
+     * executed (successfully or not) or discarded by {@link #reset()}.
+     * Allows e.g. invalidating cached values only when a queued write actually happens.
+     *
+     * @param callback callback
+     */
+    public void addExecutionCallback(final Runnable callback) {
+        this.executionCallbacks.add(callback);
+    }
+
+    /**
+     * Callbacks for the fragments added so far, needed by code that executes
+     * the session's script itself.
+     *
+     * @return copy of the callback list
+     * @see #addExecutionCallback(Runnable)
+     */
+    public List<Runnable> getExecutionCallbacks() {
+        return new ArrayList<>(executionCallbacks);
+    }
+
     /**
      * @return timeout in seconds
      */
@@ -94,6 +143,27 @@ public class Session {
         LOG.fine("Setting timeout to " + timeout + " thread " + Thread.currentThread().getName());
     }
 
+    /**
+     * Sets the max time each script executed in this session may take.
+     * Unlike {@link #setTimeout(int)}, the deadline is enforced on the Java side,
+     * i.e. scripts exceeding it fail with a {@link DeadlineExceededException} and their
+     * processes are terminated.
+     *
+     * @param deadline deadline, values less than 1 mean no deadline
+     * @param unit unit
+     * @see ScriptExecutor#setDeadline(long, TimeUnit)
+     */
+    public void setDeadline(final long deadline, final TimeUnit unit) {
+        this.deadlineMillis = Math.max(0, unit.toMillis(deadline));
+    }
+
+    /**
+     * @return deadline in ms or 0, if not set
+     */
+    public long getDeadlineMillis() {
+        return deadlineMillis;
+    }
+
     public boolean isDefaultTimeout() {
         return timeout <= 0;
     }
@@ -106,10 +176,42 @@ public class Session {
         this.ignoreReturnValues = ignoreReturnValues;
     }
 
+    public boolean isBatch() {
+        return batch;
+    }
+
+    /**
+     * In batch mode, calls with return values don't force an implicit commit,
+     * but are collected via {@link #addWithResult(CharSequence, List, Collection)}.
+     *
+     * @param batch batch mode
+     */
+    public void setBatch(final boolean batch) {
+        this.batch = batch;
+    }
+
     public boolean isCompile() {
         return compile;
     }
 
+    /**
+     * @return provider of the executors used in this session or {@code null}, if not set
+     */
+    public ScriptExecutorProvider getScriptExecutorProvider() {
+        return scriptExecutorProvider;
+    }
+
+    /**
+     * Sets the provider of the executors used in this session, regardless of
+     * {@link ScriptExecutorProvider#getPriority() priorities}.
+     *
+     * @param scriptExecutorProvider provider or {@code null} to use the default
+     * @see ScriptExecutor#newInstance()
+     */
+    public void setScriptExecutorProvider(final ScriptExecutorProvider scriptExecutorProvider) {
+        this.scriptExecutorProvider = scriptExecutorProvider;
+    }
+
     public void setCompile(final boolean compile) {
         this.compile = compile;
     }
@@ -124,17 +226,117 @@ public class Session {
             throw new IllegalStateException("Session already committed.");
         }
         this.script.append(applescriptFragment).append("\n");
+        UNCOMMITTED_LENGTH.add(applescriptFragment.length() + 1);
         LOG.fine("Adding fragment to session for thread "
             + Thread.currentThread() + ": \"" + applescriptFragment + "\"");
     }
 
+    /**
+     * Adds a parameterized AppleScript fragment to the session.
+     * <p>
+     * The fragment may refer to the given arguments via <code>item N of argv</code>,
+     * with <code>N</code> starting at {@link #getArguments()}<code>.size() + 1</code>.
+     * Handler definitions (like <code>on foo() ... end foo</code>) cannot be
+     * part of a <code>run</code> handler and must therefore be passed separately.
+     * Identical handler definitions are only added once.
+     *
+     * @param applescriptFragment AppleScript fragment
+     * @param arguments arguments referred to by the fragment
+     * @param handlers handler definitions used by the fragment
+     * @see #getScript()
+     */
+    public void add(final CharSequence applescriptFragment, final List<String> arguments,
+                    final Collection<String> handlers) {
+        add(applescriptFragment);
+        this.arguments.addAll(arguments);
+        this.handlers.addAll(handlers);
+    }
+
+    /**
+     * Adds a parameterized AppleScript fragment with a return value to the session.
+     * <p>
+     * The fragment becomes the body of a handler, so that it may use <code>return</code>.
+     * The handler is called in a <code>try</code> block and its result (or error) is
+     * collected in a list that is returned by the script.
+     * Fragments without return value may still be {@link #add(CharSequence, List, Collection) added}
+     * in between. They are executed in order, but their errors fail the entire script.
+     *
+     * @param applescriptFragment AppleScript fragment returning a value
+     * @param arguments arguments referred to by the fragment
+     * @param handlers handler definitions used by the fragment
+     * @return future raw result, completed once the session is {@link #commit() committed} or
+     * {@link #flush() flushed}, cancelled, if the session is {@link #reset() reset}
+     * @see #setBatch(boolean)
+     */
+    public CompletableFuture<String> addWithResult(final CharSequence applescriptFragment, final List<String> arguments,
+                                                   final Collection<String> handlers) {
+        if (get() == null) {
+            throw new IllegalStateException("Session already committed.");
+        }
+        final String parameter = arguments.isEmpty() ? "()" : "(argv)";
+        final String handlerName = RESULT_HANDLER + (results.size() + 1);
+        final StringBuilder call = new StringBuilder();
+        if (results.isEmpty()) call.append("set " + RESULTS_VARIABLE + " to {}\n");
+        call.append("try\n")
+            .append("set end of " + RESULTS_VARIABLE + " to {true, ").append(handlerName).append(parameter).append("}\n")
+            .append("on error errorMessage number errorNumber\n")
+            .append("set end of " + RESULTS_VARIABLE + " to {false, errorMessage, errorNumber}\n")
+            .append("end try");
+        final List<String> allHandlers = new ArrayList<>(handlers);
+        allHandlers.add("on " + handlerName + parameter + "\n" + applescriptFragment + "\nend " + handlerName);
+        add(call, arguments, allHandlers);
+        final CompletableFuture<String> result = new CompletableFuture<>();
+        results.add(result);
+        return result;
+    }
+
+    /**
+     * Arguments for the current script.
+     *
+     * @return copy of the argument list
+     */
+    public List<String> getArguments() {
+        return new ArrayList<>(arguments);
+    }
+
     /**
      * Resets the session. All previously added, but uncommitted fragments are lost.
      */
     public void reset() {
         LOG.fine("Resetting session for thread " + Thread.currentThread().getName());
-        this.script = new StringBuilder();
         this.timeout = DEFAULT_TIMEOUT;
+        this.deadlineMillis = 0;
+        this.scriptExecutorProvider = null;
+        clear();
+    }
+
+    /**
+     * Removes all previously added fragments, but unlike {@link #reset()} keeps the
+     * session's settings, like its deadline or its executor provider.
+     * Used once the fragments have been executed by an implicit commit.
+     */
+    public void clear() {
+        if (this.script != null) UNCOMMITTED_LENGTH.add(-this.script.length());
+        this.script = new StringBuilder();
+        this.arguments = new ArrayList<>();
+        this.handlers = new LinkedHashSet<>();
+        cancelResults();
+        runExecutionCallbacks();
+    }
+
+    private void runExecutionCallbacks() {
+        final List<Runnable> callbacks = executionCallbacks;
+        this.executionCallbacks = new ArrayList<>();
+        callbacks.forEach(Runnable::run);
+    }
+
+    private void cancelResults() {
+        if (results != null) {
+            for (final CompletableFuture<String> result : results) {
+                result.completeExceptionally(new CancellationException("Session was reset."));
+            }
+        }
+        this.results = new ArrayList<>();
     }
 
     /**
@@ -151,11 +353,35 @@ public class Session {
 
     /**
      * Return the current script or script fragments.
+     * If the session has {@link #getArguments() arguments}, the fragments are
+     * wrapped in a <code>run</code> handler. Handler definitions are appended.
      *
      * @return current script
      */
     public String getScript() {
-        return script.toString();
+        if (results.isEmpty()) return toScript(script, arguments, handlers);
+        return toScript(script + "return " + RESULTS_VARIABLE + "\n", arguments, handlers);
+    }
+
+    /**
+     * Creates a complete script from a body, its arguments and the handlers it uses.
+     *
+     * @param body body
+     * @param arguments arguments, if not empty, the body is wrapped in a <code>run</code> handler
+     * @param handlers handler definitions
+     * @return script
+     */
+    public static String toScript(final CharSequence body, final List<String> arguments,
+                                  final Collection<String> handlers) {
+        if (arguments.isEmpty() && handlers.isEmpty()) return body.toString();
+        final StringBuilder sb = new StringBuilder();
+        if (!arguments.isEmpty()) sb.append("on run argv\n");
+        sb.append(body);
+        if (!arguments.isEmpty()) sb.append("end run\n");
+        for (final String handler : handlers) {
+            sb.append(handler).append("\n");
+        }
+        return sb.toString();
     }
 
     /**
@@ -164,22 +390,171 @@ public class Session {
      */
     public void commit() {
         LOG.fine("Committing session for thread " + Thread.currentThread().getName());
+        try {
+            execute();
+        } finally {
+            bind(null);
+        }
+    }
+
+    /**
+     * Executes the current script (collection of fragments), but keeps
+     * the session, so that more fragments can be added.
+     * Used to implicitly commit a session, when a return value is needed right away.
+     */
+    public void flush() {
+        LOG.fine("Flushing session for thread " + Thread.currentThread().getName());
+        execute();
+    }
+
+    private void execute() {
+        final List<CompletableFuture<String>> pending = results;
         try {
             if (script.length() > 0) {
                 final ScriptExecutor scriptExecutor = ScriptExecutor.newInstance();
-                scriptExecutor.setScript(script);
-                scriptExecutor.execute();
+                scriptExecutor.setScript(getScript());
+                scriptExecutor.setArguments(arguments);
+                final String returnValue = scriptExecutor.execute();
+                if (!pending.isEmpty()) complete(pending, returnValue);
             } else {
                 LOG.fine("Committing empty session.");
             }
         } catch (IOException e) {
-            throw new JaplScriptException(e);
+            final JaplScriptException exception = new JaplScriptException(e);
+            pending.forEach(result -> result.completeExceptionally(exception));
+            throw exception;
+        } catch (RuntimeException e) {
+            pending.forEach(result -> result.completeExceptionally(e));
+            throw e;
         } finally {
-            script = new StringBuilder();
+            // all pending results are completed by now
+            clear();
+        }
+    }
+
+    /**
+     * Passes the results of a batch to the futures of the individual calls.
+     *
+     * @param pending futures
+     * @param returnValue list of <code>{true, result}</code> or
+     * <code>{false, errorMessage, errorNumber}</code> lists
+     */
+    private static void complete(final List<CompletableFuture<String>> pending, final String returnValue) {
+        final List<String> items = splitList(returnValue);
+        if (items.size() != pending.size()) {
+            throw new JaplScriptException("Expected " + pending.size() + " batch results, but got " + items.size() + ": " + returnValue);
+        }
+        for (int i = 0; i < items.size(); i++) {
+            final List<String> item = splitList(items.get(i));
+            if (!item.isEmpty() && "true".equals(item.get(0))) {
+                pending.get(i).complete(item.size() > 1 ? item.get(1) : "");
+            } else if (item.size() == 3) {
+                pending.get(i).completeExceptionally(new JaplScriptException("execution error: "
+                    + unquote(item.get(1)) + " (" + item.get(2) + ")"));
+            } else {
+                pending.get(i).completeExceptionally(new JaplScriptException("Malformed batch result: " + items.get(i)));
+            }
+        }
+    }
+
+    /**
+     * Splits an AppleScript list in source form into its top-level items.
+     *
+     * @param list list, e.g. <code>{1, "a, b", {2, 3}}</code>
+     * @return items in source form, e.g. <code>1</code>, <code>"a, b"</code> and <code>{2, 3}</code>
+     */
+    static List<String> splitList(final String list) {
+        final AppleScriptResultParser parser = new AppleScriptResultParser(list);
+        final AppleScriptResultParser.Token first = parser.hasNext() ? parser.next() : null;
+        if (first != AppleScriptResultParser.Token.LIST_START && first != AppleScriptResultParser.Token.RECORD_START) {
+            throw new JaplScriptException("Not a list: " + list);
+        }
+        final List<String> items = new ArrayList<>();
+        int itemStart = -1;
+        while (true) {
+            final AppleScriptResultParser.Token token = parser.next();
+            if (parser.getDepth() == 0) break;
+            // keep record keys with their values
+            if (itemStart == -1) itemStart = parser.getStart();
+            if (token != AppleScriptResultParser.Token.KEY) {
+                items.add(list.substring(itemStart, parser.skipValue()));
+                itemStart = -1;
+            }
+        }
+        if (parser.hasNext()) throw new JaplScriptException("Not a list: " + list);
+        return items;
+    }
+
+    private static String unquote(final String text) {
+        if (text.length() < 2 || !text.startsWith("\"") || !text.endsWith("\"")) return text;
+        final StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 1; i < text.length() - 1; i++) {
+            final char c = text.charAt(i);
+            if (c == '\\' && i < text.length() - 2) {
+                sb.append(text.charAt(++i));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Calls the given supplier with the given session temporarily set as
+     * the current thread's session. Used for work that is started on behalf of
+     * another thread.
+     *
+     * @param session session or {@code null}
+     * @param supplier supplier
+     * @param <T> result type
+     * @return result
+     */
+    static <T> T callWith(final Session session, final Supplier<T> supplier) {
+        final Session previous = SESSIONS.get();
+        if (previous == session) return supplier.get();
+        try {
+            bind(session);
+            return supplier.get();
+        } finally {
+            bind(previous);
+        }
+    }
+
+    /**
+     * Sets the current thread's session and keeps track of the number of
+     * threads that have a session.
+     *
+     * @param session session or {@code null} to remove the current session
+     */
+    private static void bind(final Session session) {
+        final Session previous = SESSIONS.get();
+        if (session == null) {
+            if (previous != null) ACTIVE_SESSIONS.decrementAndGet();
             SESSIONS.remove();
+        } else {
+            if (previous == null) ACTIVE_SESSIONS.incrementAndGet();
+            SESSIONS.set(session);
         }
     }
 
+    /**
+     * Number of threads that have a session, which has been started, but not yet committed.
+     *
+     * @return active sessions
+     */
+    static int getActiveCount() {
+        return ACTIVE_SESSIONS.get();
+    }
+
+    /**
+     * Total length of all uncommitted fragments in all threads.
+     *
+     * @return length in chars
+     */
+    static long getUncommittedLength() {
+        return UNCOMMITTED_LENGTH.sum();
+    }
+
     /**
      * Deprecated. Use {@link #get()} instead.
      *
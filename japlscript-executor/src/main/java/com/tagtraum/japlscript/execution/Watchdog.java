@@ -0,0 +1,131 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Enforces deadlines and terminates processes that exceeded them or are not needed anymore.
+ * <p>
+ * Processes are terminated together with all their descendants: first politely via
+ * {@link ProcessHandle#destroy()} and, if they are still alive after a short
+ * grace period, via {@link ProcessHandle#destroyForcibly()}.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+final class Watchdog {
+
+    private static final Logger LOG = Logger.getLogger(Watchdog.class.getName());
+    static final long GRACE_PERIOD_MILLIS = 500;
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, "JaplScript Watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Watchdog() {
+    }
+
+    /**
+     * Runs the given task after the given delay on the watchdog thread.
+     * Tasks must not block.
+     *
+     * @param task task
+     * @param delayMillis delay in ms
+     * @return scheduled future
+     */
+    static ScheduledFuture<?> schedule(final Runnable task, final long delayMillis) {
+        return SCHEDULER.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Terminates the given process and all its descendants. Does not block.
+     *
+     * @param process process
+     */
+    static void destroy(final Process process) {
+        // collect descendants first, as they are re-parented once the process is gone
+        final List<ProcessHandle> handles = process.descendants().collect(Collectors.toList());
+        handles.add(process.toHandle());
+        if (LOG.isLoggable(Level.FINE)) LOG.fine("Destroying process tree " + handles);
+        handles.forEach(ProcessHandle::destroy);
+        schedule(() -> handles.stream()
+            .filter(ProcessHandle::isAlive)
+            .forEach(handle -> {
+                if (LOG.isLoggable(Level.FINE)) LOG.fine("Forcibly destroying process " + handle);
+                handle.destroyForcibly();
+            }), GRACE_PERIOD_MILLIS);
+    }
+
+    /**
+     * Waits for the given process to exit. If it does not exit within the deadline or
+     * the current thread is interrupted, the process is {@link #destroy(Process) destroyed}.
+     *
+     * @param process process
+     * @param deadlineMillis deadline in ms, values less than 1 mean no deadline
+     * @param script script executed by the process, used for error messages
+     * @return exit value
+     * @throws DeadlineExceededException if the process did not exit in time
+     * @throws InterruptedIOException if the current thread was interrupted
+     */
+    static int waitFor(final Process process, final long deadlineMillis, final CharSequence script) throws IOException {
+        try {
+            if (deadlineMillis <= 0) return process.waitFor();
+            if (process.waitFor(deadlineMillis, TimeUnit.MILLISECONDS)) return process.exitValue();
+        } catch (InterruptedException e) {
+            destroy(process);
+            Thread.currentThread().interrupt();
+            final InterruptedIOException interruptedIOException = new InterruptedIOException(e.toString());
+            interruptedIOException.initCause(e);
+            throw interruptedIOException;
+        }
+        destroy(process);
+        throw new DeadlineExceededException(deadlineMillis, script == null ? null : script.toString());
+    }
+
+    /**
+     * Completes the given future exceptionally with a {@link DeadlineExceededException},
+     * unless it is completed otherwise within the deadline.
+     *
+     * @param future future
+     * @param deadlineMillis deadline in ms, values less than 1 mean no deadline
+     * @param script script, used for error messages
+     * @param <T> result type
+     * @return the given future
+     */
+    static <T> CompletableFuture<T> withDeadline(final CompletableFuture<T> future, final long deadlineMillis,
+                                                 final CharSequence script) {
+        if (deadlineMillis <= 0 || future.isDone()) return future;
+        final ScheduledFuture<?> timer = schedule(() -> future.completeExceptionally(
+            new DeadlineExceededException(deadlineMillis, script == null ? null : script.toString())), deadlineMillis);
+        future.whenComplete((result, throwable) -> timer.cancel(false));
+        return future;
+    }
+
+    /**
+     * Cancels the target, once the source is cancelled.
+     *
+     * @param source source
+     * @param target target
+     */
+    static void propagateCancellation(final CompletableFuture<?> source, final CompletableFuture<?> target) {
+        if (source == target) return;
+        source.whenComplete((result, throwable) -> {
+            if (source.isCancelled()) target.cancel(true);
+        });
+    }
+}
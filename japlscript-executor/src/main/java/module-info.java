@@ -6,5 +6,10 @@
 module tagtraum.japlscript.executor {
     requires transitive java.logging;
     requires transitive java.desktop;
+    requires java.management;
     exports com.tagtraum.japlscript.execution;
+    uses com.tagtraum.japlscript.execution.ScriptExecutorProvider;
+    provides com.tagtraum.japlscript.execution.ScriptExecutorProvider with
+        com.tagtraum.japlscript.execution.CocoaScriptExecutorProvider,
+        com.tagtraum.japlscript.execution.OsascriptProvider;
 }
\ No newline at end of file
@@ -0,0 +1,64 @@
+// Long-lived osascript worker used by com.tagtraum.japlscript.execution.OsascriptWorkerPool.
+//
+// Reads length-prefixed AppleScript sources from stdin, executes them and
+// writes length-prefixed results to stdout:
+//
+//   request:  <number of UTF-8 bytes>\n<script>
+//   response: OK|ERR <number of UTF-8 bytes>\n<result or error message>
+//
+// Exits, once stdin is closed.
+ObjC.import('Foundation');
+ObjC.import('OSAKit');
+
+function isNil(o) {
+    return o === undefined || o === null || (typeof o.isNil === 'function' && o.isNil());
+}
+
+function readLine(handle) {
+    var line = '';
+    for (;;) {
+        var data = handle.readDataOfLength(1);
+        if (data.length === 0) return line.length === 0 ? null : line;
+        var c = ObjC.unwrap($.NSString.alloc.initWithDataEncoding(data, $.NSUTF8StringEncoding));
+        if (c === '\n') return line;
+        line += c;
+    }
+}
+
+function readFully(handle, length) {
+    var data = $.NSMutableData.dataWithCapacity(length);
+    while (data.length < length) {
+        var chunk = handle.readDataOfLength(length - data.length);
+        if (chunk.length === 0) break;
+        data.appendData(chunk);
+    }
+    return data;
+}
+
+function write(handle, status, text) {
+    var data = $(text).dataUsingEncoding($.NSUTF8StringEncoding);
+    handle.writeData($(status + ' ' + data.length + '\n').dataUsingEncoding($.NSUTF8StringEncoding));
+    handle.writeData(data);
+}
+
+function run() {
+    var stdin = $.NSFileHandle.fileHandleWithStandardInput;
+    var stdout = $.NSFileHandle.fileHandleWithStandardOutput;
+    var language = $.OSALanguage.languageForName('AppleScript');
+    for (;;) {
+        var header = readLine(stdin);
+        if (header === null) return;
+        var length = parseInt(header, 10);
+        var source = $.NSString.alloc.initWithDataEncoding(readFully(stdin, length), $.NSUTF8StringEncoding);
+        var script = $.OSAScript.alloc.initWithSourceLanguage(source, language);
+        var displayValue = Ref();
+        var errorInfo = Ref();
+        script.executeAndReturnDisplayValueError(displayValue, errorInfo);
+        if (!isNil(errorInfo[0])) {
+            var message = errorInfo[0].objectForKey($.OSAScriptErrorMessageKey);
+            write(stdout, 'ERR', isNil(message) ? ObjC.unwrap(errorInfo[0].description) : ObjC.unwrap(message));
+        } else {
+            write(stdout, 'OK', isNil(displayValue[0]) ? '' : ObjC.unwrap(displayValue[0].string));
+        }
+    }
+}
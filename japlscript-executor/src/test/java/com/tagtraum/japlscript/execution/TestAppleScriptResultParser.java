@@ -0,0 +1,271 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static com.tagtraum.japlscript.execution.AppleScriptResultParser.Token.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TestAppleScriptResultParser.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestAppleScriptResultParser {
+
+    /**
+     * Tokens as <code>TYPE:text</code>.
+     */
+    private static List<String> tokens(final CharSequence text) {
+        final List<String> tokens = new ArrayList<>();
+        final AppleScriptResultParser parser = new AppleScriptResultParser(text);
+        while (parser.hasNext()) {
+            final AppleScriptResultParser.Token token = parser.next();
+            tokens.add(token + ":" + parser.getText());
+        }
+        return tokens;
+    }
+
+    @Test
+    public void testEmpty() {
+        assertEquals(Collections.emptyList(), tokens(""));
+        assertEquals(Collections.emptyList(), tokens("  "));
+        assertEquals(Arrays.asList("LIST_START:{", "LIST_END:}"), tokens("{}"));
+        assertEquals(Arrays.asList("LIST_START:{", "LIST_END:}"), tokens(" { } "));
+        final AppleScriptResultParser parser = new AppleScriptResultParser("");
+        assertNull(parser.getToken());
+        assertThrows(NoSuchElementException.class, parser::next);
+    }
+
+    @Test
+    public void testScalars() {
+        assertEquals(Collections.singletonList("NUMBER:-12"), tokens(" -12 "));
+        assertEquals(Collections.singletonList("NUMBER:1.5E+20"), tokens("1.5E+20"));
+        assertEquals(Collections.singletonList("STRING:\"a, \\\"b}\""), tokens("\"a, \\\"b}\""));
+        assertEquals(Collections.singletonList("CHEVRON:«data utxt0041»"), tokens("«data utxt0041»"));
+        assertEquals(Collections.singletonList("REFERENCE:missing value"), tokens("missing value"));
+        assertEquals(Collections.singletonList("REFERENCE:date \"Sunday, January 7, 2007 at 23:32:16\""),
+            tokens("date \"Sunday, January 7, 2007 at 23:32:16\""));
+        assertEquals(Collections.singletonList("REFERENCE:«class cTrk» id 5 of «class cPly» id 7 of application \"Music\""),
+            tokens("«class cTrk» id 5 of «class cPly» id 7 of application \"Music\""));
+        assertEquals(Collections.singletonList("REFERENCE:1.2.3"), tokens("1.2.3"));
+        assertEquals(Collections.singletonList("REFERENCE:\"a\" & \"b\""), tokens("\"a\" & \"b\""));
+    }
+
+    @Test
+    public void testList() {
+        assertEquals(Arrays.asList("LIST_START:{", "NUMBER:1", "STRING:\"a, b\"", "LIST_START:{", "NUMBER:2",
+            "LIST_START:{", "NUMBER:3", "LIST_END:}", "LIST_END:}", "CHEVRON:«data utxt0041»",
+            "REFERENCE:file track id 5 of application \"Music\"", "LIST_END:}"),
+            tokens("{1, \"a, b\", {2, {3}}, «data utxt0041», file track id 5 of application \"Music\"}"));
+    }
+
+    @Test
+    public void testTopLevelSequence() {
+        assertEquals(Arrays.asList("NUMBER:1", "STRING:\"a\"", "LIST_START:{", "NUMBER:2", "LIST_END:}"),
+            tokens("1, \"a\", {2}"));
+    }
+
+    @Test
+    public void testRecord() {
+        assertEquals(Arrays.asList("RECORD_START:{", "KEY:name", "STRING:\"hendrik\"", "KEY:creation date",
+            "REFERENCE:date \"Sunday, January 7, 2007 at 23:32:16\"", "KEY:|my key|", "LIST_START:{", "NUMBER:1",
+            "LIST_END:}", "KEY:«class pnam»", "RECORD_START:{", "KEY:x", "NUMBER:1", "RECORD_END:}",
+            "KEY:icon", "REFERENCE:missing value", "RECORD_END:}"),
+            tokens("{name:\"hendrik\", creation date:date \"Sunday, January 7, 2007 at 23:32:16\", |my key|:{1}, «class pnam»:{x:1}, icon:missing value}"));
+        assertEquals(Arrays.asList("KEY:a", "NUMBER:1", "KEY:b", "NUMBER:2"), tokens("a:1, b:2"));
+    }
+
+    @Test
+    public void testDepthAndSkipValue() {
+        final String text = "{1, {2, {3, 4}}, {a:{5}}, 6}";
+        final AppleScriptResultParser parser = new AppleScriptResultParser(text);
+        assertEquals(LIST_START, parser.next());
+        assertEquals(1, parser.getDepth());
+        assertEquals(NUMBER, parser.next());
+        assertEquals(2, parser.skipValue());
+        assertEquals(LIST_START, parser.next());
+        final int start = parser.getStart();
+        final int end = parser.skipValue();
+        assertEquals("{2, {3, 4}}", text.substring(start, end));
+        assertEquals(LIST_END, parser.getToken());
+        assertEquals(1, parser.getDepth());
+        assertEquals(RECORD_START, parser.next());
+        assertTrue(parser.isInRecord());
+        assertEquals(KEY, parser.next());
+        assertEquals(LIST_START, parser.next());
+        assertEquals(3, parser.getDepth());
+        parser.skipValue();
+        assertEquals(RECORD_END, parser.next());
+        assertFalse(parser.isInRecord());
+        assertEquals(NUMBER, parser.next());
+        assertEquals(6, parser.getInt());
+        assertEquals(LIST_END, parser.next());
+        assertEquals(0, parser.getDepth());
+        assertFalse(parser.hasNext());
+    }
+
+    @Test
+    public void testOffsets() {
+        final String text = "xx{1, \"a\"}yy";
+        final AppleScriptResultParser parser = new AppleScriptResultParser(text, 2, text.length() - 2);
+        assertEquals(LIST_START, parser.next());
+        assertEquals(2, parser.getStart());
+        assertEquals(NUMBER, parser.next());
+        assertEquals(3, parser.getStart());
+        assertEquals(4, parser.getEnd());
+        assertEquals(STRING, parser.next());
+        assertEquals(6, parser.getStart());
+        assertEquals(9, parser.getEnd());
+        assertEquals(LIST_END, parser.next());
+        assertFalse(parser.hasNext());
+        assertThrows(IndexOutOfBoundsException.class, () -> new AppleScriptResultParser(text, 5, 2));
+    }
+
+    @Test
+    public void testValues() {
+        final AppleScriptResultParser parser = new AppleScriptResultParser(
+            "{\"a \\\"b\\\" \\\\ c\", 2147483647, -9223372036854775808, 9223372036854775808, 1.5, 2147483648}");
+        parser.next();
+        parser.next();
+        assertEquals("a \"b\" \\ c", parser.getString());
+        parser.next();
+        assertEquals(Integer.MAX_VALUE, parser.getInt());
+        parser.next();
+        assertEquals(Long.MIN_VALUE, parser.getLong());
+        parser.next();
+        assertThrows(NumberFormatException.class, parser::getLong);
+        parser.next();
+        assertEquals(1.5, parser.getDouble());
+        assertThrows(NumberFormatException.class, parser::getLong);
+        parser.next();
+        assertEquals(2147483648L, parser.getLong());
+        assertThrows(NumberFormatException.class, parser::getInt);
+    }
+
+    @Test
+    public void testDoubles() {
+        final String[] numbers = {"0", "-0.0", "1", "-1.5", "0.1", "3.14159265358979", "123456789012345",
+            "1234567890123456789", "0.000001", "1.0E+20", "1.0E-5", "-2.5E+22", "1.7976931348623157E+308",
+            "4.9E-324", "9007199254740993", "0.30000000000000004", "1.0E+400"};
+        for (final String number : numbers) {
+            final AppleScriptResultParser parser = new AppleScriptResultParser(number);
+            assertEquals(NUMBER, parser.next());
+            assertEquals(Double.parseDouble(number), parser.getDouble(), number);
+            assertEquals(Float.parseFloat(number), parser.getFloat(), number);
+        }
+        final Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            final String number = random.nextInt(1000000) + "." + random.nextInt(100000) + "E" + (random.nextInt(50) - 25);
+            final AppleScriptResultParser parser = new AppleScriptResultParser(number);
+            parser.next();
+            assertEquals(Double.parseDouble(number), parser.getDouble(), number);
+            assertEquals(Float.parseFloat(number), parser.getFloat(), number);
+        }
+        // negative zero
+        final AppleScriptResultParser parser = new AppleScriptResultParser("-0.0");
+        parser.next();
+        assertEquals(Double.doubleToLongBits(-0.0), Double.doubleToLongBits(parser.getDouble()));
+        assertEquals(Float.floatToIntBits(-0.0f), Float.floatToIntBits(parser.getFloat()));
+    }
+
+    @Test
+    public void testBooleans() {
+        final AppleScriptResultParser parser = new AppleScriptResultParser("{true, false, TRUE, truex, \"true\", missing value}");
+        parser.next();
+        parser.next();
+        assertTrue(parser.getBoolean());
+        parser.next();
+        assertFalse(parser.getBoolean());
+        parser.next();
+        assertTrue(parser.getBoolean());
+        parser.next();
+        assertFalse(parser.getBoolean());
+        parser.next();
+        assertFalse(parser.getBoolean());
+        parser.next();
+        assertFalse(parser.getBoolean());
+    }
+
+    @Test
+    public void testMalformed() {
+        assertThrows(JaplScriptException.class, () -> tokens("{1, 2"));
+        assertThrows(JaplScriptException.class, () -> tokens("{1 2}x"));
+        assertThrows(JaplScriptException.class, () -> tokens("1}"));
+        assertThrows(JaplScriptException.class, () -> tokens("{\"abc}"));
+        assertThrows(JaplScriptException.class, () -> tokens("{«data abc}"));
+        assertThrows(JaplScriptException.class, () -> tokens("{a:}"));
+        assertThrows(JaplScriptException.class, () -> tokens("{a:1, 2}"));
+        assertThrows(JaplScriptException.class, () -> tokens("{1, , 2}"));
+    }
+
+    @Test
+    public void testLinearTime() {
+        // deeply nested lists and records, every char must be looked at a constant number of times
+        final int depth = 2000;
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            sb.append(i % 2 == 0 ? "{\"x\", " : "{key:");
+        }
+        sb.append("1");
+        for (int i = 0; i < depth; i++) {
+            sb.append('}');
+        }
+        final CountingCharSequence text = new CountingCharSequence(sb);
+        final AppleScriptResultParser parser = new AppleScriptResultParser(text);
+        int tokens = 0;
+        while (parser.hasNext()) {
+            parser.next();
+            tokens++;
+        }
+        assertEquals(depth * 2 + depth / 2 * 2 + 1, tokens);
+        assertTrue(text.count < 4L * sb.length(), "charAt calls: " + text.count + ", length: " + sb.length());
+
+        final AppleScriptResultParser skipping = new AppleScriptResultParser(sb);
+        skipping.next();
+        assertEquals(sb.length(), skipping.skipValue());
+    }
+
+    private static class CountingCharSequence implements CharSequence {
+
+        private final CharSequence chars;
+        private long count;
+
+        CountingCharSequence(final CharSequence chars) {
+            this.chars = chars;
+        }
+
+        @Override
+        public int length() {
+            return chars.length();
+        }
+
+        @Override
+        public char charAt(final int index) {
+            count++;
+            return chars.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(final int start, final int end) {
+            return chars.subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return chars.toString();
+        }
+    }
+}
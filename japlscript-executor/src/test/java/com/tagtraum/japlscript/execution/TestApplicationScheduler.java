@@ -0,0 +1,302 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TestApplicationScheduler.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestApplicationScheduler {
+
+    private static final String FINDER = "application \"Finder\"";
+    private static final String MUSIC = "application \"Music\"";
+
+    @Test
+    public void testBadMaxConcurrency() {
+        assertThrows(IllegalArgumentException.class, () -> new ApplicationScheduler(0));
+        final ApplicationScheduler scheduler = new ApplicationScheduler(1);
+        assertThrows(IllegalArgumentException.class, () -> scheduler.setMaxConcurrency(FINDER, 0));
+    }
+
+    @Test
+    public void testMaxConcurrency() {
+        final ApplicationScheduler scheduler = new ApplicationScheduler(3);
+        assertEquals(3, scheduler.getDefaultMaxConcurrency());
+        assertEquals(3, scheduler.getMaxConcurrency(FINDER));
+        scheduler.setMaxConcurrency(FINDER, 1);
+        assertEquals(1, scheduler.getMaxConcurrency(FINDER));
+        assertEquals(3, scheduler.getMaxConcurrency(MUSIC));
+    }
+
+    @Test
+    public void testUnlimitedByDefault() throws IOException {
+        final ApplicationScheduler scheduler = new ApplicationScheduler();
+        assertEquals(ApplicationScheduler.UNLIMITED, scheduler.getDefaultMaxConcurrency());
+        final String result = scheduler.execute(FINDER, () -> scheduler.execute(FINDER, () -> {
+            assertEquals(2, scheduler.getActiveCount(FINDER));
+            return "result";
+        }));
+        assertEquals("result", result);
+        assertEquals(0, scheduler.getQueueLength(FINDER));
+    }
+
+    @Test
+    public void testGettersDoNotCreateLanes() {
+        final ApplicationScheduler scheduler = new ApplicationScheduler(3);
+        assertEquals(3, scheduler.getMaxConcurrency(FINDER));
+        assertEquals(0, scheduler.getActiveCount(FINDER));
+        assertEquals(0, scheduler.getQueueLength(FINDER));
+        assertEquals(0, scheduler.getMaxQueueLength(FINDER));
+        assertEquals(0.0, scheduler.getQueueTimeMeanMillis(FINDER));
+        assertEquals(0.0, scheduler.getQueueTimeP99Millis(FINDER));
+        assertTrue(scheduler.getApplications().isEmpty());
+    }
+
+    @Test
+    public void testExecute() throws IOException {
+        final ApplicationScheduler scheduler = new ApplicationScheduler(1);
+        assertEquals("result", scheduler.execute(FINDER, () -> "result"));
+        assertEquals(0, scheduler.getActiveCount(FINDER));
+        assertEquals(0, scheduler.getQueueLength(FINDER));
+        assertTrue(scheduler.getApplications().contains(FINDER));
+    }
+
+    @Test
+    public void testExecuteFailure() {
+        final ApplicationScheduler scheduler = new ApplicationScheduler(1);
+        assertThrows(IOException.class, () -> scheduler.execute(FINDER, () -> {
+            throw new IOException("failed");
+        }));
+        assertThrows(IOException.class, () -> scheduler.execute(FINDER, () -> {
+            throw new Exception("failed");
+        }));
+        // permit must have been released
+        assertEquals(0, scheduler.getActiveCount(FINDER));
+    }
+
+    @Test
+    public void testFifo() throws InterruptedException {
+        final ApplicationScheduler scheduler = new ApplicationScheduler(1);
+        final CompletableFuture<String> blocker = new CompletableFuture<>();
+        scheduler.submit(FINDER, () -> blocker);
+        assertEquals(1, scheduler.getActiveCount(FINDER));
+
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        final List<IOException> failures = Collections.synchronizedList(new ArrayList<>());
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            final int value = i;
+            final Thread thread = new Thread(() -> {
+                try {
+                    scheduler.execute(FINDER, () -> order.add(value));
+                } catch (IOException e) {
+                    failures.add(e);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+            // make sure threads are queued in order
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (scheduler.getQueueLength(FINDER) < i + 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+        }
+        assertEquals(5, scheduler.getQueueLength(FINDER));
+        assertEquals(5, scheduler.getMaxQueueLength(FINDER));
+        assertTrue(order.isEmpty());
+
+        blocker.complete("done");
+        for (final Thread thread : threads) {
+            thread.join(5000);
+        }
+        assertTrue(failures.isEmpty(), "Failures: " + failures);
+        assertEquals(List.of(0, 1, 2, 3, 4), order);
+        assertEquals(0, scheduler.getActiveCount(FINDER));
+        assertEquals(0, scheduler.getQueueLength(FINDER));
+        assertTrue(scheduler.getQueueTimeP99Millis(FINDER) > 0);
+        assertTrue(scheduler.getQueueTimeMeanMillis(FINDER) > 0);
+    }
+
+    @Test
+    public void testDifferentApplications() throws IOException {
+        final ApplicationScheduler scheduler = new ApplicationScheduler(1);
+        final CompletableFuture<String> blocker = new CompletableFuture<>();
+        scheduler.submit(FINDER, () -> blocker);
+        // must not block
+        assertEquals("music", scheduler.execute(MUSIC, () -> "music"));
+        assertEquals(1, scheduler.getActiveCount(FINDER));
+        blocker.complete("done");
+        assertEquals(0, scheduler.getActiveCount(FINDER));
+    }
+
+    @Test
+    public void testSubmitHoldsPermit() throws Exception {
+        final ApplicationScheduler scheduler = new ApplicationScheduler(1);
+        final CompletableFuture<String> first = new CompletableFuture<>();
+        final AtomicInteger started = new AtomicInteger();
+        final CompletableFuture<String> firstResult = scheduler.submit(FINDER, () -> {
+            started.incrementAndGet();
+            return first;
+        });
+        final CompletableFuture<String> secondResult = scheduler.submit(FINDER, () -> {
+            started.incrementAndGet();
+            return CompletableFuture.completedFuture("second");
+        });
+        assertEquals(1, started.get());
+        assertEquals(1, scheduler.getQueueLength(FINDER));
+
+        first.complete("first");
+        assertEquals("first", firstResult.get(5, TimeUnit.SECONDS));
+        assertEquals("second", secondResult.get(5, TimeUnit.SECONDS));
+        assertEquals(2, started.get());
+        assertEquals(0, scheduler.getActiveCount(FINDER));
+    }
+
+    @Test
+    public void testSubmitFailureReleasesPermit() throws Exception {
+        final ApplicationScheduler scheduler = new ApplicationScheduler(1);
+        final CompletableFuture<String> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IOException("failed"));
+        assertTrue(scheduler.submit(FINDER, () -> failed).isCompletedExceptionally());
+        assertEquals(0, scheduler.getActiveCount(FINDER));
+    }
+
+    @Test
+    public void testCancelQueued() {
+        final ApplicationScheduler scheduler = new ApplicationScheduler(1);
+        final CompletableFuture<String> blocker = new CompletableFuture<>();
+        scheduler.submit(FINDER, () -> blocker);
+        final AtomicInteger started = new AtomicInteger();
+        final CompletableFuture<String> queued = scheduler.submit(FINDER, () -> {
+            started.incrementAndGet();
+            return CompletableFuture.completedFuture("queued");
+        });
+        assertEquals(1, scheduler.getQueueLength(FINDER));
+        assertTrue(queued.cancel(true));
+        assertEquals(0, scheduler.getQueueLength(FINDER));
+        blocker.complete("done");
+        assertEquals(0, started.get());
+        assertEquals(0, scheduler.getActiveCount(FINDER));
+    }
+
+    @Test
+    public void testCancelPropagates() {
+        final ApplicationScheduler scheduler = new ApplicationScheduler(1);
+        final CompletableFuture<String> task = new CompletableFuture<>();
+        final CompletableFuture<String> result = scheduler.submit(FINDER, () -> task);
+        assertEquals(1, scheduler.getActiveCount(FINDER));
+        assertTrue(result.cancel(true));
+        assertTrue(task.isCancelled());
+        assertEquals(0, scheduler.getActiveCount(FINDER));
+    }
+
+    @Test
+    public void testRaiseMaxConcurrency() throws Exception {
+        final ApplicationScheduler scheduler = new ApplicationScheduler(1);
+        final CompletableFuture<String> blocker = new CompletableFuture<>();
+        scheduler.submit(FINDER, () -> blocker);
+        final CompletableFuture<String> queued = scheduler.submit(FINDER, () -> CompletableFuture.completedFuture("queued"));
+        assertFalse(queued.isDone());
+
+        scheduler.setMaxConcurrency(FINDER, 2);
+        assertEquals("queued", queued.get(5, TimeUnit.SECONDS));
+        assertEquals(1, scheduler.getActiveCount(FINDER));
+        blocker.complete("done");
+        assertEquals(0, scheduler.getActiveCount(FINDER));
+    }
+
+    @Test
+    public void testInterrupt() throws InterruptedException {
+        final ApplicationScheduler scheduler = new ApplicationScheduler(1);
+        final CompletableFuture<String> blocker = new CompletableFuture<>();
+        scheduler.submit(FINDER, () -> blocker);
+        final CountDownLatch failed = new CountDownLatch(1);
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        final Thread thread = new Thread(() -> {
+            try {
+                scheduler.execute(FINDER, () -> "never");
+            } catch (InterruptedIOException e) {
+                interrupted.set(Thread.currentThread().isInterrupted());
+                failed.countDown();
+            } catch (IOException e) {
+                // fails the test below
+            }
+        });
+        thread.start();
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (scheduler.getQueueLength(FINDER) == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        thread.interrupt();
+        assertTrue(failed.await(5, TimeUnit.SECONDS));
+        // interrupt status is restored
+        assertTrue(interrupted.get());
+        assertEquals(0, scheduler.getQueueLength(FINDER));
+        blocker.complete("done");
+        assertEquals(0, scheduler.getActiveCount(FINDER));
+    }
+
+    @Test
+    public void testDefaultMaxConcurrencyProperty() {
+        final String previous = System.getProperty(ApplicationScheduler.CONCURRENCY_PROPERTY);
+        try {
+            assertEquals(2, getDefaultMaxConcurrency("2"));
+            assertEquals(3, getDefaultMaxConcurrency(" 3 "));
+            // invalid values are ignored
+            assertEquals(ApplicationScheduler.UNLIMITED, getDefaultMaxConcurrency("0"));
+            assertEquals(ApplicationScheduler.UNLIMITED, getDefaultMaxConcurrency("-1"));
+            assertEquals(ApplicationScheduler.UNLIMITED, getDefaultMaxConcurrency("many"));
+        } finally {
+            if (previous == null) System.clearProperty(ApplicationScheduler.CONCURRENCY_PROPERTY);
+            else System.setProperty(ApplicationScheduler.CONCURRENCY_PROPERTY, previous);
+            ApplicationScheduler.setDefault(null);
+        }
+    }
+
+    private static int getDefaultMaxConcurrency(final String property) {
+        System.setProperty(ApplicationScheduler.CONCURRENCY_PROPERTY, property);
+        ApplicationScheduler.setDefault(null);
+        return ApplicationScheduler.getDefault().getDefaultMaxConcurrency();
+    }
+
+    @Test
+    public void testScriptExecutorUsesDefault() throws IOException {
+        final ApplicationScheduler scheduler = new ApplicationScheduler(1);
+        ApplicationScheduler.setDefault(scheduler);
+        try {
+            final ScriptExecutor executor = new ScriptExecutor() {
+                @Override
+                protected String executeImpl() {
+                    return "active=" + scheduler.getActiveCount(FINDER);
+                }
+            };
+            executor.setApplication(FINDER);
+            executor.setScript("return 1");
+            assertEquals(FINDER, executor.getApplication());
+            assertEquals("active=1", executor.execute());
+            assertEquals(0, scheduler.getActiveCount(FINDER));
+        } finally {
+            ApplicationScheduler.setDefault(null);
+        }
+    }
+}
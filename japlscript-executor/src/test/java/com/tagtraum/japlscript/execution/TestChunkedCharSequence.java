@@ -0,0 +1,111 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TestChunkedCharSequence.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestChunkedCharSequence {
+
+    private static String createString(final int length) {
+        final StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        return sb.toString();
+    }
+
+    private static ChunkedCharSequence createSequence(final String s) {
+        final ChunkedCharSequence sequence = new ChunkedCharSequence();
+        final char[] chars = s.toCharArray();
+        // append in odd portions to cross chunk boundaries
+        for (int i = 0; i < chars.length; i += 1000) {
+            sequence.append(chars, i, Math.min(1000, chars.length - i));
+        }
+        return sequence;
+    }
+
+    @Test
+    public void testEmpty() {
+        final ChunkedCharSequence sequence = new ChunkedCharSequence();
+        assertEquals(0, sequence.length());
+        assertEquals("", sequence.toString());
+        assertEquals("", sequence.trim().toString());
+    }
+
+    @Test
+    public void testMultipleChunks() {
+        final String s = createString(ChunkedCharSequence.CHUNK_SIZE * 3 + 17);
+        final ChunkedCharSequence sequence = createSequence(s);
+        assertEquals(s.length(), sequence.length());
+        assertEquals(s, sequence.toString());
+        for (int i = 0; i < s.length(); i += 97) {
+            assertEquals(s.charAt(i), sequence.charAt(i));
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> sequence.charAt(s.length()));
+        assertThrows(IndexOutOfBoundsException.class, () -> sequence.charAt(-1));
+    }
+
+    @Test
+    public void testSubSequence() {
+        final String s = createString(ChunkedCharSequence.CHUNK_SIZE * 2 + 5);
+        final ChunkedCharSequence sequence = createSequence(s);
+        final int start = ChunkedCharSequence.CHUNK_SIZE - 3;
+        final int end = ChunkedCharSequence.CHUNK_SIZE * 2 + 1;
+        final ChunkedCharSequence sub = sequence.subSequence(start, end);
+        assertEquals(s.substring(start, end), sub.toString());
+        assertEquals(s.substring(start + 2, start + 10), sub.subSequence(2, 10).toString());
+        assertThrows(IndexOutOfBoundsException.class, () -> sequence.subSequence(5, 4));
+        assertThrows(IllegalStateException.class, () -> sub.append(new char[1], 0, 1));
+    }
+
+    @Test
+    public void testTrim() {
+        final ChunkedCharSequence sequence = createSequence("  \n some value\t\n");
+        assertEquals("some value", sequence.trim().toString());
+        assertEquals("", createSequence(" \n ").trim().toString());
+    }
+
+    @Test
+    public void testReader() throws IOException {
+        final String s = createString(ChunkedCharSequence.CHUNK_SIZE * 2 + 123);
+        final ChunkedCharSequence sequence = createSequence(" " + s + " ").trim();
+        final StringBuilder sb = new StringBuilder();
+        try (final Reader reader = sequence.newReader()) {
+            final char[] buf = new char[5000];
+            int count;
+            while ((count = reader.read(buf)) != -1) {
+                sb.append(buf, 0, count);
+            }
+            assertEquals(-1, reader.read());
+        }
+        assertEquals(s, sb.toString());
+    }
+
+    @Test
+    public void testRelease() {
+        final ChunkedCharSequence sequence = createSequence("value");
+        final ChunkedCharSequence view = sequence.subSequence(1, 3);
+        sequence.release();
+        assertThrows(IllegalStateException.class, () -> sequence.charAt(0));
+        assertThrows(IllegalStateException.class, view::toString);
+        // releasing twice is fine
+        sequence.release();
+        // chunks are re-used
+        final ChunkedCharSequence other = createSequence("other");
+        assertEquals("other", other.toString());
+    }
+}
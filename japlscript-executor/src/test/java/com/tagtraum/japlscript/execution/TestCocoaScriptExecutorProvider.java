@@ -0,0 +1,40 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TestCocoaScriptExecutorProvider.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestCocoaScriptExecutorProvider {
+
+    @Test
+    public void testBasics() {
+        final CocoaScriptExecutorProvider provider = new CocoaScriptExecutorProvider();
+        assertEquals(CocoaScriptExecutorProvider.NAME, provider.getName());
+        assertTrue(provider.getPriority() > OsascriptProvider.PRIORITY);
+        assertFalse(provider.isCompileSupported());
+        assertTrue(provider.toString().contains("Cocoa"));
+    }
+
+    @Test
+    public void testAvailable() {
+        try {
+            ScriptExecutor.setPreferOsascript(true);
+            assertFalse(new CocoaScriptExecutorProvider().isAvailable());
+            ScriptExecutor.setPreferOsascript(false);
+            assertEquals(ScriptExecutor.isCocoaScriptExecutorAvailable(), new CocoaScriptExecutorProvider().isAvailable());
+        } finally {
+            ScriptExecutor.setPreferOsascript(false);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TestDeadlineExceededException.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestDeadlineExceededException {
+
+    @Test
+    public void testException() {
+        final DeadlineExceededException exception = new DeadlineExceededException(500, "delay 10");
+        assertEquals(500, exception.getDeadlineMillis());
+        assertEquals("delay 10", exception.getScript());
+        assertTrue(exception.getMessage().contains("500ms"));
+        assertTrue(exception.getMessage().contains("delay 10"));
+        assertNull(exception.getCause());
+    }
+
+    @Test
+    public void testExceptionWithCause() {
+        final IOException cause = new IOException();
+        final DeadlineExceededException exception = new DeadlineExceededException(500, null, cause);
+        assertEquals(cause, exception.getCause());
+        assertNull(exception.getScript());
+        assertEquals("Script did not finish within 500ms.", exception.getMessage());
+    }
+}
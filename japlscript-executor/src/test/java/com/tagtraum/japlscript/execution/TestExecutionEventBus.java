@@ -0,0 +1,157 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TestExecutionEventBus.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestExecutionEventBus {
+
+    @Test
+    public void testInactive() throws IOException {
+        final ExecutionEventBus bus = ExecutionEventBus.getInstance();
+        final Executor dispatcher = bus.getDispatcher();
+        try {
+            final List<Runnable> dispatched = new CopyOnWriteArrayList<>();
+            bus.setDispatcher(dispatched::add);
+            // other tests may have left listeners behind
+            if (bus.isActive()) return;
+            final ScriptExecutor scriptExecutor = new EchoScriptExecutor();
+            scriptExecutor.setScript("return 1");
+            scriptExecutor.execute();
+            // nothing to do, if nobody listens
+            assertTrue(dispatched.isEmpty());
+        } finally {
+            bus.setDispatcher(dispatcher);
+        }
+    }
+
+    @Test
+    public void testCallerThreadDispatcher() throws IOException {
+        final ExecutionEventBus bus = ExecutionEventBus.getInstance();
+        final Executor dispatcher = bus.getDispatcher();
+        final List<ExecutionEvent> events = new CopyOnWriteArrayList<>();
+        final List<ExecutionMetricsEvent> metricsEvents = new CopyOnWriteArrayList<>();
+        final ExecutionListener listener = events::add;
+        final ExecutionMetricsListener metricsListener = metricsEvents::add;
+        try {
+            bus.setDispatcher(ExecutionEventBus.CALLER_THREAD);
+            bus.addExecutionListener(listener);
+            bus.addMetricsListener(metricsListener);
+            assertTrue(bus.isActive());
+            final ScriptExecutor scriptExecutor = new EchoScriptExecutor();
+            scriptExecutor.setScript("return 1");
+            scriptExecutor.execute();
+
+            assertEquals(2, events.size());
+            assertEquals(new ExecutionEvent(scriptExecutor, "return 1", true, null), events.get(0));
+            assertEquals(new ExecutionEvent(scriptExecutor, "return 1", false, "return 1"), events.get(1));
+            assertEquals(1, metricsEvents.size());
+            final ExecutionMetricsEvent metricsEvent = metricsEvents.get(0);
+            assertSame(scriptExecutor, metricsEvent.getSource());
+            assertEquals(8, metricsEvent.getScriptLength());
+            assertEquals(8, metricsEvent.getResultLength());
+            assertTrue(metricsEvent.getDurationNanos() >= 0);
+            assertTrue(metricsEvent.isSuccess());
+            assertNull(metricsEvent.getFailure());
+        } finally {
+            bus.removeExecutionListener(listener);
+            assertTrue(bus.removeMetricsListener(metricsListener));
+            assertFalse(bus.removeMetricsListener(metricsListener));
+            bus.setDispatcher(dispatcher);
+        }
+    }
+
+    @Test
+    public void testFailure() throws InterruptedException, TimeoutException {
+        final ExecutionEventBus bus = ExecutionEventBus.getInstance();
+        final Executor dispatcher = bus.getDispatcher();
+        final List<ExecutionMetricsEvent> metricsEvents = new CopyOnWriteArrayList<>();
+        final ExecutionMetricsListener metricsListener = metricsEvents::add;
+        final ScriptExecutor scriptExecutor = new ScriptExecutor() {
+            @Override
+            protected String executeImpl() throws IOException {
+                throw new IOException("failed");
+            }
+        };
+        scriptExecutor.setScript("return 1");
+        try {
+            bus.setDispatcher(ExecutionEventBus.CALLER_THREAD);
+            bus.addMetricsListener(metricsListener);
+            assertThrows(IOException.class, scriptExecutor::execute);
+            assertThrows(ExecutionException.class, () -> scriptExecutor.executeAsync().get(5, TimeUnit.SECONDS));
+            assertEquals(2, metricsEvents.size());
+            for (final ExecutionMetricsEvent metricsEvent : metricsEvents) {
+                assertFalse(metricsEvent.isSuccess());
+                assertTrue(metricsEvent.getFailure() instanceof IOException);
+                assertEquals(-1, metricsEvent.getResultLength());
+            }
+        } finally {
+            bus.removeMetricsListener(metricsListener);
+            bus.setDispatcher(dispatcher);
+        }
+    }
+
+    @Test
+    public void testFailingListener() throws IOException {
+        final ExecutionEventBus bus = ExecutionEventBus.getInstance();
+        final Executor dispatcher = bus.getDispatcher();
+        final List<ExecutionEvent> events = new CopyOnWriteArrayList<>();
+        final ExecutionListener failingListener = e -> {
+            throw new IllegalStateException("failed");
+        };
+        final ExecutionListener listener = events::add;
+        try {
+            bus.setDispatcher(ExecutionEventBus.CALLER_THREAD);
+            bus.addExecutionListener(failingListener);
+            bus.addExecutionListener(listener);
+            final ScriptExecutor scriptExecutor = new EchoScriptExecutor();
+            scriptExecutor.setScript("return 1");
+            assertEquals("return 1", scriptExecutor.execute());
+            assertEquals(2, events.size());
+        } finally {
+            bus.removeExecutionListener(failingListener);
+            bus.removeExecutionListener(listener);
+            bus.setDispatcher(dispatcher);
+        }
+    }
+
+    @Test
+    public void testSetDispatcher() {
+        final ExecutionEventBus bus = ExecutionEventBus.getInstance();
+        final Executor dispatcher = bus.getDispatcher();
+        try {
+            bus.setDispatcher(ExecutionEventBus.CALLER_THREAD);
+            assertSame(ExecutionEventBus.CALLER_THREAD, bus.getDispatcher());
+            bus.setDispatcher(null);
+            assertSame(ExecutionEventBus.EDT, bus.getDispatcher());
+        } finally {
+            bus.setDispatcher(dispatcher);
+        }
+    }
+
+    private static class EchoScriptExecutor extends ScriptExecutor {
+        @Override
+        protected String executeImpl() {
+            return getScript().toString();
+        }
+    }
+}
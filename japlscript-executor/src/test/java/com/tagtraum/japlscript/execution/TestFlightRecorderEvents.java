@@ -0,0 +1,106 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TestFlightRecorderEvents.
+ * JFR is accessed via reflection, as this must also compile with Java 9.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestFlightRecorderEvents {
+
+    @Test
+    public void testNotRecording() {
+        // without an active recording, events are not enabled
+        assertNull(FlightRecorderEvents.beginScriptExecuted());
+        assertNull(FlightRecorderEvents.beginScriptCompiled());
+        assertNull(FlightRecorderEvents.beginResultDecoded());
+        // committing null events is a no-op
+        FlightRecorderEvents.commitScriptExecuted(null, this, "script", null, 0);
+        FlightRecorderEvents.commitScriptCompiled(null, "hash", "script");
+        FlightRecorderEvents.commitResultDecoded(null, String.class, "result");
+    }
+
+    @Test
+    public void testElementCount() {
+        assertEquals(0, FlightRecorderEvents.toElementCount(null));
+        assertEquals(1, FlightRecorderEvents.toElementCount("value"));
+        assertEquals(3, FlightRecorderEvents.toElementCount(new int[3]));
+        assertEquals(2, FlightRecorderEvents.toElementCount(Arrays.asList("a", "b")));
+        assertEquals(1, FlightRecorderEvents.toElementCount(Collections.singletonMap("a", "b")));
+    }
+
+    @Test
+    public void testRecording() throws Exception {
+        if (!FlightRecorderEvents.isAvailable()) return;
+        final Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+        final Object recording = recordingClass.getConstructor().newInstance();
+        recordingClass.getMethod("enable", String.class).invoke(recording, FlightRecorderEvents.SCRIPT_EXECUTED);
+        recordingClass.getMethod("enable", String.class).invoke(recording, FlightRecorderEvents.RESULT_DECODED);
+        recordingClass.getMethod("start").invoke(recording);
+        try {
+            final ScriptExecutor scriptExecutor = new EchoScriptExecutor();
+            scriptExecutor.setScript("return 1");
+            assertEquals("return 1", scriptExecutor.execute());
+            final Object event = FlightRecorderEvents.beginResultDecoded();
+            assertNotNull(event);
+            FlightRecorderEvents.commitResultDecoded(event, String[].class, new String[2]);
+        } finally {
+            recordingClass.getMethod("stop").invoke(recording);
+        }
+        final Path file = Files.createTempFile("japlscript", ".jfr");
+        try {
+            recordingClass.getMethod("dump", Path.class).invoke(recording, file);
+            final List<?> events = (List<?>) Class.forName("jdk.jfr.consumer.RecordingFile")
+                .getMethod("readAllEvents", Path.class).invoke(null, file);
+            final Object scriptExecuted = findEvent(events, FlightRecorderEvents.SCRIPT_EXECUTED);
+            assertEquals(EchoScriptExecutor.class.getName(), getValue(scriptExecuted, "executor"));
+            assertEquals(Osacompile.toKey("return 1"), getValue(scriptExecuted, "scriptHash"));
+            assertEquals(8, getValue(scriptExecuted, "scriptLength"));
+            assertEquals(8, getValue(scriptExecuted, "resultLength"));
+            assertEquals(FlightRecorderEvents.NO_EXIT_CODE, getValue(scriptExecuted, "exitCode"));
+            final Object resultDecoded = findEvent(events, FlightRecorderEvents.RESULT_DECODED);
+            assertEquals(String[].class.getName(), getValue(resultDecoded, "targetType"));
+            assertEquals(2, getValue(resultDecoded, "elementCount"));
+        } finally {
+            recordingClass.getMethod("close").invoke(recording);
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static Object findEvent(final List<?> events, final String name) throws ReflectiveOperationException {
+        for (final Object event : events) {
+            final Object eventType = event.getClass().getMethod("getEventType").invoke(event);
+            if (name.equals(eventType.getClass().getMethod("getName").invoke(eventType))) return event;
+        }
+        fail("Event " + name + " not found in " + events);
+        return null;
+    }
+
+    private static Object getValue(final Object event, final String field) throws ReflectiveOperationException {
+        return event.getClass().getMethod("getValue", String.class).invoke(event, field);
+    }
+
+    private static class EchoScriptExecutor extends ScriptExecutor {
+        @Override
+        protected String executeImpl() throws IOException {
+            return getScript().toString();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TestJaplScriptStatistics.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestJaplScriptStatistics {
+
+    @Test
+    public void testRegister() throws Exception {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName objectName = new ObjectName(JaplScriptStatistics.OBJECT_NAME);
+        try {
+            final JaplScriptStatistics statistics = JaplScriptStatistics.register();
+            assertSame(statistics, JaplScriptStatistics.register());
+            assertSame(statistics, JaplScriptStatistics.getInstance());
+            assertTrue(server.isRegistered(objectName));
+            assertNotNull(server.getAttribute(objectName, "ExecutionCounts"));
+            assertNotNull(server.getAttribute(objectName, "LatencyP99Millis"));
+        } finally {
+            JaplScriptStatistics.unregister();
+        }
+        assertNull(JaplScriptStatistics.getInstance());
+        assertFalse(server.isRegistered(objectName));
+    }
+
+    @Test
+    public void testExecutions() throws IOException {
+        try {
+            final JaplScriptStatistics statistics = JaplScriptStatistics.register();
+            statistics.reset();
+            final ScriptExecutor scriptExecutor = new EchoScriptExecutor();
+            scriptExecutor.setScript("return 1");
+            scriptExecutor.execute();
+            scriptExecutor.execute();
+            final ScriptExecutor failingScriptExecutor = new FailingScriptExecutor();
+            failingScriptExecutor.setScript("return 2");
+            assertThrows(JaplScriptException.class, failingScriptExecutor::execute);
+
+            assertEquals(3, statistics.getExecutionCount());
+            assertEquals(2L, (long) statistics.getExecutionCounts().get("EchoScriptExecutor"));
+            assertEquals(1L, (long) statistics.getExecutionCounts().get("FailingScriptExecutor"));
+            assertEquals(1L, (long) statistics.getFailureCounts().get(JaplScriptException.class.getName()));
+            assertEquals(8, statistics.getScriptLengthMax());
+            assertEquals(8.0, statistics.getScriptLengthMean(), 0.0001);
+            assertEquals(8, statistics.getResultLengthMax());
+            assertTrue(statistics.getLatencyMaxMillis() >= statistics.getLatencyP50Millis());
+            assertTrue(statistics.getLatencyMeanMillis() >= 0);
+
+            statistics.reset();
+            assertEquals(0, statistics.getExecutionCount());
+            assertTrue(statistics.getExecutionCounts().isEmpty());
+        } finally {
+            JaplScriptStatistics.unregister();
+        }
+    }
+
+    @Test
+    public void testNestedExecutions() {
+        try {
+            final JaplScriptStatistics statistics = JaplScriptStatistics.register();
+            statistics.reset();
+            final Object source = new Object();
+            final JaplScriptException failure = new JaplScriptException("failed");
+            // e.g. a CompiledScript run by Osascript
+            statistics.executed(new ExecutionMetricsEvent(source, 100, -1, 1000, failure, true));
+            statistics.executed(new ExecutionMetricsEvent(this, 8, 1, 2000, failure));
+
+            assertEquals(1, statistics.getExecutionCount());
+            assertEquals(1L, (long) statistics.getExecutionCounts().get("Object"));
+            assertEquals(1L, (long) statistics.getFailureCounts().get(JaplScriptException.class.getName()));
+            assertEquals(8, statistics.getScriptLengthMax());
+        } finally {
+            JaplScriptStatistics.unregister();
+        }
+    }
+
+    @Test
+    public void testSessions() {
+        final JaplScriptStatistics statistics = new JaplScriptStatistics();
+        final Session existingSession = Session.get();
+        if (existingSession != null) existingSession.reset();
+        final int activeSessions = statistics.getActiveSessionCount();
+        final long uncommittedLength = statistics.getUncommittedSessionLength();
+        final Session session = Session.startSession();
+        try {
+            if (existingSession == null) assertEquals(activeSessions + 1, statistics.getActiveSessionCount());
+            session.add("abc");
+            assertEquals(uncommittedLength + 4, statistics.getUncommittedSessionLength());
+        } finally {
+            session.reset();
+        }
+        assertEquals(uncommittedLength, statistics.getUncommittedSessionLength());
+    }
+
+    @Test
+    public void testCompileCache() {
+        final JaplScriptStatistics statistics = new JaplScriptStatistics();
+        assertEquals(Osascript.getOsacompile().getHitCount(), statistics.getCompileCacheHitCount());
+        assertEquals(Osascript.getOsacompile().getMissCount(), statistics.getCompileCacheMissCount());
+        assertEquals(Osascript.getOsacompile().getNegativeHitCount(), statistics.getCompileCacheNegativeHitCount());
+        assertEquals(Osascript.getOsacompile().getEvictionCount(), statistics.getCompileCacheEvictionCount());
+    }
+
+    @Test
+    public void testReservoir() {
+        final JaplScriptStatistics statistics = new JaplScriptStatistics();
+        final ProcessReservoir previous = ProcessReservoir.getDefault();
+        ProcessReservoir.setDefault(null);
+        try {
+            assertEquals(0, statistics.getReservoirHitRate());
+            assertEquals(0, statistics.getReservoirSpawnLatencyP99Millis());
+            try (final ProcessReservoir reservoir = new ProcessReservoir(Collections.singletonList("cat"), 1, 60000, 10)) {
+                ProcessReservoir.setDefault(reservoir);
+                final Process process = reservoir.take();
+                if (process != null) process.destroy();
+                assertEquals(reservoir.getHitRate(), statistics.getReservoirHitRate());
+                assertEquals(reservoir.getSpawnLatencyP99Millis(), statistics.getReservoirSpawnLatencyP99Millis());
+            }
+        } finally {
+            ProcessReservoir.setDefault(previous);
+        }
+    }
+
+    private static class EchoScriptExecutor extends ScriptExecutor {
+        @Override
+        protected String executeImpl() {
+            return getScript().toString();
+        }
+    }
+
+    private static class FailingScriptExecutor extends ScriptExecutor {
+        @Override
+        protected String executeImpl() {
+            throw new JaplScriptException("failed", getScript().toString());
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TestLoadBalancedScriptExecutor.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestLoadBalancedScriptExecutor {
+
+    private static LoadBalancedScriptExecutorProvider createBalancer(final TestLoadBalancedScriptExecutorProvider.StubProvider... backends) {
+        return new LoadBalancedScriptExecutorProvider(Arrays.asList(backends),
+            LoadBalancedScriptExecutorProvider.Routing.LEAST_OUTSTANDING, 0);
+    }
+
+    @Test
+    public void testExecute() throws IOException {
+        final TestLoadBalancedScriptExecutorProvider.StubProvider a = new TestLoadBalancedScriptExecutorProvider.StubProvider("a", 0);
+        final LoadBalancedScriptExecutorProvider balancer = createBalancer(a);
+        final LoadBalancedScriptExecutor scriptExecutor = new LoadBalancedScriptExecutor(balancer);
+        assertSame(balancer, scriptExecutor.getBalancer());
+        assertNull(scriptExecutor.getBackend());
+        assertTrue(scriptExecutor.isArgumentsSupported());
+        scriptExecutor.setScript("script");
+        scriptExecutor.setArguments(Arrays.asList("1", "2"));
+        scriptExecutor.setDeadline(2, TimeUnit.SECONDS);
+        assertEquals("script [1, 2]", scriptExecutor.execute());
+        assertEquals(2000, a.deadlineMillis);
+        assertSame(balancer.getBackends().get(0), scriptExecutor.getBackend());
+        assertEquals("script [1, 2]", scriptExecutor.executeStreaming().toString());
+        assertEquals(2, scriptExecutor.getBackend().getRequestCount());
+    }
+
+    @Test
+    public void testExecuteAsync() throws InterruptedException, ExecutionException {
+        final TestLoadBalancedScriptExecutorProvider.StubProvider a = new TestLoadBalancedScriptExecutorProvider.StubProvider("a", 0);
+        final TestLoadBalancedScriptExecutorProvider.StubProvider b = new TestLoadBalancedScriptExecutorProvider.StubProvider("b", 0);
+        final LoadBalancedScriptExecutorProvider balancer = createBalancer(a, b);
+        final ScriptExecutor scriptExecutor = balancer.newInstance();
+        scriptExecutor.setScript("script");
+        assertEquals("script", scriptExecutor.executeAsync().get());
+        assertEquals("script", scriptExecutor.executeAsync().get());
+        assertEquals(1, a.executions.get());
+        assertEquals(1, b.executions.get());
+        for (final LoadBalancedScriptExecutorProvider.Backend backend : balancer.getBackends()) {
+            assertEquals(0, backend.getOutstandingCount());
+        }
+    }
+
+    @Test
+    public void testExecuteAsyncFailure() throws InterruptedException {
+        final TestLoadBalancedScriptExecutorProvider.StubProvider a = new TestLoadBalancedScriptExecutorProvider.StubProvider("a", 0);
+        a.failing = true;
+        final LoadBalancedScriptExecutorProvider balancer = createBalancer(a);
+        final ScriptExecutor scriptExecutor = balancer.newInstance();
+        scriptExecutor.setScript("script");
+        final CompletableFuture<String> future = scriptExecutor.executeAsync();
+        try {
+            future.get();
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertEquals(1, balancer.getBackends().get(0).getFailureCount());
+        assertEquals(0, balancer.getBackends().get(0).getOutstandingCount());
+    }
+
+    @Test
+    public void testEventsFiredOnce() throws IOException {
+        final TestLoadBalancedScriptExecutorProvider.StubProvider a = new TestLoadBalancedScriptExecutorProvider.StubProvider("a", 0);
+        final LoadBalancedScriptExecutorProvider balancer = createBalancer(a);
+        final AtomicInteger events = new AtomicInteger();
+        final ExecutionMetricsListener listener = event -> events.incrementAndGet();
+        ExecutionEventBus.getInstance().addMetricsListener(listener, ExecutionEventBus.CALLER_THREAD);
+        try {
+            final ScriptExecutor scriptExecutor = balancer.newInstance();
+            scriptExecutor.setScript("script");
+            scriptExecutor.execute();
+        } finally {
+            ExecutionEventBus.getInstance().removeMetricsListener(listener);
+        }
+        assertEquals(1, events.get());
+    }
+}
@@ -0,0 +1,410 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TestLoadBalancedScriptExecutorProvider.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestLoadBalancedScriptExecutorProvider {
+
+    private static LoadBalancedScriptExecutorProvider createBalancer(final LoadBalancedScriptExecutorProvider.Routing routing,
+                                                                     final StubProvider... backends) {
+        return new LoadBalancedScriptExecutorProvider(Arrays.asList(backends), routing, 0);
+    }
+
+    private static String execute(final LoadBalancedScriptExecutorProvider balancer, final String application) throws IOException {
+        final ScriptExecutor scriptExecutor = balancer.newInstance();
+        scriptExecutor.setScript("script");
+        scriptExecutor.setApplication(application);
+        return scriptExecutor.execute();
+    }
+
+    private static void waitFor(final java.util.function.BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    @Test
+    public void testBasics() {
+        final StubProvider a = new StubProvider("a", 0);
+        final StubProvider b = new StubProvider("b", 0);
+        try (final LoadBalancedScriptExecutorProvider balancer = new LoadBalancedScriptExecutorProvider(Arrays.asList(a, b))) {
+            assertEquals(LoadBalancedScriptExecutorProvider.NAME, balancer.getName());
+            assertEquals(LoadBalancedScriptExecutorProvider.PRIORITY, balancer.getPriority());
+            assertEquals(LoadBalancedScriptExecutorProvider.Routing.LEAST_OUTSTANDING, balancer.getRouting());
+            assertTrue(balancer.isAvailable());
+            assertFalse(balancer.isCompileSupported());
+            assertTrue(balancer.isArgumentsSupported());
+            assertEquals(2, balancer.getBackends().size());
+            assertSame(a, balancer.getBackends().get(0).getProvider());
+            assertTrue(balancer.newInstance() instanceof LoadBalancedScriptExecutor);
+            a.available = false;
+            assertTrue(balancer.isAvailable());
+            b.available = false;
+            assertFalse(balancer.isAvailable());
+        }
+        assertThrows(IllegalArgumentException.class, () -> new LoadBalancedScriptExecutorProvider(Collections.emptyList()));
+    }
+
+    @Test
+    public void testLeastOutstanding() throws IOException {
+        final StubProvider a = new StubProvider("a", 0);
+        final StubProvider b = new StubProvider("b", 0);
+        final LoadBalancedScriptExecutorProvider balancer = createBalancer(LoadBalancedScriptExecutorProvider.Routing.LEAST_OUTSTANDING, a, b);
+        for (int i = 0; i < 10; i++) {
+            assertEquals("script", execute(balancer, null));
+        }
+        // ties are broken round robin
+        assertEquals(5, a.executions.get());
+        assertEquals(5, b.executions.get());
+        for (final LoadBalancedScriptExecutorProvider.Backend backend : balancer.getBackends()) {
+            assertEquals(5, backend.getRequestCount());
+            assertEquals(0, backend.getOutstandingCount());
+            assertEquals(0, backend.getFailureCount());
+        }
+    }
+
+    @Test
+    public void testLeastOutstandingUnderLoad() throws InterruptedException, ExecutionException {
+        final StubProvider a = new StubProvider("a", 5);
+        final StubProvider b = new StubProvider("b", 5);
+        final StubProvider c = new StubProvider("c", 5);
+        final LoadBalancedScriptExecutorProvider balancer = createBalancer(LoadBalancedScriptExecutorProvider.Routing.LEAST_OUTSTANDING, a, b, c);
+        final ExecutorService pool = Executors.newFixedThreadPool(12);
+        try {
+            final List<CompletableFuture<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 300; i++) {
+                final ScriptExecutor scriptExecutor = balancer.newInstance();
+                scriptExecutor.setScript("script");
+                futures.add(scriptExecutor.executeAsync(pool));
+            }
+            for (final CompletableFuture<String> future : futures) {
+                assertEquals("script", future.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(300, a.executions.get() + b.executions.get() + c.executions.get());
+        // 12 concurrent executions are spread evenly, i.e. about 4 per backend
+        for (final StubProvider provider : Arrays.asList(a, b, c)) {
+            assertTrue(provider.maxConcurrent.get() <= 6, provider + " max concurrent: " + provider.maxConcurrent.get());
+            assertTrue(provider.executions.get() > 60, provider + " executions: " + provider.executions.get());
+        }
+    }
+
+    @Test
+    public void testLatencyWeightedUnderLoad() throws InterruptedException, ExecutionException {
+        final StubProvider fast = new StubProvider("fast", 2);
+        final StubProvider slow = new StubProvider("slow", 40);
+        final LoadBalancedScriptExecutorProvider balancer = createBalancer(LoadBalancedScriptExecutorProvider.Routing.LATENCY_WEIGHTED, fast, slow);
+        final ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            // route when a thread is ready, not when submitted
+            final List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                futures.add(pool.submit(() -> execute(balancer, null)));
+            }
+            for (final Future<String> future : futures) {
+                assertEquals("script", future.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(200, fast.executions.get() + slow.executions.get());
+        assertTrue(fast.executions.get() > 4 * slow.executions.get(),
+            "fast: " + fast.executions.get() + ", slow: " + slow.executions.get());
+        final LoadBalancedScriptExecutorProvider.Backend fastBackend = balancer.getBackends().get(0);
+        final LoadBalancedScriptExecutorProvider.Backend slowBackend = balancer.getBackends().get(1);
+        assertTrue(fastBackend.getLatencyMillis() < slowBackend.getLatencyMillis());
+        assertTrue(slowBackend.getLatencyMillis() >= 40);
+    }
+
+    @Test
+    public void testEjectAndReadmitFailing() throws IOException, InterruptedException, ExecutionException {
+        final StubProvider a = new StubProvider("a", 0);
+        final StubProvider b = new StubProvider("b", 0);
+        final LoadBalancedScriptExecutorProvider balancer = createBalancer(LoadBalancedScriptExecutorProvider.Routing.LEAST_OUTSTANDING, a, b);
+        balancer.setMaxConsecutiveFailures(2);
+        balancer.setReadmitAfterSuccesses(2);
+        final LoadBalancedScriptExecutorProvider.Backend backendA = balancer.getBackends().get(0);
+        a.failing = true;
+        int failures = 0;
+        for (int i = 0; i < 10; i++) {
+            try {
+                execute(balancer, null);
+            } catch (IOException e) {
+                failures++;
+            }
+        }
+        assertEquals(2, failures);
+        assertTrue(backendA.isEjected());
+        assertEquals(1, backendA.getEjectionCount());
+        assertEquals(2, backendA.getFailureCount());
+        assertEquals(8, b.executions.get());
+
+        // failing probe keeps it ejected
+        balancer.probe().get();
+        assertTrue(backendA.isEjected());
+
+        a.failing = false;
+        balancer.probe().get();
+        assertTrue(backendA.isEjected());
+        balancer.probe().get();
+        assertFalse(backendA.isEjected());
+        final int executions = a.executions.get();
+        for (int i = 0; i < 4; i++) {
+            execute(balancer, null);
+        }
+        assertEquals(executions + 2, a.executions.get());
+    }
+
+    @Test
+    public void testEjectAndReadmitSlow() throws IOException, InterruptedException, ExecutionException {
+        final StubProvider a = new StubProvider("a", 0);
+        final StubProvider b = new StubProvider("b", 0);
+        final LoadBalancedScriptExecutorProvider balancer = createBalancer(LoadBalancedScriptExecutorProvider.Routing.LEAST_OUTSTANDING, a, b);
+        balancer.setMaxLatencyMillis(30);
+        balancer.setReadmitAfterSuccesses(1);
+        final LoadBalancedScriptExecutorProvider.Backend backendB = balancer.getBackends().get(1);
+        b.latencyMillis = 60;
+        for (int i = 0; i < 4; i++) {
+            assertEquals("script", execute(balancer, null));
+        }
+        assertTrue(backendB.isEjected());
+        assertEquals(1, b.executions.get());
+        assertEquals(0, backendB.getFailureCount());
+
+        // slow probe keeps it ejected
+        balancer.probe().get();
+        assertTrue(backendB.isEjected());
+
+        b.latencyMillis = 0;
+        balancer.probe().get();
+        assertFalse(backendB.isEjected());
+        assertTrue(backendB.getLatencyMillis() < 30);
+    }
+
+    @Test
+    public void testScriptErrorDoesNotEject() {
+        final StubProvider a = new StubProvider("a", 0);
+        final LoadBalancedScriptExecutorProvider balancer = createBalancer(LoadBalancedScriptExecutorProvider.Routing.LEAST_OUTSTANDING, a);
+        balancer.setMaxConsecutiveFailures(1);
+        final ScriptExecutor scriptExecutor = balancer.newInstance();
+        scriptExecutor.setScript("fail");
+        for (int i = 0; i < 3; i++) {
+            assertThrows(JaplScriptException.class, scriptExecutor::execute);
+        }
+        assertFalse(balancer.getBackends().get(0).isEjected());
+        assertEquals(0, balancer.getBackends().get(0).getFailureCount());
+    }
+
+    @Test
+    public void testAllEjected() throws IOException {
+        final StubProvider a = new StubProvider("a", 0);
+        final StubProvider b = new StubProvider("b", 0);
+        final LoadBalancedScriptExecutorProvider balancer = createBalancer(LoadBalancedScriptExecutorProvider.Routing.LEAST_OUTSTANDING, a, b);
+        balancer.setMaxConsecutiveFailures(1);
+        a.failing = true;
+        b.failing = true;
+        for (int i = 0; i < 2; i++) {
+            assertThrows(IOException.class, () -> execute(balancer, null));
+        }
+        assertTrue(balancer.getBackends().get(0).isEjected());
+        assertTrue(balancer.getBackends().get(1).isEjected());
+        // route to all, if all are ejected
+        a.failing = false;
+        b.failing = false;
+        for (int i = 0; i < 4; i++) {
+            assertEquals("script", execute(balancer, null));
+        }
+        assertEquals(3, a.executions.get());
+        assertEquals(3, b.executions.get());
+    }
+
+    @Test
+    public void testSticky() throws IOException {
+        final StubProvider a = new StubProvider("a", 0);
+        final StubProvider b = new StubProvider("b", 0);
+        final StubProvider c = new StubProvider("c", 0);
+        final LoadBalancedScriptExecutorProvider balancer = createBalancer(LoadBalancedScriptExecutorProvider.Routing.LEAST_OUTSTANDING, a, b, c);
+        balancer.setMaxConsecutiveFailures(1);
+        final LoadBalancedScriptExecutorProvider.Backend music = balancer.select("Music");
+        final LoadBalancedScriptExecutorProvider.Backend finder = balancer.select("Finder");
+        assertNotSame(music, finder);
+        for (int i = 0; i < 5; i++) {
+            assertSame(music, balancer.select("Music"));
+            assertSame(finder, balancer.select("Finder"));
+        }
+        final LoadBalancedScriptExecutor scriptExecutor = (LoadBalancedScriptExecutor) balancer.newInstance();
+        scriptExecutor.setScript("script");
+        scriptExecutor.setApplication("Music");
+        scriptExecutor.execute();
+        assertSame(music, scriptExecutor.getBackend());
+
+        // ejection moves the application to another backend, where it stays
+        ((StubProvider) music.getProvider()).failing = true;
+        assertThrows(IOException.class, scriptExecutor::execute);
+        assertTrue(music.isEjected());
+        final LoadBalancedScriptExecutorProvider.Backend newMusic = balancer.select("Music");
+        assertNotSame(music, newMusic);
+        for (int i = 0; i < 5; i++) {
+            assertSame(newMusic, balancer.select("Music"));
+        }
+        assertSame(finder, balancer.select("Finder"));
+    }
+
+    @Test
+    public void testScheduledProbes() throws InterruptedException {
+        final StubProvider a = new StubProvider("a", 0);
+        final StubProvider b = new StubProvider("b", 0);
+        try (final LoadBalancedScriptExecutorProvider balancer = new LoadBalancedScriptExecutorProvider(Arrays.asList(a, b),
+            LoadBalancedScriptExecutorProvider.Routing.LEAST_OUTSTANDING, 10)) {
+            balancer.setReadmitAfterSuccesses(1);
+            final LoadBalancedScriptExecutorProvider.Backend backendA = balancer.getBackends().get(0);
+            a.failing = true;
+            waitFor(backendA::isEjected);
+            a.failing = false;
+            waitFor(() -> !backendA.isEjected());
+            assertTrue(b.probes.get() > 0);
+        }
+    }
+
+    @Test
+    public void testProbeDeadline() throws InterruptedException, ExecutionException {
+        final StubProvider a = new StubProvider("a", 500);
+        final LoadBalancedScriptExecutorProvider balancer = createBalancer(LoadBalancedScriptExecutorProvider.Routing.LEAST_OUTSTANDING, a);
+        balancer.setMaxConsecutiveFailures(1);
+        balancer.setProbeDeadlineMillis(20);
+        assertEquals(20, balancer.getProbeDeadlineMillis());
+        final long start = System.nanoTime();
+        balancer.probe().get();
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 400);
+        assertTrue(balancer.getBackends().get(0).isEjected());
+    }
+
+    @Test
+    public void testSettings() {
+        final LoadBalancedScriptExecutorProvider balancer = createBalancer(LoadBalancedScriptExecutorProvider.Routing.LEAST_OUTSTANDING,
+            new StubProvider("a", 0));
+        assertEquals(LoadBalancedScriptExecutorProvider.DEFAULT_MAX_CONSECUTIVE_FAILURES, balancer.getMaxConsecutiveFailures());
+        assertEquals(LoadBalancedScriptExecutorProvider.DEFAULT_READMIT_AFTER_SUCCESSES, balancer.getReadmitAfterSuccesses());
+        assertEquals(LoadBalancedScriptExecutorProvider.DEFAULT_PROBE_SCRIPT, balancer.getProbeScript());
+        assertEquals(0, balancer.getMaxLatencyMillis());
+        assertThrows(IllegalArgumentException.class, () -> balancer.setMaxConsecutiveFailures(0));
+        assertThrows(IllegalArgumentException.class, () -> balancer.setReadmitAfterSuccesses(0));
+        balancer.setProbeScript("return 2");
+        assertEquals("return 2", balancer.getProbeScript());
+    }
+
+    /**
+     * Backend with injected latency and failures.
+     */
+    static class StubProvider implements ScriptExecutorProvider {
+
+        final String name;
+        final AtomicInteger executions = new AtomicInteger();
+        final AtomicInteger probes = new AtomicInteger();
+        final AtomicInteger concurrent = new AtomicInteger();
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+        volatile long latencyMillis;
+        volatile boolean failing;
+        volatile boolean available = true;
+        volatile long deadlineMillis;
+
+        StubProvider(final String name, final long latencyMillis) {
+            this.name = name;
+            this.latencyMillis = latencyMillis;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public int getPriority() {
+            return 0;
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return available;
+        }
+
+        @Override
+        public ScriptExecutor newInstance() {
+            return new StubExecutor(this);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * Sleeps for the provider's latency, fails with an {@link IOException}, if the provider is
+     * failing, with a {@link JaplScriptException} for <code>fail</code> and echoes everything else.
+     */
+    private static class StubExecutor extends ScriptExecutor {
+
+        private final StubProvider provider;
+
+        StubExecutor(final StubProvider provider) {
+            this.provider = provider;
+        }
+
+        @Override
+        public boolean isArgumentsSupported() {
+            return true;
+        }
+
+        @Override
+        protected String executeImpl() throws IOException {
+            final String script = getScript().toString();
+            final boolean probe = script.equals(LoadBalancedScriptExecutorProvider.DEFAULT_PROBE_SCRIPT);
+            if (probe) provider.probes.incrementAndGet();
+            else provider.executions.incrementAndGet();
+            provider.deadlineMillis = getDeadlineMillis();
+            final int concurrent = provider.concurrent.incrementAndGet();
+            provider.maxConcurrent.accumulateAndGet(concurrent, Math::max);
+            try {
+                if (provider.latencyMillis > 0) Thread.sleep(provider.latencyMillis);
+                if (provider.failing) throw new IOException(provider.name + " is failing");
+                if (script.equals("fail")) throw new JaplScriptException("boom", script);
+                return script + (getArguments().isEmpty() ? "" : " " + getArguments());
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException(e.toString());
+            } finally {
+                provider.concurrent.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import com.tagtraum.japlscript.execution.ScriptingAddition.Architecture;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TestMachOHeader.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestMachOHeader {
+
+    static Path getFixture(final String name) throws URISyntaxException {
+        return Paths.get(TestMachOHeader.class.getResource("macho/" + name).toURI());
+    }
+
+    private static Set<Architecture> read(final String name) throws IOException, URISyntaxException {
+        return MachOHeader.readArchitectures(getFixture(name));
+    }
+
+    @Test
+    public void testThin() throws IOException, URISyntaxException {
+        assertEquals(EnumSet.of(Architecture.X86_64), read("x86_64"));
+        assertEquals(EnumSet.of(Architecture.AARCH64), read("arm64"));
+        assertEquals(EnumSet.of(Architecture.I368), read("i386"));
+        assertEquals(EnumSet.of(Architecture.PPC), read("ppc"));
+    }
+
+    @Test
+    public void testFat() throws IOException, URISyntaxException {
+        assertEquals(EnumSet.of(Architecture.I368, Architecture.PPC), read("fat-i386-ppc"));
+        assertEquals(EnumSet.of(Architecture.X86_64, Architecture.AARCH64), read("fat-x86_64-arm64"));
+        assertEquals(EnumSet.of(Architecture.X86_64, Architecture.AARCH64), read("fat64-x86_64-arm64"));
+    }
+
+    @Test
+    public void testNotMachO() throws IOException, URISyntaxException {
+        // shares the fat magic number
+        assertTrue(read("java.class").isEmpty());
+        assertTrue(read("text").isEmpty());
+        assertTrue(MachOHeader.readArchitectures(ByteBuffer.allocate(3)).isEmpty());
+    }
+
+    @Test
+    public void testTruncatedFat() {
+        final ByteBuffer buffer = ByteBuffer.allocate(8 + 20 + 10);
+        buffer.putInt(0xcafebabe).putInt(2).putInt(7).flip();
+        buffer.limit(buffer.capacity());
+        // second fat_arch is cut off
+        assertEquals(EnumSet.of(Architecture.I368), MachOHeader.readArchitectures(buffer));
+    }
+
+    @Test
+    public void testUnknownCpuType() {
+        assertEquals(Architecture.UNKNOWN, MachOHeader.toArchitecture(12));
+        assertEquals(Architecture.PPC, MachOHeader.toArchitecture(18 | 0x01000000));
+    }
+}
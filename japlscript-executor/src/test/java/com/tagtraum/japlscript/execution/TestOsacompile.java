@@ -0,0 +1,337 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TestOsacompile.
+ * Uses a stub <code>osacompile</code>, so that this also runs on systems other than macOS.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestOsacompile {
+
+    static String installStub() throws IOException {
+        final Path dir = Files.createTempDirectory("japlscript-stub");
+        final Path stub = dir.resolve("osacompile");
+        try (final InputStream in = TestOsacompile.class.getResourceAsStream("osacompile-stub.sh")) {
+            Files.copy(in, stub, StandardCopyOption.REPLACE_EXISTING);
+        }
+        assertTrue(stub.toFile().setExecutable(true));
+        stub.toFile().deleteOnExit();
+        dir.toFile().deleteOnExit();
+        return stub.toString();
+    }
+
+    private static Path createCacheDirectory() throws IOException {
+        final Path dir = Files.createTempDirectory("japlscript-cache");
+        dir.toFile().deleteOnExit();
+        return dir;
+    }
+
+    private static long countFiles(final Path dir) throws IOException {
+        try (final Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+
+    private static long countInvocations(final String stub) throws IOException {
+        final Path log = Paths.get(stub + ".log");
+        if (!Files.exists(log)) return 0;
+        log.toFile().deleteOnExit();
+        return Files.readAllLines(log).size();
+    }
+
+    @Test
+    public void testCompile() throws IOException {
+        final Path cacheDirectory = createCacheDirectory();
+        final Osacompile osacompile = new Osacompile(installStub(), cacheDirectory, 10, 1024);
+        final CompiledScript compiledScript = osacompile.compile(new StringBuilder("return 1\r\n"));
+        assertEquals("return 1", compiledScript.getScript());
+        final Path scriptFile = cacheDirectory.resolve(Osacompile.toKey("return 1") + ".scpt");
+        assertTrue(Files.exists(scriptFile));
+        assertEquals("return 1", new String(Files.readAllBytes(scriptFile), UTF_8));
+        assertEquals(0, osacompile.getHitCount());
+        assertEquals(1, osacompile.getMissCount());
+        // no temp files left behind
+        assertEquals(1, countFiles(cacheDirectory));
+    }
+
+    @Test
+    public void testHit() throws IOException {
+        final Path cacheDirectory = createCacheDirectory();
+        final Osacompile osacompile = new Osacompile(installStub(), cacheDirectory, 10, 1024);
+        final CompiledScript compiledScript = osacompile.compile(new StringBuilder("tell app \"Finder\"\r\nreturn 1\r\nend tell\r\n"));
+        // different CharSequence instances with equivalent content must hit the cache
+        assertSame(compiledScript, osacompile.compile(new StringBuilder("tell app \"Finder\"\r\nreturn 1\r\nend tell\r\n")));
+        assertSame(compiledScript, osacompile.compile("tell app \"Finder\"\nreturn 1\nend tell"));
+        assertEquals(2, osacompile.getHitCount());
+        assertEquals(1, osacompile.getMissCount());
+    }
+
+    @Test
+    public void testPersistence() throws IOException {
+        final Path cacheDirectory = createCacheDirectory();
+        final Osacompile osacompile = new Osacompile(installStub(), cacheDirectory, 10, 1024);
+        final CompiledScript compiledScript = osacompile.compile("return 1");
+
+        // a new instance (e.g. after a restart) must find the already compiled script
+        // without running osacompile
+        final Osacompile restarted = new Osacompile("does-not-exist", cacheDirectory, 10, 1024);
+        final CompiledScript persistedScript = restarted.compile("return 1");
+        assertEquals(compiledScript.getScript(), persistedScript.getScript());
+        assertEquals(1, restarted.getHitCount());
+        assertEquals(0, restarted.getMissCount());
+    }
+
+    @Test
+    public void testRecompileRemovedScript() throws IOException {
+        final Path cacheDirectory = createCacheDirectory();
+        final Osacompile osacompile = new Osacompile(installStub(), cacheDirectory, 10, 1024);
+        osacompile.compile("return 1");
+        // e.g. evicted by another JVM
+        Files.delete(cacheDirectory.resolve(Osacompile.toKey("return 1") + ".scpt"));
+        osacompile.compile("return 1");
+        assertEquals(0, osacompile.getHitCount());
+        assertEquals(2, osacompile.getMissCount());
+        assertEquals(1, countFiles(cacheDirectory));
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() throws IOException {
+        final Path cacheDirectory = createCacheDirectory();
+        final Osacompile osacompile = new Osacompile(installStub(), cacheDirectory, 2, 1024);
+        osacompile.compile("return 1");
+        osacompile.compile("return 2");
+        final long now = System.currentTimeMillis();
+        Files.setLastModifiedTime(cacheDirectory.resolve(Osacompile.toKey("return 1") + ".scpt"), FileTime.fromMillis(now - 20000));
+        Files.setLastModifiedTime(cacheDirectory.resolve(Osacompile.toKey("return 2") + ".scpt"), FileTime.fromMillis(now - 10000));
+        // using "return 1" makes "return 2" the least recently used script
+        osacompile.compile("return 1");
+        osacompile.compile("return 3");
+
+        assertEquals(1, osacompile.getEvictionCount());
+        assertEquals(2, countFiles(cacheDirectory));
+        assertTrue(Files.exists(cacheDirectory.resolve(Osacompile.toKey("return 1") + ".scpt")));
+        assertFalse(Files.exists(cacheDirectory.resolve(Osacompile.toKey("return 2") + ".scpt")));
+        assertTrue(Files.exists(cacheDirectory.resolve(Osacompile.toKey("return 3") + ".scpt")));
+    }
+
+    @Test
+    public void testEvictBySize() throws IOException {
+        final Path cacheDirectory = createCacheDirectory();
+        final Osacompile osacompile = new Osacompile(installStub(), cacheDirectory, 10, 10);
+        osacompile.compile("return 1");
+        Files.setLastModifiedTime(cacheDirectory.resolve(Osacompile.toKey("return 1") + ".scpt"),
+            FileTime.fromMillis(System.currentTimeMillis() - 10000));
+        osacompile.compile("return 2");
+        // both together are larger than 10 bytes
+        assertEquals(1, osacompile.getEvictionCount());
+        assertEquals(1, countFiles(cacheDirectory));
+        assertTrue(Files.exists(cacheDirectory.resolve(Osacompile.toKey("return 2") + ".scpt")));
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsedAfterRestart() throws IOException {
+        final Path cacheDirectory = createCacheDirectory();
+        final String stub = installStub();
+        final Osacompile osacompile = new Osacompile(stub, cacheDirectory, 2, 1024);
+        osacompile.compile("return 1");
+        osacompile.compile("return 2");
+        final long now = System.currentTimeMillis();
+        Files.setLastModifiedTime(cacheDirectory.resolve(Osacompile.toKey("return 1") + ".scpt"), FileTime.fromMillis(now - 10000));
+        Files.setLastModifiedTime(cacheDirectory.resolve(Osacompile.toKey("return 2") + ".scpt"), FileTime.fromMillis(now - 20000));
+
+        // a new instance knows the existing scripts and their use times
+        final Osacompile restarted = new Osacompile(stub, cacheDirectory, 2, 1024);
+        restarted.compile("return 3");
+        assertEquals(1, restarted.getEvictionCount());
+        assertTrue(Files.exists(cacheDirectory.resolve(Osacompile.toKey("return 1") + ".scpt")));
+        assertFalse(Files.exists(cacheDirectory.resolve(Osacompile.toKey("return 2") + ".scpt")));
+    }
+
+    @Test
+    public void testTouchOnlyOccasionally() throws IOException {
+        final Path cacheDirectory = createCacheDirectory();
+        final Osacompile osacompile = new Osacompile(installStub(), cacheDirectory, 10, 1024);
+        osacompile.compile("return 1");
+        final Path scriptFile = cacheDirectory.resolve(Osacompile.toKey("return 1") + ".scpt");
+        final FileTime lastModified = FileTime.fromMillis(System.currentTimeMillis() - 10000);
+        Files.setLastModifiedTime(scriptFile, lastModified);
+        // the file was touched less than a minute ago, no need to touch it again
+        osacompile.compile("return 1");
+        assertEquals(lastModified, Files.getLastModifiedTime(scriptFile));
+        assertEquals(1, osacompile.getHitCount());
+    }
+
+    @Test
+    public void testCompileError() throws IOException {
+        final Path cacheDirectory = createCacheDirectory();
+        final Osacompile osacompile = new Osacompile(installStub(), cacheDirectory, 10, 1024);
+        final JaplScriptException e = Assertions.assertThrows(JaplScriptException.class, () -> osacompile.compile("syntax error"));
+        assertEquals("syntax error", e.getScript());
+        assertEquals(0, countFiles(cacheDirectory));
+    }
+
+    @Test
+    public void testSingleFlight() throws IOException, InterruptedException, ExecutionException {
+        final String stub = installStub();
+        final Osacompile osacompile = new Osacompile(stub, createCacheDirectory(), 10, 1024);
+        final ExecutorService executorService = Executors.newFixedThreadPool(10);
+        try {
+            final List<Future<CompiledScript>> futures = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                futures.add(executorService.submit(() -> osacompile.compile(new StringBuilder("return \"slow\""))));
+            }
+            final CompiledScript compiledScript = futures.get(0).get();
+            for (final Future<CompiledScript> future : futures) {
+                assertSame(compiledScript, future.get());
+            }
+        } finally {
+            executorService.shutdown();
+        }
+        assertEquals(1, countInvocations(stub));
+        assertEquals(1, osacompile.getMissCount());
+        assertEquals(9, osacompile.getHitCount());
+    }
+
+    @Test
+    public void testNegativeCache() throws IOException {
+        final String stub = installStub();
+        final Osacompile osacompile = new Osacompile(stub, createCacheDirectory(), 10, 1024);
+        assertEquals(Osacompile.DEFAULT_NEGATIVE_CACHE_TTL_MILLIS, osacompile.getNegativeCacheTtlMillis());
+        final JaplScriptException e1 = Assertions.assertThrows(JaplScriptException.class, () -> osacompile.compile("syntax error"));
+        final JaplScriptException e2 = Assertions.assertThrows(JaplScriptException.class, () -> osacompile.compile("syntax error"));
+        // threads don't share exception instances
+        assertNotSame(e1, e2);
+        assertSame(e1, e2.getCause());
+        assertEquals(e1.getScript(), e2.getScript());
+        assertEquals(1, countInvocations(stub));
+        assertEquals(1, osacompile.getNegativeHitCount());
+
+        // disabling negative caching forgets the failure
+        osacompile.setNegativeCacheTtlMillis(0);
+        Assertions.assertThrows(JaplScriptException.class, () -> osacompile.compile("syntax error"));
+        Assertions.assertThrows(JaplScriptException.class, () -> osacompile.compile("syntax error"));
+        assertEquals(3, countInvocations(stub));
+        assertEquals(1, osacompile.getNegativeHitCount());
+    }
+
+    @Test
+    public void testNegativeCacheExpiration() throws IOException, InterruptedException {
+        final String stub = installStub();
+        final Osacompile osacompile = new Osacompile(stub, createCacheDirectory(), 10, 1024);
+        osacompile.setNegativeCacheTtlMillis(100);
+        Assertions.assertThrows(JaplScriptException.class, () -> osacompile.compile("syntax error"));
+        Assertions.assertThrows(JaplScriptException.class, () -> osacompile.compile("syntax error"));
+        assertEquals(1, countInvocations(stub));
+        Thread.sleep(200);
+        Assertions.assertThrows(JaplScriptException.class, () -> osacompile.compile("syntax error"));
+        assertEquals(2, countInvocations(stub));
+        assertThrows(IllegalArgumentException.class, () -> osacompile.setNegativeCacheTtlMillis(-1));
+    }
+
+    @Test
+    public void testIOExceptionIsNotCached() {
+        final Osacompile osacompile = new Osacompile("does-not-exist", Paths.get(System.getProperty("java.io.tmpdir")), 10, 1024);
+        Assertions.assertThrows(IOException.class, () -> osacompile.compile("return 1"));
+        Assertions.assertThrows(IOException.class, () -> osacompile.compile("return 1"));
+        assertEquals(2, osacompile.getMissCount());
+        assertEquals(0, osacompile.getNegativeHitCount());
+    }
+
+    @Test
+    public void testTimeout() throws IOException {
+        final String stub = installStub();
+        final Osacompile osacompile = new Osacompile(stub, createCacheDirectory(), 10, 1024);
+        assertEquals(Osacompile.DEFAULT_TIMEOUT_MILLIS, osacompile.getTimeoutMillis());
+        osacompile.setTimeoutMillis(500);
+        final long start = System.nanoTime();
+        final DeadlineExceededException e = Assertions.assertThrows(DeadlineExceededException.class, () -> osacompile.compile("hang"));
+        assertEquals(500, e.getDeadlineMillis());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+        // timeouts are not cached
+        Assertions.assertThrows(DeadlineExceededException.class, () -> osacompile.compile("hang"));
+        assertEquals(2, countInvocations(stub));
+        assertEquals(0, osacompile.getNegativeHitCount());
+        assertThrows(IllegalArgumentException.class, () -> osacompile.setTimeoutMillis(0));
+    }
+
+    @Test
+    public void testFailureWithoutErrorMessage() throws IOException {
+        final String stub = installStub();
+        final Path cacheDirectory = createCacheDirectory();
+        final Osacompile osacompile = new Osacompile(stub, cacheDirectory, 10, 1024);
+        assertThrows(IOException.class, () -> osacompile.compile("crash"));
+        assertThrows(IOException.class, () -> osacompile.compile("empty"));
+        // neither cached as compiled script, nor as compile error
+        assertEquals(0, countFiles(cacheDirectory));
+        assertThrows(IOException.class, () -> osacompile.compile("crash"));
+        assertEquals(3, countInvocations(stub));
+        assertEquals(0, osacompile.getNegativeHitCount());
+    }
+
+    @Test
+    public void testRecompileEvictedScript() throws IOException {
+        final String stub = installStub();
+        final Path cacheDirectory = createCacheDirectory();
+        final Osacompile osacompile = new Osacompile(stub, cacheDirectory, 10, 1024);
+        final CompiledScript compiledScript = osacompile.compile("return 1");
+        // evicted, e.g. by another JVM
+        try (final Stream<Path> files = Files.list(cacheDirectory)) {
+            for (final Path file : (Iterable<Path>) files::iterator) Files.delete(file);
+        }
+        try {
+            compiledScript.execute();
+        } catch (IOException e) {
+            // no osascript on this system
+        }
+        assertEquals(2, countInvocations(stub));
+        assertEquals(1, countFiles(cacheDirectory));
+    }
+
+    @Test
+    public void testNormalize() {
+        assertEquals("a\nb\nc", Osacompile.normalize("  a\r\nb\rc\n\n"));
+        assertEquals("", Osacompile.normalize(new StringBuilder(" ")));
+    }
+
+    @Test
+    public void testToKey() {
+        assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855", Osacompile.toKey(""));
+        assertEquals(64, Osacompile.toKey("return 1").length());
+        assertNotEquals(Osacompile.toKey("return 1"), Osacompile.toKey("return 2"));
+    }
+
+    @Test
+    public void testBadArguments() {
+        final Path dir = Paths.get(System.getProperty("java.io.tmpdir"));
+        assertThrows(IllegalArgumentException.class, () -> new Osacompile("osacompile", dir, 0, 1024));
+        assertThrows(IllegalArgumentException.class, () -> new Osacompile("osacompile", dir, 10, 0));
+    }
+}
@@ -4,6 +4,10 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -38,6 +42,61 @@ public class TestOsascript {
         assertNotNull(version);
     }
 
+    @Test
+    public void testSimpleScriptStreaming() throws IOException {
+        final ScriptExecutor scriptExecutor = new Osascript();
+        scriptExecutor.setScript("return version");
+        final CharSequence version = scriptExecutor.executeStreaming();
+        assertTrue(version instanceof ChunkedCharSequence);
+        assertTrue(version.length() > 0);
+        ((ChunkedCharSequence) version).release();
+    }
+
+    @Test
+    public void testDeadline() throws IOException {
+        final ScriptExecutor scriptExecutor = new Osascript();
+        scriptExecutor.setScript("delay 10");
+        scriptExecutor.setDeadline(500, TimeUnit.MILLISECONDS);
+        final long start = System.nanoTime();
+        final DeadlineExceededException e = assertThrows(DeadlineExceededException.class, scriptExecutor::execute);
+        assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5);
+        assertEquals(500, e.getDeadlineMillis());
+        assertEquals("delay 10", e.getScript());
+    }
+
+    @Test
+    public void testSessionDeadline() {
+        final Session session = Session.startSession();
+        try {
+            session.setDeadline(500, TimeUnit.MILLISECONDS);
+            final ScriptExecutor scriptExecutor = new Osascript();
+            scriptExecutor.setScript("delay 10");
+            assertThrows(DeadlineExceededException.class, scriptExecutor::execute);
+        } finally {
+            session.reset();
+        }
+    }
+
+    @Test
+    public void testDeadlineAsync() throws InterruptedException, TimeoutException {
+        final ScriptExecutor scriptExecutor = new Osascript();
+        scriptExecutor.setScript("delay 10");
+        scriptExecutor.setDeadline(500, TimeUnit.MILLISECONDS);
+        final ExecutionException e = assertThrows(ExecutionException.class,
+            () -> scriptExecutor.executeAsync().get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof DeadlineExceededException);
+    }
+
+    @Test
+    public void testCancelAsync() throws InterruptedException {
+        final ScriptExecutor scriptExecutor = new Osascript();
+        scriptExecutor.setScript("delay 10");
+        final CompletableFuture<String> future = scriptExecutor.executeAsync();
+        Thread.sleep(200);
+        assertTrue(future.cancel(true));
+        assertTrue(future.isCancelled());
+    }
+
 	@Test
 	public void testSimpleScriptWithError() throws IOException {
         try {
@@ -50,6 +109,36 @@ public class TestOsascript {
         }
     }
 
+    @Test
+    public void testSimpleScriptAsync() throws InterruptedException, ExecutionException, TimeoutException {
+        final ScriptExecutor scriptExecutor = new Osascript();
+        scriptExecutor.setScript("return version");
+        final String version = scriptExecutor.executeAsync().get(30, TimeUnit.SECONDS);
+        assertNotNull(version);
+    }
+
+    @Test
+    public void testSimpleCompiledScriptAsync() throws InterruptedException, ExecutionException, TimeoutException {
+        final Session session = Session.startSession();
+        session.setCompile(true);
+        final ScriptExecutor scriptExecutor = new Osascript();
+        scriptExecutor.setScript("return version");
+        final String version = scriptExecutor.executeAsync().get(30, TimeUnit.SECONDS);
+        assertNotNull(version);
+    }
+
+    @Test
+    public void testSimpleScriptWithErrorAsync() throws InterruptedException, TimeoutException {
+        final ScriptExecutor scriptExecutor = new Osascript();
+        scriptExecutor.setScript("return murx version");
+        try {
+            scriptExecutor.executeAsync().get(30, TimeUnit.SECONDS);
+            fail("Expected JaplScriptException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof JaplScriptException);
+        }
+    }
+
     /*
 	@Test
     public void testSpeed() throws IOException {
@@ -0,0 +1,30 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TestOsascriptProvider.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestOsascriptProvider {
+
+    @Test
+    public void testBasics() {
+        final OsascriptProvider provider = new OsascriptProvider();
+        assertEquals(OsascriptProvider.NAME, provider.getName());
+        assertEquals(OsascriptProvider.PRIORITY, provider.getPriority());
+        assertTrue(provider.isAvailable());
+        assertTrue(provider.isCompileSupported());
+        assertEquals(Osascript.class, provider.newInstance().getClass());
+        assertTrue(provider.toString().contains("Osascript"));
+    }
+}
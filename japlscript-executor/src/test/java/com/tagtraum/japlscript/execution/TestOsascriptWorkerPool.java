@@ -0,0 +1,178 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TestOsascriptWorkerPool.
+ * Uses a stub <code>osascript</code>, so that this also runs on systems other than macOS.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestOsascriptWorkerPool {
+
+    /**
+     * Installs the stub <code>osascript</code> in a temp directory.
+     *
+     * @return path to the stub
+     * @throws IOException if installation fails
+     */
+    static String installStub() throws IOException {
+        final Path dir = Files.createTempDirectory("japlscript-stub");
+        final Path stub = dir.resolve("osascript");
+        try (final InputStream in = TestOsascriptWorkerPool.class.getResourceAsStream("osascript-stub.sh")) {
+            Files.copy(in, stub, StandardCopyOption.REPLACE_EXISTING);
+        }
+        assertTrue(stub.toFile().setExecutable(true));
+        stub.toFile().deleteOnExit();
+        dir.toFile().deleteOnExit();
+        return stub.toString();
+    }
+
+    @Test
+    public void testExecute() throws IOException {
+        try (final OsascriptWorkerPool pool = new OsascriptWorkerPool(installStub(), 1, 10, 5000)) {
+            assertEquals("42", pool.execute("return 42"));
+            assertEquals("\"größer\"", pool.execute("return \"größer\""));
+            assertEquals(1, pool.getIdleWorkerCount());
+        }
+    }
+
+    @Test
+    public void testError() throws IOException {
+        try (final OsascriptWorkerPool pool = new OsascriptWorkerPool(installStub(), 1, 10, 5000)) {
+            final JaplScriptException e = Assertions.assertThrows(JaplScriptException.class, () -> pool.execute("murx"));
+            assertEquals("murx", e.getScript());
+            // worker survives script errors
+            assertEquals(1, pool.getIdleWorkerCount());
+            assertEquals("1", pool.execute("return 1"));
+        }
+    }
+
+    @Test
+    public void testWorkerIsReused() throws IOException {
+        try (final OsascriptWorkerPool pool = new OsascriptWorkerPool(installStub(), 1, 10, 5000)) {
+            assertEquals(pool.execute("pid"), pool.execute("pid"));
+        }
+    }
+
+    @Test
+    public void testRecycleAfterMaxScripts() throws IOException {
+        try (final OsascriptWorkerPool pool = new OsascriptWorkerPool(installStub(), 1, 2, 5000)) {
+            final String pid0 = pool.execute("pid");
+            assertEquals(pid0, pool.execute("pid"));
+            assertNotEquals(pid0, pool.execute("pid"));
+        }
+    }
+
+    @Test
+    public void testRecycleAfterCrash() throws IOException {
+        try (final OsascriptWorkerPool pool = new OsascriptWorkerPool(installStub(), 1, 10, 5000)) {
+            final String pid0 = pool.execute("pid");
+            Assertions.assertThrows(IOException.class, () -> pool.execute("exit"));
+            assertEquals(0, pool.getIdleWorkerCount());
+            assertNotEquals(pid0, pool.execute("pid"));
+        }
+    }
+
+    @Test
+    public void testTimeout() throws IOException {
+        try (final OsascriptWorkerPool pool = new OsascriptWorkerPool(installStub(), 1, 10, 500)) {
+            final long start = System.nanoTime();
+            final DeadlineExceededException e = Assertions.assertThrows(DeadlineExceededException.class,
+                () -> pool.execute("sleep 10"));
+            assertEquals(500, e.getDeadlineMillis());
+            assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5);
+            assertEquals("1", pool.execute("return 1"));
+        }
+    }
+
+    @Test
+    public void testHealthCheck() throws IOException {
+        try (final OsascriptWorkerPool pool = new OsascriptWorkerPool(installStub(), 1, 10, 500)) {
+            final String pid0 = pool.execute("pid");
+            pool.checkHealth();
+            assertEquals(1, pool.getIdleWorkerCount());
+            assertEquals(pid0, pool.execute("pid"));
+        }
+    }
+
+    @Test
+    public void testHealthCheckRecyclesHungWorker() throws Exception {
+        try (final OsascriptWorkerPool pool = new OsascriptWorkerPool(installStub(), 1, 10, 500)) {
+            final String pid0 = pool.execute("pid");
+            // the worker process is alive, but does not answer anymore
+            assertEquals(0, new ProcessBuilder("kill", "-STOP", pid0).start().waitFor());
+            pool.checkHealth();
+            assertEquals(0, pool.getIdleWorkerCount());
+            assertNotEquals(pid0, pool.execute("pid"));
+        }
+    }
+
+    @Test
+    public void testScheduledHealthCheckRecyclesHungWorker() throws Exception {
+        try (final OsascriptWorkerPool pool = new OsascriptWorkerPool(installStub(), 1, 10, 500)) {
+            final String pid0 = pool.execute("pid");
+            assertEquals(0, new ProcessBuilder("kill", "-STOP", pid0).start().waitFor());
+            // the probe's timeout must fire, even though the probe blocks the health check thread
+            pool.checkHealthAsync().get(5, TimeUnit.SECONDS);
+            assertEquals(0, pool.getIdleWorkerCount());
+            assertNotEquals(pid0, pool.execute("pid"));
+        }
+    }
+
+    @Test
+    public void testConcurrentExecution() throws Exception {
+        final ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try (final OsascriptWorkerPool pool = new OsascriptWorkerPool(installStub(), 2, 10, 5000)) {
+            final List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                final String value = Integer.toString(i);
+                futures.add(executorService.submit(() -> pool.execute("return " + value)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals(Integer.toString(i), futures.get(i).get(10, TimeUnit.SECONDS));
+            }
+            assertTrue(pool.getIdleWorkerCount() <= 2);
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void testClosed() throws IOException {
+        final OsascriptWorkerPool pool = new OsascriptWorkerPool(installStub(), 1, 10, 5000);
+        pool.execute("return 1");
+        pool.close();
+        assertTrue(pool.isClosed());
+        assertEquals(0, pool.getIdleWorkerCount());
+        Assertions.assertThrows(IOException.class, () -> pool.execute("return 1"));
+    }
+
+    @Test
+    public void testBadArguments() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new OsascriptWorkerPool(0, 10, 5000));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new OsascriptWorkerPool(1, 0, 5000));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new OsascriptWorkerPool(1, 10, 0));
+    }
+}
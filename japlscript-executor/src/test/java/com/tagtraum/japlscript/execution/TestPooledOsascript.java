@@ -0,0 +1,36 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TestPooledOsascript.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestPooledOsascript {
+
+    @Test
+    public void testSimpleScript() throws IOException {
+        try (final OsascriptWorkerPool pool = new OsascriptWorkerPool(TestOsascriptWorkerPool.installStub(), 1, 10, 5000)) {
+            final PooledOsascript scriptExecutor = new PooledOsascript(pool);
+            assertSame(pool, scriptExecutor.getPool());
+            scriptExecutor.setScript("return \"hello\"");
+            assertEquals("\"hello\"", scriptExecutor.execute());
+        }
+    }
+
+    @Test
+    public void testDefaultPool() {
+        assertSame(OsascriptWorkerPool.getDefaultInstance(), new PooledOsascript().getPool());
+    }
+}
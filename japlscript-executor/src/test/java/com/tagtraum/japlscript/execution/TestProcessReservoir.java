@@ -0,0 +1,167 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TestProcessReservoir.
+ * Uses <code>cat</code> instead of <code>osascript</code>, as it also blocks on stdin.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestProcessReservoir {
+
+    private static final List<String> CAT = Collections.singletonList("cat");
+
+    private static void awaitIdle(final ProcessReservoir reservoir, final int count) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (reservoir.getIdleCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, reservoir.getIdleCount());
+    }
+
+    private static String echo(final Process process, final String s) throws IOException {
+        try (final Writer out = new OutputStreamWriter(process.getOutputStream(), UTF_8)) {
+            out.write(s);
+        }
+        final StringBuilder sb = new StringBuilder();
+        try (final Reader in = new InputStreamReader(process.getInputStream(), UTF_8)) {
+            for (int c = in.read(); c != -1; c = in.read()) {
+                sb.append((char) c);
+            }
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testBadArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new ProcessReservoir(Collections.emptyList(), 1, 1000, 1));
+        assertThrows(IllegalArgumentException.class, () -> new ProcessReservoir(CAT, 0, 1000, 1));
+        assertThrows(IllegalArgumentException.class, () -> new ProcessReservoir(CAT, 1, 0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new ProcessReservoir(CAT, 1, 1000, 0));
+    }
+
+    @Test
+    public void testDefaults() {
+        final ProcessReservoir reservoir = new ProcessReservoir();
+        reservoir.close();
+        assertTrue(reservoir.isClosed());
+        assertEquals(Arrays.asList("osascript", "-s", "s", "-"), reservoir.getCommand());
+        assertEquals(ProcessReservoir.DEFAULT_SIZE, reservoir.getSize());
+        assertEquals(ProcessReservoir.DEFAULT_MAX_IDLE_MILLIS, reservoir.getMaxIdleMillis());
+        assertEquals(ProcessReservoir.DEFAULT_MAX_SPAWNS_PER_SECOND, reservoir.getMaxSpawnsPerSecond());
+    }
+
+    @Test
+    public void testTake() throws IOException, InterruptedException {
+        try (final ProcessReservoir reservoir = new ProcessReservoir(CAT, 2, 60000, 100)) {
+            awaitIdle(reservoir, 2);
+            final Process process = reservoir.take();
+            assertNotNull(process);
+            assertEquals("hello", echo(process, "hello"));
+            assertEquals(1, reservoir.getHitCount());
+            assertEquals(1.0, reservoir.getHitRate());
+            // replacement
+            awaitIdle(reservoir, 2);
+            assertEquals(3, reservoir.getSpawnCount());
+            assertTrue(reservoir.getSpawnLatencyMeanMillis() > 0);
+            assertTrue(reservoir.getSpawnLatencyP99Millis() > 0);
+        }
+    }
+
+    @Test
+    public void testMiss() throws InterruptedException {
+        try (final ProcessReservoir reservoir = new ProcessReservoir(CAT, 1, 60000, 1)) {
+            awaitIdle(reservoir, 1);
+            final Process first = reservoir.take();
+            assertNotNull(first);
+            // replacement is rate limited
+            assertNull(reservoir.take());
+            assertEquals(1, reservoir.getHitCount());
+            assertEquals(1, reservoir.getMissCount());
+            assertEquals(0.5, reservoir.getHitRate());
+            first.destroy();
+        }
+    }
+
+    @Test
+    public void testMaxIdleAge() throws InterruptedException {
+        try (final ProcessReservoir reservoir = new ProcessReservoir(CAT, 1, 100, 100)) {
+            awaitIdle(reservoir, 1);
+            final long deadline = System.currentTimeMillis() + 5000;
+            while ((reservoir.getExpiredCount() == 0 || reservoir.getSpawnCount() < 2)
+                && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            // expired and replaced
+            assertTrue(reservoir.getExpiredCount() > 0);
+            assertTrue(reservoir.getSpawnCount() > 1);
+        }
+    }
+
+    @Test
+    public void testDeadProcess() throws InterruptedException {
+        try (final ProcessReservoir reservoir = new ProcessReservoir(Collections.singletonList("true"), 1, 60000, 100)) {
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (reservoir.getSpawnCount() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(200);
+            assertNull(reservoir.take());
+        }
+    }
+
+    @Test
+    public void testSpawnFailure() throws InterruptedException {
+        try (final ProcessReservoir reservoir = new ProcessReservoir(Collections.singletonList("/does/not/exist"), 1, 60000, 100)) {
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (reservoir.getSpawnFailureCount() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, reservoir.getSpawnFailureCount());
+            assertNull(reservoir.take());
+        }
+    }
+
+    @Test
+    public void testClose() throws InterruptedException {
+        final ProcessReservoir reservoir = new ProcessReservoir(CAT, 1, 60000, 100);
+        awaitIdle(reservoir, 1);
+        reservoir.close();
+        assertEquals(0, reservoir.getIdleCount());
+        assertNull(reservoir.take());
+    }
+
+    @Test
+    public void testOsascriptUsesDefault() throws IOException, InterruptedException {
+        final ProcessReservoir previous = ProcessReservoir.getDefault();
+        try (final ProcessReservoir reservoir = new ProcessReservoir(2, 60000, 100)) {
+            ProcessReservoir.setDefault(reservoir);
+            awaitIdle(reservoir, 2);
+            final ScriptExecutor scriptExecutor = new Osascript();
+            scriptExecutor.setScript("return version");
+            assertNotNull(scriptExecutor.execute());
+            assertEquals(1, reservoir.getHitCount());
+        } finally {
+            ProcessReservoir.setDefault(previous);
+        }
+    }
+}
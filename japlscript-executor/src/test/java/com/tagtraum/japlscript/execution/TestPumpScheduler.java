@@ -0,0 +1,126 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TestPumpScheduler.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestPumpScheduler {
+
+    @Test
+    public void testSubmit() throws InterruptedException, ExecutionException, TimeoutException {
+        try (final PumpScheduler scheduler = new PumpScheduler(2)) {
+            final ReaderPump pump = new ReaderPump(new StringReader(" some value "));
+            scheduler.submit(pump).get(5, TimeUnit.SECONDS);
+            assertEquals("some value", pump.getValue());
+            awaitCompleted(scheduler, 1);
+            assertEquals(0, scheduler.getActiveCount());
+            assertEquals(0, scheduler.getOverflowCount());
+            assertFalse(scheduler.isVirtual());
+            assertEquals(2, scheduler.getMaxThreads());
+        }
+    }
+
+    @Test
+    public void testPumpsNeverWait() throws InterruptedException, ExecutionException, TimeoutException {
+        try (final PumpScheduler scheduler = new PumpScheduler(1)) {
+            final CountDownLatch started = new CountDownLatch(1);
+            final CountDownLatch release = new CountDownLatch(1);
+            final CompletableFuture<Void> blocking = scheduler.submit(() -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            // these must run, while the only pooled thread is still busy
+            final CompletableFuture<Void> overflow1 = scheduler.submit(() -> {});
+            final CompletableFuture<Void> overflow2 = scheduler.submit(() -> {});
+            CompletableFuture.allOf(overflow1, overflow2).get(5, TimeUnit.SECONDS);
+            assertFalse(blocking.isDone());
+            assertEquals(2, scheduler.getOverflowCount());
+
+            release.countDown();
+            blocking.get(5, TimeUnit.SECONDS);
+            awaitCompleted(scheduler, 3);
+            assertEquals(0, scheduler.getActiveCount());
+        }
+    }
+
+    @Test
+    public void testClose() {
+        final PumpScheduler scheduler = new PumpScheduler(1);
+        assertFalse(scheduler.isClosed());
+        scheduler.close();
+        assertTrue(scheduler.isClosed());
+        assertThrows(RejectedExecutionException.class, () -> scheduler.submit(() -> {}));
+        assertEquals(0, scheduler.getOverflowCount());
+    }
+
+    @Test
+    public void testBadArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new PumpScheduler(0));
+    }
+
+    @Test
+    public void testVirtualThreads() throws InterruptedException, ExecutionException, TimeoutException {
+        if (PumpScheduler.isVirtualThreadsAvailable()) {
+            try (final PumpScheduler scheduler = PumpScheduler.newVirtualThreadScheduler()) {
+                assertTrue(scheduler.isVirtual());
+                final ReaderPump pump = new ReaderPump(new StringReader("value"));
+                scheduler.submit(pump).get(5, TimeUnit.SECONDS);
+                assertEquals("value", pump.getValue());
+            }
+        } else {
+            assertThrows(UnsupportedOperationException.class, PumpScheduler::newVirtualThreadScheduler);
+        }
+    }
+
+    @Test
+    public void testDefault() {
+        final PumpScheduler defaultScheduler = PumpScheduler.getDefault();
+        assertNotNull(defaultScheduler);
+        assertSame(defaultScheduler, PumpScheduler.getDefault());
+        assertEquals(PumpScheduler.isVirtualThreadsAvailable(), defaultScheduler.isVirtual());
+        final PumpScheduler scheduler = new PumpScheduler(1);
+        try {
+            PumpScheduler.setDefault(scheduler);
+            assertSame(scheduler, PumpScheduler.getDefault());
+        } finally {
+            PumpScheduler.setDefault(null);
+            scheduler.close();
+        }
+        assertNotSame(scheduler, PumpScheduler.getDefault());
+    }
+
+    /**
+     * Metrics are updated right after a pump's future completes, so we may have to wait a little.
+     */
+    private static void awaitCompleted(final PumpScheduler scheduler, final long completed) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (scheduler.getCompletedCount() < completed && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(completed, scheduler.getCompletedCount());
+    }
+}
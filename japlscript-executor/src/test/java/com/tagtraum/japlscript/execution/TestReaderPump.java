@@ -11,9 +11,9 @@ import org.mockito.ArgumentMatchers;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.io.StringReader;
 
-import static org.junit.jupiter.api.Assertions.assertNotNull;
-import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 /**
@@ -46,4 +46,18 @@ public class TestReaderPump {
         // it's ok to not lead to an exception
         assertNull(pump.getIOException());
     }
+
+    @Test
+    public void testValue() {
+        final ReaderPump pump = new ReaderPump(new StringReader("  some value \n"));
+        pump.run();
+        final CharSequence charSequence = pump.getCharSequence();
+        assertTrue(charSequence instanceof ChunkedCharSequence);
+        assertEquals("some value", charSequence.toString());
+        assertEquals("some value", pump.getValue());
+        pump.release();
+        // still available as string
+        assertEquals("some value", pump.getValue());
+        assertEquals("some value", pump.getCharSequence());
+    }
 }
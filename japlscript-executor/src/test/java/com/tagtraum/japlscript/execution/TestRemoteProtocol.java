@@ -0,0 +1,133 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TestRemoteProtocol.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestRemoteProtocol {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new RemoteProtocol.FrameBuilder(RemoteProtocol.EXECUTE, 42)
+            .writeLong(1000)
+            .writeString("return ä")
+            .writeStrings(Arrays.asList("a", null))
+            .writeTo(bytes);
+        new RemoteProtocol.FrameBuilder(RemoteProtocol.PING, 43).writeTo(bytes);
+
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        final RemoteProtocol.Frame execute = RemoteProtocol.readFrame(in);
+        assertNotNull(execute);
+        assertEquals(RemoteProtocol.EXECUTE, execute.type);
+        assertEquals(42, execute.requestId);
+        assertEquals(1000, execute.payload.readLong());
+        assertEquals("return ä", RemoteProtocol.readString(execute.payload));
+        assertEquals(Arrays.asList("a", null), RemoteProtocol.readStrings(execute.payload));
+
+        final RemoteProtocol.Frame ping = RemoteProtocol.readFrame(in);
+        assertNotNull(ping);
+        assertEquals(RemoteProtocol.PING, ping.type);
+        assertEquals(43, ping.requestId);
+        assertNull(RemoteProtocol.readFrame(in));
+    }
+
+    @Test
+    public void testEmptyStrings() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new RemoteProtocol.FrameBuilder(RemoteProtocol.RESULT, 1)
+            .writeStrings(Collections.emptyList())
+            .writeTo(bytes);
+        final RemoteProtocol.Frame frame = RemoteProtocol.readFrame(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertNotNull(frame);
+        assertTrue(RemoteProtocol.readStrings(frame.payload).isEmpty());
+    }
+
+    @Test
+    public void testIllegalFrameLength() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DataOutputStream(bytes).writeInt(RemoteProtocol.MAX_FRAME_LENGTH + 1);
+        assertThrows(IOException.class,
+            () -> RemoteProtocol.readFrame(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+    }
+
+    @Test
+    public void testTruncatedFrame() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        // announces a large frame, but sends only a few bytes
+        out.writeInt(RemoteProtocol.MAX_FRAME_LENGTH);
+        out.write(new byte[10]);
+        assertThrows(EOFException.class,
+            () -> RemoteProtocol.readFrame(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+    }
+
+    @Test
+    public void testRequestFrameLength() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DataOutputStream(bytes).writeInt(RemoteProtocol.MAX_REQUEST_FRAME_LENGTH + 1);
+        assertThrows(IOException.class, () -> RemoteProtocol.readFrame(
+            new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), RemoteProtocol.MAX_REQUEST_FRAME_LENGTH));
+    }
+
+    @Test
+    public void testIllegalStringLength() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new RemoteProtocol.FrameBuilder(RemoteProtocol.RESULT, 1)
+            .writeInt(RemoteProtocol.MAX_FRAME_LENGTH)
+            .writeTo(bytes);
+        final RemoteProtocol.Frame frame = RemoteProtocol.readFrame(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertNotNull(frame);
+        assertThrows(IOException.class, () -> RemoteProtocol.readString(frame.payload));
+    }
+
+    @Test
+    public void testToken() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        RemoteProtocol.writePreamble(new DataOutputStream(bytes), "secret");
+        RemoteProtocol.readPreamble(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), "secret");
+        // servers without token accept any token
+        RemoteProtocol.readPreamble(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), null);
+        assertThrows(IOException.class,
+            () -> RemoteProtocol.readPreamble(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), "other"));
+
+        final ByteArrayOutputStream noToken = new ByteArrayOutputStream();
+        RemoteProtocol.writePreamble(new DataOutputStream(noToken), null);
+        assertThrows(IOException.class,
+            () -> RemoteProtocol.readPreamble(new DataInputStream(new ByteArrayInputStream(noToken.toByteArray())), "secret"));
+    }
+
+    @Test
+    public void testPreamble() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        RemoteProtocol.writePreamble(new DataOutputStream(bytes), null);
+        RemoteProtocol.readPreamble(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), null);
+
+        final ByteArrayOutputStream wrongVersion = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(wrongVersion);
+        out.writeInt(RemoteProtocol.MAGIC);
+        out.writeInt(RemoteProtocol.VERSION + 1);
+        assertThrows(IOException.class,
+            () -> RemoteProtocol.readPreamble(new DataInputStream(new ByteArrayInputStream(wrongVersion.toByteArray())), null));
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.tagtraum.japlscript.execution.TestRemoteScriptServer.createClient;
+import static com.tagtraum.japlscript.execution.TestRemoteScriptServer.startServer;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TestRemoteScriptClient.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestRemoteScriptClient {
+
+    @Test
+    public void testExecute() throws IOException, ExecutionException, InterruptedException {
+        try (final RemoteScriptServer server = startServer(new TestRemoteScriptServer.StubProvider(), 2, 10);
+             final RemoteScriptClient client = createClient(server, 2, 10)) {
+            assertEquals("return 1", client.execute("return 1", Collections.emptyList(), 0).get());
+            assertEquals("run [a, äöü]", client.execute("run", Arrays.asList("a", "äöü"), 0).get());
+            assertNull(client.execute("null", null, 0).get());
+            assertEquals(3, client.getRequestCount());
+            assertEquals(0, client.getOutstandingCount());
+        }
+    }
+
+    @Test
+    public void testErrors() throws IOException {
+        try (final RemoteScriptServer server = startServer(new TestRemoteScriptServer.StubProvider(), 2, 10);
+             final RemoteScriptClient client = createClient(server, 2, 10)) {
+            final ExecutionException scriptFailure = assertThrows(ExecutionException.class,
+                () -> client.execute("fail", Collections.emptyList(), 0).get());
+            assertTrue(scriptFailure.getCause() instanceof JaplScriptException);
+            assertEquals("boom", ((JaplScriptException) scriptFailure.getCause()).getError());
+            assertEquals("fail", ((JaplScriptException) scriptFailure.getCause()).getScript());
+
+            final ExecutionException ioFailure = assertThrows(ExecutionException.class,
+                () -> client.execute("io", Collections.emptyList(), 0).get());
+            assertTrue(ioFailure.getCause() instanceof IOException);
+            assertTrue(ioFailure.getCause().getMessage().contains("io failure"));
+            assertEquals(2, client.getFailureCount());
+        }
+    }
+
+    @Test
+    public void testMultiplexing() throws IOException {
+        try (final RemoteScriptServer server = startServer(new TestRemoteScriptServer.StubProvider(), 20, 10);
+             final RemoteScriptClient client = createClient(server, 1, 100)) {
+            final long start = System.nanoTime();
+            final List<CompletableFuture<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                futures.add(client.execute("sleep " + (300 - i * 10), Collections.emptyList(), 0));
+            }
+            assertEquals(20, client.getOutstandingCount());
+            for (int i = 0; i < 20; i++) {
+                // responses arrive out of order, but are matched to their requests
+                assertEquals("sleep " + (300 - i * 10), futures.get(i).join());
+            }
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(3));
+            assertEquals(1, client.getConnectionCount());
+            assertEquals(1, server.getConnectionCount());
+        }
+    }
+
+    @Test
+    public void testPooling() throws IOException {
+        try (final RemoteScriptServer server = startServer(new TestRemoteScriptServer.StubProvider(), 10, 10);
+             final RemoteScriptClient client = createClient(server, 3, 1)) {
+            final List<CompletableFuture<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                futures.add(client.execute("sleep 200", Collections.emptyList(), 0));
+            }
+            assertEquals(3, client.getConnectionCount());
+            futures.forEach(CompletableFuture::join);
+        }
+    }
+
+    @Test
+    public void testDeadline() throws IOException, InterruptedException {
+        final TestRemoteScriptServer.StubProvider provider = new TestRemoteScriptServer.StubProvider();
+        try (final RemoteScriptServer server = startServer(provider, 2, 10);
+             final RemoteScriptClient client = createClient(server, 1, 10)) {
+            final long start = System.nanoTime();
+            final ExecutionException e = assertThrows(ExecutionException.class,
+                () -> client.execute("sleep 10000", Collections.emptyList(), 200).get());
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+            assertTrue(e.getCause() instanceof DeadlineExceededException);
+            assertEquals(200, ((DeadlineExceededException) e.getCause()).getDeadlineMillis());
+            // the deadline is passed on to the server side executor
+            assertEquals(200, provider.deadline.get());
+            // and the execution is cancelled on the server
+            final long waitUntil = System.currentTimeMillis() + 5000;
+            while (provider.interrupted.get() == 0 && System.currentTimeMillis() < waitUntil) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, provider.interrupted.get());
+            assertEquals(0, client.getOutstandingCount());
+        }
+    }
+
+    @Test
+    public void testCancel() throws IOException, InterruptedException {
+        final TestRemoteScriptServer.StubProvider provider = new TestRemoteScriptServer.StubProvider();
+        try (final RemoteScriptServer server = startServer(provider, 2, 10);
+             final RemoteScriptClient client = createClient(server, 1, 10)) {
+            final CompletableFuture<String> future = client.execute("sleep 10000", Collections.emptyList(), 0);
+            final long waitUntil = System.currentTimeMillis() + 5000;
+            // wait until the script is actually executing, not just scheduled
+            while (provider.concurrent.get() == 0 && System.currentTimeMillis() < waitUntil) {
+                Thread.sleep(10);
+            }
+            assertTrue(future.cancel(true));
+            while (provider.interrupted.get() == 0 && System.currentTimeMillis() < waitUntil) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, provider.interrupted.get());
+            assertEquals(1, server.getCancelledCount());
+        }
+    }
+
+    @Test
+    public void testPing() throws IOException, InterruptedException, ExecutionException, TimeoutException {
+        try (final RemoteScriptServer server = startServer(new TestRemoteScriptServer.StubProvider(), 2, 10);
+             final RemoteScriptClient client = createClient(server, 1, 10)) {
+            assertNull(client.ping().get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testConnectionRefused() throws IOException {
+        final int port;
+        try (final ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        try (final RemoteScriptClient client = new RemoteScriptClient(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1, 1, 1000)) {
+            final ExecutionException e = assertThrows(ExecutionException.class,
+                () -> client.execute("return 1", Collections.emptyList(), 0).get());
+            assertTrue(e.getCause() instanceof IOException);
+            assertThrows(ExecutionException.class, () -> client.ping().get());
+        }
+    }
+
+    @Test
+    public void testExecuteDoesNotBlockOnConnect() {
+        // non-routable address, i.e. connecting takes until the connect timeout
+        try (final RemoteScriptClient client = new RemoteScriptClient(
+            new InetSocketAddress("10.255.255.1", 9), 1, 1, 2000)) {
+            final long start = System.nanoTime();
+            final CompletableFuture<String> future = client.execute("return 1", Collections.emptyList(), 0);
+            final CompletableFuture<Void> ping = client.ping();
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1000));
+            final ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof IOException);
+            assertThrows(ExecutionException.class, () -> ping.get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testClosed() throws ExecutionException, InterruptedException {
+        final RemoteScriptClient client = new RemoteScriptClient("localhost", 1);
+        client.close();
+        assertTrue(client.isClosed());
+        final ExecutionException e = assertThrows(ExecutionException.class,
+            () -> client.execute("return 1", Collections.emptyList(), 0).get());
+        assertTrue(e.getCause().getMessage().contains("closed"));
+    }
+
+    @Test
+    public void testIllegalArguments() {
+        final InetSocketAddress address = new InetSocketAddress("localhost", 1);
+        assertThrows(IllegalArgumentException.class, () -> new RemoteScriptClient(address, 0, 1, 1000));
+        assertThrows(IllegalArgumentException.class, () -> new RemoteScriptClient(address, 1, 0, 1000));
+    }
+}
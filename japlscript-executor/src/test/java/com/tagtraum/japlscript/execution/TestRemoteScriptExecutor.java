@@ -0,0 +1,87 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.tagtraum.japlscript.execution.TestRemoteScriptServer.createClient;
+import static com.tagtraum.japlscript.execution.TestRemoteScriptServer.startServer;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TestRemoteScriptExecutor.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestRemoteScriptExecutor {
+
+    @Test
+    public void testExecute() throws IOException {
+        try (final RemoteScriptServer server = startServer(new TestRemoteScriptServer.StubProvider(), 2, 10);
+             final RemoteScriptClient client = createClient(server, 1, 10)) {
+            final RemoteScriptExecutor executor = new RemoteScriptExecutor(client);
+            assertSame(client, executor.getClient());
+            assertTrue(executor.isArgumentsSupported());
+            executor.setScript("run");
+            executor.setArguments(Arrays.asList("1", "2"));
+            assertEquals("run [1, 2]", executor.execute());
+
+            executor.setScript("fail");
+            executor.setArguments(Collections.emptyList());
+            final JaplScriptException e = assertThrows(JaplScriptException.class, executor::execute);
+            assertEquals("boom", e.getError());
+
+            executor.setScript("io");
+            assertThrows(IOException.class, executor::execute);
+        }
+    }
+
+    @Test
+    public void testExecuteAsync() throws IOException, ExecutionException, InterruptedException {
+        try (final RemoteScriptServer server = startServer(new TestRemoteScriptServer.StubProvider(), 2, 10);
+             final RemoteScriptClient client = createClient(server, 1, 10)) {
+            final RemoteScriptExecutor executor = new RemoteScriptExecutor(client);
+            executor.setScript("return 1");
+            assertEquals("return 1", executor.executeAsync().get());
+        }
+    }
+
+    @Test
+    public void testDeadline() throws IOException {
+        try (final RemoteScriptServer server = startServer(new TestRemoteScriptServer.StubProvider(), 2, 10);
+             final RemoteScriptClient client = createClient(server, 1, 10)) {
+            final RemoteScriptExecutor executor = new RemoteScriptExecutor(client);
+            executor.setScript("sleep 10000");
+            executor.setDeadline(100, TimeUnit.MILLISECONDS);
+            assertThrows(DeadlineExceededException.class, executor::execute);
+        }
+    }
+
+    @Test
+    public void testSessionProvider() throws IOException {
+        try (final RemoteScriptServer server = startServer(new TestRemoteScriptServer.StubProvider(), 2, 10);
+             final RemoteScriptClient client = createClient(server, 1, 10)) {
+            final Session session = Session.startSession();
+            try {
+                session.setScriptExecutorProvider(new RemoteScriptExecutorProvider(client));
+                final ScriptExecutor executor = ScriptExecutor.newInstance();
+                assertEquals(RemoteScriptExecutor.class, executor.getClass());
+                executor.setScript("return version");
+                assertEquals("return version", executor.execute());
+            } finally {
+                session.reset();
+                session.commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TestRemoteScriptExecutorProvider.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestRemoteScriptExecutorProvider {
+
+    @Test
+    public void testBasics() {
+        final RemoteScriptClient client = new RemoteScriptClient("localhost", RemoteScriptServer.DEFAULT_PORT);
+        final RemoteScriptExecutorProvider provider = new RemoteScriptExecutorProvider(client);
+        assertEquals(RemoteScriptExecutorProvider.NAME, provider.getName());
+        assertEquals(RemoteScriptExecutorProvider.PRIORITY, provider.getPriority());
+        assertFalse(provider.isCompileSupported());
+        assertSame(client, provider.getClient());
+        assertSame(client, ((RemoteScriptExecutor) provider.newInstance()).getClient());
+        assertTrue(provider.isAvailable());
+        client.close();
+        assertFalse(provider.isAvailable());
+    }
+}
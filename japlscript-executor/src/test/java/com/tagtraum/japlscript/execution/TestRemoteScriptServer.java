@@ -0,0 +1,259 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TestRemoteScriptServer.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestRemoteScriptServer {
+
+    static RemoteScriptServer startServer(final StubProvider provider, final int maxConcurrency, final int maxQueued)
+        throws IOException {
+        return new RemoteScriptServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), provider,
+            maxConcurrency, maxQueued).start();
+    }
+
+    static RemoteScriptClient createClient(final RemoteScriptServer server, final int maxConnections,
+                                           final int maxInFlightPerConnection) {
+        return new RemoteScriptClient(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()),
+            maxConnections, maxInFlightPerConnection, RemoteScriptClient.DEFAULT_CONNECT_TIMEOUT_MILLIS);
+    }
+
+    private static void waitFor(final java.util.function.BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    @Test
+    public void testStartAndClose() throws IOException {
+        final RemoteScriptServer server = new RemoteScriptServer(0);
+        assertEquals(-1, server.getPort());
+        server.start();
+        assertTrue(server.getPort() > 0);
+        assertThrows(IllegalStateException.class, server::start);
+        assertTrue(server.toString().contains("port=" + server.getPort()));
+        server.close();
+        assertThrows(IllegalStateException.class, server::start);
+    }
+
+    @Test
+    public void testBoundedConcurrency() throws IOException, InterruptedException {
+        final StubProvider provider = new StubProvider();
+        try (final RemoteScriptServer server = startServer(provider, 2, 10);
+             final RemoteScriptClient client = createClient(server, 1, 100)) {
+            final List<CompletableFuture<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                futures.add(client.execute("sleep 200", Collections.emptyList(), 0));
+            }
+            futures.forEach(CompletableFuture::join);
+            assertEquals(2, provider.maxConcurrent.get());
+            assertEquals(6, server.getRequestCount());
+            waitFor(() -> server.getActiveCount() == 0);
+        }
+    }
+
+    @Test
+    public void testRejected() throws IOException, InterruptedException {
+        final StubProvider provider = new StubProvider();
+        try (final RemoteScriptServer server = startServer(provider, 1, 1);
+             final RemoteScriptClient client = createClient(server, 1, 100)) {
+            final CompletableFuture<String> running = client.execute("sleep 500", Collections.emptyList(), 0);
+            waitFor(() -> server.getActiveCount() == 1);
+            final CompletableFuture<String> queued = client.execute("sleep 10", Collections.emptyList(), 0);
+            final CompletableFuture<String> rejected = client.execute("sleep 10", Collections.emptyList(), 0);
+            final ExecutionException e = assertThrows(ExecutionException.class, rejected::get);
+            assertTrue(e.getCause() instanceof IOException);
+            assertTrue(e.getCause().getMessage().contains("Rejected"));
+            assertEquals(1, server.getRejectedCount());
+            assertEquals("sleep 500", running.join());
+            assertEquals("sleep 10", queued.join());
+        }
+    }
+
+    @Test
+    public void testCancelOnDisconnect() throws IOException, InterruptedException {
+        final StubProvider provider = new StubProvider();
+        try (final RemoteScriptServer server = startServer(provider, 1, 10)) {
+            final RemoteScriptClient client = createClient(server, 1, 100);
+            client.execute("sleep 10000", Collections.emptyList(), 0);
+            waitFor(() -> server.getActiveCount() == 1);
+            client.close();
+            waitFor(() -> provider.interrupted.get() == 1);
+            waitFor(() -> server.getConnectionCount() == 0);
+            // counted only after cancel() has interrupted the executing thread
+            waitFor(() -> server.getCancelledCount() == 1);
+        }
+    }
+
+    @Test
+    public void testCloseFailsOutstandingRequests() throws IOException, InterruptedException, TimeoutException {
+        final RemoteScriptServer server = startServer(new StubProvider(), 1, 10);
+        try (final RemoteScriptClient client = createClient(server, 1, 100)) {
+            final CompletableFuture<String> future = client.execute("sleep 10000", Collections.emptyList(), 0);
+            waitFor(() -> server.getActiveCount() == 1);
+            server.close();
+            final ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof IOException);
+            // server is gone, so we can't connect anymore
+            final ExecutionException e2 = assertThrows(ExecutionException.class,
+                () -> client.execute("return 1", Collections.emptyList(), 0).get(5, TimeUnit.SECONDS));
+            assertTrue(e2.getCause() instanceof IOException);
+        }
+    }
+
+    @Test
+    public void testLoopbackByDefault() {
+        assertTrue(new RemoteScriptServer(0).getAddress().getAddress().isLoopbackAddress());
+        // other interfaces require a token
+        assertThrows(IllegalArgumentException.class, () -> new RemoteScriptServer(new InetSocketAddress(0), null, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new RemoteScriptServer(new InetSocketAddress(0), null, 1, 1, ""));
+        new RemoteScriptServer(new InetSocketAddress(0), null, 1, 1, "secret").close();
+    }
+
+    @Test
+    public void testToken() throws IOException, ExecutionException, InterruptedException, TimeoutException {
+        try (final RemoteScriptServer server = new RemoteScriptServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+            new StubProvider(), 1, 10, "secret").start()) {
+            final InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+            try (final RemoteScriptClient client = new RemoteScriptClient(address, 1, 10, 1000, "secret")) {
+                assertEquals("return 1", client.execute("return 1", Collections.emptyList(), 0).get(5, TimeUnit.SECONDS));
+            }
+            try (final RemoteScriptClient client = new RemoteScriptClient(address, 1, 10, 1000, "wrong")) {
+                final ExecutionException e = assertThrows(ExecutionException.class,
+                    () -> client.execute("return 1", Collections.emptyList(), 0).get(5, TimeUnit.SECONDS));
+                assertTrue(e.getCause() instanceof IOException);
+            }
+            try (final RemoteScriptClient client = new RemoteScriptClient(address, 1, 10, 1000)) {
+                assertThrows(ExecutionException.class,
+                    () -> client.execute("return 1", Collections.emptyList(), 0).get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, server.getRequestCount());
+        }
+    }
+
+    @Test
+    public void testMaxConnections() throws IOException, InterruptedException {
+        try (final RemoteScriptServer server = startServer(new StubProvider(), 1, 10);
+             final Socket first = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            server.setMaxConnections(1);
+            waitFor(() -> server.getConnectionCount() == 1);
+            try (final Socket second = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+                // server closes the connection right away
+                assertEquals(-1, new DataInputStream(second.getInputStream()).read());
+            }
+            assertEquals(1, server.getConnectionCount());
+        }
+        assertThrows(IllegalArgumentException.class, () -> new RemoteScriptServer(0).setMaxConnections(0));
+    }
+
+    @Test
+    public void testBadPreamble() throws IOException, InterruptedException {
+        try (final RemoteScriptServer server = startServer(new StubProvider(), 1, 10);
+             final Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeInt(0x47455420); // "GET "
+            out.writeInt(0x2f204854);
+            out.flush();
+            // server closes the connection
+            assertEquals(-1, new DataInputStream(socket.getInputStream()).read());
+            waitFor(() -> server.getConnectionCount() == 0);
+        }
+    }
+
+    /**
+     * Provides executors that understand a few made up commands.
+     */
+    static class StubProvider implements ScriptExecutorProvider {
+
+        final AtomicInteger concurrent = new AtomicInteger();
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+        final AtomicInteger interrupted = new AtomicInteger();
+        final AtomicInteger deadline = new AtomicInteger();
+
+        @Override
+        public String getName() {
+            return "stub";
+        }
+
+        @Override
+        public int getPriority() {
+            return 0;
+        }
+
+        @Override
+        public ScriptExecutor newInstance() {
+            return new StubExecutor(this);
+        }
+    }
+
+    /**
+     * Supports <code>sleep &lt;ms&gt;</code>, <code>fail</code>, <code>io</code> and echoes everything else.
+     */
+    private static class StubExecutor extends ScriptExecutor {
+
+        private final StubProvider provider;
+
+        StubExecutor(final StubProvider provider) {
+            this.provider = provider;
+        }
+
+        @Override
+        public boolean isArgumentsSupported() {
+            return true;
+        }
+
+        @Override
+        protected String executeImpl() throws IOException {
+            final int concurrent = provider.concurrent.incrementAndGet();
+            provider.maxConcurrent.accumulateAndGet(concurrent, Math::max);
+            provider.deadline.set((int) getDeadlineMillis());
+            try {
+                final String script = getScript().toString();
+                if (script.startsWith("sleep ")) {
+                    try {
+                        Thread.sleep(Long.parseLong(script.substring(6)));
+                    } catch (InterruptedException e) {
+                        provider.interrupted.incrementAndGet();
+                        throw new InterruptedIOException(e.toString());
+                    }
+                    return script;
+                }
+                if (script.equals("fail")) throw new JaplScriptException("boom", script);
+                if (script.equals("io")) throw new IOException("io failure");
+                if (script.equals("null")) return null;
+                return script + (getArguments().isEmpty() ? "" : " " + getArguments());
+            } finally {
+                provider.concurrent.decrementAndGet();
+            }
+        }
+    }
+}
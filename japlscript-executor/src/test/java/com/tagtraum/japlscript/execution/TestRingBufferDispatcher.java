@@ -0,0 +1,107 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TestRingBufferDispatcher.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestRingBufferDispatcher {
+
+    @Test
+    public void testOrder() throws InterruptedException {
+        try (final RingBufferDispatcher dispatcher = new RingBufferDispatcher(16)) {
+            final List<Integer> delivered = new ArrayList<>();
+            final CountDownLatch done = new CountDownLatch(1);
+            for (int i = 0; i < 10; i++) {
+                final int value = i;
+                dispatcher.execute(() -> delivered.add(value));
+            }
+            dispatcher.execute(done::countDown);
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 10; i++) {
+                assertEquals(i, (int) delivered.get(i));
+            }
+            assertEquals(0, dispatcher.getDroppedCount());
+        }
+    }
+
+    @Test
+    public void testMultipleProducers() throws InterruptedException {
+        try (final RingBufferDispatcher dispatcher = new RingBufferDispatcher(1 << 16)) {
+            final int producers = 4;
+            final int eventsPerProducer = 10000;
+            final CountDownLatch delivered = new CountDownLatch(producers * eventsPerProducer);
+            final List<Thread> threads = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                final Thread thread = new Thread(() -> {
+                    for (int i = 0; i < eventsPerProducer; i++) {
+                        dispatcher.execute(delivered::countDown);
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (final Thread thread : threads) {
+                thread.join();
+            }
+            assertTrue(delivered.await(10, TimeUnit.SECONDS));
+            assertEquals(0, dispatcher.getDroppedCount());
+        }
+    }
+
+    @Test
+    public void testDropWhenFull() throws InterruptedException {
+        try (final RingBufferDispatcher dispatcher = new RingBufferDispatcher(3)) {
+            assertEquals(4, dispatcher.getCapacity());
+            final CountDownLatch started = new CountDownLatch(1);
+            final CountDownLatch release = new CountDownLatch(1);
+            dispatcher.execute(() -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 6; i++) {
+                dispatcher.execute(() -> {});
+            }
+            assertEquals(4, dispatcher.getPendingCount());
+            assertEquals(2, dispatcher.getDroppedCount());
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void testClose() throws InterruptedException {
+        final RingBufferDispatcher dispatcher = new RingBufferDispatcher();
+        final CountDownLatch delivered = new CountDownLatch(1);
+        dispatcher.execute(delivered::countDown);
+        dispatcher.close();
+        assertTrue(dispatcher.isClosed());
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        dispatcher.execute(() -> {});
+        assertEquals(1, dispatcher.getDroppedCount());
+    }
+
+    @Test
+    public void testBadArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new RingBufferDispatcher(0));
+    }
+}
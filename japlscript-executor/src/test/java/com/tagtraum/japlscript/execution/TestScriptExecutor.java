@@ -13,7 +13,14 @@ import javax.swing.*;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -85,27 +92,256 @@ public class TestScriptExecutor {
         Thread.sleep(1000);
         final TestExecutionListener listener = new TestExecutionListener();
         ScriptExecutor.addExecutionListener(listener);
-        final ScriptExecutor scriptExecutor = ScriptExecutor.newInstance();
-        final String script = "return version";
-        scriptExecutor.setScript(script);
-        final String version = scriptExecutor.execute();
-        assertNotNull(version);
+        try {
+            final ScriptExecutor scriptExecutor = ScriptExecutor.newInstance();
+            final String script = "return version";
+            scriptExecutor.setScript(script);
+            final String version = scriptExecutor.execute();
+            assertNotNull(version);
+
+            // wait until all events are delivered on EDT
+            SwingUtilities.invokeAndWait(() -> { });
+
+            assertEquals(2, listener.getEvents().size(), "Received these events: " + listener.getEvents());
+            final ExecutionEvent firstEvent = listener.getEvents().get(0);
+            assertEquals(new ExecutionEvent(scriptExecutor, script, true, null),
+                firstEvent);
+            assertEquals(new ExecutionEvent(scriptExecutor, script, false, version),
+                listener.getEvents().get(1));
+
+            assertEquals(scriptExecutor, firstEvent.getSource());
+            assertEquals(script, firstEvent.getScript());
+            assertNull(firstEvent.getResult());
+            assertTrue(firstEvent.isStarted());
+            assertFalse(firstEvent.isFinished());
+        } finally {
+            ScriptExecutor.removeExecutionListener(listener);
+        }
+    }
+
+    @Test
+    public void testExecuteAsync() throws InterruptedException, ExecutionException, TimeoutException {
+        final ScriptExecutor scriptExecutor = new EchoScriptExecutor();
+        scriptExecutor.setScript("return 1");
+        assertEquals("return 1", scriptExecutor.executeAsync().get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testExecuteAsyncWithExecutor() throws InterruptedException, ExecutionException, TimeoutException {
+        final AtomicInteger count = new AtomicInteger();
+        final Executor executor = command -> {
+            count.incrementAndGet();
+            command.run();
+        };
+        final ScriptExecutor scriptExecutor = new EchoScriptExecutor();
+        scriptExecutor.setScript("return 1");
+        assertEquals("return 1", scriptExecutor.executeAsync(executor).get(5, TimeUnit.SECONDS));
+        assertEquals(1, count.get());
+    }
+
+    @Test
+    public void testExecuteAsyncWithIOException() throws InterruptedException, TimeoutException {
+        final ScriptExecutor scriptExecutor = new ScriptExecutor() {
+            @Override
+            protected String executeImpl() throws IOException {
+                throw new IOException("failed");
+            }
+        };
+        scriptExecutor.setScript("return 1");
+        try {
+            scriptExecutor.executeAsync().get(5, TimeUnit.SECONDS);
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    @Test
+    public void testAsyncEvents() throws InterruptedException, InvocationTargetException, ExecutionException, TimeoutException {
+        // wait a little to ensure all pending events are delivered
+        Thread.sleep(1000);
+        final TestExecutionListener listener = new TestExecutionListener();
+        ScriptExecutor.addExecutionListener(listener);
+        try {
+            final ScriptExecutor scriptExecutor = new EchoScriptExecutor();
+            final String script = "return 1";
+            scriptExecutor.setScript(script);
+            final String result = scriptExecutor.executeAsync().get(5, TimeUnit.SECONDS);
+
+            // wait until all events are delivered on EDT
+            SwingUtilities.invokeAndWait(() -> { });
+
+            assertEquals(2, listener.getEvents().size(), "Received these events: " + listener.getEvents());
+            assertEquals(new ExecutionEvent(scriptExecutor, script, true, null),
+                listener.getEvents().get(0));
+            assertEquals(new ExecutionEvent(scriptExecutor, script, false, result),
+                listener.getEvents().get(1));
+        } finally {
+            ScriptExecutor.removeExecutionListener(listener);
+        }
+    }
+
+    @Test
+    public void testMetricsDoNotCopyScript() throws IOException, InterruptedException, ExecutionException, TimeoutException {
+        final List<ExecutionMetricsEvent> events = Collections.synchronizedList(new ArrayList<>());
+        final ExecutionMetricsListener listener = events::add;
+        ExecutionEventBus.getInstance().addMetricsListener(listener, ExecutionEventBus.CALLER_THREAD);
+        try {
+            final AtomicInteger copies = new AtomicInteger();
+            final StringBuilder sb = new StringBuilder("return 1");
+            final CharSequence script = new CharSequence() {
+                @Override
+                public int length() {
+                    return sb.length();
+                }
+
+                @Override
+                public char charAt(final int index) {
+                    return sb.charAt(index);
+                }
+
+                @Override
+                public CharSequence subSequence(final int start, final int end) {
+                    return sb.subSequence(start, end);
+                }
+
+                @Override
+                public String toString() {
+                    copies.incrementAndGet();
+                    return sb.toString();
+                }
+            };
+            final ScriptExecutor scriptExecutor = new ScriptExecutor() {
+                @Override
+                protected String executeImpl() {
+                    return "1";
+                }
+            };
+            scriptExecutor.setScript(script);
+            assertEquals("1", scriptExecutor.execute());
+            assertEquals("1", scriptExecutor.executeAsync().get(5, TimeUnit.SECONDS));
+            assertEquals(0, copies.get());
+            assertEquals(2, events.size());
+            assertEquals(script.length(), events.get(0).getScriptLength());
+            assertEquals(1, events.get(0).getResultLength());
+        } finally {
+            ExecutionEventBus.getInstance().removeMetricsListener(listener);
+        }
+    }
+
+    @Test
+    public void testSetDefaultExecutor() {
+        final Executor defaultExecutor = ScriptExecutor.getDefaultExecutor();
+        assertNotNull(defaultExecutor);
+        final Executor executor = Runnable::run;
+        try {
+            ScriptExecutor.setDefaultExecutor(executor);
+            assertSame(executor, ScriptExecutor.getDefaultExecutor());
+            ScriptExecutor.setDefaultExecutor(null);
+            assertSame(defaultExecutor, ScriptExecutor.getDefaultExecutor());
+        } finally {
+            ScriptExecutor.setDefaultExecutor(null);
+        }
+    }
+
+    @Test
+    public void testArguments() {
+        final ScriptExecutor scriptExecutor = new EchoScriptExecutor();
+        assertFalse(scriptExecutor.isArgumentsSupported());
+        assertTrue(scriptExecutor.getArguments().isEmpty());
+        scriptExecutor.setArguments(Collections.emptyList());
+        assertThrows(UnsupportedOperationException.class, () -> scriptExecutor.setArguments(Collections.singletonList("1")));
+
+        final Osascript osascript = new Osascript();
+        assertTrue(osascript.isArgumentsSupported());
+        osascript.setArguments(Arrays.asList("1", "2"));
+        assertEquals(Arrays.asList("1", "2"), osascript.getArguments());
+    }
+
+    @Test
+    public void testProviders() {
+        final List<ScriptExecutorProvider> providers = ScriptExecutor.getProviders();
+        assertTrue(providers.size() >= 2);
+        for (int i = 1; i < providers.size(); i++) {
+            assertTrue(providers.get(i - 1).getPriority() >= providers.get(i).getPriority());
+        }
+        assertEquals(OsascriptProvider.class, ScriptExecutor.getProvider(OsascriptProvider.NAME).getClass());
+        assertEquals(CocoaScriptExecutorProvider.class, ScriptExecutor.getProvider(CocoaScriptExecutorProvider.NAME).getClass());
+        assertNull(ScriptExecutor.getProvider("unknown"));
+        assertThrows(UnsupportedOperationException.class, () -> providers.add(new EchoScriptExecutorProvider()));
+    }
+
+    @Test
+    public void testProviderProperty() {
+        final String property = System.getProperty(ScriptExecutor.PROVIDER_PROPERTY);
+        try {
+            System.setProperty(ScriptExecutor.PROVIDER_PROPERTY, OsascriptProvider.NAME);
+            assertEquals(Osascript.class, ScriptExecutor.newInstance().getClass());
+            // unknown providers are ignored
+            System.setProperty(ScriptExecutor.PROVIDER_PROPERTY, "unknown");
+            assertNotNull(ScriptExecutor.newInstance());
+        } finally {
+            if (property == null) System.clearProperty(ScriptExecutor.PROVIDER_PROPERTY);
+            else System.setProperty(ScriptExecutor.PROVIDER_PROPERTY, property);
+        }
+    }
+
+    @Test
+    public void testSessionProvider() throws IOException {
+        final Session session = Session.startSession();
+        try {
+            session.setScriptExecutorProvider(new EchoScriptExecutorProvider());
+            final ScriptExecutor scriptExecutor = ScriptExecutor.newInstance();
+            assertEquals(EchoScriptExecutor.class, scriptExecutor.getClass());
+            scriptExecutor.setScript("return version");
+            assertEquals("return version", scriptExecutor.execute());
+            session.reset();
+            assertNull(session.getScriptExecutorProvider());
+        } finally {
+            session.commit();
+        }
+    }
+
+    @Test
+    public void testCompileSession() {
+        final Session session = Session.startSession();
+        try {
+            session.setCompile(true);
+            assertEquals(Osascript.class, ScriptExecutor.newInstance().getClass());
+        } finally {
+            session.setCompile(false);
+            session.commit();
+        }
+    }
 
-        // wait until all events are delivered on EDT
-        SwingUtilities.invokeAndWait(() -> { });
-
-        assertEquals(2, listener.getEvents().size(), "Received these events: " + listener.getEvents());
-        final ExecutionEvent firstEvent = listener.getEvents().get(0);
-        assertEquals(new ExecutionEvent(scriptExecutor, script, true, null),
-            firstEvent);
-        assertEquals(new ExecutionEvent(scriptExecutor, script, false, version),
-            listener.getEvents().get(1));
-
-        assertEquals(scriptExecutor, firstEvent.getSource());
-        assertEquals(script, firstEvent.getScript());
-        assertNull(firstEvent.getResult());
-        assertTrue(firstEvent.isStarted());
-        assertFalse(firstEvent.isFinished());
+    @Test
+    public void testNewInstanceWithProvider() {
+        assertEquals(EchoScriptExecutor.class, ScriptExecutor.newInstance(new EchoScriptExecutorProvider()).getClass());
+        assertEquals(Osascript.class, ScriptExecutor.newInstance(new OsascriptProvider()).getClass());
+    }
+
+    private static class EchoScriptExecutorProvider implements ScriptExecutorProvider {
+        @Override
+        public String getName() {
+            return "echo";
+        }
+
+        @Override
+        public int getPriority() {
+            return 0;
+        }
+
+        @Override
+        public ScriptExecutor newInstance() {
+            return new EchoScriptExecutor();
+        }
+    }
+
+    private static class EchoScriptExecutor extends ScriptExecutor {
+        @Override
+        protected String executeImpl() {
+            return getScript().toString();
+        }
     }
 
     private static class TestExecutionListener implements ExecutionListener {
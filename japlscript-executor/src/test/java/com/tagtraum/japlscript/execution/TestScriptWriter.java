@@ -0,0 +1,81 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TestScriptWriter.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestScriptWriter {
+
+    private static byte[] write(final CharSequence script) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ScriptWriter.write(script, out);
+        final byte[] bytes = out.toByteArray();
+        assertArrayEquals(ScriptWriter.BOM, Arrays.copyOf(bytes, ScriptWriter.BOM.length));
+        return Arrays.copyOfRange(bytes, ScriptWriter.BOM.length, bytes.length);
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        assertEquals(0, write("").length);
+    }
+
+    @Test
+    public void testNonMacRoman() throws IOException {
+        final String script = "return \"→ 日本 😀 größer\"";
+        assertArrayEquals(script.getBytes(UTF_8), write(script));
+        assertArrayEquals(script.getBytes(UTF_8), write(new StringBuilder(script)));
+        assertArrayEquals(script.getBytes(UTF_8), write(new StringBuffer(script)));
+    }
+
+    @Test
+    public void testLargeScript() throws IOException {
+        final StringBuilder script = new StringBuilder("return {");
+        while (script.length() < 100_000) {
+            // surrogate pairs end up on buffer boundaries at some point
+            script.append("\"😀ä\", ");
+        }
+        script.append("1}");
+        assertArrayEquals(script.toString().getBytes(UTF_8), write(script));
+
+        final ChunkedCharSequence chunked = new ChunkedCharSequence();
+        final char[] chars = script.toString().toCharArray();
+        chunked.append(chars, 0, chars.length);
+        assertArrayEquals(script.toString().getBytes(UTF_8), write(chunked));
+        chunked.release();
+    }
+
+    @Test
+    public void testMalformed() throws IOException {
+        assertArrayEquals("a?b".getBytes(UTF_8), write("a\ud83db"));
+        assertArrayEquals("a?".getBytes(UTF_8), write("a\ud83d"));
+    }
+
+    @Test
+    public void testClosesStream() throws IOException {
+        final boolean[] closed = {false};
+        final ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        ScriptWriter.write("return 1", out);
+        assertTrue(closed[0]);
+    }
+}
@@ -9,6 +9,11 @@ package com.tagtraum.japlscript.execution;
 import org.junit.jupiter.api.Test;
 
 import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -56,4 +61,32 @@ public class TestScriptingAddition {
         assertEquals(ScriptingAddition.Architecture.UNKNOWN, scriptingAddition.getArchitecture());
     }
 
+    @Test
+    public void testFixture() throws IOException, URISyntaxException {
+        final Path folder = Files.createTempDirectory("japlscript").resolve("Fixture.osax");
+        final Path macOS = Files.createDirectories(folder.resolve("Contents").resolve("MacOS"));
+        final Path executable = Files.copy(TestMachOHeader.getFixture("fat-x86_64-arm64"), macOS.resolve("Fixture"));
+        final ScriptingAddition scriptingAddition = new ScriptingAddition(executable.toFile());
+        assertEquals(folder.toFile(), scriptingAddition.getFolder());
+        assertEquals(EnumSet.of(ScriptingAddition.Architecture.X86_64, ScriptingAddition.Architecture.AARCH64),
+            scriptingAddition.getArchitectures());
+        final String arch = System.getProperty("os.arch");
+        if (arch.equals("aarch64")) {
+            assertEquals(ScriptingAddition.Architecture.AARCH64, scriptingAddition.getArchitecture());
+            assertTrue(scriptingAddition.isLocalArchitecture());
+        } else {
+            assertEquals(ScriptingAddition.Architecture.X86_64, scriptingAddition.getArchitecture());
+            assertEquals(arch.equals("x86_64"), scriptingAddition.isLocalArchitecture());
+        }
+    }
+
+    @Test
+    public void testToArchitecture() {
+        assertEquals(ScriptingAddition.Architecture.UNKNOWN, ScriptingAddition.toArchitecture(EnumSet.noneOf(ScriptingAddition.Architecture.class)));
+        assertEquals(ScriptingAddition.Architecture.UNIVERSAL, ScriptingAddition.toArchitecture(
+            EnumSet.of(ScriptingAddition.Architecture.I368, ScriptingAddition.Architecture.PPC, ScriptingAddition.Architecture.X86_64)));
+        assertEquals(ScriptingAddition.Architecture.PPC, ScriptingAddition.toArchitecture(
+            EnumSet.of(ScriptingAddition.Architecture.PPC, ScriptingAddition.Architecture.UNKNOWN)));
+    }
+
 }
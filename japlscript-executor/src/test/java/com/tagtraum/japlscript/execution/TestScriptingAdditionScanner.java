@@ -0,0 +1,101 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import com.tagtraum.japlscript.execution.ScriptingAddition.Architecture;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TestScriptingAdditionScanner.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestScriptingAdditionScanner {
+
+    private static Path createBundle(final Path directory, final String name, final String fixture)
+        throws IOException, URISyntaxException {
+        final Path macOS = Files.createDirectories(directory.resolve(name + ".osax").resolve("Contents").resolve("MacOS"));
+        final Path executable = macOS.resolve(name);
+        Files.copy(TestMachOHeader.getFixture(fixture), executable, StandardCopyOption.REPLACE_EXISTING);
+        return executable;
+    }
+
+    @Test
+    public void testScan() throws IOException, URISyntaxException {
+        final Path directory = Files.createTempDirectory("japlscript-osax");
+        createBundle(directory, "Intel", "x86_64");
+        createBundle(directory, "Universal", "fat-i386-ppc");
+        Files.createDirectories(directory.resolve("Empty.osax"));
+        Files.createDirectories(directory.resolve("NoBundle"));
+
+        final ScriptingAdditionScanner scanner = new ScriptingAdditionScanner(
+            Collections.singletonList(directory));
+        final List<ScriptingAddition> scriptingAdditions = scanner.scan();
+        scriptingAdditions.sort(Comparator.comparing(ScriptingAddition::getFolder));
+        assertEquals(3, scriptingAdditions.size());
+
+        assertEquals(directory.resolve("Empty.osax").toFile(), scriptingAdditions.get(0).getFolder());
+        assertNull(scriptingAdditions.get(0).getExecutable());
+        assertEquals(Architecture.UNKNOWN, scriptingAdditions.get(0).getArchitecture());
+
+        assertEquals(directory.resolve("Intel.osax").toFile(), scriptingAdditions.get(1).getFolder());
+        assertEquals(Architecture.X86_64, scriptingAdditions.get(1).getArchitecture());
+
+        assertEquals(directory.resolve("Universal.osax").toFile(), scriptingAdditions.get(2).getFolder());
+        assertEquals(Architecture.UNIVERSAL, scriptingAdditions.get(2).getArchitecture());
+        assertTrue(scriptingAdditions.get(2).isLocalArchitecture());
+        assertEquals(2, scanner.getCacheSize());
+    }
+
+    @Test
+    public void testCache() throws IOException, URISyntaxException {
+        final Path directory = Files.createTempDirectory("japlscript-osax");
+        final Path executable = createBundle(directory, "Addition", "i386");
+        final ScriptingAdditionScanner scanner = new ScriptingAdditionScanner(
+            Collections.singletonList(directory));
+        final Path bundle = directory.resolve("Addition.osax");
+
+        final ScriptingAddition first = scanner.get(bundle);
+        assertEquals(Architecture.I368, first.getArchitecture());
+        assertSame(first, scanner.get(bundle));
+
+        // replace the executable, cached value must be invalidated
+        final FileTime lastModifiedTime = Files.getLastModifiedTime(executable);
+        createBundle(directory, "Addition", "arm64");
+        Files.setLastModifiedTime(executable, FileTime.fromMillis(lastModifiedTime.toMillis() + 1000));
+        final ScriptingAddition second = scanner.get(bundle);
+        assertNotSame(first, second);
+        assertEquals(Architecture.AARCH64, second.getArchitecture());
+
+        scanner.clear();
+        assertEquals(0, scanner.getCacheSize());
+    }
+
+    @Test
+    public void testMissingDirectory() {
+        final ScriptingAdditionScanner scanner = new ScriptingAdditionScanner(
+            Collections.singletonList(java.nio.file.Paths.get("/does/not/exist")));
+        assertTrue(scanner.scan().isEmpty());
+    }
+
+    @Test
+    public void testDefault() {
+        assertEquals(ScriptingAdditionScanner.DEFAULT_DIRECTORIES, ScriptingAdditionScanner.getDefault().getDirectories());
+    }
+}
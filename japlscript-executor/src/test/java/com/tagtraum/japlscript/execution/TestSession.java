@@ -12,7 +12,14 @@ import org.junit.jupiter.api.Test;
 import javax.swing.*;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -57,6 +64,25 @@ public class TestSession {
         session.setTimeout(-5);
     }
 
+    @Test
+    public void testSetDeadline() {
+        final Session session = Session.startSession();
+        assertEquals(0, session.getDeadlineMillis());
+        session.setDeadline(2, TimeUnit.SECONDS);
+        assertEquals(2000, session.getDeadlineMillis());
+        final ScriptExecutor scriptExecutor = new Osascript();
+        assertEquals(0, scriptExecutor.getDeadlineMillis());
+        assertEquals(2000, scriptExecutor.getEffectiveDeadlineMillis());
+        scriptExecutor.setDeadline(1, TimeUnit.SECONDS);
+        assertEquals(1000, scriptExecutor.getEffectiveDeadlineMillis());
+        session.add("set x to 1");
+        session.clear();
+        assertEquals(0, session.getScript().length());
+        assertEquals(2000, session.getDeadlineMillis());
+        session.reset();
+        assertEquals(0, session.getDeadlineMillis());
+    }
+
     @Test
     public void testSetIgnoreReturnValues() {
         final Session session = Session.startSession();
@@ -104,6 +130,30 @@ public class TestSession {
         });
     }
 
+    @Test
+    public void testAddWithArguments() {
+        final Session session = Session.startSession();
+        try {
+            session.add("return item 1 of argv", Collections.singletonList("a"), Collections.singletonList("on f()\nend f"));
+            session.add("return item 2 of argv", Collections.singletonList("b"), Collections.singletonList("on f()\nend f"));
+            assertEquals(Arrays.asList("a", "b"), session.getArguments());
+            assertEquals("on run argv\nreturn item 1 of argv\nreturn item 2 of argv\nend run\non f()\nend f\n", session.getScript());
+        } finally {
+            session.reset();
+        }
+        assertTrue(session.getArguments().isEmpty());
+        assertEquals("", session.getScript());
+    }
+
+    @Test
+    public void testToScript() {
+        assertEquals("return 1", Session.toScript("return 1", Collections.emptyList(), Collections.emptyList()));
+        assertEquals("on run argv\nreturn item 1 of argv\nend run\n",
+            Session.toScript("return item 1 of argv\n", Collections.singletonList("1"), Collections.emptyList()));
+        assertEquals("return f()\non f()\nend f\n",
+            Session.toScript("return f()\n", Collections.emptyList(), Collections.singletonList("on f()\nend f")));
+    }
+
     private static class TestExecutionListener implements ExecutionListener {
         private final List<ExecutionEvent> events = new ArrayList<>();
 
@@ -152,4 +202,111 @@ public class TestSession {
             }
         }
     }
+
+    @Test
+    public void testAddWithResult() {
+        final Session session = Session.startSession();
+        try {
+            session.add("set x to 1", Collections.emptyList(), Collections.emptyList());
+            final CompletableFuture<String> first = session.addWithResult("return x", Collections.emptyList(), Collections.emptyList());
+            final CompletableFuture<String> second = session.addWithResult("return item 1 of argv",
+                Collections.singletonList("a"), Collections.emptyList());
+            assertFalse(first.isDone());
+            assertFalse(second.isDone());
+            final String script = session.getScript();
+            assertTrue(script.startsWith("on run argv\nset x to 1\nset japlscript_results to {}\n"), script);
+            assertTrue(script.contains("to {true, japlscript_result_1()}"), script);
+            assertTrue(script.contains("to {true, japlscript_result_2(argv)}"), script);
+            assertTrue(script.contains("return japlscript_results\nend run\n"), script);
+            assertTrue(script.contains("on japlscript_result_1()\nreturn x\nend japlscript_result_1"), script);
+            assertTrue(script.contains("on japlscript_result_2(argv)\nreturn item 1 of argv\nend japlscript_result_2"), script);
+        } finally {
+            session.reset();
+        }
+    }
+
+    @Test
+    public void testResetCancelsResults() {
+        final Session session = Session.startSession();
+        final CompletableFuture<String> result = session.addWithResult("return 1", Collections.emptyList(), Collections.emptyList());
+        session.reset();
+        assertTrue(result.isCancelled() || result.isCompletedExceptionally());
+        assertFalse(session.getScript().contains("japlscript_results"));
+    }
+
+    @Test
+    public void testBatch() throws ExecutionException, InterruptedException {
+        final Session session = Session.startSession();
+        session.setBatch(true);
+        assertTrue(session.isBatch());
+        final CompletableFuture<String> first = session.addWithResult("return 1", Collections.emptyList(), Collections.emptyList());
+        final CompletableFuture<String> failed = session.addWithResult("error \"bad\" number 42", Collections.emptyList(), Collections.emptyList());
+        final CompletableFuture<String> third = session.addWithResult("return \"a, b\"", Collections.emptyList(), Collections.emptyList());
+        session.commit();
+        assertEquals("1", first.get());
+        final ExecutionException e = assertThrows(ExecutionException.class, failed::get);
+        assertTrue(e.getCause() instanceof JaplScriptException);
+        assertTrue(e.getCause().getMessage().contains("bad (42)"), e.getCause().getMessage());
+        assertEquals("\"a, b\"", third.get());
+    }
+
+    @Test
+    public void testExecutionCallbacks() {
+        final Session session = Session.startSession();
+        session.setScriptExecutorProvider(new TestRemoteScriptServer.StubProvider());
+        final AtomicInteger executed = new AtomicInteger();
+        session.add("set x to 1");
+        session.addExecutionCallback(executed::incrementAndGet);
+        assertEquals(1, session.getExecutionCallbacks().size());
+        assertEquals(0, executed.get());
+        session.flush();
+        assertEquals(1, executed.get());
+        assertTrue(session.getExecutionCallbacks().isEmpty());
+        // discarded fragments
+        session.add("set x to 2");
+        session.addExecutionCallback(executed::incrementAndGet);
+        session.reset();
+        assertEquals(2, executed.get());
+        session.addExecutionCallback(executed::incrementAndGet);
+        session.commit();
+        assertEquals(3, executed.get());
+    }
+
+    @Test
+    public void testActiveCount() {
+        final Session current = Session.get();
+        if (current != null) {
+            current.reset();
+            current.commit();
+        }
+        final int active = Session.getActiveCount();
+        final Session session = Session.startSession();
+        assertEquals(active + 1, Session.getActiveCount());
+        // a session started while temporarily running without session is dropped, once the previous one is restored
+        final Session temporary = Session.callWith(null, Session::startSession);
+        assertNotSame(session, temporary);
+        assertSame(session, Session.get());
+        assertEquals(active + 1, Session.getActiveCount());
+        session.commit();
+        assertNull(Session.get());
+        assertEquals(active, Session.getActiveCount());
+        // a session committed while temporarily set
+        Session.callWith(temporary, () -> {
+            temporary.commit();
+            return null;
+        });
+        assertEquals(active, Session.getActiveCount());
+    }
+
+    @Test
+    public void testSplitList() {
+        assertEquals(Collections.emptyList(), Session.splitList("{}"));
+        assertEquals(Arrays.asList("1", "\"a, \\\"b}\"", "{2, {3}}", "\u00abdata utxt0041\u00bb"),
+            Session.splitList("{1, \"a, \\\"b}\", {2, {3}}, \u00abdata utxt0041\u00bb}"));
+        assertEquals(Arrays.asList("{true, \"x\"}", "{false, \"error\", -1728}"),
+            Session.splitList("{{true, \"x\"}, {false, \"error\", -1728}}"));
+        assertEquals(Arrays.asList("a:1", "b:{2}"), Session.splitList("{a:1, b:{2}}"));
+        assertThrows(JaplScriptException.class, () -> Session.splitList("1"));
+        assertThrows(JaplScriptException.class, () -> Session.splitList("{1} & {2}"));
+    }
 }
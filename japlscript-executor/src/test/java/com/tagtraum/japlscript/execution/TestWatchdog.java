@@ -0,0 +1,110 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.execution;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TestWatchdog.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestWatchdog {
+
+    private static void awaitDeath(final ProcessHandle handle) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (handle.isAlive() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(handle.isAlive());
+    }
+
+    @Test
+    public void testWaitFor() throws IOException {
+        final Process process = new ProcessBuilder("sh", "-c", "exit 3").start();
+        assertEquals(3, Watchdog.waitFor(process, 5000, "script"));
+    }
+
+    @Test
+    public void testWaitForDeadline() throws IOException, InterruptedException {
+        final Process process = new ProcessBuilder("sleep", "10").start();
+        final long start = System.nanoTime();
+        final DeadlineExceededException e = assertThrows(DeadlineExceededException.class,
+            () -> Watchdog.waitFor(process, 200, "script"));
+        assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5);
+        assertEquals(200, e.getDeadlineMillis());
+        assertEquals("script", e.getScript());
+        awaitDeath(process.toHandle());
+    }
+
+    @Test
+    public void testWaitForInterrupted() throws IOException, InterruptedException {
+        final Process process = new ProcessBuilder("sleep", "10").start();
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(InterruptedIOException.class, () -> Watchdog.waitFor(process, 0, "script"));
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+        awaitDeath(process.toHandle());
+    }
+
+    @Test
+    public void testDestroyTree() throws IOException, InterruptedException {
+        // ignore SIGTERM, so that the child must be killed forcibly
+        final Process process = new ProcessBuilder("sh", "-c", "trap '' TERM; sleep 10 & wait").start();
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (process.descendants().count() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        final List<ProcessHandle> descendants = process.descendants().collect(Collectors.toList());
+        assertFalse(descendants.isEmpty());
+        Watchdog.destroy(process);
+        awaitDeath(process.toHandle());
+        for (final ProcessHandle descendant : descendants) {
+            awaitDeath(descendant);
+        }
+    }
+
+    @Test
+    public void testWithDeadline() throws InterruptedException {
+        final CompletableFuture<String> future = Watchdog.withDeadline(new CompletableFuture<>(), 100, "script");
+        final ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof DeadlineExceededException);
+
+        final CompletableFuture<String> done = Watchdog.withDeadline(new CompletableFuture<>(), 100, "script");
+        done.complete("done");
+        Thread.sleep(200);
+        assertEquals("done", done.getNow(null));
+    }
+
+    @Test
+    public void testPropagateCancellation() {
+        final CompletableFuture<String> source = new CompletableFuture<>();
+        final CompletableFuture<String> target = new CompletableFuture<>();
+        Watchdog.propagateCancellation(source, target);
+        source.cancel(true);
+        assertTrue(target.isCancelled());
+
+        final CompletableFuture<String> completedSource = new CompletableFuture<>();
+        final CompletableFuture<String> otherTarget = new CompletableFuture<>();
+        Watchdog.propagateCancellation(completedSource, otherTarget);
+        completedSource.complete("done");
+        assertFalse(otherTarget.isDone());
+    }
+}
@@ -0,0 +1,31 @@
+#!/bin/bash
+#
+# Stub for osacompile used by TestOsacompile.
+# Allows testing Osacompile on systems without osacompile.
+#
+# Simply copies the script read from stdin (without UTF-8 BOM) to the file given with -o.
+# Scripts containing "syntax error" result in an error, scripts containing
+# "slow" take a second to compile, scripts containing "hang" take a minute.
+# Scripts containing "crash" fail without error message, scripts containing
+# "empty" result in an empty file.
+# Every invocation is logged to <this stub>.log.
+#
+out=a.scpt
+while getopts "o:" opt; do
+    case "$opt" in
+        o) out="$OPTARG" ;;
+    esac
+done
+echo "$out" >> "$0.log"
+script=$(cat)
+script=${script#$'\xef\xbb\xbf'}
+case "$script" in
+    *"slow"*) sleep 1 ;;
+    *"hang"*) sleep 60 ;;
+esac
+case "$script" in
+    *"syntax error"*) echo "syntax error: Expected end of line but found identifier. (-2741)" >&2; exit 1 ;;
+    *"crash"*) printf '%s' "${script:0:1}" > "$out"; exit 134 ;;
+    *"empty"*) : > "$out"; exit 0 ;;
+esac
+printf '%s' "$script" > "$out"
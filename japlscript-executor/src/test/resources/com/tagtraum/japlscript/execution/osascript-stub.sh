@@ -0,0 +1,23 @@
+#!/bin/bash
+#
+# Stub for the osascript worker protocol used by OsascriptWorkerPool.
+# Allows testing the pool on systems without osascript.
+#
+# Understands these "scripts":
+#   return <value>   returns <value>
+#   pid              returns the process id of this worker
+#   sleep <seconds>  sleeps and then returns nothing
+#   exit             terminates this worker
+# Everything else results in an error.
+#
+while IFS= read -r length; do
+    script=$(head -c "$length")
+    case "$script" in
+        "return "*) status=OK; result="${script#return }" ;;
+        "pid") status=OK; result=$$ ;;
+        "sleep "*) sleep "${script#sleep }"; status=OK; result="" ;;
+        "exit") exit 1 ;;
+        *) status=ERR; result="execution error: Unknown script: $script (-2753)" ;;
+    esac
+    printf '%s %d\n%s' "$status" "$(printf '%s' "$result" | wc -c)" "$result"
+done
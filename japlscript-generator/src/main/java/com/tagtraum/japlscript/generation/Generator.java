@@ -57,6 +57,7 @@ public class Generator {
     private Map<String, List<Element>> recordMap;
     private Map<String, List<Element>> enumerationMap;
     private boolean generateElementSetters = false;
+    private boolean generateElementLists = false;
     private BiConsumer<String, Level> logMessageConsumer = (message, logLevel) -> Logger.getLogger(Generator.class.getName()).log(logLevel, message);
 
     public BiConsumer<String, Level> getLogMessageConsumer() {
@@ -102,6 +103,29 @@ public class Generator {
         }
     }
 
+    /**
+     * Indicates whether element getters return a lazily decoded {@link java.util.List}
+     * instead of an array. This is {@code false} by default.
+     *
+     * @return true or false
+     * @see com.tagtraum.japlscript.LazyList
+     */
+    public boolean isGenerateElementLists() {
+        return generateElementLists;
+    }
+
+    /**
+     * Lets element getters return a {@link java.util.List}, whose elements
+     * are only decoded when they are accessed, instead of an array.
+     * This speeds up access to the first elements of huge collections.
+     *
+     * @param generateElementLists true or false
+     * @see #isGenerateElementLists()
+     */
+    public void setGenerateElementLists(final boolean generateElementLists) {
+        this.generateElementLists = generateElementLists;
+    }
+
     /**
      * Lets you configure a custom mapping from AppleScript types
      * to Java types.
@@ -932,10 +956,20 @@ public class Generator {
         // getter and count
         if (access.indexOf('r') != -1) {
 
+            final String elementsType;
+            final String elementsDescription;
+            if (generateElementLists) {
+                elementsType = List.class.getName() + "<" + toBoxedType(javaClassName) + ">";
+                elementsDescription = "a lazily decoded list of all {@link " + javaClassName + "}s";
+            } else {
+                elementsType = javaClassName + "[]";
+                elementsDescription = "an array of all {@link " + javaClassName + "}s";
+            }
+
             final MethodSignature getterNoFilter = new MethodSignature("get" + propertyName + "s");
             getterNoFilter.setDescription(toJavadocDescription(description));
-            getterNoFilter.setReturnType(javaClassName + "[]");
-            getterNoFilter.setReturnTypeDescription("an array of all {@link " + javaClassName + "}s");
+            getterNoFilter.setReturnType(elementsType);
+            getterNoFilter.setReturnTypeDescription(elementsDescription);
             getterNoFilter.add(new AnnotationSignature(Kind.class, "\"element\""));
             if (!isNullOrEmpty(type))
                 getterNoFilter.add(new AnnotationSignature(Type.class, "\"" + type + "\""));
@@ -945,8 +979,8 @@ public class Generator {
 
             final MethodSignature getter = new MethodSignature("get" + propertyName + "s");
             getter.setDescription(toJavadocDescription(description));
-            getter.setReturnType(javaClassName + "[]");
-            getter.setReturnTypeDescription("an array of all {@link " + javaClassName + "}s");
+            getter.setReturnType(elementsType);
+            getter.setReturnTypeDescription(elementsDescription);
             getter.add(new AnnotationSignature(Kind.class, "\"element\""));
             if (!isNullOrEmpty(type))
                 getter.add(new AnnotationSignature(Type.class, "\"" + type + "\""));
@@ -1149,6 +1183,26 @@ public class Generator {
         return array ? javaType + "[]" : javaType;
     }
 
+    /**
+     * Type arguments cannot be primitive.
+     *
+     * @param javaType Java type
+     * @return the wrapper type for primitive types, otherwise the given type
+     */
+    private static String toBoxedType(final String javaType) {
+        switch (javaType) {
+            case "int": return java.lang.Integer.class.getName();
+            case "long": return java.lang.Long.class.getName();
+            case "short": return java.lang.Short.class.getName();
+            case "byte": return java.lang.Byte.class.getName();
+            case "double": return java.lang.Double.class.getName();
+            case "float": return java.lang.Float.class.getName();
+            case "boolean": return java.lang.Boolean.class.getName();
+            case "char": return java.lang.Character.class.getName();
+            default: return javaType;
+        }
+    }
+
     private static String sdefNameToPackageName(final String suiteName) {
         return suiteName.toLowerCase().replace(' ', '_');
     }
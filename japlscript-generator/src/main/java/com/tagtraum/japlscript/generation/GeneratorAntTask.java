@@ -126,6 +126,19 @@ public class GeneratorAntTask extends Task {
         this.generator.setScriptingAddition(scriptingAddition);
     }
 
+    public boolean isGenerateElementLists() {
+        return generator.isGenerateElementLists();
+    }
+
+    /**
+     * Let element getters return lazily decoded lists instead of arrays.
+     *
+     * @param generateElementLists true or false
+     */
+    public void setGenerateElementLists(final boolean generateElementLists) {
+        this.generator.setGenerateElementLists(generateElementLists);
+    }
+
     /*
     public void setOut(final Path out) {
         generator.setOut(out);
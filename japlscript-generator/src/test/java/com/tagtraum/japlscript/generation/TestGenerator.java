@@ -19,6 +19,7 @@ import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.nio.file.Files;
@@ -485,6 +486,55 @@ public class TestGenerator {
         }
     }
 
+    @Test
+    public void testElementLists() throws IOException, ClassNotFoundException, NoSuchMethodException, ParserConfigurationException, SAXException {
+        // copy resource to temp file
+        final String filename = "Elements.sdef";
+        final File sdefFile = File.createTempFile("Elements", filename);
+        final Path out = Files.createTempDirectory("generated");
+        extractFile(filename, sdefFile);
+
+        try {
+            final Generator generator = new Generator();
+            assertFalse(generator.isGenerateElementLists());
+            generator.setGenerateElementLists(true);
+            assertTrue(generator.isGenerateElementLists());
+            generator.setSdef(sdefFile);
+            generator.setOut(out);
+            generator.setApplication("Elements");
+            generator.generate();
+
+            final String packageFolderName = "com/tagtraum/japlscript/" + sdefFile.getName().replace(".sdef", "").toLowerCase();
+            final String applicationClassName = (packageFolderName + "/Application").replace('/', '.');
+            final String itemClassName = (packageFolderName + "/Item").replace('/', '.');
+
+            // create javadocs
+            javadoc(out);
+            final URLClassLoader loader = compileGeneratedClasses(out);
+            final Class<?> applicationClass = loader.loadClass(applicationClassName);
+            final Class<?> itemClass = loader.loadClass(itemClassName);
+
+            final Method getItems = applicationClass.getDeclaredMethod("getItems");
+            assertEquals(List.class, getItems.getReturnType());
+            assertEquals(itemClass, ((ParameterizedType) getItems.getGenericReturnType()).getActualTypeArguments()[0]);
+
+            final Method getItemsWithFilter = applicationClass.getDeclaredMethod("getItems", String.class);
+            assertEquals(List.class, getItemsWithFilter.getReturnType());
+            assertEquals(itemClass, ((ParameterizedType) getItemsWithFilter.getGenericReturnType()).getActualTypeArguments()[0]);
+            assertEquals("element", getItemsWithFilter.getDeclaredAnnotation(Kind.class).value());
+
+            // single element getters and counts are unchanged
+            assertEquals(itemClass, applicationClass.getDeclaredMethod("getItem", Integer.TYPE).getReturnType());
+            assertEquals(Integer.TYPE, applicationClass.getDeclaredMethod("countItems", String.class).getReturnType());
+
+        } finally {
+            Files.walk(out)
+                .sorted(Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(File::delete);
+        }
+    }
+
     @Test
     public void testEnumerations() throws IOException, ClassNotFoundException, NoSuchMethodException, NoSuchFieldException, IllegalAccessException, InvocationTargetException, ParserConfigurationException, SAXException {
         // copy resource to temp file
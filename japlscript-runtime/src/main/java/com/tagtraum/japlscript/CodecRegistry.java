@@ -0,0 +1,117 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Registry of {@link Codec}s, that finds the codec for a Java type in constant time,
+ * once the type has been looked up for the first time.
+ * <p>
+ * Just like with a linear scan of all codecs in registration order, the first registered
+ * codec wins, if more than one codec matches a type.
+ * Registration is copy-on-write, i.e. lookups never block and always see a consistent
+ * set of codecs. Every registration discards all previously resolved lookups.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+final class CodecRegistry {
+
+    private volatile Snapshot snapshot = new Snapshot(Collections.emptyList());
+
+    /**
+     * Registers a codec with the lowest precedence.
+     *
+     * @param codec codec
+     */
+    synchronized void add(final Codec<?> codec) {
+        final List<Codec<?>> codecs = new ArrayList<>(snapshot.codecs);
+        codecs.add(codec);
+        snapshot = new Snapshot(codecs);
+    }
+
+    /**
+     * Removes a codec.
+     *
+     * @param codec codec
+     * @return true, if the codec was registered
+     */
+    synchronized boolean remove(final Codec<?> codec) {
+        final List<Codec<?>> codecs = new ArrayList<>(snapshot.codecs);
+        final boolean removed = codecs.remove(codec);
+        if (removed) snapshot = new Snapshot(codecs);
+        return removed;
+    }
+
+    /**
+     * @return unmodifiable list of all codecs in registration order
+     */
+    List<Codec<?>> getCodecs() {
+        return snapshot.codecs;
+    }
+
+    /**
+     * Finds the first codec, whose {@link Codec#_getJavaType() Java type} is the given type.
+     *
+     * @param javaType Java type
+     * @return codec or {@code null}
+     */
+    Codec<?> get(final Class<?> javaType) {
+        return snapshot.exact.get(javaType).orElse(null);
+    }
+
+    /**
+     * Finds the first codec, whose {@link Codec#_getJavaType() Java type} is the given type
+     * or one of its supertypes.
+     *
+     * @param javaType Java type
+     * @return codec or {@code null}
+     */
+    Codec<?> getAssignable(final Class<?> javaType) {
+        return snapshot.assignable.get(javaType).orElse(null);
+    }
+
+    @Override
+    public String toString() {
+        return "CodecRegistry{" +
+            "codecs=" + snapshot.codecs +
+            '}';
+    }
+
+    /**
+     * Immutable set of codecs with its lookup caches.
+     */
+    private static final class Snapshot {
+
+        private final List<Codec<?>> codecs;
+        private final ClassValue<Optional<Codec<?>>> exact = new ClassValue<Optional<Codec<?>>>() {
+            @Override
+            protected Optional<Codec<?>> computeValue(final Class<?> javaType) {
+                for (final Codec<?> codec : codecs) {
+                    if (javaType == codec._getJavaType()) return Optional.of(codec);
+                }
+                return Optional.empty();
+            }
+        };
+        private final ClassValue<Optional<Codec<?>>> assignable = new ClassValue<Optional<Codec<?>>>() {
+            @Override
+            protected Optional<Codec<?>> computeValue(final Class<?> javaType) {
+                for (final Codec<?> codec : codecs) {
+                    if (codec._getJavaType().isAssignableFrom(javaType)) return Optional.of(codec);
+                }
+                return Optional.empty();
+            }
+        };
+
+        Snapshot(final List<Codec<?>> codecs) {
+            this.codecs = Collections.unmodifiableList(codecs);
+        }
+    }
+}
@@ -6,16 +6,28 @@
  */
 package com.tagtraum.japlscript;
 
+import com.tagtraum.japlscript.execution.AppleScriptResultParser;
 import com.tagtraum.japlscript.execution.Aspect;
+import com.tagtraum.japlscript.execution.FlightRecorderEvents;
 import com.tagtraum.japlscript.execution.JaplScriptException;
+import com.tagtraum.japlscript.execution.Osascript;
+import com.tagtraum.japlscript.execution.ScriptExecutor;
 import com.tagtraum.japlscript.execution.Session;
+import com.tagtraum.japlscript.language.Picture;
 import com.tagtraum.japlscript.language.ReferenceImpl;
+import com.tagtraum.japlscript.language.Tdta;
 import com.tagtraum.japlscript.language.TypeClass;
 
+import java.io.IOException;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.Proxy;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -27,12 +39,13 @@ public final class JaplScript {
 
     private static final Logger LOG = Logger.getLogger(JaplScript.class.getName());
     private static final int LAST_ASCII_CHAR = 127;
-    private static final List<Codec<?>> types = new ArrayList<>();
+    private static final CodecRegistry types = new CodecRegistry();
     private static final List<Aspect> globalAspects = new ArrayList<>();
-    private static final Map<String, Class<?>> applicationInterfaces = new HashMap<>();
-    private static final Map<Class<?>, Map<TypeClass, Map<String, Property>>> applicationProperties = new HashMap<>();
-    private static final Map<Class<?>, Map<TypeClass, Class<?>>> applicationClasses = new HashMap<>();
-    private static final Map<String, Class<?>> APPLESCRIPT_TO_JAVA = new HashMap<>();
+    private static final Map<String, Class<?>> applicationInterfaces = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, Map<TypeClass, Map<String, Property>>> applicationProperties = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, Map<TypeClass, Class<?>>> applicationClasses = new ConcurrentHashMap<>();
+    private static volatile ReadCache readCache;
+    private static final Map<String, Class<?>> APPLESCRIPT_TO_JAVA = new ConcurrentHashMap<>();
     private static final String SCRIPTING_ADDITION = "scripting addition";
     private static final String APPLICATION = "application";
 
@@ -95,6 +108,13 @@ public final class JaplScript {
         return new ArrayList<>(globalAspects);
     }
 
+    /**
+     * Registers a codec. If more than one codec is registered for a Java type,
+     * the codec that was registered first is used.
+     * Registration is thread-safe.
+     *
+     * @param type codec
+     */
     public static void addType(final Codec<?> type) {
         types.add(type);
         for (final TypeClass tc : type._getAppleScriptTypes()) {
@@ -110,7 +130,43 @@ public final class JaplScript {
      * @return copy of the types list
      */
     public static List<Codec<?>> getTypes() {
-        return new ArrayList<>(types);
+        return new ArrayList<>(types.getCodecs());
+    }
+
+    /**
+     * First registered codec for exactly the given Java type.
+     *
+     * @param javaType Java type
+     * @return codec or {@code null}
+     */
+    static Codec<?> getType(final Class<?> javaType) {
+        return types.get(javaType);
+    }
+
+    /**
+     * First registered codec for the given Java type or one of its supertypes.
+     *
+     * @param javaType Java type
+     * @return codec or {@code null}
+     */
+    static Codec<?> getAssignableType(final Class<?> javaType) {
+        return types.getAssignable(javaType);
+    }
+
+    /**
+     * Enables caching of property and element reads.
+     *
+     * @param readCache cache or {@code null} to disable caching (default)
+     */
+    public static void setReadCache(final ReadCache readCache) {
+        JaplScript.readCache = readCache;
+    }
+
+    /**
+     * @return read cache or {@code null}, if reads are not cached
+     */
+    public static ReadCache getReadCache() {
+        return readCache;
     }
 
     /**
@@ -122,6 +178,74 @@ public final class JaplScript {
         return Session.startSession();
     }
 
+    /**
+     * Warms up the runtime for the given application interfaces in the background,
+     * using {@link ScriptExecutor#getDefaultExecutor()}.
+     *
+     * @param applicationInterfaces generated application interfaces, e.g. <code>Application.class</code>
+     * @return future that completes with the time it took to warm up
+     * @see #warmUp(Collection, Collection, Executor)
+     */
+    public static CompletableFuture<Duration> warmUp(final Class<?>... applicationInterfaces) {
+        return warmUp(Arrays.asList(applicationInterfaces), Collections.emptyList(), ScriptExecutor.getDefaultExecutor());
+    }
+
+    /**
+     * Warms up the runtime in the background, so that the first script execution does not
+     * have to pay for one time initialization. The following tasks run in parallel:
+     * <ul>
+     *     <li>probing for and loading of the native library</li>
+     *     <li>building the property tables of each given application interface</li>
+     *     <li>precompiling the given scripts with {@link Osascript#getOsacompile()}</li>
+     * </ul>
+     * Failing tasks are logged and don't fail the returned future, as all of them
+     * are repeated lazily, when needed.
+     *
+     * @param applicationInterfaces generated application interfaces, e.g. <code>Application.class</code>
+     * @param scripts scripts to precompile, may be empty
+     * @param executor executor to run the tasks on
+     * @return future that completes with the time it took to warm up
+     */
+    public static CompletableFuture<Duration> warmUp(final Collection<Class<?>> applicationInterfaces,
+                                                     final Collection<? extends CharSequence> scripts,
+                                                     final Executor executor) {
+        final long start = System.nanoTime();
+        final List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        tasks.add(warmUpTask(ScriptExecutor::isCocoaScriptExecutorAvailable, "native library probing", executor));
+        for (final Class<?> applicationInterface : applicationInterfaces) {
+            tasks.add(warmUpTask(() -> registerApplicationProperties(applicationInterface),
+                "registration of " + applicationInterface, executor));
+        }
+        int index = 0;
+        for (final CharSequence script : scripts) {
+            // don't copy the script text just to describe the task
+            final String description = "compilation of script " + index++ + " (" + script.length() + " chars)";
+            tasks.add(warmUpTask(() -> {
+                try {
+                    Osascript.getOsacompile().compile(script);
+                } catch (IOException e) {
+                    throw new JaplScriptException(e);
+                }
+            }, description, executor));
+        }
+        return CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            final Duration duration = Duration.ofNanos(System.nanoTime() - start);
+            if (LOG.isLoggable(Level.FINE)) LOG.fine("Warm-up took " + duration.toMillis() + "ms.");
+            return duration;
+        });
+    }
+
+    private static CompletableFuture<Void> warmUpTask(final Runnable task, final String description,
+                                                      final Executor executor) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                LOG.log(Level.WARNING, "Warm-up failure during " + description + ": " + e, e);
+            }
+        }, executor);
+    }
+
     /**
      * Gets the application object for an application.
      *
@@ -154,9 +278,7 @@ public final class JaplScript {
 
     private static <T> void registerApplicationInterface(final Class<T> interfaceClass, final Reference reference) {
         // avoid registering twice, in order to avoid annoying messages.
-        if (!applicationInterfaces.containsKey(reference.getApplicationReference())) {
-            applicationInterfaces.put(reference.getApplicationReference(), interfaceClass);
-        }
+        applicationInterfaces.putIfAbsent(reference.getApplicationReference(), interfaceClass);
     }
 
     /**
@@ -183,7 +305,12 @@ public final class JaplScript {
                 "an application interface nor an application reference: " + typeClass);
             return typeClass;
         }
-        final Map<TypeClass, Map<String, Property>> typeClassMap = applicationProperties.get(applicationInterface);
+        // classes are published before the properties are built, which intern their TypeClasses
+        final Map<TypeClass, Class<?>> typeClassMap = applicationClasses.get(applicationInterface);
+        if (typeClassMap == null) {
+            LOG.warning("TypeClass intern failure: Application interface " + applicationInterface + " has not been registered.");
+            return typeClass;
+        }
         for (final TypeClass appTypeClass : typeClassMap.keySet()) {
             if (Objects.equals(appTypeClass.getCode(), typeClass.getCode()) || Objects.equals(appTypeClass.getName(), typeClass.getName())) {
                 return appTypeClass;
@@ -197,7 +324,8 @@ public final class JaplScript {
     }
 
     private static Class<?> getApplicationInterface(final Reference reference) {
-        return applicationInterfaces.get(reference.getApplicationReference());
+        final String applicationReference = reference.getApplicationReference();
+        return applicationReference == null ? null : applicationInterfaces.get(applicationReference);
     }
 
     public static Property getProperty(final Reference reference, final TypeClass typeClass, final String name) {
@@ -226,13 +354,16 @@ public final class JaplScript {
     private static void registerApplicationProperties(final Class<?> applicationInterface) {
         // avoid registering twice, in order to avoid annoying messages.
         if (!applicationProperties.containsKey(applicationInterface)) {
+            // tables are built completely, before they are published.
+            // concurrent registrations of the same interface may build them twice, but that's harmless
             final Map<TypeClass, Map<String, Property>> appMap = new HashMap<>();
             final Map<TypeClass, Class<?>> appClassMap = new HashMap<>();
-            applicationProperties.put(applicationInterface, appMap);
-            applicationClasses.put(applicationInterface, appClassMap);
             try {
                 final Field applicationClassesField = applicationInterface.getField("APPLICATION_CLASSES");
-                final Set<Class<?>> applicationClasses = (Set<Class<?>>) applicationClassesField.get(null);
+                final Set<Class<?>> applicationClasses = new LinkedHashSet<>();
+                for (final Object applicationClass : (Set<?>) applicationClassesField.get(null)) {
+                    applicationClasses.add((Class<?>) applicationClass);
+                }
 
                 // first get all TypeClasses, so that we can intern them
                 // while reading all Properties
@@ -244,6 +375,8 @@ public final class JaplScript {
                     appMap.put(typeClass, new HashMap<>());
                     appClassMap.put(typeClass, klass);
                 }
+                // complete, so publish it, as interning while reading properties relies on it
+                JaplScript.applicationClasses.putIfAbsent(applicationInterface, appClassMap);
 
                 // now add all properties for each TypeClass, i.e. class declared in this app
                 for (final Class<?> klass : applicationClasses) {
@@ -256,6 +389,11 @@ public final class JaplScript {
                 }
             } catch (NoSuchFieldException | IllegalAccessException e) {
                 throw new JaplScriptException("Failure while registering application-wide properties", e);
+            } finally {
+                // publish even after a failure, so that we don't attempt to register again.
+                // classes first, as their presence is implied by the presence of properties
+                JaplScript.applicationClasses.putIfAbsent(applicationInterface, appClassMap);
+                applicationProperties.putIfAbsent(applicationInterface, appMap);
             }
         }
     }
@@ -346,6 +484,74 @@ public final class JaplScript {
      * @return object of type T
      */
     public static <T> T cast(final java.lang.Class<T> interfaceClass, final boolean useMostSpecificSubClass, final Reference reference) {
+        if (reference == null) return null;
+        final Object event = FlightRecorderEvents.beginResultDecoded();
+        T result = null;
+        try {
+            result = decode(interfaceClass, useMostSpecificSubClass, reference);
+            return result;
+        } finally {
+            FlightRecorderEvents.commitResultDecoded(event, interfaceClass, result);
+        }
+    }
+
+    /**
+     * Creates a suitable Java instance for a raw script result, that may be a
+     * streamed {@link com.tagtraum.japlscript.execution.ChunkedCharSequence}.
+     * Lists as well as {@link Tdta} and {@link Picture} values are decoded
+     * incrementally, i.e. without creating a {@link String} copy of the whole result.
+     * All other values are converted to a string first and then {@link #cast(Class, boolean, Reference) cast}.
+     * <p>
+     * Decoded objects never refer to the given sequence, so it may be released afterwards.
+     *
+     * @param interfaceClass interface class
+     * @param objectReference raw result
+     * @param applicationReference application reference
+     * @param <T> target type
+     * @return object of type T
+     * @see com.tagtraum.japlscript.execution.ScriptExecutor#executeStreaming()
+     */
+    static <T> T cast(final java.lang.Class<T> interfaceClass, final CharSequence objectReference,
+                      final String applicationReference) {
+        final boolean list = interfaceClass.isArray() && objectReference.length() > 0 && objectReference.charAt(0) == '{';
+        final boolean tdta = interfaceClass == Tdta.class && Tdta.isTdta(objectReference);
+        final boolean picture = interfaceClass == Picture.class && Picture.isData(objectReference);
+        if (objectReference instanceof String || !list && !tdta && !picture) {
+            final Reference reference = new ReferenceImpl(objectReference.toString(), applicationReference);
+            return cast(guessMostSpecificSubclass(interfaceClass, reference), true, reference);
+        }
+        final Object event = FlightRecorderEvents.beginResultDecoded();
+        T result = null;
+        try {
+            if (list) {
+                result = interfaceClass.cast(parseList(interfaceClass.getComponentType(), true, objectReference, applicationReference));
+            } else if (tdta) {
+                result = interfaceClass.cast(new Tdta(objectReference, applicationReference));
+            } else {
+                result = interfaceClass.cast(new Picture(objectReference, applicationReference));
+            }
+            return result;
+        } catch (JaplScriptException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new JaplScriptException("Failed to cast streamed result to " + interfaceClass, e);
+        } finally {
+            FlightRecorderEvents.commitResultDecoded(event, interfaceClass, result);
+        }
+    }
+
+    /**
+     * Indicates whether results of the given type can be decoded incrementally by
+     * {@link #cast(Class, CharSequence, String)}.
+     *
+     * @param interfaceClass interface class
+     * @return true for arrays, {@link Tdta} and {@link Picture}
+     */
+    static boolean isStreamable(final java.lang.Class<?> interfaceClass) {
+        return interfaceClass.isArray() || interfaceClass == Tdta.class || interfaceClass == Picture.class;
+    }
+
+    private static <T> T decode(final java.lang.Class<T> interfaceClass, final boolean useMostSpecificSubClass, final Reference reference) {
         if (reference == null) return null;
         try {
             final String objectReference = reference.getObjectReference();
@@ -354,16 +560,15 @@ public final class JaplScript {
                 icc = guessMostSpecificSubclass(interfaceClass, reference);
             }
 
-            for (final Codec<?> type : types) {
-                if (icc == type._getJavaType()) {
-                    return (T)type._decode(reference);
-                }
+            final Codec<?> type = types.get(icc);
+            if (type != null) {
+                return (T)type._decode(reference);
             }
             if (icc.isArray()) {
                 if (objectReference == null) {
                     return null;
                 } else {
-                    return (T) parseList(icc.getComponentType(), useMostSpecificSubClass, reference);
+                    return (T) parseList(icc.getComponentType(), useMostSpecificSubClass, objectReference, reference.getApplicationReference());
                 }
             }
             if (icc.equals(Map.class)) {
@@ -393,47 +598,46 @@ public final class JaplScript {
         }
     }
 
-    private static Object parseList(final Class<?> interfaceClass, final boolean useMostSpecificSubClass, final Reference reference) {
-        final String objectReference = reference.getObjectReference();
-        final String applicationReference = reference.getApplicationReference();
-        //if (LOG.isLoggable(Level.FINE)) LOG.fine("objectReference: " + objectReference);
-        //if (LOG.isLoggable(Level.FINE)) LOG.fine("applicationReference: " + applicationReference);
-        //if (LOG.isLoggable(Level.FINE)) LOG.fine("interfaceClass: " + interfaceClass);
-        final List<Object> result = new ArrayList<>();
-        int depth = 0;
-        boolean quotes = false;
-        final boolean curlies = objectReference.startsWith("{");
-        final StringBuilder sb = new StringBuilder();
+    private static Object parseList(final Class<?> interfaceClass, final boolean useMostSpecificSubClass,
+                                    final CharSequence objectReference, final String applicationReference) {
+        final AppleScriptResultParser parser = new AppleScriptResultParser(objectReference);
+        // lists not enclosed in curly braces are read from the top level
+        if (startsWithCurly(objectReference)) parser.next();
+        return parseList(interfaceClass, useMostSpecificSubClass, parser, applicationReference);
+    }
+
+    private static boolean startsWithCurly(final CharSequence objectReference) {
         for (int i = 0; i < objectReference.length(); i++) {
             final char c = objectReference.charAt(i);
-            final char previousChar = i==0 ? 0 : objectReference.charAt(i-1);
-            switch (c) {
-                case '"':
-                    if (previousChar != '\\') {
-                        quotes = !quotes;
-                    }
-                    break;
-                case '{':
-                    depth++;
-                    break;
-                case '}':
-                    depth--;
-                    break;
-                default:
+            if (!Character.isWhitespace(c)) return c == '{';
+        }
+        return false;
+    }
+
+    /**
+     * Decodes list elements until the end of the current list. Nested lists are decoded
+     * from the same parser, i.e. they are not scanned again.
+     */
+    private static Object parseList(final Class<?> interfaceClass, final boolean useMostSpecificSubClass,
+                                    final AppleScriptResultParser parser, final String applicationReference) {
+        if (interfaceClass.isPrimitive() && hasDefaultCodec(interfaceClass)) {
+            return PrimitiveListDecoder.decode(interfaceClass, parser);
+        }
+        final int depth = parser.getDepth();
+        final List<Object> result = new ArrayList<>();
+        while (parser.hasNext()) {
+            final AppleScriptResultParser.Token token = parser.next();
+            if (parser.getDepth() < depth) break;
+            if (token == AppleScriptResultParser.Token.KEY) continue;
+            if (interfaceClass.isArray()
+                && (token == AppleScriptResultParser.Token.LIST_START || token == AppleScriptResultParser.Token.RECORD_START)) {
+                result.add(parseList(interfaceClass.getComponentType(), useMostSpecificSubClass, parser, applicationReference));
+            } else {
+                final int start = parser.getStart();
+                final int end = parser.skipValue();
+                result.add(decode(interfaceClass, useMostSpecificSubClass,
+                    new ReferenceImpl(parser.substring(start, end), applicationReference)));
             }
-            final boolean lastChar = i == objectReference.length() - 1;
-            if (quotes) {
-                sb.append(c);
-            } else if (depth == 1 && c == ',' || depth == 0 && c == '}' || !curlies && (c == ',' || lastChar)) {
-                if (!curlies && lastChar) sb.append(c);
-                if (sb.length() > 0) {
-                    //if (LOG.isLoggable(Level.FINE)) LOG.fine("arr ref: " + sb);
-                    result.add(cast(interfaceClass, useMostSpecificSubClass, new ReferenceImpl(sb.toString(), applicationReference)));
-                    sb.setLength(0);
-                }
-            } else if (depth == 1 && c != '{') sb.append(c);
-            else if (!curlies) sb.append(c);
-            else if (depth > 1) sb.append(c);
         }
         final Object resultArray;
         if (interfaceClass.isPrimitive()) {
@@ -444,8 +648,22 @@ public final class JaplScript {
         return resultArray;
     }
 
+    /**
+     * Indicates whether values of the given type are decoded by one of the built-in codecs,
+     * i.e. not by a custom {@link #addType(Codec) type} that takes precedence.
+     *
+     * @param javaType Java type
+     * @return true, if the first codec for the type is built-in or there is none
+     */
+    private static boolean hasDefaultCodec(final Class<?> javaType) {
+        final Codec<?> type = types.get(javaType);
+        return type == null || type.getClass().getPackage() == com.tagtraum.japlscript.language.Integer.class.getPackage();
+    }
+
     /**
      * Convert a list of full blown objects to their corresponding primitive arrays.
+     * Only used, if a custom codec decodes the primitive type, otherwise
+     * {@link PrimitiveListDecoder} decodes without boxing.
      *
      * @param interfaceClass type of primitive
      * @param listOfObjects list of boxed primitives
@@ -483,16 +701,13 @@ public final class JaplScript {
             }
             resultArray = typedArray;
         }
-        // I guess we don't really support bytes at this point
-        /*
-        else if (interfaceClass == Byte.TYPE) {
+        else if (interfaceClass == java.lang.Byte.TYPE) {
             final byte[] typedArray = new byte[listOfObjects.size()];
             for (int i=0; i<typedArray.length; i++) {
-                typedArray[i] = (Byte) listOfObjects.get(i);
+                typedArray[i] = (java.lang.Byte) listOfObjects.get(i);
             }
             resultArray = typedArray;
         }
-        */
         else if (interfaceClass == java.lang.Boolean.TYPE) {
             final boolean[] typedArray = new boolean[listOfObjects.size()];
             for (int i=0; i<typedArray.length; i++) {
@@ -506,47 +721,24 @@ public final class JaplScript {
     private static java.util.Map<String, Reference> parseRecord(final Reference reference) {
         final String objectReference = reference.getObjectReference();
         final String applicationReference = reference.getApplicationReference();
-        //if (LOG.isLoggable(Level.FINE)) LOG.fine("objectReference: " + objectReference);
-        //if (LOG.isLoggable(Level.FINE)) LOG.fine("applicationReference: " + applicationReference);
-        //if (LOG.isLoggable(Level.FINE)) LOG.fine("interfaceClass: " + interfaceClass);
         final Map<String, Reference> result = new HashMap<>();
-        int depth = 0;
-        boolean quotes = false;
-        final boolean curlies = objectReference.startsWith("{");
-        final StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < objectReference.length(); i++) {
-            final char c = objectReference.charAt(i);
-            final char previousChar = i==0 ? 0 : objectReference.charAt(i-1);
-            final boolean isLastChar = i == objectReference.length() - 1;
-            switch (c) {
-                case '"':
-                    if (previousChar != '\\') {
-                        quotes = !quotes;
-                    }
-                    break;
-                case '{':
-                    depth++;
-                    break;
-                case '}':
-                    depth--;
-                    break;
-                default:
+        final AppleScriptResultParser parser = new AppleScriptResultParser(objectReference);
+        // records not enclosed in curly braces are read from the top level
+        if (startsWithCurly(objectReference)) parser.next();
+        final int depth = parser.getDepth();
+        String key = null;
+        while (parser.hasNext()) {
+            final AppleScriptResultParser.Token token = parser.next();
+            if (parser.getDepth() < depth) break;
+            if (token == AppleScriptResultParser.Token.KEY) {
+                key = parser.getText().toString();
+            } else {
+                if (key == null) throw new JaplScriptException("Missing key in record: " + objectReference);
+                final int start = parser.getStart();
+                final int end = parser.skipValue();
+                result.put(key, ReferenceImpl.getInstance()._decode(objectReference.substring(start, end), applicationReference));
+                key = null;
             }
-            if (quotes) {
-                sb.append(c);
-            } else if (depth == 1 && c == ',' || depth == 0 && c == '}' || !curlies && (c == ',' || isLastChar)) {
-                if (!curlies && isLastChar) sb.append(c);
-                if (sb.length() > 0) {
-                    // split into key and value
-                    final int afterKey = sb.indexOf(":");
-                    final String key = sb.substring(0, afterKey).trim();
-                    final String value = sb.substring(afterKey + 1).trim();
-                    result.put(key, ReferenceImpl.getInstance()._decode(value, applicationReference));
-                    sb.setLength(0);
-                }
-            } else if (depth == 1 && c != '{') sb.append(c);
-            else if (!curlies) sb.append(c);
-            else if (depth > 1) sb.append(c);
         }
         return result;
     }
@@ -0,0 +1,143 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript;
+
+import com.tagtraum.japlscript.execution.AppleScriptResultParser;
+import com.tagtraum.japlscript.language.ReferenceImpl;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Immutable {@link java.util.List} view of an AppleScript list, that decodes its elements lazily.
+ * <p>
+ * Element boundaries are indexed once, when the list is created. Each element is
+ * decoded (e.g. proxied) only when it is accessed for the first time, and then cached.
+ * This makes the first elements of huge lists available quickly and avoids creating
+ * objects for elements that are never looked at.
+ * <p>
+ * Element getters return a lazy list instead of an array, if they are declared
+ * with {@code java.util.List} as return type.
+ *
+ * @param <T> element type
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public final class LazyList<T> extends AbstractList<T> implements RandomAccess {
+
+    private static final Object NULL = new Object();
+
+    private final Class<T> elementType;
+    private final String objectReference;
+    private final String applicationReference;
+    private final int[] starts;
+    private final int[] ends;
+    private final AtomicReferenceArray<Object> elements;
+    private final AtomicInteger decodedCount = new AtomicInteger();
+
+    /**
+     * Creates a lazy list.
+     *
+     * @param elementType element type, wrapper types are decoded like their primitive types
+     * @param objectReference AppleScript list, e.g. <code>{track id 1 of playlist id 2, track id 3 of playlist id 2}</code>
+     * @param applicationReference application reference
+     * @throws JaplScriptException if the list is malformed
+     */
+    LazyList(final Class<T> elementType, final String objectReference, final String applicationReference) {
+        this.elementType = elementType;
+        this.objectReference = objectReference == null ? "" : objectReference;
+        this.applicationReference = applicationReference;
+        final AppleScriptResultParser parser = new AppleScriptResultParser(this.objectReference);
+        if (startsWithCurly(this.objectReference)) parser.next();
+        final int depth = parser.getDepth();
+        int[] starts = new int[16];
+        int[] ends = new int[16];
+        int size = 0;
+        while (parser.hasNext()) {
+            final AppleScriptResultParser.Token token = parser.next();
+            if (parser.getDepth() < depth) break;
+            if (token == AppleScriptResultParser.Token.KEY) continue;
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+            }
+            starts[size] = parser.getStart();
+            ends[size] = parser.skipValue();
+            size++;
+        }
+        this.starts = Arrays.copyOf(starts, size);
+        this.ends = Arrays.copyOf(ends, size);
+        this.elements = new AtomicReferenceArray<>(size);
+    }
+
+    private static boolean startsWithCurly(final String objectReference) {
+        final String trimmed = objectReference.trim();
+        return !trimmed.isEmpty() && trimmed.charAt(0) == '{';
+    }
+
+    @Override
+    public T get(final int index) {
+        if (index < 0 || index >= starts.length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + starts.length);
+        }
+        Object element = elements.get(index);
+        if (element == null) {
+            final T decoded = JaplScript.cast(toDecodingType(elementType), true,
+                new ReferenceImpl(objectReference.substring(starts[index], ends[index]), applicationReference));
+            // concurrent first accesses agree on the first decoded instance
+            if (elements.compareAndSet(index, null, decoded == null ? NULL : decoded)) {
+                decodedCount.incrementAndGet();
+            }
+            element = elements.get(index);
+        }
+        return element == NULL ? null : elementType.cast(element);
+    }
+
+    @Override
+    public int size() {
+        return starts.length;
+    }
+
+    /**
+     * Element type of this list.
+     *
+     * @return element type
+     */
+    public Class<T> getElementType() {
+        return elementType;
+    }
+
+    /**
+     * Number of elements that have already been decoded.
+     *
+     * @return decoded elements
+     */
+    public int getDecodedCount() {
+        return decodedCount.get();
+    }
+
+    /**
+     * Codecs for numbers and booleans are registered for primitive types.
+     * The cast is safe, as the class of a primitive type stands for its wrapper type.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> Class<T> toDecodingType(final Class<T> elementType) {
+        final Class<?> type;
+        if (elementType == java.lang.Integer.class) type = java.lang.Integer.TYPE;
+        else if (elementType == java.lang.Long.class) type = java.lang.Long.TYPE;
+        else if (elementType == java.lang.Short.class) type = java.lang.Short.TYPE;
+        else if (elementType == java.lang.Byte.class) type = java.lang.Byte.TYPE;
+        else if (elementType == java.lang.Double.class) type = java.lang.Double.TYPE;
+        else if (elementType == java.lang.Float.class) type = java.lang.Float.TYPE;
+        else if (elementType == java.lang.Boolean.class) type = java.lang.Boolean.TYPE;
+        else if (elementType == java.lang.Character.class) type = java.lang.Character.TYPE;
+        else type = elementType;
+        return (Class<T>) type;
+    }
+}
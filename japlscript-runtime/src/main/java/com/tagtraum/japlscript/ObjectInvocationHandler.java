@@ -7,6 +7,7 @@
 package com.tagtraum.japlscript;
 
 import com.tagtraum.japlscript.execution.Aspect;
+import com.tagtraum.japlscript.execution.ChunkedCharSequence;
 import com.tagtraum.japlscript.execution.JaplScriptException;
 import com.tagtraum.japlscript.execution.ScriptExecutor;
 import com.tagtraum.japlscript.execution.Session;
@@ -21,7 +22,11 @@ import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 import static com.tagtraum.japlscript.JaplScript.*;
@@ -60,6 +65,7 @@ public class ObjectInvocationHandler implements InvocationHandler {
 
     private final Reference reference;
     private boolean reduceScriptExecutions = true;
+    private Executor executor;
 
     /**
      * Creates the {@link InvocationHandler} for a given {@link Reference}.
@@ -159,7 +165,6 @@ public class ObjectInvocationHandler implements InvocationHandler {
     @Override
     public Object invoke(final Object proxy, final Method method, final Object[] args) {
         try {
-            Object returnValue = null;
             // check standard/JaplScript methods
             if (TO_STRING_METHOD.equals(method)) {
                 return toString(reference);
@@ -180,21 +185,15 @@ public class ObjectInvocationHandler implements InvocationHandler {
             } else if ("getProperties".equals(method.getName()) && (args == null || args.length == 0)) {
                 return invokeProperties(method.getDeclaringClass());
             }
-            final Kind kind = method.getAnnotation(Kind.class);
             // interface methods
-            if ("element".equals(kind.value())) {
-                returnValue = invokeElement(method, method.getReturnType(), args);
-            } else if ("property".equals(kind.value())) {
-                returnValue = invokeProperty(method, method.getReturnType(), args);
-            } else if ("command".equals(kind.value())) {
-                returnValue = invokeCommand(method, method.getReturnType(), args);
-            } else if ("make".equals(kind.value())) {
-                returnValue = invokeMake(method, args);
-            }
-            if (returnValue instanceof TypeClass && ((TypeClass) returnValue).getApplicationReference() != null) {
-                returnValue = JaplScript.internTypeClass((TypeClass) returnValue);
+            final Call call = toCall(method, args);
+            final Object returnValue;
+            if (call.appleScript == null) {
+                returnValue = call.value;
+            } else {
+                returnValue = toList(call, execute(call));
             }
-            return returnValue;
+            return internTypeClass(returnValue);
         } catch (RuntimeException rte) {
             throw rte;
         } catch (Exception e) {
@@ -202,6 +201,159 @@ public class ObjectInvocationHandler implements InvocationHandler {
         }
     }
 
+    /**
+     * Asynchronous variant of {@link #invoke(Object, Method, Object[])} for
+     * element, property, command and make methods.
+     * The generated script is executed using {@link ScriptExecutor#executeAsync(Executor)}
+     * with this handler's {@link #getExecutor() executor}.
+     * Other methods (like {@code toString()}) are evaluated synchronously.
+     * <p>
+     * Just like synchronous calls, asynchronous calls honor the current thread's {@link Session}
+     * at the time of the call. Failures are reported through the returned future.
+     *
+     * @param method interface method, e.g., a property getter
+     * @param args arguments
+     * @return future return value
+     */
+    public CompletableFuture<Object> invokeAsync(final Method method, final Object... args) {
+        try {
+            if (method.getAnnotation(Kind.class) == null) {
+                return CompletableFuture.completedFuture(invoke(null, method, args));
+            }
+            final Call call = toCall(method, args);
+            if (call.appleScript == null) {
+                return CompletableFuture.completedFuture(internTypeClass(call.value));
+            }
+            return executeAsync(call).thenApply(returnValue -> internTypeClass(toList(call, returnValue)));
+        } catch (Exception e) {
+            final CompletableFuture<Object> future = new CompletableFuture<>();
+            future.completeExceptionally(e instanceof RuntimeException ? e : new JaplScriptException(e));
+            return future;
+        }
+    }
+
+    /**
+     * Executes the given call, using the {@link JaplScript#getReadCache() read cache}, if enabled.
+     * Calls that are not reads invalidate cached reads of this handler's object.
+     * Inside a {@link Session}, they are invalidated again, once the session's script has
+     * actually been executed, as other threads may have cached old values in the meantime.
+     */
+    private Object execute(final Call call) throws IOException {
+        final ReadCache readCache = JaplScript.getReadCache();
+        if (readCache == null) {
+            return executeAppleScript(reference, call.appleScript, call.arguments, call.returnType);
+        }
+        if (!call.read) {
+            invalidateOnExecution(readCache);
+            try {
+                return executeAppleScript(reference, call.appleScript, call.arguments, call.returnType);
+            } finally {
+                invalidate(readCache);
+            }
+        }
+        if (Session.get() != null) {
+            return executeAppleScript(reference, call.appleScript, call.arguments, call.returnType);
+        }
+        final String applicationReference = reference.getApplicationReference();
+        String returnValue = readCache.get(applicationReference, call.appleScript);
+        if (returnValue == null) {
+            final long generation = readCache.getGeneration(applicationReference);
+            returnValue = execute(tell(applicationReference, call.appleScript, call.arguments));
+            readCache.put(applicationReference, reference.getObjectReference(), call.appleScript, returnValue, generation);
+        }
+        return toJava(returnValue, call.returnType);
+    }
+
+    private CompletableFuture<?> executeAsync(final Call call) {
+        return executeAsync(call, call.returnType);
+    }
+
+    private <T> CompletableFuture<T> executeAsync(final Call call, final Class<T> returnType) {
+        final ReadCache readCache = JaplScript.getReadCache();
+        final String applicationReference = reference.getApplicationReference();
+        if (readCache == null) {
+            return executeAppleScriptAsync(tell(applicationReference, call.appleScript, call.arguments), returnType);
+        }
+        if (!call.read) {
+            invalidateOnExecution(readCache);
+            return executeAppleScriptAsync(tell(applicationReference, call.appleScript, call.arguments), returnType)
+                .whenComplete((result, throwable) -> invalidate(readCache));
+        }
+        if (Session.get() != null) {
+            return executeAppleScriptAsync(tell(applicationReference, call.appleScript, call.arguments), returnType);
+        }
+        final String cachedValue = readCache.get(applicationReference, call.appleScript);
+        if (cachedValue != null) {
+            return CompletableFuture.completedFuture(toJava(cachedValue, returnType));
+        }
+        final long generation = readCache.getGeneration(applicationReference);
+        return executeAsync(tell(applicationReference, call.appleScript, call.arguments)).thenApply(returnValue -> {
+            readCache.put(applicationReference, reference.getObjectReference(), call.appleScript, returnValue, generation);
+            return toJava(returnValue, returnType);
+        });
+    }
+
+    /**
+     * Wraps the raw result of a call with an {@link Call#elementType element type} in a {@link LazyList}.
+     */
+    private Object toList(final Call call, final Object returnValue) {
+        if (call.elementType == null) return returnValue;
+        return new LazyList<>(call.elementType, returnValue == null ? null : ((Reference) returnValue).getObjectReference(),
+            reference.getApplicationReference());
+    }
+
+    private void invalidate(final ReadCache readCache) {
+        readCache.invalidate(reference.getApplicationReference(), isRecord() ? null : reference.getObjectReference());
+    }
+
+    private void invalidateOnExecution(final ReadCache readCache) {
+        invalidate(readCache);
+        final Session session = Session.get();
+        if (session != null) session.addExecutionCallback(() -> invalidate(readCache));
+    }
+
+    /**
+     * Executor used for asynchronous calls.
+     *
+     * @return executor, never {@code null}
+     * @see #invokeAsync(Method, Object...)
+     * @see ScriptExecutor#getDefaultExecutor()
+     */
+    public Executor getExecutor() {
+        return executor == null ? ScriptExecutor.getDefaultExecutor() : executor;
+    }
+
+    /**
+     * Executor used for asynchronous calls, e.g., to bound concurrency.
+     *
+     * @param executor executor or {@code null} to use the {@link ScriptExecutor#getDefaultExecutor() default executor}
+     */
+    public void setExecutor(final Executor executor) {
+        this.executor = executor;
+    }
+
+    private static Object internTypeClass(final Object returnValue) {
+        if (returnValue instanceof TypeClass && ((TypeClass) returnValue).getApplicationReference() != null) {
+            return JaplScript.internTypeClass((TypeClass) returnValue);
+        }
+        return returnValue;
+    }
+
+    private Call toCall(final Method method, final Object[] args) throws IOException, NoSuchMethodException {
+        final Kind kind = method.getAnnotation(Kind.class);
+        final Parameters parameters = Parameters.forCurrentSession();
+        if ("element".equals(kind.value())) {
+            return toElementCall(method, method.getReturnType(), args);
+        } else if ("property".equals(kind.value())) {
+            return toPropertyCall(method, method.getReturnType(), parameters, args);
+        } else if ("command".equals(kind.value())) {
+            return toCommandCall(method, method.getReturnType(), parameters, args);
+        } else if ("make".equals(kind.value())) {
+            return toMakeCall(method, args);
+        }
+        return Call.value(null);
+    }
+
     private Map<String, Object> invokeProperties(final Class<?> interfaceClass) throws IOException {
         final Reference properties;
         if (!isRecord()) {
@@ -242,24 +394,24 @@ public class ObjectInvocationHandler implements InvocationHandler {
         return toString(ref1).equals(toString((Reference)ref2));
     }
 
-    private <T> T invokeMake(final Method method, final Object... args) throws IOException {
+    private Call toMakeCall(final Method method, final Object... args) throws IOException {
         if (args.length != 1) {
             throw new JaplScriptException("Wrong number of arguments for " + method + ": " + args.length);
         }
         if (!(args[0] instanceof Class)) {
             throw new JaplScriptException("Argument is not a class object: " + args[0].getClass());
         }
-        final Class<T> klass = (Class<T>) args[0];
+        final Class<?> klass = (Class<?>) args[0];
         final Name applescriptClassname = klass.getAnnotation(Name.class);
         if (applescriptClassname == null) {
             throw new IOException("\"make\" failed, because we failed to find a Name annotation for class " + klass);
         }
         final String applescript = "make " + applescriptClassname.value();
-        return executeAppleScript(reference, applescript, klass);
+        return Call.script(applescript, klass);
     }
 
-    private <T> T invokeCommand(final Method method, final Class<T> returnType,
-                                final Object... args) throws IOException {
+    private Call toCommandCall(final Method method, final Class<?> returnType, final Parameters argv,
+                               final Object... args) {
         final Name name = method.getAnnotation(Name.class);
         final Parameter[] parameters = getFirstParameterAnnotations(method);
         final StringBuilder applescript = new StringBuilder(name.value() + " ");
@@ -272,11 +424,11 @@ public class ObjectInvocationHandler implements InvocationHandler {
                     applescript.append(parameters[i].value());
                 }
                 applescript.append(' ');
-                applescript.append(encode(arg));
+                applescript.append(encode(arg, argv));
                 applescript.append(" ");
             }
         }
-        return executeAppleScript(reference, applescript.toString(), returnType);
+        return Call.script(applescript.toString(), returnType, argv);
     }
 
     private static Parameter[] getFirstParameterAnnotations(final Method method) {
@@ -290,13 +442,13 @@ public class ObjectInvocationHandler implements InvocationHandler {
         return parameters;
     }
 
-    private <T> T invokeElement(final Method method, final Class<T> returnType, final Object... args)
-            throws IOException, NoSuchMethodException {
-        T returnValue = null;
+    private Call toElementCall(final Method method, final Class<?> returnType, final Object... args)
+            throws NoSuchMethodException {
         final Type type = method.getAnnotation(Type.class);
         if (method.getName().startsWith("get")) {
-            if (method.getReturnType().isArray()) {
-                final String plural = getPlural(method.getReturnType().getComponentType());
+            final Class<?> elementType = getElementType(method);
+            if (elementType != null) {
+                final String plural = getPlural(elementType);
                 final String applescript;
                 if (args != null && args[0] != null && !((String)args[0]).trim().isEmpty() && method.getParameterTypes().length == 1 && method.getParameterTypes()[0] == String.class) {
                     applescript = "return " + plural + getOfClause() + " where " + args[0];
@@ -305,27 +457,25 @@ public class ObjectInvocationHandler implements InvocationHandler {
                 } else {
                     throw new JaplScriptException("Unknown method signature. " + method);
                 }
-                returnValue = executeAppleScript(reference, applescript, returnType);
+                return returnType.isArray() ? Call.read(applescript, returnType) : Call.readList(applescript, elementType);
             } else if (method.getParameterTypes().length == 1 && method.getParameterTypes()[0] == Integer.TYPE) {
                 final int index = ((Integer) args[0] + 1);
                 final String objectreference = type.value() + " " + index + getOfClause();
                 if (reduceScriptExecutions) {
                     if (index < 1) throw new ArrayIndexOutOfBoundsException("Index has to be greater than 0");
-                    returnValue = cast(returnType,
-                            new ReferenceImpl(objectreference, reference.getApplicationReference()));
+                    return Call.value(cast(returnType,
+                            new ReferenceImpl(objectreference, reference.getApplicationReference())));
                 } else {
-                    final String applescript = "return " + objectreference;
-                    returnValue = executeAppleScript(reference, applescript, returnType);
+                    return Call.read("return " + objectreference, returnType);
                 }
             } else if (method.getParameterTypes().length == 1 && method.getParameterTypes()[0] == Id.class) {
                 final Id id = (Id) args[0];
                 final String objectreference = type.value() + " " + id + getOfClause();
                 if (reduceScriptExecutions) {
-                    returnValue = cast(returnType,
-                            new ReferenceImpl(objectreference, reference.getApplicationReference()));
+                    return Call.value(cast(returnType,
+                            new ReferenceImpl(objectreference, reference.getApplicationReference())));
                 } else {
-                    final String applescript = "return " + objectreference;
-                    returnValue = executeAppleScript(reference, applescript, returnType);
+                    return Call.read("return " + objectreference, returnType);
                 }
             } else {
                 throw new JaplScriptException("Unknown method signature. " + method);
@@ -339,14 +489,14 @@ public class ObjectInvocationHandler implements InvocationHandler {
                 final Reference ref = (Reference) args[1];
                 // really?
                 final String applescript = "set item " + index + " of " + plural + getOfClause() + " to (" + ref.getObjectReference() + ")";
-                executeAppleScript(reference, applescript, returnType);
+                return Call.script(applescript, returnType);
             } else {
                 throw new JaplScriptException("Unknown method signature. " + method);
             }
         } else if (method.getName().startsWith("count")) {
             final Method getMethod = method.getDeclaringClass().getMethod("get"
                     + method.getName().substring("count".length()));
-            final String plural = getPlural(getMethod.getReturnType().getComponentType());
+            final String plural = getPlural(getElementType(getMethod));
             final String applescript;
             if (args != null && args[0] != null && !((String) args[0]).trim().isEmpty() && method.getParameterTypes().length == 1 && method.getParameterTypes()[0] == String.class) {
                 applescript = "count " + plural + getOfClause() + " where " + args[0];
@@ -355,9 +505,28 @@ public class ObjectInvocationHandler implements InvocationHandler {
             } else {
                 throw new JaplScriptException("Unknown method signature. " + method);
             }
-            returnValue = executeAppleScript(reference, applescript, returnType);
+            return Call.read(applescript, returnType);
         }
-        return returnValue;
+        return Call.value(null);
+    }
+
+    /**
+     * Element type of an element getter, that returns either an array or a {@code java.util.List}.
+     *
+     * @param method element getter
+     * @return element type or {@code null}, if the method returns neither an array nor a list
+     */
+    private static Class<?> getElementType(final Method method) {
+        final Class<?> returnType = method.getReturnType();
+        if (returnType.isArray()) return returnType.getComponentType();
+        if (returnType != List.class) return null;
+        final java.lang.reflect.Type genericReturnType = method.getGenericReturnType();
+        if (genericReturnType instanceof ParameterizedType) {
+            final java.lang.reflect.Type typeArgument = ((ParameterizedType) genericReturnType).getActualTypeArguments()[0];
+            if (typeArgument instanceof Class) return (Class<?>) typeArgument;
+            if (typeArgument instanceof ParameterizedType) return (Class<?>) ((ParameterizedType) typeArgument).getRawType();
+        }
+        throw new JaplScriptException("Element list type must be a class: " + method);
     }
 
     /**
@@ -380,35 +549,16 @@ public class ObjectInvocationHandler implements InvocationHandler {
         return plural;
     }
 
-    private <T> T invokeProperty(final Method method, final Class<T> returnType, final Object[] args)
-            throws IOException {
-        T returnValue = null;
-        final Name name = method.getAnnotation(Name.class);
+    private Call toPropertyCall(final Method method, final Class<?> returnType, final Parameters parameters,
+                                final Object[] args) {
         final Code code = method.getAnnotation(Code.class);
         final Chevron propertyChevron = new Chevron("property", code.value());
         if (method.getName().startsWith("get") || method.getName().startsWith("is")) {
-            final String applescript = "return " + propertyChevron + getOfClause();
-            returnValue = executeAppleScript(reference, applescript, returnType);
-
-//            if (!isRecord()) {
-//                final String applescript = "return " + name.value() + getOfClause();
-//                returnValue = executeAppleScript(reference, applescript, returnType);
-//            } else {
-//                // let's assume we have record
-//                final Map<String, Reference> stringReferenceMap = (Map<String, Reference>)cast(Map.class, reference);
-//                if (stringReferenceMap.containsKey(code)) {
-//                    returnValue = cast(returnType, stringReferenceMap.get(code));
-//                } else if (stringReferenceMap.containsKey(name)) {
-//                    returnValue = cast(returnType, stringReferenceMap.get(name));
-//                } else {
-//                    returnValue = null;
-//                }
-//            }
+            return Call.read("return " + propertyChevron + getOfClause(), returnType);
         } else if (method.getName().startsWith("set")) {
-            final String applescript = "set " + propertyChevron + getOfClause() + " to " + encode(args[0]);
-            returnValue = executeAppleScript(reference, applescript, returnType);
+            return Call.script("set " + propertyChevron + getOfClause() + " to " + encode(args[0], parameters), returnType, parameters);
         }
-        return returnValue;
+        return Call.value(null);
     }
 
     private boolean isRecord() {
@@ -423,16 +573,23 @@ public class ObjectInvocationHandler implements InvocationHandler {
         else return " of " + reference.getObjectReference();
     }
 
+    private String encode(final Object arg, final Parameters parameters) {
+        if (parameters != null) {
+            final String parameter = parameters.add(arg);
+            if (parameter != null) return parameter;
+        }
+        return encode(arg);
+    }
+
     private String encode(final Object arg) {
         if (arg instanceof Object[]) return encode((Object[]) arg);
         else if (arg instanceof java.util.List) return encode((List<?>) arg);
         else if (arg instanceof java.util.Map) return encode((Map<String, ?>) arg);
         else {
             // all regular types from JaplScript
-            for (final Codec<?> type : JaplScript.getTypes()) {
-                if (type._getJavaType().isAssignableFrom(arg.getClass())) {
-                    return type._encode(arg);
-                }
+            final Codec<?> type = JaplScript.getAssignableType(arg.getClass());
+            if (type != null) {
+                return type._encode(arg);
             }
             // special case: enums
             if (JaplEnum.class.isAssignableFrom(arg.getClass())) {
@@ -461,48 +618,153 @@ public class ObjectInvocationHandler implements InvocationHandler {
     }
 
     public <T> T executeAppleScript(final Reference reference, final String appleScript, final Class<T> returnType) throws IOException {
-        return executeAppleScript(reference.getApplicationReference(), appleScript, returnType);
+        return executeAppleScript(reference, appleScript, Collections.emptyList(), returnType);
     }
 
-    private <T> T executeAppleScript(final String application, final String appleScript, final Class<T> returnType) throws IOException {
-        return executeAppleScript(tell(application, appleScript), returnType);
+    private <T> T executeAppleScript(final Reference reference, final String appleScript, final List<String> arguments,
+                                     final Class<T> returnType) throws IOException {
+        return executeAppleScript(tell(reference.getApplicationReference(), appleScript, arguments), returnType);
     }
 
-    private <T> T executeAppleScript(final CharSequence appleScript, final Class<T> returnType) throws IOException {
+    private <T> T executeAppleScript(final Script appleScript, final Class<T> returnType) throws IOException {
         final Session session = Session.get();
-        if (session == null) {
-            final ScriptExecutor scriptExecutor = ScriptExecutor.newInstance();
-            scriptExecutor.setScript(appleScript);
-            final String returnValue = scriptExecutor.execute();
-            if (LOG.isLoggable(Level.FINE)) LOG.fine(appleScript + " == > " + returnValue);
-            final ReferenceImpl reference = new ReferenceImpl(returnValue, this.reference.getApplicationReference());
-            if (!returnType.equals(Void.TYPE)) {
-                return cast(guessMostSpecificSubclass(returnType, reference), true, reference);
-            }
-            return null;
+        if (session == null && JaplScript.isStreamable(returnType)) {
+            return executeStreaming(appleScript, returnType);
+        } else if (session == null) {
+            return toJava(execute(appleScript), returnType);
         } else if (returnType.equals(Void.TYPE) || session.isIgnoreReturnValues()) {
-            session.add(appleScript);
+            session.add(appleScript.body, appleScript.arguments, appleScript.handlers);
+        } else if (session.isBatch()) {
+            final CompletableFuture<String> result = session.addWithResult(appleScript.body, appleScript.arguments, appleScript.handlers);
+            // implicit flush forced by a synchronous return value
+            session.flush();
+            final String returnValue;
+            try {
+                returnValue = result.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                throw e;
+            }
+            return cast(guessMostSpecificSubclass(returnType, reference), new ReferenceImpl(returnValue, reference.getApplicationReference()));
         } else {
             try {
                 // implicit commit forced by a return value
-                session.add(appleScript);
+                session.add(appleScript.body, appleScript.arguments, appleScript.handlers);
                 final ScriptExecutor scriptExecutor = ScriptExecutor.newInstance();
                 scriptExecutor.setScript(session.getScript());
+                scriptExecutor.setArguments(session.getArguments());
+                scriptExecutor.setApplication(appleScript.application);
                 final String returnValue = scriptExecutor.execute();
                 return cast(guessMostSpecificSubclass(returnType, reference), new ReferenceImpl(returnValue, reference.getApplicationReference()));
             } finally {
-                session.reset();
+                session.clear();
             }
         }
         return null;
     }
 
-    private CharSequence tell(final String application, final String appleScript) {
+    /**
+     * Asynchronous variant of {@link #executeAppleScript(Reference, String, Class)}.
+     * <p>
+     * If the current thread has a {@link Session} and no return value is required,
+     * the script is simply added to the session and an already completed future is returned.
+     * If the session is in {@link Session#setBatch(boolean) batch mode}, the script is added
+     * to the session as well and the returned future is completed, once the session is committed.
+     * Otherwise, the session (if any) is committed asynchronously.
+     *
+     * @param reference reference, whose application is told to execute the script
+     * @param appleScript script
+     * @param returnType return type
+     * @param <T> return type
+     * @return future return value
+     * @see #getExecutor()
+     */
+    public <T> CompletableFuture<T> executeAppleScriptAsync(final Reference reference, final String appleScript, final Class<T> returnType) {
+        return executeAppleScriptAsync(tell(reference.getApplicationReference(), appleScript, Collections.emptyList()), returnType);
+    }
+
+    private <T> CompletableFuture<T> executeAppleScriptAsync(final Script appleScript, final Class<T> returnType) {
+        final Session session = Session.get();
+        if (session == null) {
+            return executeAsync(appleScript).thenApply(returnValue -> toJava(returnValue, returnType));
+        } else if (returnType.equals(Void.TYPE) || session.isIgnoreReturnValues()) {
+            session.add(appleScript.body, appleScript.arguments, appleScript.handlers);
+            return CompletableFuture.completedFuture(null);
+        } else if (session.isBatch()) {
+            // completed, once the session is committed
+            return session.addWithResult(appleScript.body, appleScript.arguments, appleScript.handlers).thenApply(returnValue ->
+                cast(guessMostSpecificSubclass(returnType, reference), new ReferenceImpl(returnValue, reference.getApplicationReference())));
+        } else {
+            final ScriptExecutor scriptExecutor = ScriptExecutor.newInstance();
+            final List<Runnable> executionCallbacks;
+            try {
+                // implicit commit forced by a return value
+                session.add(appleScript.body, appleScript.arguments, appleScript.handlers);
+                scriptExecutor.setScript(session.getScript());
+                scriptExecutor.setArguments(session.getArguments());
+                scriptExecutor.setApplication(appleScript.application);
+                executionCallbacks = session.getExecutionCallbacks();
+            } finally {
+                session.clear();
+            }
+            return scriptExecutor.executeAsync(getExecutor())
+                .whenComplete((returnValue, throwable) -> executionCallbacks.forEach(Runnable::run))
+                .thenApply(returnValue ->
+                    cast(guessMostSpecificSubclass(returnType, reference), new ReferenceImpl(returnValue, reference.getApplicationReference())));
+        }
+    }
+
+    private String execute(final Script appleScript) throws IOException {
+        final ScriptExecutor scriptExecutor = ScriptExecutor.newInstance();
+        scriptExecutor.setScript(appleScript.toString());
+        scriptExecutor.setArguments(appleScript.arguments);
+        scriptExecutor.setApplication(appleScript.application);
+        final String returnValue = scriptExecutor.execute();
+        if (LOG.isLoggable(Level.FINE)) LOG.fine(appleScript + " == > " + returnValue);
+        return returnValue;
+    }
+
+    /**
+     * Executes the script and decodes its potentially very large result incrementally.
+     */
+    private <T> T executeStreaming(final Script appleScript, final Class<T> returnType) throws IOException {
+        final ScriptExecutor scriptExecutor = ScriptExecutor.newInstance();
+        scriptExecutor.setScript(appleScript.toString());
+        scriptExecutor.setArguments(appleScript.arguments);
+        scriptExecutor.setApplication(appleScript.application);
+        final CharSequence returnValue = scriptExecutor.executeStreaming();
+        try {
+            if (LOG.isLoggable(Level.FINE)) LOG.fine(appleScript + " == > " + returnValue.length() + " chars");
+            return JaplScript.cast(returnType, returnValue, reference.getApplicationReference());
+        } finally {
+            if (returnValue instanceof ChunkedCharSequence) ((ChunkedCharSequence) returnValue).release();
+        }
+    }
+
+    private CompletableFuture<String> executeAsync(final Script appleScript) {
+        final ScriptExecutor scriptExecutor = ScriptExecutor.newInstance();
+        scriptExecutor.setScript(appleScript.toString());
+        scriptExecutor.setArguments(appleScript.arguments);
+        scriptExecutor.setApplication(appleScript.application);
+        return scriptExecutor.executeAsync(getExecutor()).whenComplete((returnValue, throwable) -> {
+            if (throwable == null && LOG.isLoggable(Level.FINE)) LOG.fine(appleScript + " == > " + returnValue);
+        });
+    }
+
+    private <T> T toJava(final String returnValue, final Class<T> returnType) {
+        final ReferenceImpl reference = new ReferenceImpl(returnValue, this.reference.getApplicationReference());
+        if (!returnType.equals(Void.TYPE)) {
+            return cast(guessMostSpecificSubclass(returnType, reference), true, reference);
+        }
+        return null;
+    }
+
+    private Script tell(final String application, final String appleScript, final List<String> arguments) {
         final StringBuilder sb = new StringBuilder();
+        final List<String> handlers = new ArrayList<>();
         final List<Aspect> globalAspects = JaplScript.getGlobalAspects();
         for (final Aspect aspect : globalAspects) {
-            final String before = aspect.before(application, appleScript);
-            if (before != null) sb.append(before).append("\r\n");
+            append(sb, handlers, "", aspect.before(application, appleScript));
         }
 
 
@@ -510,14 +772,12 @@ public class ObjectInvocationHandler implements InvocationHandler {
         if (session != null) {
             final List<Aspect> aspects = session.getAspects();
             for (final Aspect aspect : aspects) {
-                final String before = aspect.before(application, appleScript);
-                if (before != null) sb.append("  ").append(before).append("\r\n");
+                append(sb, handlers, "  ", aspect.before(application, appleScript));
             }
             sb.append("  ").append(appleScript).append("\r\n");
             Collections.reverse(aspects);
             for (final Aspect aspect : aspects) {
-                final String after = aspect.after(application, appleScript);
-                if (after != null) sb.append("  ").append(after).append("\r\n");
+                append(sb, handlers, "  ", aspect.after(application, appleScript));
             }
         }
         else {
@@ -526,10 +786,156 @@ public class ObjectInvocationHandler implements InvocationHandler {
 
         Collections.reverse(globalAspects);
         for (final Aspect aspect : globalAspects) {
-            final String after = aspect.after(application, appleScript);
-            if (after != null) sb.append(after).append("\r\n");
+            append(sb, handlers, "", aspect.after(application, appleScript));
+        }
+        return new Script(application, sb.toString(), handlers, arguments);
+    }
+
+    /**
+     * Appends aspect code to the script body. Handler definitions, i.e. code
+     * starting with <code>on</code>, are collected separately, as they must not
+     * end up in a <code>run</code> handler.
+     */
+    private static void append(final StringBuilder body, final List<String> handlers, final String indent,
+                               final String aspectCode) {
+        if (aspectCode == null) return;
+        if (aspectCode.startsWith("on ")) handlers.add(aspectCode);
+        else body.append(indent).append(aspectCode).append("\r\n");
+    }
+
+    /**
+     * Generated script, consisting of the targeted application, a body,
+     * the handlers it uses and its arguments.
+     */
+    private static final class Script {
+
+        private final String application;
+        private final String body;
+        private final List<String> handlers;
+        private final List<String> arguments;
+
+        Script(final String application, final String body, final List<String> handlers, final List<String> arguments) {
+            this.application = application;
+            this.body = body;
+            this.handlers = handlers;
+            this.arguments = arguments;
+        }
+
+        @Override
+        public String toString() {
+            return Session.toScript(body, arguments, handlers);
+        }
+    }
+
+    /**
+     * Values that are passed to a compiled script via <code>argv</code> instead of being
+     * embedded as literals. This way, the same compiled script can be used for different values.
+     * Only text, boolean and integer values are passed this way.
+     */
+    private static final class Parameters {
+
+        private static final long MAX_APPLESCRIPT_INTEGER = 536870911;
+        private final int offset;
+        private final List<String> values = new ArrayList<>();
+
+        private Parameters(final int offset) {
+            this.offset = offset;
+        }
+
+        /**
+         * Parameters are only used in sessions that compile scripts and only if
+         * the session's executor {@link ScriptExecutor#isArgumentsSupported() supports arguments}.
+         * Otherwise values are embedded as literals.
+         *
+         * @return parameters or {@code null}
+         */
+        static Parameters forCurrentSession() {
+            final Session session = Session.get();
+            if (session == null || !session.isCompile()) return null;
+            if (!ScriptExecutor.newInstance().isArgumentsSupported()) return null;
+            return new Parameters(session.getArguments().size());
+        }
+
+        /**
+         * Adds the given value.
+         *
+         * @param value value
+         * @return reference to the value in <code>argv</code> or {@code null}, if the value cannot be passed as argument
+         */
+        String add(final Object value) {
+            final String coercion;
+            if (value instanceof String) {
+                coercion = null;
+            } else if (value instanceof Boolean) {
+                coercion = "boolean";
+            } else if ((value instanceof java.lang.Integer || value instanceof Long || value instanceof Short || value instanceof Byte)
+                && ((Number) value).longValue() >= -MAX_APPLESCRIPT_INTEGER
+                && ((Number) value).longValue() <= MAX_APPLESCRIPT_INTEGER) {
+                coercion = "integer";
+            } else {
+                return null;
+            }
+            values.add(value.toString());
+            final String item = "(item " + (offset + values.size()) + " of argv)";
+            return coercion == null ? item : "(" + item + " as " + coercion + ")";
+        }
+    }
+
+    /**
+     * Either a script to execute or a value that is available without executing a script.
+     */
+    private static final class Call {
+
+        private final String appleScript;
+        private final List<String> arguments;
+        private final Class<?> returnType;
+        private final Object value;
+        private final boolean read;
+        /**
+         * Element type, if the raw result is to be wrapped in a {@link LazyList}.
+         */
+        private final Class<?> elementType;
+
+        private Call(final String appleScript, final List<String> arguments, final Class<?> returnType, final Object value,
+                     final boolean read) {
+            this(appleScript, arguments, returnType, value, read, null);
+        }
+
+        private Call(final String appleScript, final List<String> arguments, final Class<?> returnType, final Object value,
+                     final boolean read, final Class<?> elementType) {
+            this.appleScript = appleScript;
+            this.arguments = arguments;
+            this.returnType = returnType;
+            this.value = value;
+            this.read = read;
+            this.elementType = elementType;
+        }
+
+        static Call script(final String appleScript, final Class<?> returnType) {
+            return new Call(appleScript, Collections.emptyList(), returnType, null, false);
+        }
+
+        static Call script(final String appleScript, final Class<?> returnType, final Parameters parameters) {
+            return new Call(appleScript, parameters == null ? Collections.emptyList() : parameters.values, returnType, null, false);
+        }
+
+        /**
+         * Script that only reads a property or elements and may therefore be cached.
+         */
+        static Call read(final String appleScript, final Class<?> returnType) {
+            return new Call(appleScript, Collections.emptyList(), returnType, null, true);
+        }
+
+        /**
+         * Read of elements, whose raw result is wrapped in a {@link LazyList}.
+         */
+        static Call readList(final String appleScript, final Class<?> elementType) {
+            return new Call(appleScript, Collections.emptyList(), Reference.class, null, true, elementType);
+        }
+
+        static Call value(final Object value) {
+            return new Call(null, Collections.emptyList(), null, value, false);
         }
-        return sb.toString();
     }
 
     private enum EncoderEnum implements JaplEnum, Codec<EncoderEnum> {
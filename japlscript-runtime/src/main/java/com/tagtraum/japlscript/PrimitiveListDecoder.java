@@ -0,0 +1,189 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript;
+
+import com.tagtraum.japlscript.execution.AppleScriptResultParser;
+import com.tagtraum.japlscript.execution.JaplScriptException;
+
+import java.util.Arrays;
+
+/**
+ * Decodes AppleScript lists straight into arrays of primitives, i.e. without
+ * creating an object for each element. Numbers are read directly from the
+ * result's characters into a growing array of the target type.
+ * <p>
+ * Elements are decoded like the default codecs for the primitive types do:
+ * <code>boolean</code>s are {@code true}, if the element is <code>true</code> (ignoring case),
+ * <code>char</code>s are strings of length one, all other elements must be numbers
+ * in the range of the target type.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+final class PrimitiveListDecoder {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private PrimitiveListDecoder() {
+    }
+
+    /**
+     * Decodes elements until the end of the parser's current list.
+     *
+     * @param componentType primitive type
+     * @param parser parser, positioned in the list to decode
+     * @return primitive array
+     * @throws JaplScriptException if an element cannot be decoded
+     */
+    static Object decode(final Class<?> componentType, final AppleScriptResultParser parser) {
+        final int depth = parser.getDepth();
+        if (componentType == java.lang.Integer.TYPE) return decodeInts(parser, depth);
+        if (componentType == java.lang.Long.TYPE) return decodeLongs(parser, depth);
+        if (componentType == java.lang.Double.TYPE) return decodeDoubles(parser, depth);
+        if (componentType == java.lang.Float.TYPE) return decodeFloats(parser, depth);
+        if (componentType == java.lang.Short.TYPE) return decodeShorts(parser, depth);
+        if (componentType == java.lang.Byte.TYPE) return decodeBytes(parser, depth);
+        if (componentType == java.lang.Boolean.TYPE) return decodeBooleans(parser, depth);
+        if (componentType == java.lang.Character.TYPE) return decodeChars(parser, depth);
+        throw new IllegalArgumentException("Not a primitive type: " + componentType);
+    }
+
+    private static int[] decodeInts(final AppleScriptResultParser parser, final int depth) {
+        int[] values = new int[INITIAL_CAPACITY];
+        int size = 0;
+        try {
+            while (nextElement(parser, depth, java.lang.Integer.TYPE)) {
+                if (size == values.length) values = Arrays.copyOf(values, size * 2);
+                values[size++] = parser.getInt();
+            }
+        } catch (NumberFormatException e) {
+            throw failure(parser, java.lang.Integer.TYPE, e);
+        }
+        return size == values.length ? values : Arrays.copyOf(values, size);
+    }
+
+    private static long[] decodeLongs(final AppleScriptResultParser parser, final int depth) {
+        long[] values = new long[INITIAL_CAPACITY];
+        int size = 0;
+        try {
+            while (nextElement(parser, depth, java.lang.Long.TYPE)) {
+                if (size == values.length) values = Arrays.copyOf(values, size * 2);
+                values[size++] = parser.getLong();
+            }
+        } catch (NumberFormatException e) {
+            throw failure(parser, java.lang.Long.TYPE, e);
+        }
+        return size == values.length ? values : Arrays.copyOf(values, size);
+    }
+
+    private static double[] decodeDoubles(final AppleScriptResultParser parser, final int depth) {
+        double[] values = new double[INITIAL_CAPACITY];
+        int size = 0;
+        try {
+            while (nextElement(parser, depth, java.lang.Double.TYPE)) {
+                if (size == values.length) values = Arrays.copyOf(values, size * 2);
+                values[size++] = parser.getDouble();
+            }
+        } catch (NumberFormatException e) {
+            throw failure(parser, java.lang.Double.TYPE, e);
+        }
+        return size == values.length ? values : Arrays.copyOf(values, size);
+    }
+
+    private static float[] decodeFloats(final AppleScriptResultParser parser, final int depth) {
+        float[] values = new float[INITIAL_CAPACITY];
+        int size = 0;
+        try {
+            while (nextElement(parser, depth, java.lang.Float.TYPE)) {
+                if (size == values.length) values = Arrays.copyOf(values, size * 2);
+                values[size++] = parser.getFloat();
+            }
+        } catch (NumberFormatException e) {
+            throw failure(parser, java.lang.Float.TYPE, e);
+        }
+        return size == values.length ? values : Arrays.copyOf(values, size);
+    }
+
+    private static short[] decodeShorts(final AppleScriptResultParser parser, final int depth) {
+        short[] values = new short[INITIAL_CAPACITY];
+        int size = 0;
+        try {
+            while (nextElement(parser, depth, java.lang.Short.TYPE)) {
+                if (size == values.length) values = Arrays.copyOf(values, size * 2);
+                final int i = parser.getInt();
+                if (i < Short.MIN_VALUE || i > Short.MAX_VALUE) throw new NumberFormatException("Out of range: " + i);
+                values[size++] = (short) i;
+            }
+        } catch (NumberFormatException e) {
+            throw failure(parser, java.lang.Short.TYPE, e);
+        }
+        return size == values.length ? values : Arrays.copyOf(values, size);
+    }
+
+    private static byte[] decodeBytes(final AppleScriptResultParser parser, final int depth) {
+        byte[] values = new byte[INITIAL_CAPACITY];
+        int size = 0;
+        try {
+            while (nextElement(parser, depth, java.lang.Byte.TYPE)) {
+                if (size == values.length) values = Arrays.copyOf(values, size * 2);
+                final int i = parser.getInt();
+                if (i < Byte.MIN_VALUE || i > Byte.MAX_VALUE) throw new NumberFormatException("Out of range: " + i);
+                values[size++] = (byte) i;
+            }
+        } catch (NumberFormatException e) {
+            throw failure(parser, java.lang.Byte.TYPE, e);
+        }
+        return size == values.length ? values : Arrays.copyOf(values, size);
+    }
+
+    private static boolean[] decodeBooleans(final AppleScriptResultParser parser, final int depth) {
+        boolean[] values = new boolean[INITIAL_CAPACITY];
+        int size = 0;
+        while (nextElement(parser, depth, java.lang.Boolean.TYPE)) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = parser.getBoolean();
+        }
+        return size == values.length ? values : Arrays.copyOf(values, size);
+    }
+
+    private static char[] decodeChars(final AppleScriptResultParser parser, final int depth) {
+        char[] values = new char[INITIAL_CAPACITY];
+        int size = 0;
+        while (nextElement(parser, depth, java.lang.Character.TYPE)) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            final String s = parser.getString();
+            if (parser.getToken() != AppleScriptResultParser.Token.STRING || s.length() != 1) {
+                throw failure(parser, java.lang.Character.TYPE, null);
+            }
+            values[size++] = s.charAt(0);
+        }
+        return size == values.length ? values : Arrays.copyOf(values, size);
+    }
+
+    /**
+     * Moves to the next scalar element of the current list. Record keys are skipped.
+     *
+     * @return false, if the end of the list was reached
+     */
+    private static boolean nextElement(final AppleScriptResultParser parser, final int depth, final Class<?> componentType) {
+        while (parser.hasNext()) {
+            final AppleScriptResultParser.Token token = parser.next();
+            if (parser.getDepth() < depth) return false;
+            if (token == AppleScriptResultParser.Token.KEY) continue;
+            if (token == AppleScriptResultParser.Token.LIST_START || token == AppleScriptResultParser.Token.RECORD_START) {
+                final int start = parser.getStart();
+                throw new JaplScriptException("Failed to cast " + parser.substring(start, parser.skipValue()) + " to " + componentType);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static JaplScriptException failure(final AppleScriptResultParser parser, final Class<?> componentType,
+                                               final NumberFormatException cause) {
+        return new JaplScriptException("Failed to cast " + parser.getText() + " to " + componentType, cause);
+    }
+}
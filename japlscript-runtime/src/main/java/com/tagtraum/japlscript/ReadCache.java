@@ -0,0 +1,338 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Short-lived cache for the raw results of property and element reads.
+ * <p>
+ * Entries are keyed by application reference and normalized read script
+ * (e.g. <code>return «property pnam» of track id 5 of ...</code>). They expire after
+ * a configurable time to live and the least recently used entries are evicted,
+ * when the cache grows beyond its max size.
+ * <p>
+ * Setters and commands {@link #invalidate(String, String) invalidate} all entries that read from
+ * the object they are called on (or from objects contained in it).
+ * Commands sent to the application itself invalidate all of the application's entries.
+ * Entries are indexed by application and object reference, so that invalidating is
+ * proportional to the number of removed entries, not to the size of the cache.
+ * <p>
+ * To avoid caching results of reads that ran concurrently with an invalidating call,
+ * readers obtain the application's {@link #getGeneration(String) generation} before executing
+ * and pass it to {@link #put(String, String, String, String, long)}. If the application's entries
+ * have been invalidated in the meantime, the result is not cached.
+ * <p>
+ * Reads and writes within a {@link com.tagtraum.japlscript.execution.Session} bypass the cache.
+ * <p>
+ * Caching is opt-in, see {@link JaplScript#setReadCache(ReadCache)}.
+ * Note that changes made by other processes or the user are only seen, once
+ * entries have expired.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class ReadCache {
+
+    public static final long DEFAULT_TTL_MILLIS = 500;
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    private final long ttlNanos;
+    private final int maxSize;
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Application> applications = new HashMap<>();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong invalidationCount = new AtomicLong();
+
+    /**
+     * Creates a cache with default settings.
+     */
+    public ReadCache() {
+        this(DEFAULT_TTL_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Creates a cache.
+     *
+     * @param ttl time to live
+     * @param unit unit of the time to live
+     * @param maxSize max number of cached results
+     */
+    public ReadCache(final long ttl, final TimeUnit unit, final int maxSize) {
+        if (ttl < 1) throw new IllegalArgumentException("TTL must be greater than 0: " + ttl);
+        if (maxSize < 1) throw new IllegalArgumentException("Max size must be greater than 0: " + maxSize);
+        this.ttlNanos = unit.toNanos(ttl);
+        this.maxSize = maxSize;
+    }
+
+    public long getTtlMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(ttlNanos);
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Looks up a cached result.
+     *
+     * @param applicationReference application reference
+     * @param script read script
+     * @return raw result or {@code null}, if not cached or expired
+     */
+    public String get(final String applicationReference, final String script) {
+        final Key key = new Key(applicationReference, normalize(script));
+        synchronized (entries) {
+            final Entry entry = entries.get(key);
+            if (entry != null && entry.expires - System.nanoTime() > 0) {
+                hitCount.incrementAndGet();
+                return entry.result;
+            }
+            if (entry != null) {
+                entries.remove(key);
+                unindex(key, entry);
+            }
+        }
+        missCount.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Current generation of the given application's entries. The generation changes
+     * whenever entries of the application are invalidated.
+     *
+     * @param applicationReference application reference
+     * @return generation
+     * @see #put(String, String, String, String, long)
+     */
+    public long getGeneration(final String applicationReference) {
+        synchronized (entries) {
+            return application(applicationReference).generation;
+        }
+    }
+
+    /**
+     * Caches a result, regardless of invalidations that may have happened while it was read.
+     *
+     * @param applicationReference application reference
+     * @param objectReference reference of the object that is read from, used for invalidation
+     * @param script read script
+     * @param result raw result
+     */
+    public void put(final String applicationReference, final String objectReference, final String script,
+                    final String result) {
+        put(applicationReference, objectReference, script, result, -1);
+    }
+
+    /**
+     * Caches a result, unless the application's entries have been invalidated since
+     * the given generation was obtained.
+     *
+     * @param applicationReference application reference
+     * @param objectReference reference of the object that is read from, used for invalidation
+     * @param script read script
+     * @param result raw result
+     * @param generation {@link #getGeneration(String) generation} obtained before the read was executed
+     */
+    public void put(final String applicationReference, final String objectReference, final String script,
+                    final String result, final long generation) {
+        if (result == null) return;
+        final Key key = new Key(applicationReference, normalize(script));
+        final Entry entry = new Entry(objectReference, result, System.nanoTime() + ttlNanos);
+        synchronized (entries) {
+            if (generation >= 0 && generation != application(applicationReference).generation) return;
+            final Entry previous = entries.put(key, entry);
+            if (previous != null) unindex(key, previous);
+            index(key, entry);
+            final Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+            while (entries.size() > maxSize && iterator.hasNext()) {
+                final Map.Entry<Key, Entry> eldest = iterator.next();
+                iterator.remove();
+                unindex(eldest.getKey(), eldest.getValue());
+                evictionCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Removes all entries that read from the given object or objects contained in it.
+     *
+     * @param applicationReference application reference
+     * @param objectReference object reference or {@code null} to invalidate all entries of the application
+     */
+    public void invalidate(final String applicationReference, final String objectReference) {
+        synchronized (entries) {
+            final Application application = application(applicationReference);
+            application.generation++;
+            final Set<Key> keys = objectReference == null ? application.keys : application.keysByObject.get(objectReference);
+            if (keys == null || keys.isEmpty()) return;
+            for (final Key key : keys.toArray(new Key[0])) {
+                final Entry entry = entries.remove(key);
+                if (entry != null) {
+                    unindex(key, entry);
+                    invalidationCount.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            invalidationCount.addAndGet(entries.size());
+            entries.clear();
+            for (final Application application : applications.values()) {
+                application.generation++;
+                application.keys.clear();
+                application.keysByObject.clear();
+            }
+        }
+    }
+
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Number of entries removed, because the cache was full.
+     *
+     * @return evictions
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * Number of entries removed by {@link #invalidate(String, String)} or {@link #invalidateAll()}.
+     *
+     * @return invalidations
+     */
+    public long getInvalidationCount() {
+        return invalidationCount.get();
+    }
+
+    private Application application(final String applicationReference) {
+        return applications.computeIfAbsent(applicationReference, k -> new Application());
+    }
+
+    /**
+     * Adds the key to the index of its object and of all objects that contain it,
+     * i.e. <code>artwork 1 of track id 5 of library playlist 1</code> is indexed under itself,
+     * <code>track id 5 of library playlist 1</code> and <code>library playlist 1</code>.
+     */
+    private void index(final Key key, final Entry entry) {
+        final Application application = application(key.applicationReference);
+        application.keys.add(key);
+        String reference = entry.objectReference;
+        while (reference != null) {
+            application.keysByObject.computeIfAbsent(reference, k -> new HashSet<>()).add(key);
+            reference = container(reference);
+        }
+    }
+
+    private void unindex(final Key key, final Entry entry) {
+        final Application application = application(key.applicationReference);
+        application.keys.remove(key);
+        String reference = entry.objectReference;
+        while (reference != null) {
+            final Set<Key> keys = application.keysByObject.get(reference);
+            if (keys != null && keys.remove(key) && keys.isEmpty()) application.keysByObject.remove(reference);
+            reference = container(reference);
+        }
+    }
+
+    /**
+     * @return reference of the containing object or {@code null}
+     */
+    private static String container(final String objectReference) {
+        final int i = objectReference.indexOf(" of ");
+        return i < 0 ? null : objectReference.substring(i + 4);
+    }
+
+    /**
+     * Line endings are converted to <code>\n</code> and leading/trailing whitespace is removed.
+     */
+    private static String normalize(final String script) {
+        return script.replace("\r\n", "\n").replace('\r', '\n').trim();
+    }
+
+    @Override
+    public String toString() {
+        return "ReadCache{" +
+            "ttlMillis=" + getTtlMillis() +
+            ", maxSize=" + maxSize +
+            ", size=" + getSize() +
+            ", hits=" + getHitCount() +
+            ", misses=" + getMissCount() +
+            '}';
+    }
+
+    private static final class Key {
+        private final String applicationReference;
+        private final String script;
+
+        Key(final String applicationReference, final String script) {
+            this.applicationReference = applicationReference;
+            this.script = script;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            final Key key = (Key) o;
+            return Objects.equals(applicationReference, key.applicationReference) && script.equals(key.script);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Objects.hashCode(applicationReference) + script.hashCode();
+        }
+    }
+
+    /**
+     * Generation and index of an application's entries.
+     */
+    private static final class Application {
+        private final Set<Key> keys = new HashSet<>();
+        private final Map<String, Set<Key>> keysByObject = new HashMap<>();
+        private long generation;
+    }
+
+    private static final class Entry {
+        private final String objectReference;
+        private final String result;
+        private final long expires;
+
+        Entry(final String objectReference, final String result, final long expires) {
+            this.objectReference = objectReference;
+            this.result = result;
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript.language;
+
+/**
+ * Hex encoding and decoding for data types like {@link Tdta} and {@link Picture}.
+ * <p>
+ * Decoding works on any {@link CharSequence} and writes directly into a byte
+ * array of the final size, so that large values are not copied more than necessary.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+final class Hex {
+
+    private static final char[] DIGITS = "0123456789ABCDEF".toCharArray();
+    private static final byte[] VALUES = new byte[128];
+
+    static {
+        java.util.Arrays.fill(VALUES, (byte) -1);
+        for (int i = 0; i < 10; i++) {
+            VALUES['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            VALUES['A' + i] = (byte) (10 + i);
+            VALUES['a' + i] = (byte) (10 + i);
+        }
+    }
+
+    private Hex() {
+    }
+
+    /**
+     * Decodes the hex digits between start and end.
+     *
+     * @param hex chars containing hex digits
+     * @param start index of the first hex digit
+     * @param end index after the last hex digit
+     * @return bytes
+     * @throws NumberFormatException if the given range contains non-hex chars
+     */
+    static byte[] decode(final CharSequence hex, final int start, final int end) {
+        final byte[] bytes = new byte[(end - start) / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            final int index = start + 2 * i;
+            bytes[i] = (byte) (digit(hex.charAt(index)) << 4 | digit(hex.charAt(index + 1)));
+        }
+        return bytes;
+    }
+
+    private static int digit(final char c) {
+        final int value = c < VALUES.length ? VALUES[c] : -1;
+        if (value < 0) throw new NumberFormatException("Not a hex digit: " + c);
+        return value;
+    }
+
+    /**
+     * Encodes the given bytes as upper case hex digits.
+     *
+     * @param bytes bytes
+     * @return hex string
+     */
+    static String encode(final byte[] bytes) {
+        final char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = DIGITS[(bytes[i] >> 4) & 0xF];
+            chars[2 * i + 1] = DIGITS[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+}
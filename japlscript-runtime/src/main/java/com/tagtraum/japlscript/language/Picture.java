@@ -12,7 +12,6 @@ import com.tagtraum.japlscript.Codec;
 import javax.imageio.ImageIO;
 import java.awt.*;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 
 /**
@@ -28,6 +27,7 @@ public class Picture extends ReferenceImpl {
     };
     private byte[] data;
     private String format;
+    private boolean derivedObjectReference;
 
     public Picture() {
         super(null, null);
@@ -46,15 +46,47 @@ public class Picture extends ReferenceImpl {
             // get format as hex code
             format = objectReference.substring("<data ".length(), "<data ".length() + 4);
             // skip the class info (first four hex chars)
-            final String hexString = objectReference.substring("<data ".length() + 4, objectReference.length()-1);
-            final ByteArrayOutputStream out = new ByteArrayOutputStream(hexString.length() / 2);
-            for (int i=0; i<hexString.length(); i+=2) {
-                out.write(java.lang.Integer.parseInt(hexString.substring(i, i+2), 16));
-            }
-            data = out.toByteArray();
+            data = Hex.decode(objectReference, "<data ".length() + 4, objectReference.length()-1);
         }
     }
 
+    /**
+     * Decodes the given object reference incrementally, without keeping it.
+     * This allows decoding very large, streamed values (see
+     * {@link com.tagtraum.japlscript.execution.ScriptExecutor#executeStreaming()})
+     * without ever creating a {@link String} copy of them.
+     * The {@link #getObjectReference() object reference} is re-created from the
+     * decoded bytes on demand.
+     *
+     * @param objectReference object reference
+     * @param applicationReference application reference
+     */
+    public Picture(final CharSequence objectReference, final String applicationReference) {
+        super(null, applicationReference);
+        if (isData(objectReference)) {
+            format = objectReference.subSequence("<data ".length(), "<data ".length() + 4).toString();
+            data = Hex.decode(objectReference, "<data ".length() + 4, objectReference.length()-1);
+        }
+        this.derivedObjectReference = true;
+    }
+
+    /**
+     * Indicates whether the given object reference is a data literal.
+     *
+     * @param objectReference object reference
+     * @return true, if the reference starts with <code>\u00abdata </code>
+     */
+    public static boolean isData(final CharSequence objectReference) {
+        return objectReference.length() > "<data ".length() + 4
+            && objectReference.subSequence(1, "<data ".length()).toString().equals("data ");
+    }
+
+    @Override
+    public String getObjectReference() {
+        if (!derivedObjectReference || data == null) return super.getObjectReference();
+        return "\u00abdata " + format + Hex.encode(data) + "\u00bb";
+    }
+
     /**
      * Null instance used for {@link Codec} implementation.
      *
@@ -7,6 +7,7 @@
 package com.tagtraum.japlscript.language;
 
 import com.tagtraum.japlscript.Chevron;
+import com.tagtraum.japlscript.execution.AppleScriptResultParser;
 import com.tagtraum.japlscript.execution.JaplScriptException;
 import com.tagtraum.japlscript.Codec;
 
@@ -36,17 +37,23 @@ public class Point implements Codec<java.awt.Point> {
 
     @Override
     public java.awt.Point _decode(final String objectReference, final String applicationReference) {
-        final String t = objectReference.trim();
-        if (t.isEmpty()) return null;
-        if (t.startsWith("{") && t.endsWith("}")) {
-            final String sub = t.substring(1, t.length() - 1);
-            final int comma = sub.indexOf(',');
-            final int x = java.lang.Integer.parseInt(sub.substring(0, comma).trim());
-            final int y = java.lang.Integer.parseInt(sub.substring(comma + 1).trim());
-            return new java.awt.Point(x, y);
-        } else {
-            throw new JaplScriptException("Failed to parse point: " + objectReference);
+        final AppleScriptResultParser parser = new AppleScriptResultParser(objectReference);
+        if (!parser.hasNext()) return null;
+        try {
+            if (parser.next() == AppleScriptResultParser.Token.LIST_START) {
+                final int[] values = new int[2];
+                for (int i = 0; i < values.length; i++) {
+                    parser.next();
+                    values[i] = parser.getInt();
+                }
+                if (parser.next() == AppleScriptResultParser.Token.LIST_END && !parser.hasNext()) {
+                    return new java.awt.Point(values[0], values[1]);
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new JaplScriptException("Failed to parse point: " + objectReference, e);
         }
+        throw new JaplScriptException("Failed to parse point: " + objectReference);
     }
 
     @Override
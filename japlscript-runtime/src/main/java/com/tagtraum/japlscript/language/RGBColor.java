@@ -7,6 +7,7 @@
 package com.tagtraum.japlscript.language;
 
 import com.tagtraum.japlscript.Chevron;
+import com.tagtraum.japlscript.execution.AppleScriptResultParser;
 import com.tagtraum.japlscript.execution.JaplScriptException;
 import com.tagtraum.japlscript.Codec;
 
@@ -38,18 +39,23 @@ public class RGBColor implements Codec<Color> {
 
     @Override
     public java.awt.Color _decode(final String objectReference, final String applicationReference) {
-        final String t = objectReference.trim();
-        if (t.isEmpty()) return null;
-        if (t.startsWith("{") && t.endsWith("}")) {
-            final String sub = t.substring(1, t.length() - 1);
-            final String[] parts = sub.split(",");
-            final int r = java.lang.Integer.parseInt(parts[0].trim());
-            final int g = java.lang.Integer.parseInt(parts[1].trim());
-            final int b = java.lang.Integer.parseInt(parts[2].trim());
-            return new java.awt.Color(r/65535f, g/65535f, b/65535f);
-        } else {
-            throw new JaplScriptException("Failed to parse RGBColor: " + objectReference);
+        final AppleScriptResultParser parser = new AppleScriptResultParser(objectReference);
+        if (!parser.hasNext()) return null;
+        try {
+            if (parser.next() == AppleScriptResultParser.Token.LIST_START) {
+                final int[] values = new int[3];
+                for (int i = 0; i < values.length; i++) {
+                    parser.next();
+                    values[i] = parser.getInt();
+                }
+                if (parser.next() == AppleScriptResultParser.Token.LIST_END && !parser.hasNext()) {
+                    return new java.awt.Color(values[0] / 65535f, values[1] / 65535f, values[2] / 65535f);
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new JaplScriptException("Failed to parse RGBColor: " + objectReference, e);
         }
+        throw new JaplScriptException("Failed to parse RGBColor: " + objectReference);
     }
 
     @Override
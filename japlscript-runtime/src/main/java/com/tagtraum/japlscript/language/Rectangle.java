@@ -7,6 +7,7 @@
 package com.tagtraum.japlscript.language;
 
 import com.tagtraum.japlscript.Chevron;
+import com.tagtraum.japlscript.execution.AppleScriptResultParser;
 import com.tagtraum.japlscript.execution.JaplScriptException;
 import com.tagtraum.japlscript.Codec;
 
@@ -41,19 +42,23 @@ public class Rectangle implements Codec<java.awt.Rectangle> {
 
     @Override
     public java.awt.Rectangle _decode(final String objectReference, final String applicationReference) {
-        final String t = objectReference.trim();
-        if (t.isEmpty()) return null;
-        if (t.startsWith("{") && t.endsWith("}")) {
-            final String sub = t.substring(1, t.length() - 1);
-            final String[] parts = sub.split(",");
-            final int x0 = java.lang.Integer.parseInt(parts[0].trim());
-            final int y0 = java.lang.Integer.parseInt(parts[1].trim());
-            final int x1 = java.lang.Integer.parseInt(parts[2].trim());
-            final int y1 = java.lang.Integer.parseInt(parts[3].trim());
-            return new java.awt.Rectangle(x0, y0, x1-x0, y1-y0);
-        } else {
-            throw new JaplScriptException("Failed to parse rectangle: " + objectReference);
+        final AppleScriptResultParser parser = new AppleScriptResultParser(objectReference);
+        if (!parser.hasNext()) return null;
+        try {
+            if (parser.next() == AppleScriptResultParser.Token.LIST_START) {
+                final int[] values = new int[4];
+                for (int i = 0; i < values.length; i++) {
+                    parser.next();
+                    values[i] = parser.getInt();
+                }
+                if (parser.next() == AppleScriptResultParser.Token.LIST_END && !parser.hasNext()) {
+                    return new java.awt.Rectangle(values[0], values[1], values[2] - values[0], values[3] - values[1]);
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new JaplScriptException("Failed to parse rectangle: " + objectReference, e);
         }
+        throw new JaplScriptException("Failed to parse rectangle: " + objectReference);
     }
 
     @Override
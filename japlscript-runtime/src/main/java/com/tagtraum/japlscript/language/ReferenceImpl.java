@@ -75,11 +75,12 @@ public class ReferenceImpl implements Reference, Codec<Reference> {
 
     @Override
     public String toString() {
-        return "[" + applicationReference + "]: " + objectReference;
+        return "[" + applicationReference + "]: " + getObjectReference();
     }
 
     @Override
     public int hashCode() {
+        final String objectReference = getObjectReference();
         if (objectReference == null) return 0;
         return objectReference.hashCode();
     }
@@ -90,8 +91,9 @@ public class ReferenceImpl implements Reference, Codec<Reference> {
         if (!(o instanceof ReferenceImpl)) return false;
 
         final ReferenceImpl reference = (ReferenceImpl) o;
+        final String objectReference = getObjectReference();
 
-        if (objectReference != null ? !objectReference.equals(reference.objectReference) : reference.objectReference != null)
+        if (objectReference != null ? !objectReference.equals(reference.getObjectReference()) : reference.getObjectReference() != null)
             return false;
         return applicationReference != null ? applicationReference.equals(reference.applicationReference) : reference.applicationReference == null;
     }
@@ -9,13 +9,10 @@ package com.tagtraum.japlscript.language;
 import com.tagtraum.japlscript.Chevron;
 import com.tagtraum.japlscript.Codec;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -33,61 +30,7 @@ public class Tdta extends ReferenceImpl {
     };
     private static final Tdta instance = new Tdta();
     private byte[] tdta = new byte[0];
-    private static final int DIM = 55;
-    private static final int[][] HEXMAP = new int[DIM][];
-
-    static {
-        //0 = 48
-        //9 = 57 - 48 = 9 
-        //A = 65 - 48 = 17
-        //F = 70 - 48 = 22
-        //a = 97 - 48 = 49
-        //f = 102 - 48 = 54
-        // fast char-pair to int conversion
-        for (int i=0 ; i<10; i++) {
-            HEXMAP[i] = new int[DIM];
-            for (int j=0; j<10; j++) {
-                HEXMAP[i][j] = java.lang.Integer.parseInt("" + i + "" + j, 16);
-            }
-            for (char j='A'; j<'G'; j++) {
-                HEXMAP[i][j-'0'] = java.lang.Integer.parseInt("" + i + "" + j, 16);
-            }
-            for (char j='a'; j<'g'; j++) {
-                HEXMAP[i][j-'0'] = java.lang.Integer.parseInt("" + i + "" + j, 16);
-            }
-        }
-        for (char i='A' ; i<'G'; i++) {
-            HEXMAP[i-'0'] = new int[DIM];
-            for (int j=0; j<10; j++) {
-                HEXMAP[i-'0'][j] = java.lang.Integer.parseInt(Character.toString(i) + j, 16);
-            }
-            for (char j='A'; j<'G'; j++) {
-                HEXMAP[i-'0'][j-'0'] = java.lang.Integer.parseInt(i + Character.toString(j),
-                    16);
-            }
-            for (char j='a'; j<'g'; j++) {
-                HEXMAP[i-'0'][j-'0'] = java.lang.Integer.parseInt(i + Character.toString(j), 16);
-            }
-        }
-        for (char i='a' ; i<'g'; i++) {
-            HEXMAP[i-'0'] = new int[DIM];
-            for (int j=0; j<10; j++) {
-                HEXMAP[i-'0'][j] = java.lang.Integer.parseInt(Character.toString(i) + j, 16);
-            }
-            for (char j='A'; j<'G'; j++) {
-                HEXMAP[i-'0'][j-'0'] = java.lang.Integer.parseInt(i + Character.toString(j),
-                    16);
-            }
-            for (char j='a'; j<'g'; j++) {
-                HEXMAP[i-'0'][j-'0'] = java.lang.Integer.parseInt(i + Character.toString(j),
-                    16);
-            }
-        }
-    }
-
-    private static int hexToInt(final char[] array, final int offset) {
-        return HEXMAP[array[offset]-'0'][array[offset+1]-'0'];
-    }
+    private boolean derivedObjectReference;
 
     private Tdta() {
         super(null, null);
@@ -116,26 +59,11 @@ public class Tdta extends ReferenceImpl {
     }
 
     private static String toHex(final byte[] buf) {
-        final StringBuilder sb = new StringBuilder(buf.length*2);
-        for (final byte b : buf) {
-            sb.append(String.format("%02X", b));
-        }
-        return sb.toString();
+        return Hex.encode(buf);
     }
 
     private static String toHex(final Path file) throws IOException {
-        final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
-        final StringBuilder sb = new StringBuilder((int)attributes.size()*2);
-        try (final InputStream in = Files.newInputStream(file)) {
-            final byte[] buf = new byte[64*1024];
-            int justRead;
-            while ((justRead = in.read(buf)) > 0) {
-                for (int i=0; i<justRead; i++) {
-                    sb.append(String.format("%02X", buf[i]));
-                }
-            }
-            return sb.toString();
-        }
+        return Hex.encode(Files.readAllBytes(file));
     }
 
     /**
@@ -145,32 +73,51 @@ public class Tdta extends ReferenceImpl {
      */
     public Tdta(final String objectReference, final String applicationReference) {
         super(objectReference, applicationReference);
-        // TODO: somehow reformat the tdta stuff and put it into the byte array
-        // probably skip <<data tdta, then read hex and then skip >>
         if (objectReference.startsWith("data tdta", 1)) {
-            final String hexString = objectReference.substring("<data tdta".length(), objectReference.length()-1);
-            final ByteArrayOutputStream out = new ByteArrayOutputStream(hexString.length() / 2);
-            /*
-            for (int i=0; i<hexString.length(); i+=2) {
-                try {
-                    out.write(java.lang.Integer.parseInt(hexString.substring(i, i+2), 16));
-                } catch (NumberFormatException e) {
-                    LOG.log(Level.SEVERE, e.toString(), e);
-                }
-            }
-            */
-            final char[] chars = hexString.toCharArray();
-            for (int i=0; i<hexString.length(); i+=2) {
-                try {
-                    out.write(hexToInt(chars, i));
-                } catch (NumberFormatException e) {
-                    LOG.log(Level.SEVERE, e.toString(), e);
-                }
+            try {
+                tdta = Hex.decode(objectReference, "<data tdta".length(), objectReference.length()-1);
+            } catch (NumberFormatException e) {
+                LOG.log(Level.SEVERE, e.toString(), e);
             }
-            tdta = out.toByteArray();
         }
     }
 
+    /**
+     * Decodes the given object reference incrementally, without keeping it.
+     * This allows decoding very large, streamed values (see
+     * {@link com.tagtraum.japlscript.execution.ScriptExecutor#executeStreaming()})
+     * without ever creating a {@link String} copy of them.
+     * The {@link #getObjectReference() object reference} is re-created from the
+     * decoded bytes on demand.
+     *
+     * @param objectReference object reference like <code>\u00abdata tdta0A0B\u00bb</code>
+     * @param applicationReference application reference
+     */
+    public Tdta(final CharSequence objectReference, final String applicationReference) {
+        super(null, applicationReference);
+        this.tdta = isTdta(objectReference)
+            ? Hex.decode(objectReference, "<data tdta".length(), objectReference.length()-1)
+            : new byte[0];
+        this.derivedObjectReference = true;
+    }
+
+    /**
+     * Indicates whether the given object reference is a tdta literal.
+     *
+     * @param objectReference object reference
+     * @return true, if the reference starts with <code>\u00abdata tdta</code>
+     */
+    public static boolean isTdta(final CharSequence objectReference) {
+        return objectReference.length() > "<data tdta".length()
+            && objectReference.subSequence(1, "<data tdta".length()).toString().equals("data tdta");
+    }
+
+    @Override
+    public String getObjectReference() {
+        if (!derivedObjectReference) return super.getObjectReference();
+        return "\u00abdata tdta" + toHex(tdta) + "\u00bb";
+    }
+
     public byte[] getTdta() {
         return tdta;
     }
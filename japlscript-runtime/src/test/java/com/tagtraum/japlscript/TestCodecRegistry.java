@@ -0,0 +1,160 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript;
+
+import com.tagtraum.japlscript.language.Boolean;
+import com.tagtraum.japlscript.language.Integer;
+import com.tagtraum.japlscript.language.ReferenceImpl;
+import com.tagtraum.japlscript.language.Text;
+import com.tagtraum.japlscript.language.TypeClass;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TestCodecRegistry.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestCodecRegistry {
+
+    private static Codec<String> textCodec(final String prefix) {
+        return new Codec<String>() {
+            @Override
+            public String _decode(final String objectReference, final String applicationReference) {
+                return prefix + objectReference;
+            }
+
+            @Override
+            public String _encode(final Object object) {
+                return prefix + object;
+            }
+
+            @Override
+            public Class<String> _getJavaType() {
+                return String.class;
+            }
+
+            @Override
+            public TypeClass[] _getAppleScriptTypes() {
+                return new TypeClass[0];
+            }
+        };
+    }
+
+    @Test
+    public void testExactLookup() {
+        final CodecRegistry registry = new CodecRegistry();
+        assertNull(registry.get(String.class));
+        registry.add(Text.getInstance());
+        registry.add(Integer.getInstance());
+        assertSame(Text.getInstance(), registry.get(String.class));
+        assertSame(Integer.getInstance(), registry.get(java.lang.Integer.TYPE));
+        assertNull(registry.get(java.lang.Integer.class));
+        assertNull(registry.get(CharSequence.class));
+    }
+
+    @Test
+    public void testAssignableLookup() {
+        final CodecRegistry registry = new CodecRegistry();
+        registry.add(Integer.getInstance());
+        registry.add(ReferenceImpl.getInstance());
+        assertSame(ReferenceImpl.getInstance(), registry.getAssignable(ReferenceImpl.class));
+        assertSame(ReferenceImpl.getInstance(), registry.getAssignable(Reference.class));
+        assertSame(Integer.getInstance(), registry.getAssignable(java.lang.Integer.TYPE));
+        // primitive types are not assignable from their wrappers
+        assertNull(registry.getAssignable(java.lang.Integer.class));
+        assertNull(registry.getAssignable(Object.class));
+    }
+
+    @Test
+    public void testFirstRegisteredWins() {
+        final CodecRegistry registry = new CodecRegistry();
+        final Codec<String> first = textCodec("first:");
+        final Codec<String> second = textCodec("second:");
+        registry.add(first);
+        registry.add(second);
+        assertSame(first, registry.get(String.class));
+        assertSame(first, registry.getAssignable(String.class));
+        registry.remove(first);
+        assertSame(second, registry.get(String.class));
+        assertSame(second, registry.getAssignable(String.class));
+        registry.add(first);
+        assertSame(second, registry.get(String.class));
+    }
+
+    @Test
+    public void testAddRemove() {
+        final CodecRegistry registry = new CodecRegistry();
+        registry.add(Text.getInstance());
+        assertSame(Text.getInstance(), registry.get(String.class));
+        assertTrue(registry.remove(Text.getInstance()));
+        assertFalse(registry.remove(Text.getInstance()));
+        assertNull(registry.get(String.class));
+        assertNull(registry.getAssignable(String.class));
+        assertTrue(registry.getCodecs().isEmpty());
+    }
+
+    @Test
+    public void testCodecsAreUnmodifiable() {
+        final CodecRegistry registry = new CodecRegistry();
+        registry.add(Text.getInstance());
+        final List<Codec<?>> codecs = registry.getCodecs();
+        assertThrows(UnsupportedOperationException.class, () -> codecs.add(Integer.getInstance()));
+        registry.add(Integer.getInstance());
+        // snapshots don't change
+        assertEquals(1, codecs.size());
+        assertEquals(2, registry.getCodecs().size());
+    }
+
+    @Test
+    public void testConcurrentRegistration() throws Exception {
+        final CodecRegistry registry = new CodecRegistry();
+        registry.add(Text.getInstance());
+        final ExecutorService executorService = Executors.newFixedThreadPool(4);
+        final AtomicBoolean stop = new AtomicBoolean();
+        final CountDownLatch started = new CountDownLatch(3);
+        try {
+            final List<Future<?>> readers = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                readers.add(executorService.submit(() -> {
+                    started.countDown();
+                    while (!stop.get()) {
+                        // Text is never removed, Boolean comes and goes
+                        assertSame(Text.getInstance(), registry.get(String.class));
+                        final Codec<?> codec = registry.get(java.lang.Boolean.TYPE);
+                        assertTrue(codec == null || codec == Boolean.getInstance());
+                    }
+                    return null;
+                }));
+            }
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            for (int i = 0; i < 1000; i++) {
+                registry.add(Boolean.getInstance());
+                assertSame(Boolean.getInstance(), registry.get(java.lang.Boolean.TYPE));
+                registry.remove(Boolean.getInstance());
+                assertNull(registry.get(java.lang.Boolean.TYPE));
+            }
+            stop.set(true);
+            for (final Future<?> reader : readers) {
+                reader.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            stop.set(true);
+            executorService.shutdownNow();
+        }
+    }
+}
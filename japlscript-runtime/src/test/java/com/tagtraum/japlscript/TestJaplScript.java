@@ -1,6 +1,7 @@
 package com.tagtraum.japlscript;
 
 import com.tagtraum.japlscript.execution.Aspect;
+import com.tagtraum.japlscript.execution.ChunkedCharSequence;
 import com.tagtraum.japlscript.execution.JaplScriptException;
 import com.tagtraum.japlscript.execution.ScriptExecutor;
 import com.tagtraum.japlscript.execution.Session;
@@ -11,12 +12,14 @@ import org.junit.jupiter.api.Test;
 import java.awt.*;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.lang.reflect.Array;
 import java.nio.file.Paths;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.List;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -86,6 +89,14 @@ public class TestJaplScript {
         assertNull(app.getObjectReference());
     }
 
+    @Test
+    public void testGetApplicationWithProperties() {
+        final NamedApplication app = JaplScript.getApplication(NamedApplication.class, "MyNamedApp");
+        final Property name = JaplScript.getProperty(app, NamedApplication.CLASS, "name");
+        assertNotNull(name);
+        assertEquals("pnam", name.getCode());
+    }
+
     @Test
     public void testGetScriptingAddition() {
         final Application app = JaplScript.getScriptingAddition(Application.class, "MyApp");
@@ -93,6 +104,37 @@ public class TestJaplScript {
         assertNull(app.getObjectReference());
     }
 
+    @Test
+    public void testWarmUp() throws ExecutionException, InterruptedException {
+        final java.time.Duration duration = JaplScript.warmUp(Application.class).get();
+        assertFalse(duration.isNegative());
+        final Application app = JaplScript.getApplication(Application.class, "MyApp");
+        assertEquals("application \"MyApp\"", app.getApplicationReference());
+    }
+
+    @Test
+    public void testWarmUpTasks() throws ExecutionException, InterruptedException {
+        final AtomicInteger taskCount = new AtomicInteger();
+        final Executor executor = task -> {
+            taskCount.incrementAndGet();
+            task.run();
+        };
+        // failing tasks, like a broken interface or a missing osacompile, must not fail the future
+        final java.time.Duration duration = JaplScript.warmUp(
+            Arrays.asList(Application.class, BrokenApplication.class),
+            Collections.singletonList("return 1"),
+            executor).get();
+        assertNotNull(duration);
+        // native probing + 2 interfaces + 1 script
+        assertEquals(4, taskCount.get());
+    }
+
+    /**
+     * Application without APPLICATION_CLASSES.
+     */
+    public interface BrokenApplication extends Reference {
+    }
+
     /**
      * Test application.
      */
@@ -103,6 +145,22 @@ public class TestJaplScript {
         Set<Class<?>> APPLICATION_CLASSES = Collections.singleton(Application.class);
     }
 
+    /**
+     * Test application with a property.
+     */
+    @Code("capp")
+    @Name("application")
+    public interface NamedApplication extends Reference {
+        TypeClass CLASS = new TypeClass("application", "\u00abclass capp\u00bb", NamedApplication.class, null);
+        Set<Class<?>> APPLICATION_CLASSES = Collections.singleton(NamedApplication.class);
+
+        @Kind("property")
+        @Name("name")
+        @Code("pnam")
+        @Type("text")
+        String getName();
+    }
+
     @Test
     public void testCastNullReference() {
         final String result = JaplScript.cast(String.class, null);
@@ -121,6 +179,17 @@ public class TestJaplScript {
         assertArrayEquals(new double[]{50.961045, 6.956445}, result);
     }
 
+    @Test
+    public void testCastCharSequence() {
+        final ChunkedCharSequence chars = new ChunkedCharSequence();
+        final char[] list = "{\"a, b\", \"c\"}".toCharArray();
+        chars.append(list, 0, list.length);
+        assertArrayEquals(new String[]{"a, b", "c"}, JaplScript.cast(String[].class, chars, null));
+        assertArrayEquals(new int[]{50, 6}, JaplScript.cast(int[].class, new StringBuilder("{50,6}"), null));
+        assertEquals("hallo", JaplScript.cast(String.class, new StringBuilder("\"hallo\""), null));
+        chars.release();
+    }
+
     @Test
     public void testCastIntList() {
         final int[] result = JaplScript.cast(new int[0].getClass(), new ReferenceImpl("{50,6}", null));
@@ -133,6 +202,61 @@ public class TestJaplScript {
         assertArrayEquals(new boolean[]{true, false}, result);
     }
 
+    @Test
+    public void testCastNestedList() {
+        assertArrayEquals(new int[][]{{1, 2}, {3}, {}}, JaplScript.cast(int[][].class, new ReferenceImpl("{{1, 2}, {3}, {}}", null)));
+        assertArrayEquals(new String[][]{{"a, {b}"}, {"c", "d"}},
+            JaplScript.cast(String[][].class, new ReferenceImpl("{{\"a, {b}\"}, {\"c\", \"d\"}}", null)));
+        assertArrayEquals(new int[][][]{{{1}, {2, 3}}}, JaplScript.cast(int[][][].class, new StringBuilder("{{{1}, {2, 3}}}"), null));
+        assertArrayEquals(new int[]{1, 2, 3}, JaplScript.cast(int[].class, new ReferenceImpl("1, 2, 3", null)));
+    }
+
+    @Test
+    public void testCastDeeplyNestedListInLinearTime() {
+        final int depth = 200;
+        final Class<?> arrayClass = Array.newInstance(int.class, new int[depth]).getClass();
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < depth; i++) sb.append("{");
+        sb.append("1, 2");
+        for (int i = 0; i < depth; i++) sb.append("}");
+        final AtomicInteger charAtCalls = new AtomicInteger();
+        final CharSequence chars = new CharSequence() {
+            @Override
+            public int length() {
+                return sb.length();
+            }
+
+            @Override
+            public char charAt(final int index) {
+                charAtCalls.incrementAndGet();
+                return sb.charAt(index);
+            }
+
+            @Override
+            public CharSequence subSequence(final int start, final int end) {
+                return sb.subSequence(start, end);
+            }
+        };
+        Object array = JaplScript.cast(arrayClass, chars, null);
+        for (int i = 0; i < depth - 1; i++) {
+            assertEquals(1, Array.getLength(array));
+            array = Array.get(array, 0);
+        }
+        assertArrayEquals(new int[]{1, 2}, (int[]) array);
+        // nested lists are not scanned again at every depth
+        assertTrue(charAtCalls.get() < 8 * sb.length(), "charAt calls: " + charAtCalls.get() + ", length: " + sb.length());
+    }
+
+    @Test
+    public void testCastNestedRecord() {
+        final Map<String, Reference> result = JaplScript.cast(Map.class, new ReferenceImpl("{name:\"a, b\", |my key|:{1, {2}}, props:{x:1}}", "app"));
+        assertEquals(new HashSet<>(Arrays.asList("name", "|my key|", "props")), result.keySet());
+        assertEquals("\"a, b\"", result.get("name").getObjectReference());
+        assertEquals("{1, {2}}", result.get("|my key|").getObjectReference());
+        assertEquals("{x:1}", result.get("props").getObjectReference());
+        assertEquals("app", result.get("props").getApplicationReference());
+    }
+
     @Test
     public void testCastRecord() {
         final Map<String, Object> result = JaplScript.cast(Map.class, new ReferenceImpl("{name:\"hendrik\", index:3, creation date:date \"Sunday, January 7, 2007 at 23:32:16\", icon:missing value}", null));
@@ -312,6 +436,62 @@ public class TestJaplScript {
         assertArrayEquals(new double[]{1.3, 2.3}, result);
     }
 
+    @Test
+    public void testCastByteArrayObjectReference() {
+        final byte[] result = JaplScript.cast(byte[].class, new ReferenceImpl("{1, -128, 127}", null));
+        assertArrayEquals(new byte[]{1, -128, 127}, result);
+    }
+
+    @Test
+    public void testCastCharArrayObjectReference() {
+        final char[] result = JaplScript.cast(char[].class, new ReferenceImpl("{\"a\", \"b\"}", null));
+        assertArrayEquals(new char[]{'a', 'b'}, result);
+    }
+
+    @Test
+    public void testCastIntArrayBadElement() {
+        assertThrows(JaplScriptException.class, () -> JaplScript.cast(int[].class, new ReferenceImpl("{1, missing value}", null)));
+        assertThrows(JaplScriptException.class, () -> JaplScript.cast(int[].class, new StringBuilder("{1, 2.5}"), null));
+    }
+
+    @Test
+    public void testCastIntArrayWithCustomCodec() {
+        final Codec<java.lang.Integer> doubling = new Codec<java.lang.Integer>() {
+            @Override
+            public java.lang.Integer _decode(final String objectReference, final String applicationReference) {
+                return java.lang.Integer.parseInt(objectReference.trim()) * 2;
+            }
+
+            @Override
+            public String _encode(final Object object) {
+                return object.toString();
+            }
+
+            @Override
+            public Class<java.lang.Integer> _getJavaType() {
+                return java.lang.Integer.TYPE;
+            }
+
+            @Override
+            public TypeClass[] _getAppleScriptTypes() {
+                return new TypeClass[0];
+            }
+        };
+        final List<Codec<?>> originalTypes = new ArrayList<>(JaplScript.getTypes());
+        try {
+            // custom codecs take precedence over the fast path for primitive arrays
+            JaplScript.removeType(com.tagtraum.japlscript.language.Integer.getInstance());
+            JaplScript.addType(doubling);
+            assertArrayEquals(new int[]{2, 4}, JaplScript.cast(int[].class, new ReferenceImpl("{1, 2}", null)));
+        } finally {
+            for (final Codec<?> t : JaplScript.getTypes()) {
+                JaplScript.removeType(t);
+            }
+            originalTypes.forEach(JaplScript::addType);
+        }
+        assertArrayEquals(new int[]{1, 2}, JaplScript.cast(int[].class, new ReferenceImpl("{1, 2}", null)));
+    }
+
     @Test
     public void testCastBooleanArrayObjectReference() {
         final boolean[] result = JaplScript.cast(boolean[].class, new ReferenceImpl("{true, false}", null));
@@ -0,0 +1,109 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript;
+
+import com.tagtraum.japlscript.execution.JaplScriptException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TestLazyList.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestLazyList {
+
+    @Test
+    public void testIntegers() {
+        final LazyList<Integer> list = new LazyList<>(Integer.class, "{1, 2, 3}", null);
+        assertEquals(3, list.size());
+        assertEquals(Integer.class, list.getElementType());
+        assertTrue(list instanceof RandomAccess);
+        assertEquals(0, list.getDecodedCount());
+        assertEquals(Integer.valueOf(2), list.get(1));
+        assertEquals(1, list.getDecodedCount());
+        assertEquals(Arrays.asList(1, 2, 3), list);
+        assertEquals(3, list.getDecodedCount());
+    }
+
+    @Test
+    public void testStrings() {
+        final LazyList<String> list = new LazyList<>(String.class, "{\"a, b\", \"{c}\", \"\"}", null);
+        assertEquals(Arrays.asList("a, b", "{c}", ""), list);
+    }
+
+    @Test
+    public void testReferences() {
+        final String applicationReference = "application \"Music\"";
+        final LazyList<Reference> list = new LazyList<>(Reference.class,
+            "{track id 1 of playlist id 2, track id 3 of playlist id 2}", applicationReference);
+        assertEquals(2, list.size());
+        final Reference reference = list.get(1);
+        assertEquals("track id 3 of playlist id 2", reference.getObjectReference());
+        assertEquals(applicationReference, reference.getApplicationReference());
+        assertSame(reference, list.get(1));
+        assertEquals(1, list.getDecodedCount());
+    }
+
+    @Test
+    public void testNestedLists() {
+        final LazyList<int[]> list = new LazyList<>(int[].class, "{{1, 2}, {}, {3}}", null);
+        assertEquals(3, list.size());
+        assertArrayEquals(new int[]{3}, list.get(2));
+        assertArrayEquals(new int[0], list.get(1));
+        assertArrayEquals(new int[]{1, 2}, list.get(0));
+    }
+
+    @Test
+    public void testEmpty() {
+        assertEquals(Collections.emptyList(), new LazyList<>(Integer.class, "{}", null));
+        assertEquals(Collections.emptyList(), new LazyList<>(Integer.class, "", null));
+        assertEquals(Collections.emptyList(), new LazyList<>(Integer.class, null, null));
+    }
+
+    @Test
+    public void testIndexOutOfBounds() {
+        final LazyList<Integer> list = new LazyList<>(Integer.class, "{1}", null);
+        assertThrows(IndexOutOfBoundsException.class, () -> list.get(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> list.get(-1));
+    }
+
+    @Test
+    public void testImmutable() {
+        final List<Integer> list = new LazyList<>(Integer.class, "{1}", null);
+        assertThrows(UnsupportedOperationException.class, () -> list.add(2));
+        assertThrows(UnsupportedOperationException.class, () -> list.remove(0));
+    }
+
+    @Test
+    public void testMalformed() {
+        assertThrows(JaplScriptException.class, () -> new LazyList<>(Integer.class, "{1, {2}", null));
+    }
+
+    @Test
+    public void testLargeListIsIndexedOnce() {
+        final StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < 50000; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append("track id ").append(i).append(" of playlist id 2");
+        }
+        sb.append('}');
+        final LazyList<Reference> list = new LazyList<>(Reference.class, sb.toString(), "application \"Music\"");
+        assertEquals(50000, list.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals("track id " + i + " of playlist id 2", list.get(i).getObjectReference());
+        }
+        assertEquals("track id 49999 of playlist id 2", list.get(49999).getObjectReference());
+        assertEquals(11, list.getDecodedCount());
+    }
+}
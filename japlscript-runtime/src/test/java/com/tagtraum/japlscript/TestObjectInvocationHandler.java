@@ -9,15 +9,24 @@ package com.tagtraum.japlscript;
 import com.tagtraum.japlscript.execution.Aspect;
 import com.tagtraum.japlscript.execution.JaplScriptException;
 import com.tagtraum.japlscript.execution.ScriptExecutor;
+import com.tagtraum.japlscript.execution.ScriptExecutorProvider;
 import com.tagtraum.japlscript.execution.Session;
 import com.tagtraum.japlscript.language.ReferenceImpl;
 import com.tagtraum.japlscript.language.TypeClass;
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -198,6 +207,16 @@ public class TestObjectInvocationHandler {
         assertEquals("Finder", name);
     }
 
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    public void testGetPropertyAsync(final boolean preferOsascript) throws Throwable {
+        ScriptExecutor.setPreferOsascript(preferOsascript);
+        final Finder finder = JaplScript.getApplication(Finder.class, "Finder");
+        final ObjectInvocationHandler handler = new ObjectInvocationHandler(finder);
+        final String name = (String) handler.invokeAsync(Finder.class.getMethod("getName")).get(30, TimeUnit.SECONDS);
+        assertEquals("Finder", name);
+    }
+
     @ParameterizedTest
     @ValueSource(booleans = {true, false})
     public void testSetProperty(final boolean preferOsascript) throws Throwable {
@@ -268,6 +287,58 @@ public class TestObjectInvocationHandler {
         }
     }
 
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    public void testGetElementsAsList(final boolean preferOsascript) throws Throwable {
+        ScriptExecutor.setPreferOsascript(preferOsascript);
+        final Finder finder = JaplScript.getApplication(Finder.class, "Finder");
+        final ObjectInvocationHandler handler = new ObjectInvocationHandler(finder);
+        final List<Item> items = (List<Item>) handler.invoke(null, Finder.class.getMethod("getItemList", String.class), new Object[]{null});
+        assertTrue(items instanceof LazyList);
+        final int count = (int) handler.invoke(null, Finder.class.getMethod("countItems", String.class), new Object[]{null});
+        assertEquals(count, items.size());
+        assertEquals(0, ((LazyList<Item>) items).getDecodedCount());
+        for (final Item item : items) {
+            final String objectReference = item.getObjectReference();
+            if (objectReference.startsWith("folder") || objectReference.startsWith("«class cfol»")) {
+                assertTrue(item instanceof Folder);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    public void testGetElementsAsListCached(final boolean preferOsascript) throws Throwable {
+        ScriptExecutor.setPreferOsascript(preferOsascript);
+        final ReadCache readCache = new ReadCache(1, TimeUnit.MINUTES, 10);
+        JaplScript.setReadCache(readCache);
+        try {
+            final Finder finder = JaplScript.getApplication(Finder.class, "Finder");
+            final String of = " of " + finder.getApplicationReference();
+            readCache.put(finder.getApplicationReference(), finder.getObjectReference(), "return items",
+                "{document file \"a.txt\"" + of + ", folder \"b\"" + of + ", document file \"c.txt\"" + of + "}");
+            final ObjectInvocationHandler handler = new ObjectInvocationHandler(finder);
+            final LazyList<Item> items = (LazyList<Item>) handler.invoke(null, Finder.class.getMethod("getItemList", String.class), new Object[]{null});
+            assertEquals(3, items.size());
+            assertEquals(Item.class, items.getElementType());
+            assertEquals(0, items.getDecodedCount());
+
+            final Item folder = items.get(1);
+            assertTrue(folder instanceof Folder);
+            assertEquals("folder \"b\"" + of, folder.getObjectReference());
+            assertEquals(1, items.getDecodedCount());
+            assertSame(folder, items.get(1));
+            assertEquals(1, items.getDecodedCount());
+
+            final List<Item> asyncItems = (List<Item>) handler.invokeAsync(Finder.class.getMethod("getItemList", String.class), new Object[]{null})
+                .get(30, TimeUnit.SECONDS);
+            assertEquals("document file \"c.txt\"" + of, asyncItems.get(2).getObjectReference());
+            assertEquals(2, readCache.getHitCount());
+        } finally {
+            JaplScript.setReadCache(null);
+        }
+    }
+
     @ParameterizedTest
     @ValueSource(booleans = {true, false})
     public void testGetElementsWith(final boolean preferOsascript) throws Throwable {
@@ -337,6 +408,117 @@ public class TestObjectInvocationHandler {
         assertEquals("item id 0", item.getObjectReference());
     }
 
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    public void testGetElementWithIdAsync(final boolean preferOsascript) throws Throwable {
+        ScriptExecutor.setPreferOsascript(preferOsascript);
+        final Finder finder = JaplScript.getApplication(Finder.class, "Finder");
+        final ObjectInvocationHandler handler = new ObjectInvocationHandler(finder);
+        handler.setReduceScriptExecutions(true);
+        final Item item = (Item) handler.invokeAsync(Finder.class.getMethod("getItem", Id.class), new Id(0)).get();
+        assertEquals("item id 0", item.getObjectReference());
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    public void testGetElementWithIdUnreducedAsync(final boolean preferOsascript) throws Throwable {
+        ScriptExecutor.setPreferOsascript(preferOsascript);
+        final Finder finder = JaplScript.getApplication(Finder.class, "Finder");
+        final ObjectInvocationHandler handler = new ObjectInvocationHandler(finder);
+        handler.setReduceScriptExecutions(false);
+        // we expect that there is no item with id = 0
+        final ExecutionException e = assertThrows(ExecutionException.class, () ->
+            handler.invokeAsync(Finder.class.getMethod("getItem", Id.class), new Id(0)).get(30, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof JaplScriptException);
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    public void testCommandAsyncInSession(final boolean preferOsascript) throws Throwable {
+        ScriptExecutor.setPreferOsascript(preferOsascript);
+        final Finder finder = JaplScript.getApplication(Finder.class, "Finder");
+        final ObjectInvocationHandler handler = new ObjectInvocationHandler(finder);
+        final Session session = JaplScript.startSession();
+        try {
+            final Reference objRef = new ReferenceImpl("\"some String\"", null);
+            final Boolean exists = (Boolean) handler.invokeAsync(Finder.class.getMethod("exists",
+                Reference.class), objRef).get(30, TimeUnit.SECONDS);
+            assertFalse(exists);
+            // implicit commit clears the session
+            assertEquals(0, session.getScript().length());
+        } finally {
+            session.commit();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    public void testGetPropertyCached(final boolean preferOsascript) throws Throwable {
+        ScriptExecutor.setPreferOsascript(preferOsascript);
+        final ReadCache readCache = new ReadCache(1, TimeUnit.MINUTES, 10);
+        JaplScript.setReadCache(readCache);
+        try {
+            final Finder finder = JaplScript.getApplication(Finder.class, "Finder");
+            final ObjectInvocationHandler handler = new ObjectInvocationHandler(finder);
+            assertEquals("Finder", handler.invoke(null, Finder.class.getMethod("getName"), null));
+            assertEquals("Finder", handler.invoke(null, Finder.class.getMethod("getName"), null));
+            assertEquals("Finder", handler.invokeAsync(Finder.class.getMethod("getName")).get(30, TimeUnit.SECONDS));
+            assertEquals(1, readCache.getMissCount());
+            assertEquals(2, readCache.getHitCount());
+        } finally {
+            JaplScript.setReadCache(null);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    public void testGetPropertiesInBatch(final boolean preferOsascript) throws Throwable {
+        ScriptExecutor.setPreferOsascript(preferOsascript);
+        final Finder finder = JaplScript.getApplication(Finder.class, "Finder");
+        final ObjectInvocationHandler handler = new ObjectInvocationHandler(finder);
+        handler.setReduceScriptExecutions(false);
+        final Session session = JaplScript.startSession();
+        try {
+            session.setBatch(true);
+            final CompletableFuture<Object> name = handler.invokeAsync(Finder.class.getMethod("getName"));
+            final CompletableFuture<Object> item = handler.invokeAsync(Finder.class.getMethod("getItem", Id.class), new Id(0));
+            final CompletableFuture<Object> again = handler.invokeAsync(Finder.class.getMethod("getName"));
+            assertFalse(name.isDone());
+            session.commit();
+            assertEquals("Finder", name.get(30, TimeUnit.SECONDS));
+            // one failure does not affect the other calls
+            final ExecutionException e = assertThrows(ExecutionException.class, () -> item.get(30, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof JaplScriptException);
+            assertEquals("Finder", again.get(30, TimeUnit.SECONDS));
+        } finally {
+            session.reset();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    public void testSetPropertyInCompiledSession(final boolean preferOsascript) throws Throwable {
+        ScriptExecutor.setPreferOsascript(preferOsascript);
+        final Finder finder = JaplScript.getApplication(Finder.class, "Finder");
+        final ObjectInvocationHandler handler = new ObjectInvocationHandler(
+            new ReferenceImpl("file \"some.txt\" of desktop", finder.getApplicationReference()));
+        final Session session = JaplScript.startSession();
+        try {
+            session.setCompile(true);
+            handler.invoke(null, File.class.getMethod("setName", String.class), new Object[]{"first"});
+            handler.invoke(null, File.class.getMethod("setName", String.class), new Object[]{"second"});
+            // values are passed as arguments, so that the compiled script can be re-used
+            assertEquals(Arrays.asList("first", "second"), session.getArguments());
+            final String script = session.getScript();
+            assertTrue(script.startsWith("on run argv"), script);
+            assertTrue(script.contains("to (item 1 of argv)"), script);
+            assertTrue(script.contains("to (item 2 of argv)"), script);
+            assertFalse(script.contains("first"), script);
+        } finally {
+            session.reset();
+        }
+    }
+
     @ParameterizedTest
     @ValueSource(booleans = {true, false})
     public void testGetElementWithIdUnreduced(final boolean preferOsascript) {
@@ -402,6 +584,91 @@ public class TestObjectInvocationHandler {
         });
     }
 
+    @Test
+    public void testImplicitCommitKeepsSessionSettings() throws Throwable {
+        final DeadlineRecordingProvider provider = new DeadlineRecordingProvider();
+        final Reference finder = new ReferenceImpl("application \"Finder\"", "application \"Finder\"");
+        final ObjectInvocationHandler handler = new ObjectInvocationHandler(finder);
+        final Session session = JaplScript.startSession();
+        try {
+            session.setScriptExecutorProvider(provider);
+            session.setDeadline(5, TimeUnit.SECONDS);
+            session.add("set x to 1");
+            // each call with a return value forces an implicit commit
+            assertEquals("1", handler.executeAppleScript(finder, "return \"1\"", String.class));
+            assertEquals("2", handler.executeAppleScript(finder, "return \"2\"", String.class));
+            assertEquals("3", handler.executeAppleScriptAsync(finder, "return \"3\"", String.class).get(30, TimeUnit.SECONDS));
+            assertEquals(0, session.getScript().length());
+            assertEquals(5000, session.getDeadlineMillis());
+            assertSame(provider, session.getScriptExecutorProvider());
+            assertEquals(Arrays.asList(5000L, 5000L), provider.deadlines);
+            assertEquals(Arrays.asList(5000L), provider.asyncDeadlines);
+        } finally {
+            session.reset();
+            session.commit();
+        }
+    }
+
+    @Test
+    public void testSetPropertyInCompiledSessionWithoutArgumentSupport() throws Throwable {
+        final Finder finder = JaplScript.getApplication(Finder.class, "Finder");
+        final ObjectInvocationHandler handler = new ObjectInvocationHandler(
+            new ReferenceImpl("file \"some.txt\" of desktop", finder.getApplicationReference()));
+        final Session session = JaplScript.startSession();
+        try {
+            session.setCompile(true);
+            // its executors don't support arguments
+            session.setScriptExecutorProvider(new DeadlineRecordingProvider());
+            handler.invoke(null, File.class.getMethod("setName", String.class), new Object[]{"first"});
+            assertTrue(session.getArguments().isEmpty());
+            final String script = session.getScript();
+            assertFalse(script.contains("argv"), script);
+            assertTrue(script.contains("\"first\""), script);
+        } finally {
+            session.reset();
+            session.commit();
+        }
+    }
+
+    /**
+     * Provides executors that record their deadline and return the last returned string literal.
+     */
+    private static class DeadlineRecordingProvider implements ScriptExecutorProvider {
+
+        private final List<Long> deadlines = new CopyOnWriteArrayList<>();
+        private final List<Long> asyncDeadlines = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String getName() {
+            return "deadline-recording";
+        }
+
+        @Override
+        public int getPriority() {
+            return 0;
+        }
+
+        @Override
+        public ScriptExecutor newInstance() {
+            return new ScriptExecutor() {
+                @Override
+                protected CompletableFuture<String> executeAsyncImpl(final Executor executor) {
+                    // executeImpl() runs on a pool thread, which does not know the session
+                    asyncDeadlines.add(getEffectiveDeadlineMillis());
+                    return super.executeAsyncImpl(executor);
+                }
+
+                @Override
+                protected String executeImpl() {
+                    if (Session.get() != null) deadlines.add(getEffectiveDeadlineMillis());
+                    final String script = getScript().toString();
+                    final int start = script.lastIndexOf("return \"") + "return ".length();
+                    return script.substring(start, script.indexOf('"', start + 1) + 1);
+                }
+            };
+        }
+    }
+
     /**
      * Stripped down Finder
      */
@@ -469,6 +736,14 @@ public class TestObjectInvocationHandler {
         @com.tagtraum.japlscript.Kind("element")
         Item[] getItems(String filter);
 
+        /**
+         * @param filter AppleScript filter clause without the leading "whose" or "where"
+         * @return a filtered, lazily decoded list of {@link Item}s
+         */
+        @com.tagtraum.japlscript.Type("item")
+        @com.tagtraum.japlscript.Kind("element")
+        java.util.List<Item> getItemList(String filter);
+
         /**
          * @param index index into the element list (zero-based)
          * @return the {@link Item} with at the requested index
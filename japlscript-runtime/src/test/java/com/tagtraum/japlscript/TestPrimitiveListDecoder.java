@@ -0,0 +1,122 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript;
+
+import com.tagtraum.japlscript.execution.AppleScriptResultParser;
+import com.tagtraum.japlscript.execution.JaplScriptException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TestPrimitiveListDecoder.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestPrimitiveListDecoder {
+
+    private static Object decode(final Class<?> componentType, final String list) {
+        final AppleScriptResultParser parser = new AppleScriptResultParser(list);
+        parser.next();
+        return PrimitiveListDecoder.decode(componentType, parser);
+    }
+
+    @Test
+    public void testInts() {
+        assertArrayEquals(new int[]{1, -2, Integer.MAX_VALUE}, (int[]) decode(Integer.TYPE, "{1, -2, 2147483647}"));
+        assertThrows(JaplScriptException.class, () -> decode(Integer.TYPE, "{2147483648}"));
+        assertThrows(JaplScriptException.class, () -> decode(Integer.TYPE, "{1.5}"));
+    }
+
+    @Test
+    public void testLongs() {
+        assertArrayEquals(new long[]{1, Long.MIN_VALUE}, (long[]) decode(Long.TYPE, "{1, -9223372036854775808}"));
+    }
+
+    @Test
+    public void testShorts() {
+        assertArrayEquals(new short[]{1, Short.MIN_VALUE}, (short[]) decode(Short.TYPE, "{1, -32768}"));
+        assertThrows(JaplScriptException.class, () -> decode(Short.TYPE, "{32768}"));
+    }
+
+    @Test
+    public void testBytes() {
+        assertArrayEquals(new byte[]{1, -128, 127}, (byte[]) decode(Byte.TYPE, "{1, -128, 127}"));
+        assertThrows(JaplScriptException.class, () -> decode(Byte.TYPE, "{128}"));
+    }
+
+    @Test
+    public void testDoubles() {
+        assertArrayEquals(new double[]{50.961045, -6.956445, 1.0E20, 2},
+            (double[]) decode(Double.TYPE, "{50.961045, -6.956445, 1.0E+20, 2}"));
+        assertThrows(JaplScriptException.class, () -> decode(Double.TYPE, "{missing value}"));
+    }
+
+    @Test
+    public void testFloats() {
+        assertArrayEquals(new float[]{50.961045f, -0.5f}, (float[]) decode(Float.TYPE, "{50.961045, -0.5}"));
+    }
+
+    @Test
+    public void testBooleans() {
+        assertArrayEquals(new boolean[]{true, false, true}, (boolean[]) decode(Boolean.TYPE, "{true, false, TRUE}"));
+    }
+
+    @Test
+    public void testChars() {
+        assertArrayEquals(new char[]{'a', '"', '\n'}, (char[]) decode(Character.TYPE, "{\"a\", \"\\\"\", \"\\n\"}"));
+        assertThrows(JaplScriptException.class, () -> decode(Character.TYPE, "{\"ab\"}"));
+        assertThrows(JaplScriptException.class, () -> decode(Character.TYPE, "{a}"));
+    }
+
+    @Test
+    public void testEmpty() {
+        assertArrayEquals(new int[0], (int[]) decode(Integer.TYPE, "{}"));
+    }
+
+    @Test
+    public void testRecordValues() {
+        assertArrayEquals(new int[]{1, 2}, (int[]) decode(Integer.TYPE, "{a:1, b:2}"));
+    }
+
+    @Test
+    public void testNestedList() {
+        assertThrows(JaplScriptException.class, () -> decode(Integer.TYPE, "{1, {2}}"));
+    }
+
+    @Test
+    public void testStopsAtEndOfList() {
+        final AppleScriptResultParser parser = new AppleScriptResultParser("{{1, 2}, {3}}");
+        parser.next();
+        parser.next();
+        assertArrayEquals(new int[]{1, 2}, (int[]) PrimitiveListDecoder.decode(Integer.TYPE, parser));
+        assertEquals(1, parser.getDepth());
+        parser.next();
+        assertArrayEquals(new int[]{3}, (int[]) PrimitiveListDecoder.decode(Integer.TYPE, parser));
+    }
+
+    @Test
+    public void testNotPrimitive() {
+        assertThrows(IllegalArgumentException.class, () -> decode(Integer.class, "{1}"));
+    }
+
+    @Test
+    public void testLargeList() {
+        final int count = 100000;
+        final StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(i * 31);
+        }
+        sb.append('}');
+        final int[] ints = (int[]) decode(Integer.TYPE, sb.toString());
+        assertEquals(count, ints.length);
+        for (int i = 0; i < count; i++) {
+            assertEquals(i * 31, ints[i]);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * =================================================
+ * Copyright 2021 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.japlscript;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test {@link ReadCache}.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestReadCache {
+
+    private static final String MUSIC = "application \"Music\"";
+    private static final String FINDER = "application \"Finder\"";
+    private static final String TRACK = "track id 5 of library playlist 1";
+
+    @Test
+    public void testBadArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new ReadCache(0, TimeUnit.SECONDS, 10));
+        assertThrows(IllegalArgumentException.class, () -> new ReadCache(1, TimeUnit.SECONDS, 0));
+    }
+
+    @Test
+    public void testDefaults() {
+        final ReadCache cache = new ReadCache();
+        assertEquals(ReadCache.DEFAULT_TTL_MILLIS, cache.getTtlMillis());
+        assertEquals(ReadCache.DEFAULT_MAX_SIZE, cache.getMaxSize());
+    }
+
+    @Test
+    public void testHitAndMiss() {
+        final ReadCache cache = new ReadCache(1, TimeUnit.MINUTES, 10);
+        assertNull(cache.get(MUSIC, "return name of " + TRACK));
+        cache.put(MUSIC, TRACK, "return name of " + TRACK, "\"Song\"");
+        // normalized
+        assertEquals("\"Song\"", cache.get(MUSIC, "  return name of " + TRACK + "\r\n"));
+        // different application
+        assertNull(cache.get(FINDER, "return name of " + TRACK));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.getSize());
+    }
+
+    @Test
+    public void testExpiry() throws InterruptedException {
+        final ReadCache cache = new ReadCache(10, TimeUnit.MILLISECONDS, 10);
+        cache.put(MUSIC, TRACK, "return name of " + TRACK, "\"Song\"");
+        Thread.sleep(50);
+        assertNull(cache.get(MUSIC, "return name of " + TRACK));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() {
+        final ReadCache cache = new ReadCache(1, TimeUnit.MINUTES, 2);
+        cache.put(MUSIC, TRACK, "return 1", "1");
+        cache.put(MUSIC, TRACK, "return 2", "2");
+        // make "return 1" the most recently used entry
+        assertEquals("1", cache.get(MUSIC, "return 1"));
+        cache.put(MUSIC, TRACK, "return 3", "3");
+        assertEquals(2, cache.getSize());
+        assertEquals(1, cache.getEvictionCount());
+        assertNull(cache.get(MUSIC, "return 2"));
+        assertEquals("1", cache.get(MUSIC, "return 1"));
+        assertEquals("3", cache.get(MUSIC, "return 3"));
+    }
+
+    @Test
+    public void testInvalidate() {
+        final ReadCache cache = new ReadCache(1, TimeUnit.MINUTES, 10);
+        cache.put(MUSIC, TRACK, "return name of " + TRACK, "\"Song\"");
+        cache.put(MUSIC, "artwork 1 of " + TRACK, "return data of artwork 1 of " + TRACK, "\"data\"");
+        cache.put(MUSIC, "track id 6 of library playlist 1", "return name of track id 6 of library playlist 1", "\"Other\"");
+        cache.put(FINDER, TRACK, "return name of " + TRACK, "\"Finder\"");
+
+        cache.invalidate(MUSIC, TRACK);
+        assertEquals(2, cache.getInvalidationCount());
+        assertNull(cache.get(MUSIC, "return name of " + TRACK));
+        assertNull(cache.get(MUSIC, "return data of artwork 1 of " + TRACK));
+        assertEquals("\"Other\"", cache.get(MUSIC, "return name of track id 6 of library playlist 1"));
+        assertEquals("\"Finder\"", cache.get(FINDER, "return name of " + TRACK));
+
+        // application-wide
+        cache.invalidate(MUSIC, null);
+        assertNull(cache.get(MUSIC, "return name of track id 6 of library playlist 1"));
+        assertEquals(1, cache.getSize());
+
+        cache.invalidateAll();
+        assertEquals(0, cache.getSize());
+        assertEquals(4, cache.getInvalidationCount());
+    }
+
+    @Test
+    public void testStaleWriteIsDropped() {
+        final ReadCache cache = new ReadCache(1, TimeUnit.MINUTES, 10);
+        final long generation = cache.getGeneration(MUSIC);
+        final long finderGeneration = cache.getGeneration(FINDER);
+        // a setter is called, while the read is executed
+        cache.invalidate(MUSIC, TRACK);
+        assertNotEquals(generation, cache.getGeneration(MUSIC));
+        cache.put(MUSIC, TRACK, "return name of " + TRACK, "\"Old\"", generation);
+        assertNull(cache.get(MUSIC, "return name of " + TRACK));
+        // other applications are not affected
+        cache.put(FINDER, TRACK, "return name of " + TRACK, "\"Finder\"", finderGeneration);
+        assertEquals("\"Finder\"", cache.get(FINDER, "return name of " + TRACK));
+        // reads started after the invalidation are cached
+        cache.put(MUSIC, TRACK, "return name of " + TRACK, "\"New\"", cache.getGeneration(MUSIC));
+        assertEquals("\"New\"", cache.get(MUSIC, "return name of " + TRACK));
+
+        final long beforeInvalidateAll = cache.getGeneration(MUSIC);
+        cache.invalidateAll();
+        cache.put(MUSIC, TRACK, "return name of " + TRACK, "\"Old\"", beforeInvalidateAll);
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testInvalidateAfterEviction() {
+        final ReadCache cache = new ReadCache(1, TimeUnit.MINUTES, 1);
+        cache.put(MUSIC, TRACK, "return name of " + TRACK, "\"Song\"");
+        cache.put(MUSIC, "artwork 1 of " + TRACK, "return data of artwork 1 of " + TRACK, "\"data\"");
+        assertEquals(1, cache.getEvictionCount());
+        // replacing an entry re-indexes it
+        cache.put(MUSIC, "artwork 2 of " + TRACK, "return data of artwork 1 of " + TRACK, "\"data\"");
+        cache.invalidate(MUSIC, "artwork 1 of " + TRACK);
+        assertEquals(0, cache.getInvalidationCount());
+        cache.invalidate(MUSIC, "library playlist 1");
+        assertEquals(1, cache.getInvalidationCount());
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testNullResult() {
+        final ReadCache cache = new ReadCache();
+        cache.put(MUSIC, TRACK, "return name of " + TRACK, null);
+        assertEquals(0, cache.getSize());
+    }
+}
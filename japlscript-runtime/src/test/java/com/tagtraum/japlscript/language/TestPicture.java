@@ -61,4 +61,14 @@ public class TestPicture {
         assertNull(picture.getFormat());
     }
 
+    @Test
+    public void testDecodeCharSequence() {
+        final CharSequence objectReference = new StringBuilder("\u00abdata PNGf0102\u00bb");
+        assertTrue(Picture.isData(objectReference));
+        final Picture picture = new Picture(objectReference, "app");
+        assertEquals("PNGf", picture.getFormat());
+        assertArrayEquals(new byte[]{1, 2}, picture.getData());
+        assertEquals("\u00abdata PNGf0102\u00bb", picture.getObjectReference());
+        assertEquals(new Picture("\u00abdata PNGf0102\u00bb", "app"), picture);
+    }
 }
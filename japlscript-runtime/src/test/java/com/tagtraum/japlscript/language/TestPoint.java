@@ -46,4 +46,11 @@ public class TestPoint {
         });
     }
 
+    @Test
+    public void testParseBadPoint3() {
+        Assertions.assertThrows(JaplScriptException.class, () -> {
+            Point.getInstance()._decode("{1, 2, 3}", null);
+        });
+    }
+
 }
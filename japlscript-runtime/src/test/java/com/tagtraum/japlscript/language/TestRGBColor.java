@@ -50,5 +50,12 @@ public class TestRGBColor {
         });
     }
 
+    @Test
+    public void testParseBadRGBColor3() {
+        Assertions.assertThrows(JaplScriptException.class, () -> {
+            RGBColor.getInstance()._decode("{1, 2, 3} & {4}", null);
+        });
+    }
+
 
 }
@@ -45,4 +45,11 @@ public class TestRectangle {
             Rectangle.getInstance()._decode("{1, 2", null);
         });
     }
+
+    @Test
+    public void testParseBadRectangle3() {
+        Assertions.assertThrows(JaplScriptException.class, () -> {
+            Rectangle.getInstance()._decode("{1, 2, 3, x}", null);
+        });
+    }
 }
@@ -11,8 +11,7 @@ import org.junit.jupiter.api.Test;
 
 import java.io.*;
 
-import static org.junit.jupiter.api.Assertions.assertArrayEquals;
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * TestTdta.
@@ -54,6 +53,25 @@ public class TestTdta {
         }
     }
 
+    @Test
+    public void testDecode() {
+        final Tdta tdta = new Tdta("\u00abdata tdta01020AFF\u00bb", "app");
+        assertArrayEquals(new byte[]{1, 2, 10, -1}, tdta.getTdta());
+        assertEquals("\u00abdata tdta01020AFF\u00bb", new Tdta(tdta.getTdta(), "app").getObjectReference());
+    }
+
+    @Test
+    public void testDecodeCharSequence() {
+        final CharSequence objectReference = new StringBuilder("\u00abdata tdta01020aff\u00bb");
+        assertTrue(Tdta.isTdta(objectReference));
+        assertFalse(Tdta.isTdta("\u00abdata rdat01\u00bb"));
+        final Tdta tdta = new Tdta(objectReference, "app");
+        assertArrayEquals(new byte[]{1, 2, 10, -1}, tdta.getTdta());
+        // re-created from the data
+        assertEquals("\u00abdata tdta01020AFF\u00bb", tdta.getObjectReference());
+        assertEquals(new Tdta("\u00abdata tdta01020AFF\u00bb", "app"), tdta);
+    }
+
     private static void extractFile(final String filename, final File file) throws IOException {
         try (final InputStream in = Tdta.class.getResourceAsStream(filename);
              final OutputStream out = new FileOutputStream(file)) {